@@ -23,6 +23,7 @@ public class Engine {
      *      - BSTStorage
      *      - IndicesStorage
      *      - LSMStorage
+     *      - LSMRowStorage
      */
     // private final StorageInterface storageInterface = new LSMStorage();
     private final StorageInterface storageInterface = new BPlusTreeStorage(); // Change depending on storage type
@@ -45,6 +46,12 @@ public class Engine {
     private static final int CACHE_CAPACITY = 10000;
     private final ResultCache resultCache = new ResultCache(CACHE_CAPACITY);
 
+    /*
+     * INDEX DEFINITIONS
+     * Only declared indexes are maintained by the storage, keyed here by index name
+     */
+    private final Map<String, CreateIndex> indexes = new HashMap<>();
+
     public String executeSQL(String query) {
         /*
          * Basic Input Validation
@@ -65,6 +72,12 @@ public class Engine {
                 return update(update);
             } else if (parsedStatement instanceof Delete delete) {
                 return delete(delete);
+            } else if (parsedStatement instanceof CreateIndex createIndex) {
+                return createIndex(createIndex);
+            } else if (parsedStatement instanceof DropIndex dropIndex) {
+                return dropIndex(dropIndex);
+            } else if (parsedStatement instanceof Vacuum vacuum) {
+                return vacuum(vacuum);
             } else {
                 throw new InvalidCommandException("ERROR:Unsupported command type");
             }
@@ -94,6 +107,8 @@ public class Engine {
         }
 
         storageInterface.insert(insert);
+        // the cached results of any SELECT may miss the new row
+        resultCache.invalidateCache();
         return "Row inserted into " + tableName;
     }
 
@@ -119,6 +134,7 @@ public class Engine {
         }
 
         int deletedCount = storageInterface.delete(delete);
+        resultCache.invalidateCache();
         return "Rows deleted from " + tableName + ". " + deletedCount + " rows affected.";
 
     }
@@ -186,6 +202,7 @@ public class Engine {
         }
 
         int updatedCount = storageInterface.update(update);
+        resultCache.invalidateCache();
 
         return String.format("Table %s updated. %d rows affected.", tableName, updatedCount);
     }
@@ -202,6 +219,62 @@ public class Engine {
         return "Table " + tableName + " created";
     }
 
+    public String createIndex(CreateIndex createIndex) {
+
+        String tableName = createIndex.getTablename();
+        if (!storageInterface.tableExists(tableName)) {
+            throw new InvalidCommandException("ERROR: Table not found");
+        }
+
+        if (!storageInterface.getColumns(tableName).containsAll(createIndex.getColumns())) {
+            throw new InvalidCommandException("ERROR: Column not found");
+        }
+
+        if (indexes.containsKey(createIndex.getIndexname())) {
+            throw new InvalidCommandException("ERROR: Index already exists");
+        }
+
+        for (CreateIndex existing : indexes.values()) {
+            if (existing.getTablename().equals(tableName) && existing.getColumns().equals(createIndex.getColumns())) {
+                throw new InvalidCommandException("ERROR: Columns already indexed by " + existing.getIndexname());
+            }
+        }
+
+        storageInterface.createIndex(createIndex);
+        indexes.put(createIndex.getIndexname(), createIndex);
+
+        return "Index " + createIndex.getIndexname() + " created on " + tableName
+                + "(" + String.join(", ", createIndex.getColumns()) + ")";
+    }
+
+    public String dropIndex(DropIndex dropIndex) {
+
+        CreateIndex index = indexes.get(dropIndex.getIndexname());
+        if (index == null || (dropIndex.getTablename() != null
+                && !dropIndex.getTablename().equals(index.getTablename()))) {
+            throw new InvalidCommandException("ERROR: Index not found");
+        }
+
+        storageInterface.dropIndex(index);
+        indexes.remove(dropIndex.getIndexname());
+
+        return "Index " + dropIndex.getIndexname() + " dropped";
+    }
+
+    public String vacuum(Vacuum vacuum) {
+
+        String tableName = vacuum.getTablename();
+        if (tableName != null && !storageInterface.tableExists(tableName)) {
+            throw new InvalidCommandException("ERROR: Table not found");
+        }
+
+        int reclaimedCount = storageInterface.vacuum(vacuum);
+        if (tableName == null) {
+            return "All tables vacuumed. " + reclaimedCount + " row slots reclaimed.";
+        }
+        return "Table " + tableName + " vacuumed. " + reclaimedCount + " row slots reclaimed.";
+    }
+
     /*
      * HELPER METHODS
      */
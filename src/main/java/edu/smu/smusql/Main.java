@@ -8,6 +8,7 @@ import edu.smu.smusql.evaluator.Evaluator;
 import edu.smu.smusql.evaluator.SupportedQueries;
 import edu.smu.smusql.lsm.*;
 import edu.smu.smusql.bst.*;
+import edu.smu.smusql.bplus.*;
 
 // @author ziyuanliu@smu.edu.sg
 
@@ -26,7 +27,8 @@ public class Main {
             System.out.println("1. Enter 'exit' to exit");
             System.out.println("2. Enter 'evaluate' to evaluate the engine");
             System.out.println("3. Enter 'lsm' to test the lsm implementation");
-            System.out.print("4. Enter 'bst' to test the BST implementation \nsmusql> ");
+            System.out.println("4. Enter 'bst' to test the BST implementation");
+            System.out.print("5. Enter 'bplus' to sweep the B+ tree fanout \nsmusql> ");
             String query = scanner.nextLine();
             if (query.equalsIgnoreCase("exit")) {
                 break;
@@ -72,6 +74,9 @@ public class Main {
             } else if (query.equalsIgnoreCase("bst")) {
                 BSTTreeTester.testBST();
                 break;
+            } else if (query.equalsIgnoreCase("bplus")) {
+                BPlusTreeTester.testBPlusTree();
+                break;
             }
             System.out.println(dbEngine.executeSQL(query));
         }
@@ -0,0 +1,162 @@
+package edu.smu.smusql.bitmap;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * This class represents a sparse container that stores its values as a sorted
+ * char[]. It is used while the container holds at most 4096 values, beyond
+ * which a BitmapContainer takes less space.
+ */
+class ArrayContainer extends Container {
+    char[] content;
+    int cardinality;
+
+    ArrayContainer() {
+        this(4);
+    }
+
+    ArrayContainer(int capacity) {
+        this.content = new char[Math.max(capacity, 1)];
+        this.cardinality = 0;
+    }
+
+    ArrayContainer(char[] content, int cardinality) {
+        this.content = content;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+        // values usually arrive in ascending order, so try appending first
+        if (cardinality == 0 || content[cardinality - 1] < value) {
+            if (cardinality == MAX_ARRAY_CARDINALITY) {
+                return toBitmapContainer().add(value);
+            }
+            ensureCapacity(cardinality + 1);
+            content[cardinality++] = value;
+            return this;
+        }
+        int index = Arrays.binarySearch(content, 0, cardinality, value);
+        if (index >= 0) {
+            return this;
+        }
+        if (cardinality == MAX_ARRAY_CARDINALITY) {
+            return toBitmapContainer().add(value);
+        }
+        int insertionPoint = -(index + 1);
+        ensureCapacity(cardinality + 1);
+        System.arraycopy(content, insertionPoint, content, insertionPoint + 1, cardinality - insertionPoint);
+        content[insertionPoint] = value;
+        cardinality++;
+        return this;
+    }
+
+    @Override
+    Container remove(char value) {
+        int index = Arrays.binarySearch(content, 0, cardinality, value);
+        if (index >= 0) {
+            System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+            cardinality--;
+        }
+        return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+        return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+        if (other instanceof BitmapContainer bitmap) {
+            return bitmap.and(this);
+        }
+        ArrayContainer array = (ArrayContainer) other;
+        char[] result = new char[Math.min(cardinality, array.cardinality)];
+        int size = 0;
+        int i = 0, j = 0;
+        while (i < cardinality && j < array.cardinality) {
+            char val1 = content[i];
+            char val2 = array.content[j];
+            if (val1 == val2) {
+                result[size++] = val1;
+                i++;
+                j++;
+            } else if (val1 < val2) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return new ArrayContainer(result, size);
+    }
+
+    @Override
+    Container or(Container other) {
+        if (other instanceof BitmapContainer bitmap) {
+            return bitmap.or(this);
+        }
+        ArrayContainer array = (ArrayContainer) other;
+        if (cardinality + array.cardinality > MAX_ARRAY_CARDINALITY) {
+            return toBitmapContainer().or(array);
+        }
+        char[] result = new char[cardinality + array.cardinality];
+        int size = 0;
+        int i = 0, j = 0;
+        while (i < cardinality && j < array.cardinality) {
+            char val1 = content[i];
+            char val2 = array.content[j];
+            if (val1 == val2) {
+                result[size++] = val1;
+                i++;
+                j++;
+            } else if (val1 < val2) {
+                result[size++] = val1;
+                i++;
+            } else {
+                result[size++] = val2;
+                j++;
+            }
+        }
+        while (i < cardinality) {
+            result[size++] = content[i++];
+        }
+        while (j < array.cardinality) {
+            result[size++] = array.content[j++];
+        }
+        return new ArrayContainer(result, size);
+    }
+
+    @Override
+    Container copy() {
+        return new ArrayContainer(Arrays.copyOf(content, cardinality), cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+        for (int i = 0; i < cardinality; i++) {
+            action.accept(high | content[i]);
+        }
+    }
+
+    BitmapContainer toBitmapContainer() {
+        BitmapContainer bitmap = new BitmapContainer();
+        for (int i = 0; i < cardinality; i++) {
+            bitmap.add(content[i]);
+        }
+        return bitmap;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > content.length) {
+            int newCapacity = Math.min(Math.max(content.length * 2, minCapacity), MAX_ARRAY_CARDINALITY);
+            content = Arrays.copyOf(content, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package edu.smu.smusql.bitmap;
+
+import java.util.function.IntConsumer;
+
+/**
+ * This class represents a dense container that stores its values as a fixed
+ * bitmap of 2^16 bits. It is used once the container holds more than 4096
+ * values, and turns back into an ArrayContainer when an operation leaves it
+ * with fewer values than that.
+ */
+class BitmapContainer extends Container {
+    private static final int NUM_WORDS = 1 << 10; // 2^16 bits in 64-bit words
+
+    final long[] words;
+    int cardinality;
+
+    BitmapContainer() {
+        this.words = new long[NUM_WORDS];
+        this.cardinality = 0;
+    }
+
+    private BitmapContainer(long[] words, int cardinality) {
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+        long before = words[value >>> 6];
+        long after = before | (1L << value);
+        if (before != after) {
+            words[value >>> 6] = after;
+            cardinality++;
+        }
+        return this;
+    }
+
+    @Override
+    Container remove(char value) {
+        long before = words[value >>> 6];
+        long after = before & ~(1L << value);
+        if (before != after) {
+            words[value >>> 6] = after;
+            cardinality--;
+        }
+        return cardinality <= MAX_ARRAY_CARDINALITY ? toArrayContainer() : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+        return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+        if (other instanceof ArrayContainer array) {
+            // the result can only be as large as the array, so keep it an array
+            char[] result = new char[array.cardinality];
+            int size = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (contains(array.content[i])) {
+                    result[size++] = array.content[i];
+                }
+            }
+            return new ArrayContainer(result, size);
+        }
+        BitmapContainer bitmap = (BitmapContainer) other;
+        long[] result = new long[NUM_WORDS];
+        int newCardinality = 0;
+        for (int i = 0; i < NUM_WORDS; i++) {
+            result[i] = words[i] & bitmap.words[i];
+            newCardinality += Long.bitCount(result[i]);
+        }
+        BitmapContainer container = new BitmapContainer(result, newCardinality);
+        return newCardinality <= MAX_ARRAY_CARDINALITY ? container.toArrayContainer() : container;
+    }
+
+    @Override
+    Container or(Container other) {
+        if (other instanceof ArrayContainer array) {
+            BitmapContainer result = (BitmapContainer) copy();
+            for (int i = 0; i < array.cardinality; i++) {
+                result.add(array.content[i]);
+            }
+            return result;
+        }
+        BitmapContainer bitmap = (BitmapContainer) other;
+        long[] result = new long[NUM_WORDS];
+        int newCardinality = 0;
+        for (int i = 0; i < NUM_WORDS; i++) {
+            result[i] = words[i] | bitmap.words[i];
+            newCardinality += Long.bitCount(result[i]);
+        }
+        return new BitmapContainer(result, newCardinality);
+    }
+
+    @Override
+    Container copy() {
+        return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+        for (int i = 0; i < NUM_WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                action.accept(high | (i << 6) | bit);
+                word &= word - 1;
+            }
+        }
+    }
+
+    ArrayContainer toArrayContainer() {
+        char[] content = new char[cardinality];
+        int size = 0;
+        for (int i = 0; i < NUM_WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                content[size++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(content, size);
+    }
+}
@@ -0,0 +1,38 @@
+package edu.smu.smusql.bitmap;
+
+import java.util.function.IntConsumer;
+
+/**
+ * This class represents one chunk of a RoaringBitmap. A container holds the
+ * low 16 bits of every value that shares the same high 16 bits. add() and
+ * remove() work in place but may change the container type, so they return
+ * the container that should replace this one. and() and or() never modify
+ * their inputs.
+ */
+abstract class Container {
+    // an array container holding more values than this is converted into a bitmap container
+    static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Container and(Container other);
+
+    abstract Container or(Container other);
+
+    abstract Container copy();
+
+    /**
+     * Passes every value in this container, in ascending order, to 'action'
+     * after combining it with the high bits of the container.
+     *
+     * @param high:   the high 16 bits shared by the values of this container
+     * @param action: the consumer of the full 32-bit values
+     */
+    abstract void forEach(int high, IntConsumer action);
+}
@@ -0,0 +1,196 @@
+package edu.smu.smusql.bitmap;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed bitmap of non-negative row indices, modelled on Roaring bitmaps.
+ * The 32-bit values are split by their high 16 bits into containers; each
+ * container stores the low 16 bits either as a sorted array (sparse chunks) or
+ * as a 2^16-bit bitmap (dense chunks). AND and OR are computed container by
+ * container, so combining two large result sets costs time proportional to the
+ * size of the bitmaps rather than the product of their sizes.
+ */
+public class RoaringBitmap {
+    private char[] keys;
+    private Container[] containers;
+    private int size; // number of containers in use
+
+    public RoaringBitmap() {
+        this.keys = new char[4];
+        this.containers = new Container[4];
+        this.size = 0;
+    }
+
+    /**
+     * Adds a value to the bitmap. Values added in ascending order take a fast
+     * path that appends to the last container.
+     *
+     * @param value: the non-negative value to add
+     */
+    public void add(int value) {
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+        int index;
+        if (size > 0 && keys[size - 1] == high) {
+            index = size - 1;
+        } else {
+            index = findContainer(high);
+            if (index < 0) {
+                index = -(index + 1);
+                insertContainer(index, high, new ArrayContainer());
+            }
+        }
+        containers[index] = containers[index].add(low);
+    }
+
+    /**
+     * Removes a value from the bitmap if it is present.
+     *
+     * @param value: the value to remove
+     */
+    public void remove(int value) {
+        int index = findContainer((char) (value >>> 16));
+        if (index < 0) {
+            return;
+        }
+        Container container = containers[index].remove((char) value);
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = container;
+        }
+    }
+
+    public boolean contains(int value) {
+        int index = findContainer((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Returns the number of values in the bitmap.
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Passes every value in the bitmap to 'action' in ascending order.
+     *
+     * @param action: the consumer of the values
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Returns the values of the bitmap as a sorted int[].
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] position = { 0 };
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Computes the intersection of two bitmaps without modifying either of them.
+     *
+     * @return a new bitmap holding the values present in both 'a' and 'b'
+     */
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] == b.keys[j]) {
+                Container container = a.containers[i].and(b.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.appendContainer(a.keys[i], container);
+                }
+                i++;
+                j++;
+            } else if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the union of two bitmaps without modifying either of them.
+     *
+     * @return a new bitmap holding the values present in 'a' or 'b'
+     */
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] == b.keys[j]) {
+                result.appendContainer(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            } else if (a.keys[i] < b.keys[j]) {
+                result.appendContainer(a.keys[i], a.containers[i].copy());
+                i++;
+            } else {
+                result.appendContainer(b.keys[j], b.containers[j].copy());
+                j++;
+            }
+        }
+        while (i < a.size) {
+            result.appendContainer(a.keys[i], a.containers[i].copy());
+            i++;
+        }
+        while (j < b.size) {
+            result.appendContainer(b.keys[j], b.containers[j].copy());
+            j++;
+        }
+        return result;
+    }
+
+    /* ~~~~~~~~~~~~~~~~ HELPER FUNCTIONS ~~~~~~~~~~~~~~~~ */
+
+    private int findContainer(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void appendContainer(char high, Container container) {
+        insertContainer(size, high, container);
+    }
+
+    private void insertContainer(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -1,261 +1,530 @@
 package edu.smu.smusql.bplus;
 
-import edu.smu.smusql.interfaces.RowEntry;
-import java.util.*;
-import java.io.*;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A B+ tree mapping the values of one column to the indices of the rows that
+ * hold them. The keys are stored in primitive arrays of the tree's KeyType, so
+ * a tree over a numeric column compares longs or doubles and never parses a
+ * key during a search. Each distinct value is held once, with the rows holding
+ * it in a posting list (see LeafNode), so the size and height of the tree
+ * follow the number of distinct values rather than the number of rows.
+ *
+ * The tree is safe for concurrent use. Inserts and deletes take turns on a
+ * writer lock and write-lock every node they change until they finish, while
+ * searches take no lock at all: they read the nodes optimistically and start
+ * over when a node changed under them (see RangeCursor), so lookups scale with
+ * the number of readers and never wait for each other.
+ *
+ * A snapshot (see snapshot) freezes the tree as it is for long scans that
+ * need one consistent version of it. The writer keeps going while snapshots
+ * are open, but copies every node shared with one before changing it, along
+ * with the path from the root down to it (path copying), so the snapshot keeps
+ * reading the old nodes. Nothing is copied while no snapshot is open.
+ */
 public class BPlusTree {
-    // change this to experiment with different orders/fanouts (the max keys of
-    // internal nodes)
-    int ORDER = 20;
-    int m = ORDER;
-    InternalNode root;
-    LeafNode firstLeaf;
-
-    public BPlusTree() {
-        this.root = null;
+    // the order (max children of an internal node) of indexes that do not set
+    // one, picked with the fanout sweep of BPlusTreeTester
+    public static final int DEFAULT_ORDER = 128;
+    public static final int MIN_ORDER = 3;
+
+    // the results of a lookup that are not a row index
+    public static final int NOT_FOUND = -1;
+    public static final int CANNOT_COMPARE = -2;
+
+    final int m;
+    private final KeyType keyType;
+    volatile InternalNode root;
+    volatile LeafNode firstLeaf;
+
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final List<Node> latchedNodes = new ArrayList<>(); // the nodes write-locked by the current writer
+    private int generation; // bumped by every snapshot, nodes made in an older generation may be shared
+    private int openSnapshots;
+
+    public BPlusTree(KeyType keyType) {
+        this(keyType, DEFAULT_ORDER);
     }
 
+    /**
+     * Constructor
+     *
+     * @param keyType: the type of the keys
+     * @param order:   the max number of children of an internal node, which is
+     *                 also one more than the max number of keys in a leaf
+     */
+    public BPlusTree(KeyType keyType, int order) {
+        if (order < MIN_ORDER) {
+            throw new IllegalArgumentException("B+ tree order must be at least " + MIN_ORDER);
+        }
+        this.m = order;
+        this.keyType = keyType;
+        this.root = null;
+        this.firstLeaf = newLeafNode();
+    }
 
-    public void insert(String key, int index) {
-        if (isEmpty()) {
-
-            /* Flow of execution goes here only when first insert takes place */
+    public KeyType getKeyType() {
+        return keyType;
+    }
 
-            // Create leaf node as first node in B plus tree (root is null)
-            LeafNode ln = new LeafNode(this.m, new DictionaryPair(key, index));
+    public int getOrder() {
+        return m;
+    }
 
-            // Set as first leaf node (can be used later for in-order leaf traversal)
-            this.firstLeaf = ln;
-            return;
+    /**
+     * Inserts a key pointing at a row. A key already in the tree gets the row
+     * added to its posting list, so only a new key can split a leaf.
+     *
+     * @param key:   the value of the row in the indexed column
+     * @param index: the index of the row in the table
+     * @return false if the key is wider than the tree's KeyType, in which case
+     *         nothing is inserted and the tree has to be rebuilt with a wider type
+     */
+    public boolean insert(String key, int index) {
+        Key k = Key.of(key);
+        if (!keyType.accepts(k.type)) {
+            return false;
         }
 
-        // Find leaf node to insert into
-        LeafNode ln = (this.root == null) ? this.firstLeaf : findLeafNodesEqualTo(this.root, key).get(0);
-
-        // Insert into leaf node fails if node becomes overfull
-        if (!ln.insert(new DictionaryPair(key, index))) {
+        writerLock.lock();
+        try {
+            LeafNode ln = openSnapshots > 0 ? copyPath(k) : findLeafNode(k);
+            latch(ln);
+            int i = ln.firstIndexNotLessThan(k);
+            if (i < ln.numKeys && ln.keys.compare(i, k) == 0) {
+                ln.addRow(i, index);
+            } else {
+                ln.insert(i, k, index);
+                if (ln.isOverfull()) {
+                    splitLeafNode(ln);
+                }
+            }
+            return true;
+        } finally {
+            releaseLatches();
+            writerLock.unlock();
+        }
+    }
 
-            // Sort all the dictionary pairs with the included pair to be inserted
-            ln.dictionary[ln.numPairs] = new DictionaryPair(key, index);
-            ln.numPairs++;
-            sortDictionary(ln.dictionary);
+    /**
+     * Removes the pair of a key and a row. The key itself is only removed with
+     * its last row; a leaf then left with too few keys borrows one from a
+     * sibling or is merged into one, and the same happens to
+     * internal nodes left with too few children, up to the root, which is
+     * dropped once it has a single child.
+     *
+     * @param key:   the value of the row in the indexed column
+     * @param index: the index of the row in the table
+     * @return false if the tree holds no such pair
+     */
+    public boolean delete(String key, int index) {
+        Key k = Key.of(key);
+        if (!keyType.accepts(k.type)) {
+            return false;
+        }
 
-            // Split the sorted pairs into two halves
-            int midpoint = getMidpoint();
-            DictionaryPair[] halfDict = splitDictionary(ln, midpoint);
+        writerLock.lock();
+        try {
+            LeafNode ln = findLeafNode(k);
+            int i = ln.findKey(k);
+            if (i < 0 || !ln.hasRow(i, index)) {
+                return false;
+            }
 
-            if (ln.parent == null) {
+            if (openSnapshots > 0) {
+                ln = copyPath(k);
+            }
+            latch(ln);
+            if (ln.numRows(i) > 1) {
+                ln.removeRow(i, index);
+            } else {
+                ln.delete(i);
+                if (ln.parent != null && ln.isDeficient()) {
+                    rebalanceLeafNode(ln);
+                }
+            }
+            return true;
+        } finally {
+            releaseLatches();
+            writerLock.unlock();
+        }
+    }
 
-                /* Flow of execution goes here when there is 1 node in tree */
+    public static BPlusTree bulkLoad(List<String> keys, IntList rowIndices) {
+        return bulkLoad(keys, rowIndices, DEFAULT_ORDER);
+    }
 
-                // Create internal node to serve as parent, use dictionary midpoint key
-                String[] parent_keys = new String[this.m];
-                parent_keys[0] = halfDict[0].key;
-                InternalNode parent = new InternalNode(this.m, parent_keys);
-                ln.parent = parent;
-                parent.appendChildPointer(ln);
+    /**
+     * Builds a tree from scratch out of the given keys. The (key, row index)
+     * pairs are sorted once, the rows of each key gathered into its posting list
+     * and the keys packed into leaves, and the internal levels are
+     * built bottom-up on top of them, so no insert, split or per-node sort takes
+     * place. The tree gets the narrowest key type that holds all of the keys.
+     *
+     * @param keys:       the keys to load
+     * @param rowIndices: the row index of each key, in the same order as 'keys'
+     * @param order:      the order of the tree
+     * @return the loaded tree
+     */
+    public static BPlusTree bulkLoad(List<String> keys, IntList rowIndices, int order) {
+        KeyType keyType = KeyType.LONG;
+        for (String key : keys) {
+            keyType = keyType.widen(KeyType.of(key));
+        }
+        BPlusTree tree = new BPlusTree(keyType, order);
+        int size = keys.size();
+        if (size == 0) {
+            return tree;
+        }
 
-            } else {
+        KeyArray sortedKeys = keyType.newKeyArray(size);
+        int[] sortedRows = rowIndices.toArray();
+        for (int i = 0; i < size; i++) {
+            sortedKeys.set(i, Key.of(keys.get(i)));
+        }
+        sortedKeys.sort(sortedRows, size);
+        tree.buildFromSorted(sortedKeys, sortedRows, size);
+        return tree;
+    }
 
-                /* Flow of execution goes here when parent exists */
+    public boolean isEmpty() {
+        writerLock.lock();
+        try {
+            return this.root == null && this.firstLeaf.numKeys == 0;
+        } finally {
+            writerLock.unlock();
+        }
+    }
 
-                // Add new key to parent for proper indexing
-                String newParentKey = halfDict[0].key;
-                ln.parent.keys[ln.parent.degree - 1] = newParentKey;
-                Arrays.sort(ln.parent.keys, 0, ln.parent.degree);
+    /**
+     * Returns the number of levels of the tree, counting the leaves.
+     */
+    public int getHeight() {
+        writerLock.lock();
+        try {
+            int height = 1;
+            for (Node node = this.root; node instanceof InternalNode in; node = in.childPointers[0]) {
+                height++;
             }
+            return height;
+        } finally {
+            writerLock.unlock();
+        }
+    }
 
-            // Create new LeafNode that holds the other half
-            LeafNode newLeafNode = new LeafNode(this.m, halfDict, ln.parent);
+    public int getNumLeaves() {
+        writerLock.lock();
+        try {
+            int numLeaves = 0;
+            for (LeafNode ln = this.firstLeaf; ln != null; ln = ln.rightSibling) {
+                numLeaves++;
+            }
+            return numLeaves;
+        } finally {
+            writerLock.unlock();
+        }
+    }
 
-            // Update child pointers of parent node
-            int pointerIndex = ln.parent.findIndexOfPointer(ln) + 1;
-            ln.parent.insertChildPointer(newLeafNode, pointerIndex);
+    /**
+     * Opens a cursor over the row indices whose keys lie between two bounds, in
+     * key order. Nothing is read until the cursor is advanced, so a caller that
+     * only needs the first few rows of a large range pays for those rows only.
+     *
+     * @param lo:          the lower bound, or null if the range is unbounded below
+     * @param loInclusive: whether keys equal to 'lo' are in the range
+     * @param hi:          the upper bound, or null if the range is unbounded above
+     * @param hiInclusive: whether keys equal to 'hi' are in the range
+     * @return the cursor, or null if the tree cannot compare a bound the way
+     *         WhereCondition would (see canCompare)
+     */
+    public RangeCursor scan(String lo, boolean loInclusive, String hi, boolean hiInclusive) {
+        Key loProbe = lo == null ? null : Key.of(lo);
+        Key hiProbe = hi == null ? null : Key.of(hi);
+        if ((loProbe != null && !canCompare(loProbe)) || (hiProbe != null && !canCompare(hiProbe))) {
+            return null;
+        }
+        return new RangeCursor(this, loProbe, loInclusive, hiProbe, hiInclusive);
+    }
 
-            // Make leaf nodes siblings of one another
-            newLeafNode.rightSibling = ln.rightSibling;
-            if (newLeafNode.rightSibling != null) {
-                newLeafNode.rightSibling.leftSibling = newLeafNode;
-            }
-            ln.rightSibling = newLeafNode;
-            newLeafNode.leftSibling = ln;
+    /**
+     * Takes an immutable snapshot of the tree. Scans of the snapshot see the
+     * tree exactly as it is now, however long they take and whatever the
+     * writer does in the meantime, and never have to start over. Taking one
+     * copies nothing; the writer copies the nodes it changes until the
+     * snapshot is closed, so a snapshot should be closed as soon as the scans
+     * that need it are done.
+     *
+     * @return the snapshot, to be closed once it is no longer needed
+     */
+    public BPlusTreeSnapshot snapshot() {
+        writerLock.lock();
+        try {
+            // every node in the tree now belongs to the snapshot
+            this.generation++;
+            this.openSnapshots++;
+            return new BPlusTreeSnapshot(this, this.root == null ? this.firstLeaf : this.root);
+        } finally {
+            writerLock.unlock();
+        }
+    }
 
-            if (this.root == null) {
+    /**
+     * Called once by every snapshot when it is closed.
+     */
+    void closeSnapshot() {
+        writerLock.lock();
+        try {
+            this.openSnapshots--;
+        } finally {
+            writerLock.unlock();
+        }
+    }
 
-                // Set the root of B+ tree to be the parent
-                this.root = ln.parent;
+    public IntList searchAll() {
+        return collect(scan(null, false, null, false));
+    }
 
-            } else {
+    /*
+     * The following methods return the row indices whose keys satisfy a
+     * comparison against 'key', or null if the tree cannot answer it because
+     * WhereCondition would compare 'key' differently from the tree, e.g. a
+     * number against a STRING tree. The caller then has to scan the rows.
+     */
 
-                /*
-                 * If parent is overfull, repeat the process up the tree,
-                 * until no deficiencies are found
-                 */
-                InternalNode in = ln.parent;
-                while (in != null) {
-                    if (in.isOverfull()) {
-                        splitInternalNode(in);
-                    } else {
-                        break;
-                    }
-                    in = in.parent;
-                }
-            }
+    public IntList searchEqualTo(String key) {
+        return collect(scan(key, true, key, true));
+    }
 
-        }
+    public IntList searchGreaterThan(String key) {
+        return collect(scan(key, false, null, false));
     }
 
-    List<Integer> searchAll() {
-        List<Integer> res = new ArrayList<>();
-        if (isEmpty()) {
-            return res;
-        }
-        LeafNode ln = this.firstLeaf;
-        while (ln != null) {
-            res.addAll(ln.getAllEntries());
-            ln = ln.rightSibling;
-        }
-        return res;
+    public IntList searchGreaterThanOrEqualTo(String key) {
+        return collect(scan(key, true, null, false));
     }
 
-    public List<Integer> searchEqualTo(String key) {
-        List<Integer> res = new ArrayList<>();
-        if (isEmpty()) {
-            return res;
-        }
-        if (this.root == null) {
+    public IntList searchLessThan(String key) {
+        return collect(scan(null, false, key, false));
+    }
 
-            return this.firstLeaf.getRowEntriesEqualTo(key);
-        }
-        List<LeafNode> leafNodes = findLeafNodesEqualTo(this.root, key);
-        for (LeafNode ln : leafNodes) {
-            res.addAll(ln.getRowEntriesEqualTo(key));
-        }
-        return res;
+    public IntList searchLessThanOrEqualTo(String key) {
+        return collect(scan(null, false, key, true));
     }
 
-    public List<Integer> searchGreaterThan(String key) {
+    /* ~~~~~~~~~~~~~~~~ HELPER FUNCTIONS ~~~~~~~~~~~~~~~~ */
 
-        List<Integer> res = new ArrayList<>();
-        if (isEmpty()) {
-            return res;
+    /**
+     * Write-locks a node before the current writer changes it, once per insert
+     * or delete, so that optimistic readers of the node notice the change.
+     */
+    private void latch(Node node) {
+        if (!node.isWriteLocked()) {
+            node.writeLock();
+            latchedNodes.add(node);
         }
-        if (this.root == null) {
-;
-            return this.firstLeaf.getRowEntriesMoreThan(key);
+    }
 
+    private void releaseLatches() {
+        for (Node node : latchedNodes) {
+            node.unlockWrite();
         }
-        List<LeafNode> leafNodes = findLeafNodesEqualTo(this.root, key);
-        LeafNode ln = leafNodes.get(leafNodes.size() - 1);
-        res.addAll(ln.getRowEntriesMoreThan(key));
+        latchedNodes.clear();
+    }
 
-        while (ln.rightSibling != null) {
-            ln = ln.rightSibling;
-            res.addAll(ln.getAllEntries());
+    private static IntList collect(RangeCursor cursor) {
+        if (cursor == null) {
+            return null;
         }
+        IntList res = new IntList();
+        cursor.drainTo(res);
         return res;
     }
-    
-    public List<Integer> searchGreaterThanOrEqualTo(String key) {
-        List<Integer> res = new ArrayList<>();
-        if (isEmpty()) {
-            return res;
-        }
-        if (this.root == null) {
-            return this.firstLeaf.getRowEntriesMoreThanOrEqual(key);
-        }
-        List<LeafNode> leafNodes = findLeafNodesEqualTo(this.root, key);
-        LeafNode ln = leafNodes.get(0);
-        res.addAll(ln.getRowEntriesMoreThanOrEqual(key));
-        while (ln.rightSibling != null) {
-            ln = ln.rightSibling;
-            res.addAll(ln.getAllEntries());
+
+    /**
+     * Determines whether comparing a probe against the keys of this tree gives
+     * the same answer as WhereCondition comparing it against the column values.
+     * Numeric trees answer numeric probes; STRING trees answer non-numeric
+     * probes, which WhereCondition compares as strings against every value.
+     */
+    boolean canCompare(Key probe) {
+        if (keyType == KeyType.STRING) {
+            return !probe.numeric;
         }
-        return res;
+        return probe.type != KeyType.STRING;
     }
-    
-    public List<Integer> searchLessThan(String key) {
-        List<Integer> res = new ArrayList<>();
-        if (isEmpty()) {
-            return res;
+
+    /**
+     * Descends from the root to the leaf whose range holds 'probe'.
+     */
+    private LeafNode findLeafNode(Key probe) {
+        Node node = this.root == null ? this.firstLeaf : this.root;
+        while (node instanceof InternalNode in) {
+            node = in.childPointers[in.findChild(probe)];
         }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Descends from the root to the leaf whose range holds 'probe' like
+     * findLeafNode, replacing every node on the way that
+     * is shared with a snapshot by a copy, so that the writer can change the
+     * leaf and its ancestors. The siblings of the nodes on the path stay shared
+     * until the writer needs to change them too.
+     */
+    private LeafNode copyPath(Key probe) {
         if (this.root == null) {
-            return this.firstLeaf.getRowEntriesLessThan(key);
+            return this.firstLeaf.generation == this.generation ? this.firstLeaf : (LeafNode) copyNode(this.firstLeaf);
         }
-        List<LeafNode> leafNodes = findLeafNodesEqualTo(this.root, key);
-        LeafNode ln = leafNodes.get(0);
-        res.addAll(ln.getRowEntriesLessThan(key));
-        while (ln.leftSibling != null) {
-            ln = ln.leftSibling;
-            res.addAll(ln.getAllEntries());
+        if (this.root.generation != this.generation) {
+            this.root = (InternalNode) copyNode(this.root);
         }
-        return res;
+        Node node = this.root;
+        while (node instanceof InternalNode in) {
+            node = writableChild(in, in.findChild(probe));
+        }
+        return (LeafNode) node;
     }
-    
-    public List<Integer> searchLessThanOrEqualTo(String key) {
-        List<Integer> res = new ArrayList<>();
-        if (isEmpty()) {
-            return res;
+
+    /**
+     * Returns the child at 'index' of a node the writer may change, first
+     * putting a copy in its place if the child is shared with a snapshot.
+     */
+    private Node writableChild(InternalNode parent, int index) {
+        Node child = parent.childPointers[index];
+        if (openSnapshots == 0 || child.generation == this.generation) {
+            return child;
         }
-        if (this.root == null) {
-            return this.firstLeaf.getRowEntriesLessThanOrEqual(key);
+        Node copy = copyNode(child);
+        latch(parent);
+        parent.childPointers[index] = copy;
+        return copy;
+    }
+
+    /**
+     * Copies a node shared with a snapshot and links the copy into the tree in
+     * its place, except for the pointer of its parent, which the caller sets.
+     * The original is left to the snapshots and flagged obsolete, so that
+     * optimistic readers still on it start over.
+     */
+    private Node copyNode(Node node) {
+        latch(node);
+        node.obsolete = true;
+        if (node instanceof LeafNode ln) {
+            LeafNode copy = new LeafNode(ln, keyType);
+            copy.generation = this.generation;
+            latch(copy);
+            if (copy.leftSibling != null) {
+                latch(copy.leftSibling);
+                copy.leftSibling.rightSibling = copy;
+            } else {
+                this.firstLeaf = copy;
+            }
+            if (copy.rightSibling != null) {
+                copy.rightSibling.leftSibling = copy;
+            }
+            return copy;
         }
-        List<LeafNode> leafNodes = findLeafNodesEqualTo(this.root, key);
-        LeafNode ln = leafNodes.get(leafNodes.size() - 1);
-        res.addAll(ln.getRowEntriesLessThanOrEqual(key));
-        while (ln.leftSibling != null) {
-            ln = ln.leftSibling;
-            res.addAll(ln.getAllEntries());
+        InternalNode copy = new InternalNode((InternalNode) node, keyType);
+        copy.generation = this.generation;
+        latch(copy);
+        for (int i = 0; i < copy.degree; i++) {
+            copy.childPointers[i].parent = copy;
         }
-        return res;
+        return copy;
     }
 
-    /* ~~~~~~~~~~~~~~~~ HELPER FUNCTIONS ~~~~~~~~~~~~~~~~ */
-
-    private List<LeafNode> findLeafNodesEqualTo(InternalNode node, String key) {
-
-        List<LeafNode> leafNodes = new ArrayList<>();
-
-        // Initialize keys and index variable
-        String[] keys = node.keys;
-
-        List<Node> childNodes = new ArrayList<>();
+    private LeafNode newLeafNode() {
+        LeafNode ln = new LeafNode(this.m, keyType);
+        ln.generation = this.generation;
+        return ln;
+    }
 
+    private InternalNode newInternalNode() {
+        InternalNode in = new InternalNode(this.m, keyType);
+        in.generation = this.generation;
+        return in;
+    }
 
-        int indexOfChildToAddInto= 0;
-        
-        while (indexOfChildToAddInto < node.degree - 1 && key.compareTo(keys[indexOfChildToAddInto]) >= 0) {
-            indexOfChildToAddInto++;
+    /**
+     * Fills this empty tree with sorted pairs. The distinct keys are spread
+     * evenly over as few leaves as possible, and the children of every level
+     * evenly over as few internal nodes as possible, so every node is at least
+     * half full. The separator before each child is the smallest key below it.
+     *
+     * @param keys:       the sorted keys
+     * @param rowIndices: the row index of each key
+     * @param size:       the number of pairs
+     */
+    private void buildFromSorted(KeyArray keys, int[] rowIndices, int size) {
+        // the rows of the i-th distinct key are at [runStarts[i], runStarts[i + 1])
+        IntList runStarts = new IntList();
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || keys.compare(i - 1, i) != 0) {
+                runStarts.add(i);
+            }
         }
-        childNodes.add(node.childPointers[indexOfChildToAddInto]);
-        indexOfChildToAddInto++;
-        while (indexOfChildToAddInto < node.degree - 1 && key.equals(keys[indexOfChildToAddInto])) {
-            childNodes.add(node.childPointers[indexOfChildToAddInto]);
-            indexOfChildToAddInto++;
+        int numDistinct = runStarts.size();
+        runStarts.add(size);
+
+        int numLeaves = (numDistinct + this.m - 2) / (this.m - 1);
+        Node[] level = new Node[numLeaves];
+        LeafNode[] lowestLeaves = new LeafNode[numLeaves]; // the leaf holding the smallest key below each node
+
+        int start = 0;
+        LeafNode previous = null;
+        for (int i = 0; i < numLeaves; i++) {
+            int count = (numDistinct - start) / (numLeaves - i);
+            LeafNode ln = previous == null ? this.firstLeaf : newLeafNode();
+            for (int j = 0; j < count; j++) {
+                int run = start + j;
+                ln.keys.setFrom(j, keys, runStarts.get(run));
+                ln.setRows(j, rowIndices, runStarts.get(run), runStarts.get(run + 1));
+            }
+            ln.numKeys = count;
+            if (previous != null) {
+                previous.rightSibling = ln;
+                ln.leftSibling = previous;
+            }
+            level[i] = ln;
+            lowestLeaves[i] = ln;
+            previous = ln;
+            start += count;
         }
-        
 
-        /*
-         * Return node if it is a LeafNode object,
-         * otherwise repeat the search function a level down
-         */
-        if (childNodes.get(0) instanceof LeafNode) {
-            for (Node childNode : childNodes) {
-                leafNodes.add((LeafNode) childNode);
-            }
-        } else {
-            for (Node childNode : childNodes) {
-                leafNodes.addAll(findLeafNodesEqualTo((InternalNode) childNode, key));
+        while (level.length > 1) {
+            int numNodes = (level.length + this.m - 1) / this.m;
+            Node[] parents = new Node[numNodes];
+            LeafNode[] parentLowestLeaves = new LeafNode[numNodes];
+
+            int child = 0;
+            for (int i = 0; i < numNodes; i++) {
+                int count = (level.length - child) / (numNodes - i);
+                InternalNode in = newInternalNode();
+                for (int j = 0; j < count; j++) {
+                    if (j > 0) {
+                        LeafNode lowest = lowestLeaves[child + j];
+                        in.setSeparator(j - 1, lowest.keys, 0);
+                    }
+                    in.appendChildPointer(level[child + j]);
+                    level[child + j].parent = in;
+                }
+                parents[i] = in;
+                parentLowestLeaves[i] = lowestLeaves[child];
+                child += count;
             }
+            level = parents;
+            lowestLeaves = parentLowestLeaves;
         }
-        return leafNodes;
+        this.root = level[0] instanceof InternalNode in ? in : null;
     }
+
     /**
      * This is a simple method that returns the midpoint (or lower bound
      * depending on the context of the method invocation) of the max degree m of
      * the B+ tree.
-     * 
+     *
      * @return (int) midpoint/lower bound
      */
     private int getMidpoint() {
@@ -263,180 +532,235 @@ public class BPlusTree {
     }
 
     /**
-     * This is a simple method that determines if the B+ tree is empty or not.
-     * 
-     * @return a boolean indicating if the B+ tree is empty or not
+     * When an insertion overfills a leaf, this method moves the upper half of
+     * its keys into a new right sibling and adds the sibling's first key to the
+     * parent as the separator between the two.
+     *
+     * @param ln: an overfull LeafNode that is to be split
      */
-    private boolean isEmpty() {
-        return firstLeaf == null;
+    private void splitLeafNode(LeafNode ln) {
+        // Move the upper half of the keys, with their rows, into the new sibling
+        LeafNode sibling = newLeafNode();
+        latch(sibling);
+        ln.moveTo(getMidpoint(), sibling);
+
+        // Make leaf nodes siblings of one another
+        sibling.rightSibling = ln.rightSibling;
+        if (sibling.rightSibling != null) {
+            sibling.rightSibling.leftSibling = sibling;
+        }
+        ln.rightSibling = sibling;
+        sibling.leftSibling = ln;
+
+        insertIntoParent(ln, sibling.keys, 0, sibling);
     }
 
     /**
-     * This is a specialized sorting method used upon lists of DictionaryPairs
-     * that may contain interspersed null values.
-     * 
-     * @param dictionary: a list of DictionaryPair objects
+     * When an insertion into the B+ tree causes an overfull node, this method
+     * is called to remedy the issue, i.e. to split the overfull node. The keys
+     * and pointers after the midpoint key move into a new right sibling, and the
+     * midpoint key moves up into the parent.
+     *
+     * @param in: an overfull InternalNode that is to be split
      */
-    private void sortDictionary(DictionaryPair[] dictionary) {
-        Arrays.sort(dictionary, new Comparator<DictionaryPair>() {
-            @Override
-            public int compare(DictionaryPair o1, DictionaryPair o2) {
-                if (o1 == null && o2 == null) {
-                    return 0;
-                }
-                if (o1 == null) {
-                    return 1;
-                }
-                if (o2 == null) {
-                    return -1;
-                }
-                return o1.compareTo(o2);
-            }
-        });
+    private void splitInternalNode(InternalNode in) {
+        int midpoint = getMidpoint();
+        int numKeys = in.degree - 1;
+
+        // Move the keys and pointers after the midpoint into the new sibling
+        InternalNode sibling = newInternalNode();
+        latch(sibling);
+        in.keys.copy(midpoint + 1, sibling.keys, 0, numKeys - midpoint - 1);
+        for (int i = midpoint + 1; i < in.degree; i++) {
+            Node pointer = in.childPointers[i];
+            sibling.appendChildPointer(pointer);
+            pointer.parent = sibling;
+            in.childPointers[i] = null;
+        }
+        in.degree = midpoint + 1;
+
+        // The midpoint key separates the two nodes in the parent
+        insertIntoParent(in, in.keys, midpoint, sibling);
+        in.keys.clear(midpoint, numKeys);
     }
 
     /**
-     * This method modifies the InternalNode 'in' by removing all pointers within
-     * the childPointers after the specified split. The method returns the removed
-     * pointers in a list of their own to be used when constructing a new
-     * InternalNode sibling.
-     * 
-     * @param in:    an InternalNode whose childPointers will be split
-     * @param split: the index at which the split in the childPointers begins
-     * @return a Node[] of the removed pointers
+     * Adds 'right' to the parent of 'left' as its right neighbour, separated by
+     * the given separator. A new root is created if 'left' was the root.
+     *
+     * @param left:     the node that was split
+     * @param srcKeys:  the key array holding the separator key
+     * @param srcIndex: the position of the separator within 'srcKeys'
+     * @param right:    the new sibling holding the keys from the separator on
      */
-    private Node[] splitChildPointers(InternalNode in, int split) {
+    private void insertIntoParent(Node left, KeyArray srcKeys, int srcIndex, Node right) {
+        InternalNode parent = left.parent;
+        if (parent == null) {
+            // Create internal node to serve as the new root
+            parent = newInternalNode();
+            latch(parent);
+            parent.appendChildPointer(left);
+            left.parent = parent;
+            this.root = parent;
+        }
 
-        Node[] pointers = in.childPointers;
-        Node[] halfPointers = new Node[this.m + 1];
+        latch(parent);
+        parent.insertChild(parent.findIndexOfPointer(left), srcKeys, srcIndex, right);
+        right.parent = parent;
 
-        // Copy half of the values into halfPointers while updating original keys
-        for (int i = split + 1; i < pointers.length; i++) {
-            halfPointers[i - split - 1] = pointers[i];
-            in.removePointer(i);
+        if (parent.isOverfull()) {
+            splitInternalNode(parent);
         }
-
-        return halfPointers;
     }
 
     /**
-     * This method splits a single dictionary into two dictionaries where all
-     * dictionaries are of equal length, but each of the resulting dictionaries
-     * holds half of the original dictionary's non-null values. This method is
-     * primarily used when splitting a node within the B+ tree. The dictionary of
-     * the specified LeafNode is modified in place. The method returns the
-     * remainder of the DictionaryPairs that are no longer within ln's dictionary.
-     * 
-     * @param ln:    list of DictionaryPairs to be split
-     * @param split: the index at which the split occurs
-     * @return DictionaryPair[] of the two split dictionaries
+     * Restores the minimum occupancy of a deficient leaf. It first tries to
+     * borrow a key from its left and then its right sibling under the same
+     * parent; if neither can lend one, it is merged with one of them and the
+     * parent loses a child.
+     *
+     * @param ln: a deficient LeafNode that is not the root
      */
-    private DictionaryPair[] splitDictionary(LeafNode ln, int split) {
-
-        DictionaryPair[] dictionary = ln.dictionary;
-
-        /*
-         * Initialize two dictionaries that each hold half of the original
-         * dictionary values
-         */
-        DictionaryPair[] halfDict = new DictionaryPair[this.m];
-
-        // Copy half of the values into halfDict
-        for (int i = split; i < dictionary.length; i++) {
-            halfDict[i - split] = dictionary[i];
-            ln.delete(i);
+    private void rebalanceLeafNode(LeafNode ln) {
+        InternalNode parent = ln.parent;
+        int index = parent.findIndexOfPointer(ln);
+        LeafNode left = index > 0 ? (LeafNode) parent.childPointers[index - 1] : null;
+        LeafNode right = index < parent.degree - 1 ? (LeafNode) parent.childPointers[index + 1] : null;
+
+        latch(parent);
+        if (left != null && left.isLendable()) {
+            // Move the last key of the left sibling to the front, it becomes the separator
+            left = (LeafNode) writableChild(parent, index - 1);
+            latch(left);
+            ln.insertFrom(0, left, left.numKeys - 1);
+            left.delete(left.numKeys - 1);
+            parent.setSeparator(index - 1, ln.keys, 0);
+        } else if (right != null && right.isLendable()) {
+            // Move the first key of the right sibling to the end, its successor becomes the separator
+            right = (LeafNode) writableChild(parent, index + 1);
+            latch(right);
+            ln.insertFrom(ln.numKeys, right, 0);
+            right.delete(0);
+            parent.setSeparator(index, right.keys, 0);
+        } else if (left != null) {
+            mergeLeafNodes((LeafNode) writableChild(parent, index - 1), ln);
+            parent.removeChild(index - 1);
+            rebalanceInternalNode(parent);
+        } else if (right != null) {
+            // the posting lists of 'right' move into 'ln', so a snapshot must not share them
+            mergeLeafNodes(ln, (LeafNode) writableChild(parent, index + 1));
+            parent.removeChild(index);
+            rebalanceInternalNode(parent);
         }
-
-        return halfDict;
     }
 
     /**
-     * When an insertion into the B+ tree causes an overfull node, this method
-     * is called to remedy the issue, i.e. to split the overfull node. This method
-     * calls the sub-methods of splitKeys() and splitChildPointers() in order to
-     * split the overfull node.
-     * 
-     * @param in: an overfull InternalNode that is to be split
+     * Moves every key of 'right' into its left sibling 'left' and unlinks
+     * 'right' from the list of leaves.
      */
-    private void splitInternalNode(InternalNode in) {
-
-        // Acquire parent
-        InternalNode parent = in.parent;
+    private void mergeLeafNodes(LeafNode left, LeafNode right) {
+        latch(left);
+        latch(right);
+        left.appendAll(right);
+        right.obsolete = true;
+        left.rightSibling = right.rightSibling;
+        if (left.rightSibling != null) {
+            left.rightSibling.leftSibling = left;
+        }
+    }
 
-        // Split keys and pointers in half
-        int midpoint = getMidpoint();
-        String newParentKey = in.keys[midpoint];
-        String[] halfKeys = splitKeys(in.keys, midpoint);
-        Node[] halfPointers = splitChildPointers(in, midpoint);
-
-        // Change degree of original InternalNode in
-        in.degree = Search.linearNullSearch(in.childPointers);
-
-        // Create new sibling internal node and add half of keys and pointers
-        InternalNode sibling = new InternalNode(this.m, halfKeys, halfPointers);
-        for (Node pointer : halfPointers) {
-            if (pointer != null) {
-                pointer.parent = sibling;
+    /**
+     * Restores the minimum degree of an internal node that has lost a child.
+     * The root only needs two children and is replaced by its only child once
+     * it has one; any other node borrows a child from a sibling under the same
+     * parent, rotating the separators through the parent, or is merged with
+     * one, pulling down the separator between them.
+     *
+     * @param in: an InternalNode that has just lost a child
+     */
+    private void rebalanceInternalNode(InternalNode in) {
+        if (in == this.root) {
+            if (in.degree == 1) {
+                // Shrink the tree by one level
+                latch(in);
+                in.obsolete = true;
+                Node child = in.childPointers[0];
+                child.parent = null;
+                this.root = child instanceof InternalNode newRoot ? newRoot : null;
             }
+            return;
         }
-
-        // Make internal nodes siblings of one another
-        sibling.rightSibling = in.rightSibling;
-        if (sibling.rightSibling != null) {
-            sibling.rightSibling.leftSibling = sibling;
+        if (!in.isDeficient()) {
+            return;
         }
-        in.rightSibling = sibling;
-        sibling.leftSibling = in;
 
-        if (parent == null) {
-
-            // Create new root node and add midpoint key and pointers
-            String[] keys = new String[this.m];
-            keys[0] = newParentKey;
-            InternalNode newRoot = new InternalNode(this.m, keys);
-            newRoot.appendChildPointer(in);
-            newRoot.appendChildPointer(sibling);
-            this.root = newRoot;
-
-            // Add pointers from children to parent
-            in.parent = newRoot;
-            sibling.parent = newRoot;
-
-        } else {
-
-            // Add key to parent
-            parent.keys[parent.degree - 1] = newParentKey;
-            Arrays.sort(parent.keys, 0, parent.degree);
-
-            // Set up pointer to new sibling
-            int pointerIndex = parent.findIndexOfPointer(in) + 1;
-            parent.insertChildPointer(sibling, pointerIndex);
-            sibling.parent = parent;
+        InternalNode parent = in.parent;
+        int index = parent.findIndexOfPointer(in);
+        InternalNode left = index > 0 ? (InternalNode) parent.childPointers[index - 1] : null;
+        InternalNode right = index < parent.degree - 1 ? (InternalNode) parent.childPointers[index + 1] : null;
+
+        latch(in);
+        latch(parent);
+        if (left != null && left.isLendable()) {
+            // The last child of the left sibling moves over, the separators rotate right
+            left = (InternalNode) writableChild(parent, index - 1);
+            latch(left);
+            Node child = left.childPointers[left.degree - 1];
+            in.keys.copy(0, in.keys, 1, in.degree - 1);
+            System.arraycopy(in.childPointers, 0, in.childPointers, 1, in.degree);
+            in.setSeparator(0, parent.keys, index - 1);
+            in.childPointers[0] = child;
+            in.degree++;
+            child.parent = in;
+
+            parent.setSeparator(index - 1, left.keys, left.degree - 2);
+            left.keys.clear(left.degree - 2, left.degree - 1);
+            left.childPointers[left.degree - 1] = null;
+            left.degree--;
+        } else if (right != null && right.isLendable()) {
+            // The first child of the right sibling moves over, the separators rotate left
+            right = (InternalNode) writableChild(parent, index + 1);
+            latch(right);
+            Node child = right.childPointers[0];
+            in.setSeparator(in.degree - 1, parent.keys, index);
+            in.appendChildPointer(child);
+            child.parent = in;
+
+            parent.setSeparator(index, right.keys, 0);
+            right.keys.copy(1, right.keys, 0, right.degree - 2);
+            right.keys.clear(right.degree - 2, right.degree - 1);
+            System.arraycopy(right.childPointers, 1, right.childPointers, 0, right.degree - 1);
+            right.childPointers[right.degree - 1] = null;
+            right.degree--;
+        } else if (left != null) {
+            mergeInternalNodes((InternalNode) writableChild(parent, index - 1), in, index - 1);
+            rebalanceInternalNode(parent);
+        } else if (right != null) {
+            mergeInternalNodes(in, right, index);
+            rebalanceInternalNode(parent);
         }
     }
 
     /**
-     * This method modifies a list of String-typed objects that represent keys
-     * by removing half of the keys and returning them in a separate String[].
-     * This method is used when splitting an InternalNode object.
-     * 
-     * @param keys:  a list of String objects
-     * @param split: the index where the split is to occur
-     * @return String[] of removed keys
+     * Moves the separator between two sibling internal nodes and every key and
+     * child of 'right' into 'left', then removes 'right' from their parent.
+     *
+     * @param left:           the left sibling, which absorbs the right one
+     * @param right:          the right sibling, which disappears
+     * @param separatorIndex: the position of the separator between them in the parent
      */
-    private String[] splitKeys(String[] keys, int split) {
-
-        String[] halfKeys = new String[this.m];
-
-        // Remove split-indexed value from keys
-        keys[split] = null;
-
-        // Copy half of the values into halfKeys while updating original keys
-        for (int i = split + 1; i < keys.length; i++) {
-            halfKeys[i - split - 1] = keys[i];
-            keys[i] = null;
+    private void mergeInternalNodes(InternalNode left, InternalNode right, int separatorIndex) {
+        InternalNode parent = left.parent;
+        latch(left);
+        latch(right);
+        latch(parent);
+        right.obsolete = true;
+        left.setSeparator(left.degree - 1, parent.keys, separatorIndex);
+        right.keys.copy(0, left.keys, left.degree, right.degree - 1);
+        for (int i = 0; i < right.degree; i++) {
+            left.appendChildPointer(right.childPointers[i]);
+            right.childPointers[i].parent = left;
         }
-
-        return halfKeys;
+        parent.removeChild(separatorIndex);
     }
-}
\ No newline at end of file
+}
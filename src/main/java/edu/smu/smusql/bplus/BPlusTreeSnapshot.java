@@ -0,0 +1,76 @@
+package edu.smu.smusql.bplus;
+
+/**
+ * An immutable view of a BPlusTree as it was when the snapshot was taken (see
+ * BPlusTree.snapshot). The nodes of the snapshot are never changed again, so
+ * its scans take no lock, validate nothing and see one consistent version of
+ * the tree while the writer keeps changing it.
+ *
+ * The tree copies every node it changes while the snapshot is open, so the
+ * snapshot has to be closed once it is no longer needed, and must not be used
+ * after that.
+ */
+public class BPlusTreeSnapshot implements AutoCloseable {
+    private final BPlusTree tree;
+    private final Node root; // the root of the tree when the snapshot was taken, a leaf if it had one level
+    private final int height;
+    private boolean closed;
+
+    BPlusTreeSnapshot(BPlusTree tree, Node root) {
+        this.tree = tree;
+        this.root = root;
+        int height = 1;
+        for (Node node = root; node instanceof InternalNode in; node = in.childPointers[0]) {
+            height++;
+        }
+        this.height = height;
+    }
+
+    /**
+     * Returns the number of levels of the snapshot, counting the leaves.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Opens a cursor over the row indices whose keys lie between two bounds, in
+     * key order, as of the moment the snapshot was taken.
+     *
+     * @param lo:          the lower bound, or null if the range is unbounded below
+     * @param loInclusive: whether keys equal to 'lo' are in the range
+     * @param hi:          the upper bound, or null if the range is unbounded above
+     * @param hiInclusive: whether keys equal to 'hi' are in the range
+     * @return the cursor, or null if the tree cannot compare a bound the way
+     *         WhereCondition would (see BPlusTree.scan)
+     */
+    public SnapshotCursor scan(String lo, boolean loInclusive, String hi, boolean hiInclusive) {
+        if (closed) {
+            throw new IllegalStateException("B+ tree snapshot is closed");
+        }
+        Key loProbe = lo == null ? null : Key.of(lo);
+        Key hiProbe = hi == null ? null : Key.of(hi);
+        if ((loProbe != null && !tree.canCompare(loProbe)) || (hiProbe != null && !tree.canCompare(hiProbe))) {
+            return null;
+        }
+        return new SnapshotCursor(root, height, loProbe, loInclusive, hiProbe, hiInclusive);
+    }
+
+    public IntList searchAll() {
+        IntList res = new IntList();
+        scan(null, false, null, false).drainTo(res);
+        return res;
+    }
+
+    /**
+     * Releases the snapshot, after which the tree stops copying the nodes
+     * shared with it. Closing it again has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            tree.closeSnapshot();
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package edu.smu.smusql.bplus;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,55 +9,291 @@ import java.util.Map;
 import edu.smu.smusql.interfaces.RowEntry;
 
 public class BPlusTreeTable {
+    // autovacuum kicks in once at least this many slots are free...
+    private static final int AUTOVACUUM_THRESHOLD = 50;
+    // ...and the free slots make up this fraction of the live rows
+    private static final double AUTOVACUUM_SCALE_FACTOR = 0.2;
+
     private List<String> columns;
-    private Map<String, BPlusTree> columnTrees;
-    private List<RowEntry> rows;
-    private int numRows;
+    private Map<String, BPlusTree> columnTrees; // only columns with a declared index have a tree
+    private Map<List<String>, CompositeIndex> compositeIndexes; // declared indexes over several columns
+    private List<RowEntry> rows; // a null slot is free, its index is kept in freeSlots
+    private IntList freeSlots; // reused by inserts before the row storage grows
+    private String primaryKey; // null if the table declares none
+    private Map<String, Integer> primaryKeySlots; // the unique index: the slot of each primary key, keyed by Key.canonical
+    private BPlusTree primaryIndex; // answers range conditions on the primary key, kept apart from columnTrees so that no DROP INDEX removes it
 
     public BPlusTreeTable(List<String> columns) {
+        this(columns, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param columns:    the columns of the table
+     * @param primaryKey: the primary key column, which gets a unique index
+     *                    (primaryKeySlots) and a tree for range conditions, or
+     *                    null if the table declares none
+     */
+    public BPlusTreeTable(List<String> columns, String primaryKey) {
         this.columns = columns;
+        this.primaryKey = primaryKey;
+        this.primaryIndex = primaryKey == null ? null : new BPlusTree(KeyType.LONG);
+        this.primaryKeySlots = primaryKey == null ? null : new HashMap<>();
         this.columnTrees = new HashMap<>();
+        this.compositeIndexes = new HashMap<>();
         this.rows = new ArrayList<>();
-        // Initialize B+ trees for all columns
-        for (String column : columns) {
-            columnTrees.put(column, new BPlusTree());
-        }
+        this.freeSlots = new IntList();
     }
 
     public List<String> getColumns() {
         return columns;
     }
 
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * Returns the slot of the row holding the given primary key value, or
+     * BPlusTree.NOT_FOUND if no row does. Values are equal the way
+     * WhereCondition compares them, e.g. 1 and 1.0, whatever the key type of
+     * the primary index: a STRING index orders numbers by their text, so the
+     * lookup is a single probe of primaryKeySlots instead of the tree.
+     */
+    public int findPrimaryKey(String value) {
+        return primaryKeySlots.getOrDefault(Key.of(value).canonical(), BPlusTree.NOT_FOUND);
+    }
+
+    /**
+     * Returns the B+ tree indexing the given column, or null if the column has no index.
+     */
     public BPlusTree getTreeForColumn(String column) {
-        return columnTrees.get(column);
+        BPlusTree tree = columnTrees.get(column);
+        return tree == null && column.equals(primaryKey) ? primaryIndex : tree;
+    }
+
+    /**
+     * Returns the indexes declared over more than one column.
+     */
+    public Collection<CompositeIndex> getCompositeIndexes() {
+        return compositeIndexes.values();
+    }
+
+    /**
+     * Builds an index over the given columns from the live rows and keeps it
+     * maintained from then on. A single column gets a plain B+ tree, except the
+     * primary key, which the primary index covers already. Several columns get a
+     * CompositeIndex.
+     *
+     * @param columns: the columns to index, in index order
+     * @param order:   the order of the index's trees
+     */
+    public void createIndex(List<String> columns, int order) {
+        if (columns.size() == 1) {
+            if (!columns.get(0).equals(primaryKey)) {
+                columnTrees.put(columns.get(0), buildTree(columns.get(0), order));
+            }
+        } else {
+            compositeIndexes.put(List.copyOf(columns), buildCompositeIndex(columns, order));
+        }
+    }
+
+    public void dropIndex(List<String> columns) {
+        if (columns.size() == 1) {
+            columnTrees.remove(columns.get(0));
+        } else {
+            compositeIndexes.remove(columns);
+        }
     }
 
     public void addRow(RowEntry row) {
+        int index;
+        if (freeSlots.isEmpty()) {
+            index = rows.size();
+            rows.add(row);
+        } else {
+            index = freeSlots.removeLast();
+            rows.set(index, row);
+        }
 
-        for (String column : columns) {
-            String value = row.getValue(column);
-            columnTrees.get(column).insert(value, numRows);
+        if (primaryIndex != null) {
+            insertPrimaryKey(row, index);
+        }
+        for (Map.Entry<String, BPlusTree> columnTree : columnTrees.entrySet()) {
+            insertTreeKey(columnTree, row, index);
+        }
+        for (CompositeIndex compositeIndex : compositeIndexes.values()) {
+            compositeIndex.insert(row, index, rows);
         }
-        rows.add(row);
-        numRows++;
     }
 
     public List<RowEntry> getAllEntries() {
         List<RowEntry> result = new ArrayList<>();
         for (RowEntry row : rows) {
-            if (!row.isDeleted()) {
+            if (row != null) {
                 result.add(row);
             }
         }
         return result;
     }
 
+    /**
+     * Returns the number of row slots, free or used, i.e. one more than the largest row index.
+     */
+    public int getNumSlots() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the row stored in the given slot, or null if the slot is free.
+     */
     public RowEntry getRow(int index) {
         return rows.get(index);
     }
 
+    /**
+     * Changes a value of the row in the given slot. The keys of the indexes on
+     * the column are removed before the change and inserted again after it, so
+     * the row keeps its slot.
+     *
+     * @param index:  the slot of the row to update
+     * @param column: the column to change
+     * @param value:  the new value
+     */
     public void updateRow(int index, String column, String value) {
-        rows.get(index).addOrUpdateValue(column, value);
+        RowEntry row = rows.get(index);
+        if (value.equals(row.getValue(column))) {
+            return;
+        }
+
+        BPlusTree tree = columnTrees.get(column);
+        if (tree != null) {
+            tree.delete(row.getValue(column), index);
+        }
+        boolean primaryKeyChanged = column.equals(primaryKey);
+        if (primaryKeyChanged) {
+            deletePrimaryKey(row, index);
+        }
+        List<CompositeIndex> affected = new ArrayList<>();
+        for (CompositeIndex compositeIndex : compositeIndexes.values()) {
+            if (compositeIndex.getColumns().contains(column)) {
+                compositeIndex.delete(row, index);
+                affected.add(compositeIndex);
+            }
+        }
+
+        row.addOrUpdateValue(column, value);
+        if (primaryKeyChanged) {
+            insertPrimaryKey(row, index);
+        }
+        if (tree != null && !tree.insert(value, index)) {
+            // the value does not fit the tree's key type, e.g. text in a numeric column
+            columnTrees.put(column, buildTree(column, tree.getOrder()));
+        }
+        for (CompositeIndex compositeIndex : affected) {
+            compositeIndex.insert(row, index, rows);
+        }
+    }
+
+    /**
+     * Deletes the row in the given slot, removing its keys from every index,
+     * and frees the slot for a later insert.
+     *
+     * @param index: the slot of the row to delete
+     */
+    public void deleteRow(int index) {
+        RowEntry row = rows.get(index);
+        if (primaryIndex != null) {
+            deletePrimaryKey(row, index);
+        }
+        for (Map.Entry<String, BPlusTree> columnTree : columnTrees.entrySet()) {
+            columnTree.getValue().delete(row.getValue(columnTree.getKey()), index);
+        }
+        for (CompositeIndex compositeIndex : compositeIndexes.values()) {
+            compositeIndex.delete(row, index);
+        }
+        row.setDeleted();
+        rows.set(index, null);
+        freeSlots.add(index);
+    }
+
+    /**
+     * Returns true once enough free slots have piled up, because deletes outpaced
+     * inserts, for a vacuum to pay off.
+     */
+    public boolean needsVacuum() {
+        int numFreeSlots = freeSlots.size();
+        return numFreeSlots >= AUTOVACUUM_THRESHOLD
+                && numFreeSlots > (rows.size() - numFreeSlots) * AUTOVACUUM_SCALE_FACTOR;
+    }
+
+    /**
+     * Compacts the row storage by dropping free slots, renumbering the live rows
+     * and rebuilding every index over the new row indices.
+     *
+     * @return the number of row slots reclaimed
+     */
+    public int vacuum() {
+        if (freeSlots.isEmpty()) {
+            return 0;
+        }
+        int reclaimed = freeSlots.size();
+        List<RowEntry> liveRows = getAllEntries();
+
+        this.rows = new ArrayList<>(liveRows);
+        this.freeSlots = new IntList();
+        if (primaryIndex != null) {
+            primaryIndex = buildTree(primaryKey, primaryIndex.getOrder());
+            primaryKeySlots.clear();
+            for (int i = 0; i < rows.size(); i++) {
+                primaryKeySlots.put(Key.of(rows.get(i).getValue(primaryKey)).canonical(), i);
+            }
+        }
+        columnTrees.replaceAll((column, tree) -> buildTree(column, tree.getOrder()));
+        compositeIndexes.replaceAll((columns, index) -> buildCompositeIndex(columns, index.getOrder()));
+        return reclaimed;
+    }
+
+    private void insertTreeKey(Map.Entry<String, BPlusTree> columnTree, RowEntry row, int index) {
+        if (!columnTree.getValue().insert(row.getValue(columnTree.getKey()), index)) {
+            // the value does not fit the tree's key type, e.g. text in a numeric column
+            columnTree.setValue(buildTree(columnTree.getKey(), columnTree.getValue().getOrder()));
+        }
+    }
+
+    private void insertPrimaryKey(RowEntry row, int index) {
+        primaryKeySlots.put(Key.of(row.getValue(primaryKey)).canonical(), index);
+        if (!primaryIndex.insert(row.getValue(primaryKey), index)) {
+            primaryIndex = buildTree(primaryKey, primaryIndex.getOrder());
+        }
+    }
+
+    private void deletePrimaryKey(RowEntry row, int index) {
+        primaryKeySlots.remove(Key.of(row.getValue(primaryKey)).canonical());
+        primaryIndex.delete(row.getValue(primaryKey), index);
+    }
+
+    /**
+     * Bulk loads a tree over the given column from the live rows.
+     */
+    private BPlusTree buildTree(String column, int order) {
+        List<String> keys = new ArrayList<>(rows.size());
+        IntList rowIndices = new IntList(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            RowEntry row = rows.get(i);
+            if (row != null) {
+                keys.add(row.getValue(column));
+                rowIndices.add(i);
+            }
+        }
+        return BPlusTree.bulkLoad(keys, rowIndices, order);
+    }
+
+    private CompositeIndex buildCompositeIndex(List<String> columns, int order) {
+        CompositeIndex index = new CompositeIndex(columns, order);
+        index.build(rows);
+        return index;
     }
 
 }
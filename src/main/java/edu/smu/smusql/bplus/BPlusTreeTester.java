@@ -0,0 +1,106 @@
+package edu.smu.smusql.bplus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sweeps the order (fanout) of the B+ tree over keys shaped like the columns
+ * of the evaluation tables, and prints the time per operation of each order so
+ * that BPlusTree.DEFAULT_ORDER, or the order of a single index, can be tuned.
+ */
+public class BPlusTreeTester {
+    private static final int[] ORDERS = { 4, 8, 16, 32, 64, 128, 256, 512 };
+    private static final int NUM_KEYS = 200_000;
+    private static final int NUM_LOOKUPS = 200_000;
+    private static final int RANGE_LENGTH = 100;
+    private static final int NUM_RUNS = 3; // the best of the runs is reported, the first ones warm up the JIT
+
+    public static void testBPlusTree() {
+        Random random = new Random(42);
+        List<String> ids = new ArrayList<>(NUM_KEYS);
+        List<String> ages = new ArrayList<>(NUM_KEYS);
+        List<String> cities = new ArrayList<>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            ids.add(String.valueOf(random.nextInt(NUM_KEYS * 10)));
+            ages.add(String.valueOf(20 + random.nextInt(41)));
+            cities.add("City" + random.nextInt(1000));
+        }
+
+        System.out.println("=== Starting B+ Tree Fanout Sweep (" + NUM_KEYS + " keys, ns per operation) ===\n");
+        sweep("unique ids", ids);
+        sweep("ages 20-60", ages);
+        sweep("city names", cities);
+        System.out.println("=== B+ Tree Fanout Sweep Completed ===");
+    }
+
+    private static void sweep(String name, List<String> keys) {
+        System.out.println("Keys: " + name);
+        System.out.printf("%8s %8s %10s %10s %10s %10s %10s%n",
+                "order", "height", "bulk load", "insert", "lookup", "range", "delete");
+        IntList rowIndices = new IntList(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            rowIndices.add(i);
+        }
+        // printed at the end, so that the results of the timed calls are used and not optimised away
+        long checksum = 0;
+
+        for (int order : ORDERS) {
+            double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+            int height = 0;
+            for (int run = 0; run < NUM_RUNS; run++) {
+                long start = System.nanoTime();
+                checksum += BPlusTree.bulkLoad(keys, rowIndices, order).getNumLeaves();
+                double bulkLoad = (System.nanoTime() - start) / (double) keys.size();
+
+                BPlusTree tree = new BPlusTree(KeyType.of(keys.get(0)), order);
+                start = System.nanoTime();
+                for (int i = 0; i < keys.size(); i++) {
+                    tree.insert(keys.get(i), i);
+                }
+                double insert = (System.nanoTime() - start) / (double) keys.size();
+                height = tree.getHeight();
+
+                Random random = new Random(run);
+                long found = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < NUM_LOOKUPS; i++) {
+                    RangeCursor cursor = tree.scan(keys.get(random.nextInt(keys.size())), true, null, false);
+                    if (cursor.hasNext()) {
+                        found += cursor.nextInt();
+                    }
+                }
+                double lookup = (System.nanoTime() - start) / (double) NUM_LOOKUPS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < NUM_LOOKUPS / 10; i++) {
+                    RangeCursor cursor = tree.scan(keys.get(random.nextInt(keys.size())), true, null, false);
+                    for (int j = 0; j < RANGE_LENGTH && cursor.hasNext(); j++) {
+                        found += cursor.nextInt();
+                    }
+                }
+                double range = (System.nanoTime() - start) / (double) (NUM_LOOKUPS / 10);
+
+                start = System.nanoTime();
+                for (int i = 0; i < keys.size(); i += 2) {
+                    tree.delete(keys.get(i), i);
+                }
+                double delete = (System.nanoTime() - start) / (double) ((keys.size() + 1) / 2);
+
+                checksum += found;
+                double[] times = { bulkLoad, insert, lookup, range, delete };
+                for (int i = 0; i < times.length; i++) {
+                    best[i] = Math.min(best[i], times[i]);
+                }
+            }
+            System.out.printf("%8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    order, height, best[0], best[1], best[2], best[3], best[4]);
+        }
+        System.out.println("(checksum " + checksum + ")\n");
+    }
+
+    // Main method to run the tester independently
+    public static void main(String[] args) {
+        testBPlusTree();
+    }
+}
@@ -0,0 +1,142 @@
+package edu.smu.smusql.bplus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.smu.smusql.interfaces.RowEntry;
+
+/**
+ * This class represents an index over several columns of a BPlusTreeTable.
+ * Rows are grouped by their values in every column but the last one (the
+ * prefix), and each group keeps a B+ tree over the last column. The groups are
+ * keyed by the canonical form of each value (see Key.canonical), so that values
+ * WhereCondition finds equal, such as 10 and 10.0, share a group. A lookup that
+ * fixes the whole prefix with equalities is a single hash probe followed by an
+ * equality or range search on the last column, instead of one tree search per
+ * column and an intersection of the results.
+ */
+public class CompositeIndex {
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final List<String> columns;
+    private final int order; // the order of every group's tree
+    private final Map<String, BPlusTree> prefixTrees;
+
+    public CompositeIndex(List<String> columns, int order) {
+        this.columns = List.copyOf(columns);
+        this.order = order;
+        this.prefixTrees = new HashMap<>();
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<String> getPrefixColumns() {
+        return columns.subList(0, columns.size() - 1);
+    }
+
+    public String getLastColumn() {
+        return columns.get(columns.size() - 1);
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Indexes a new row. A new group's tree gets the key type of the row's value
+     * in the last column, and a later value that does not fit it, e.g. text after
+     * numbers, rebuilds that group's tree with a wider type, leaving the other
+     * groups as they are.
+     *
+     * @param row:   the row to index
+     * @param index: the slot of the row in the table
+     * @param rows:  the table's row slots, to read the keys of a group being widened
+     */
+    public void insert(RowEntry row, int index, List<RowEntry> rows) {
+        String prefix = prefixKey(row);
+        String value = row.getValue(getLastColumn());
+        BPlusTree tree = prefixTrees.computeIfAbsent(prefix, k -> new BPlusTree(KeyType.of(value), order));
+        if (!tree.insert(value, index)) {
+            IntList rowIndices = tree.searchAll();
+            List<String> keys = new ArrayList<>(rowIndices.size() + 1);
+            for (int i = 0; i < rowIndices.size(); i++) {
+                keys.add(rows.get(rowIndices.get(i)).getValue(getLastColumn()));
+            }
+            keys.add(value);
+            rowIndices.add(index);
+            prefixTrees.put(prefix, BPlusTree.bulkLoad(keys, rowIndices, order));
+        }
+    }
+
+    /**
+     * Removes a row from the index, dropping its group once the group is empty.
+     * Must be called before the row's indexed values change.
+     *
+     * @param row:   the row to remove
+     * @param index: the slot of the row in the table
+     */
+    public void delete(RowEntry row, int index) {
+        String prefix = prefixKey(row);
+        BPlusTree tree = prefixTrees.get(prefix);
+        if (tree != null && tree.delete(row.getValue(getLastColumn()), index) && tree.isEmpty()) {
+            prefixTrees.remove(prefix);
+        }
+    }
+
+    /**
+     * Indexes the given rows, bulk loading one tree per group.
+     *
+     * @param rows: the table's row slots, where a null slot is a dead row
+     */
+    public void build(List<RowEntry> rows) {
+        Map<String, List<String>> groupKeys = new HashMap<>();
+        Map<String, IntList> groupRowIndices = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            RowEntry row = rows.get(i);
+            if (row != null) {
+                String prefix = prefixKey(row);
+                groupKeys.computeIfAbsent(prefix, k -> new ArrayList<>()).add(row.getValue(getLastColumn()));
+                groupRowIndices.computeIfAbsent(prefix, k -> new IntList()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<String>> group : groupKeys.entrySet()) {
+            prefixTrees.put(group.getKey(),
+                    BPlusTree.bulkLoad(group.getValue(), groupRowIndices.get(group.getKey()), order));
+        }
+    }
+
+    /**
+     * Returns the B+ tree over the last column for the rows whose prefix columns
+     * hold the given values.
+     *
+     * @param prefixValues: the values of the prefix columns, in index order
+     * @return the tree of the matching rows, or null if no row has that prefix
+     */
+    public BPlusTree getTree(List<String> prefixValues) {
+        return prefixTrees.get(prefixKey(prefixValues));
+    }
+
+    private String prefixKey(RowEntry row) {
+        String[] prefixValues = new String[columns.size() - 1];
+        for (int i = 0; i < prefixValues.length; i++) {
+            prefixValues[i] = row.getValue(columns.get(i));
+        }
+        return prefixKey(Arrays.asList(prefixValues));
+    }
+
+    private static String prefixKey(List<String> prefixValues) {
+        StringBuilder prefixKey = new StringBuilder();
+        for (int i = 0; i < prefixValues.size(); i++) {
+            if (i > 0) {
+                prefixKey.append(KEY_SEPARATOR);
+            }
+            prefixKey.append(Key.of(prefixValues.get(i)).canonical());
+        }
+        return prefixKey.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package edu.smu.smusql.bplus;
+
+class DoubleKeyArray extends KeyArray {
+    final double[] keys;
+
+    DoubleKeyArray(int capacity) {
+        this.keys = new double[capacity];
+    }
+
+    @Override
+    int compare(int i, Key probe) {
+        return Double.compare(keys[i], probe.doubleValue);
+    }
+
+    @Override
+    int compare(int i, int j) {
+        return Double.compare(keys[i], keys[j]);
+    }
+
+    @Override
+    void set(int i, Key key) {
+        keys[i] = key.doubleValue;
+    }
+
+    @Override
+    Key get(int i) {
+        return Key.ofDouble(keys[i]);
+    }
+
+    @Override
+    void swap(int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+
+    @Override
+    void setFrom(int i, KeyArray src, int srcIndex) {
+        keys[i] = ((DoubleKeyArray) src).keys[srcIndex];
+    }
+
+    @Override
+    void copy(int srcPos, KeyArray dest, int destPos, int length) {
+        System.arraycopy(keys, srcPos, ((DoubleKeyArray) dest).keys, destPos, length);
+    }
+}
@@ -0,0 +1,127 @@
+package edu.smu.smusql.bplus;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This class represents a growable list of primitive ints. It is used to hold
+ * the row indices returned by B+ tree searches so that large result sets do
+ * not allocate an Integer object per row.
+ */
+public class IntList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] elements;
+    private int size;
+
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntList(int capacity) {
+        this.elements = new int[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    /**
+     * Appends a value to the end of the list, growing the backing array if needed.
+     *
+     * @param value: the value to be appended
+     */
+    public void add(int value) {
+        if (size == elements.length) {
+            grow(size + 1);
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Appends every value of another list to the end of this list.
+     *
+     * @param other: the list whose values are to be appended
+     */
+    public void addAll(IntList other) {
+        if (size + other.size > elements.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.elements, 0, elements, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Appends the values of an array between 'from' (inclusive) and 'to'
+     * (exclusive) to the end of this list.
+     */
+    public void addAll(int[] values, int from, int to) {
+        Objects.checkFromToIndex(from, to, values.length);
+        int length = to - from;
+        if (size + length > elements.length) {
+            grow(size + length);
+        }
+        System.arraycopy(values, from, elements, size, length);
+        size += length;
+    }
+
+    /**
+     * Removes and returns the last value of the list.
+     */
+    public int removeLast() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Cannot remove from an empty list");
+        }
+        return elements[--size];
+    }
+
+    /**
+     * Shrinks the list to its first 'size' values.
+     *
+     * @param size: the new size, at most the current one
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Size " + size + " out of bounds for size " + this.size);
+        }
+        this.size = size;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Sorts the values of the list in ascending order.
+     */
+    public void sort() {
+        Arrays.sort(elements, 0, size);
+    }
+
+    /**
+     * Returns a copy of the values as an array that is exactly as long as the list.
+     *
+     * @return an int[] holding the values of the list
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(elements.length * 2, minCapacity);
+        elements = Arrays.copyOf(elements, newCapacity);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
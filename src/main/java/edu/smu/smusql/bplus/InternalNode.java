@@ -2,16 +2,16 @@ package edu.smu.smusql.bplus;
 
 /**
  * This class represents the internal nodes within the B+ tree that traffic
- * all search/insert/delete operations. An internal node only holds keys; it
- * does not hold dictionary pairs.
+ * all search/insert/delete operations. An internal node only holds separator
+ * keys: the child at index i holds the keys from separator i - 1 (inclusive)
+ * up to separator i (exclusive). A key is held by one leaf with all its rows,
+ * so the separators never need to tell rows with equal keys apart.
  */
 class InternalNode extends Node {
     int maxDegree;
     int minDegree;
     int degree; // the number of children (not keys!!)
-    InternalNode leftSibling;
-    InternalNode rightSibling;
-    String[] keys;
+    KeyArray keys;
     Node[] childPointers;
 
     /**
@@ -19,7 +19,7 @@ class InternalNode extends Node {
      * instance variable of the InternalNode object. The pointer can point to
      * an InternalNode object or a LeafNode object since the formal
      * parameter specifies a Node object.
-     * 
+     *
      * @param pointer: Node pointer that is to be appended to the
      *                 childPointers list
      */
@@ -32,14 +32,14 @@ class InternalNode extends Node {
      * Given a Node pointer, this method will return the index of where the
      * pointer lies within the childPointers instance variable. If the pointer
      * can't be found, the method returns -1.
-     * 
+     *
      * @param pointer: a Node pointer that may lie within the childPointers
      *                 instance variable
      * @return the index of 'pointer' within childPointers, or -1 if
      *         'pointer' can't be found
      */
     int findIndexOfPointer(Node pointer) {
-        for (int i = 0; i < childPointers.length; i++) {
+        for (int i = 0; i < degree; i++) {
             if (childPointers[i] == pointer) {
                 return i;
             }
@@ -48,110 +48,125 @@ class InternalNode extends Node {
     }
 
     /**
-     * Given a pointer to a Node object and an string index, this method
-     * inserts the pointer at the specified index within the childPointers
-     * instance variable. As a result of the insert, some pointers may be
-     * shifted to the right of the index.
-     * 
-     * @param pointer: the Node pointer to be inserted
-     * @param index:   the index at which the insert is to take place
+     * Inserts a separator at 'index' and the child to its right at 'index + 1',
+     * shifting the following separators and pointers to the right.
+     *
+     * @param index:    the position of the separator
+     * @param srcKeys:  the key array holding the separator key
+     * @param srcIndex: the position of the separator within 'srcKeys'
+     * @param pointer:  the new child, holding the keys from the separator on
      */
-    void insertChildPointer(Node pointer, int index) {
-        for (int i = degree - 1; i >= index; i--) {
-            childPointers[i + 1] = childPointers[i];
-        }
-        this.childPointers[index] = pointer;
-        this.degree++;
+    void insertChild(int index, KeyArray srcKeys, int srcIndex, Node pointer) {
+        int numMoved = degree - 1 - index;
+        keys.copy(index, keys, index + 1, numMoved);
+        keys.setFrom(index, srcKeys, srcIndex);
+        System.arraycopy(childPointers, index + 1, childPointers, index + 2, numMoved);
+        childPointers[index + 1] = pointer;
+        degree++;
     }
 
     /**
-     * This simple method determines if the InternalNode is considered overfull,
-     * i.e. the InternalNode object's current degree is one more than the
-     * specified maximum.
-     * 
-     * @return a boolean indicating if the InternalNode is overfull
+     * Removes the separator at 'index' and the child to its right, shifting the
+     * following separators and pointers to the left.
+     *
+     * @param index: the position of the separator
      */
-    boolean isOverfull() {
-        return this.degree == maxDegree + 1;
+    void removeChild(int index) {
+        int numMoved = degree - 2 - index;
+        keys.copy(index + 1, keys, index, numMoved);
+        keys.clear(degree - 2, degree - 1);
+        System.arraycopy(childPointers, index + 2, childPointers, index + 1, numMoved);
+        childPointers[degree - 1] = null;
+        degree--;
+    }
+
+    /**
+     * Sets the separator at 'index' to the key at 'srcIndex' of the given key array.
+     */
+    void setSeparator(int index, KeyArray srcKeys, int srcIndex) {
+        keys.setFrom(index, srcKeys, srcIndex);
     }
 
     /**
-     * Given a pointer to a Node object, this method inserts the pointer to
-     * the beginning of the childPointers instance variable.
-     * 
-     * @param pointer: the Node object to be prepended within childPointers
+     * Returns the index of the child whose range holds 'probe', which is where
+     * that key is inserted or found, i.e. the number of separators not greater
+     * than it.
      */
-    void prependChildPointer(Node pointer) {
-        for (int i = degree - 1; i >= 0; i--) {
-            childPointers[i + 1] = childPointers[i];
+    int findChild(Key probe) {
+        int low = 0;
+        int high = degree - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys.compare(mid, probe) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        this.childPointers[0] = pointer;
-        this.degree++;
+        return low;
     }
 
     /**
-     * This method sets keys[index] to null. This method is used within the
-     * parent of a merging, deficient LeafNode.
-     * 
-     * @param index: the location within keys to be set to null
+     * This simple method determines if the InternalNode is considered overfull,
+     * i.e. the InternalNode object's current degree is one more than the
+     * specified maximum.
+     *
+     * @return a boolean indicating if the InternalNode is overfull
      */
-    void removeKey(int index) {
-        this.keys[index] = null;
+    boolean isOverfull() {
+        return this.degree == maxDegree + 1;
     }
 
     /**
-     * This method sets childPointers[index] to null and additionally
-     * decrements the current degree of the InternalNode.
-     * 
-     * @param index: the location within childPointers to be set to null
+     * This simple method determines if the InternalNode is deficient, i.e.
+     * the InternalNode object's current degree is less than the specified
+     * minimum.
+     *
+     * @return a boolean indicating whether the InternalNode is deficient
      */
-    void removePointer(int index) {
-        this.childPointers[index] = null;
-        this.degree--;
+    boolean isDeficient() {
+        return this.degree < this.minDegree;
     }
 
     /**
-     * This method removes 'pointer' from the childPointers instance
-     * variable and decrements the current degree of the InternalNode. The
-     * index where the pointer node was assigned is set to null.
-     * 
-     * @param pointer: the Node pointer to be removed from childPointers
+     * This simple method determines if the InternalNode is capable of
+     * lending one of its children to a deficient sibling without becoming
+     * deficient itself.
+     *
+     * @return a boolean indicating whether the InternalNode can lend a child
      */
-    void removePointer(Node pointer) {
-        for (int i = 0; i < childPointers.length; i++) {
-            if (childPointers[i] == pointer) {
-                this.childPointers[i] = null;
-            }
-        }
-        this.degree--;
+    boolean isLendable() {
+        return this.degree > this.minDegree;
     }
 
     /**
      * Constructor
-     * 
-     * @param m:    the max degree of the InternalNode
-     * @param keys: the list of keys that InternalNode is initialized with
+     *
+     * @param m:       the max degree of the InternalNode
+     * @param keyType: the type of the keys held by the tree
      */
-    InternalNode(int m, String[] keys) {
+    InternalNode(int m, KeyType keyType) {
         this.maxDegree = m;
         this.minDegree = (int) Math.ceil(m / 2.0);
         this.degree = 0;
-        this.keys = keys;
+        // one spare separator and pointer let an insert overflow the node before it is split
+        this.keys = keyType.newKeyArray(m);
         this.childPointers = new Node[this.maxDegree + 1];
     }
 
     /**
-     * Constructor
-     * 
-     * @param m:        the max degree of the InternalNode
-     * @param keys:     the list of keys that InternalNode is initialized with
-     * @param pointers: the list of pointers that InternalNode is initialized with
+     * Copy constructor, used when 'src' is shared with a snapshot and the
+     * writer has to change it. The copy has the same separators and children
+     * as 'src', but the children still name 'src' as their parent.
+     *
+     * @param src:     the node to copy
+     * @param keyType: the type of the keys held by the tree
      */
-    InternalNode(int m, String[] keys, Node[] pointers) {
-        this.maxDegree = m;
-        this.minDegree = (int) Math.ceil(m / 2.0);
-        this.degree = Search.linearNullSearch(pointers);
-        this.keys = keys;
-        this.childPointers = pointers;
+    InternalNode(InternalNode src, KeyType keyType) {
+        this(src.maxDegree, keyType);
+        src.keys.copy(0, this.keys, 0, src.degree - 1);
+        System.arraycopy(src.childPointers, 0, this.childPointers, 0, src.degree);
+        this.degree = src.degree;
+        this.parent = src.parent;
     }
 }
@@ -0,0 +1,108 @@
+package edu.smu.smusql.bplus;
+
+/**
+ * This class represents a key parsed once from its string form, so that the
+ * nodes of a tree can compare it against their primitive key arrays without
+ * parsing anything per comparison. The numeric forms follow WhereCondition,
+ * which compares two values as doubles whenever both parse as numbers.
+ */
+final class Key {
+    // doubles represent every integer up to this magnitude exactly
+    private static final double MAX_EXACT_LONG = 1L << 53;
+
+    final KeyType type;
+    final boolean numeric; // true if WhereCondition would compare the value as a number
+    final long longValue;
+    final double doubleValue;
+    final String stringValue;
+
+    private Key(KeyType type, boolean numeric, long longValue, double doubleValue, String stringValue) {
+        this.type = type;
+        this.numeric = numeric;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.stringValue = stringValue;
+    }
+
+    /*
+     * The following methods recreate the key stored in a KeyArray, e.g. to find
+     * the position of a pair again after the tree has changed.
+     */
+
+    static Key ofLong(long value) {
+        return new Key(KeyType.LONG, true, value, value, String.valueOf(value));
+    }
+
+    static Key ofDouble(double value) {
+        return new Key(KeyType.DOUBLE, true, 0, value, String.valueOf(value));
+    }
+
+    static Key ofString(String value) {
+        return new Key(KeyType.STRING, false, 0, 0, value);
+    }
+
+    static Key of(String value) {
+        String trimmed = value.trim();
+
+        // fast path for plain integers, which make up most numeric values
+        int length = trimmed.length();
+        int start = length > 0 && trimmed.charAt(0) == '-' ? 1 : 0;
+        if (length > start && length - start <= 15) {
+            long number = 0;
+            int i = start;
+            while (i < length && trimmed.charAt(i) >= '0' && trimmed.charAt(i) <= '9') {
+                number = number * 10 + (trimmed.charAt(i) - '0');
+                i++;
+            }
+            if (i == length) {
+                number = start == 1 ? -number : number;
+                return new Key(KeyType.LONG, true, number, number, trimmed);
+            }
+        }
+
+        if (!mayBeNumber(trimmed)) {
+            return new Key(KeyType.STRING, false, 0, 0, trimmed);
+        }
+        double number;
+        try {
+            number = Double.parseDouble(trimmed);
+        } catch (NumberFormatException e) {
+            return new Key(KeyType.STRING, false, 0, 0, trimmed);
+        }
+        if (Double.isNaN(number)) {
+            // NaN is numeric to WhereCondition but never compares true, so no tree can order it
+            return new Key(KeyType.STRING, true, 0, number, trimmed);
+        }
+        number += 0.0; // turns -0.0 into 0.0, the two are equal to WhereCondition
+        if (number == Math.rint(number) && Math.abs(number) <= MAX_EXACT_LONG) {
+            return new Key(KeyType.LONG, true, (long) number, number, trimmed);
+        }
+        return new Key(KeyType.DOUBLE, true, 0, number, trimmed);
+    }
+
+    /**
+     * Returns a form of the value shared by every value equal to it to
+     * WhereCondition: the number for a numeric key, e.g. "10" for "10.0" and
+     * "1e1", and the trimmed value otherwise.
+     */
+    String canonical() {
+        return switch (type) {
+            case LONG -> Long.toString(longValue);
+            case DOUBLE -> Double.toString(doubleValue);
+            default -> stringValue;
+        };
+    }
+
+    /**
+     * Cheaply rules out most strings that Double.parseDouble would reject, so that
+     * text values do not cost an exception each.
+     */
+    private static boolean mayBeNumber(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        char first = value.charAt(0);
+        return (first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.'
+                || first == 'N' || first == 'I';
+    }
+}
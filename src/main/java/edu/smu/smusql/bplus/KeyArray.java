@@ -0,0 +1,157 @@
+package edu.smu.smusql.bplus;
+
+/**
+ * This class represents the keys of a node as a primitive array of the tree's
+ * KeyType. Nodes only address keys by position, so they work the same way
+ * whatever the key type is.
+ */
+abstract class KeyArray {
+
+    /**
+     * Compares the key at index 'i' against a probe.
+     *
+     * @return a negative number, zero or a positive number if the key is less
+     *         than, equal to or greater than the probe
+     */
+    abstract int compare(int i, Key probe);
+
+    /**
+     * Compares the keys at indices 'i' and 'j' of this array.
+     */
+    abstract int compare(int i, int j);
+
+    /**
+     * Binary searches the first 'size' keys, which are sorted, for the first
+     * one that is not less than 'probe'.
+     *
+     * @return the index of that key, or 'size' if there is none
+     */
+    int firstIndexNotLessThan(Key probe, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, probe) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary searches the first 'size' keys, which are sorted, for the first
+     * one that is greater than 'probe'.
+     *
+     * @return the index of that key, or 'size' if there is none
+     */
+    int firstIndexGreaterThan(Key probe, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, probe) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    abstract void set(int i, Key key);
+
+    /**
+     * Returns the key at index 'i' as a Key that compares equal to it.
+     */
+    abstract Key get(int i);
+
+    abstract void swap(int i, int j);
+
+    /**
+     * Sets the key at index 'i' to the key at index 'srcIndex' of another array
+     * of the same type, or of the other kind of array of STRING keys.
+     */
+    abstract void setFrom(int i, KeyArray src, int srcIndex);
+
+    /**
+     * Copies 'length' keys starting at 'srcPos' into another array of the same
+     * type, which may be this array, as System.arraycopy does.
+     */
+    abstract void copy(int srcPos, KeyArray dest, int destPos, int length);
+
+    /**
+     * Sorts the first 'size' keys together with their row indices, ordering
+     * equal keys by row index. Already sorted input, such as keys read from an
+     * existing tree, is detected in a single pass.
+     *
+     * @param rowIndices: the row index of each key, permuted along with the keys
+     * @param size:       the number of keys to sort
+     */
+    void sort(int[] rowIndices, int size) {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = comparePairs(rowIndices, i - 1, i) <= 0;
+        }
+        if (!sorted) {
+            quickSort(rowIndices, 0, size - 1);
+        }
+    }
+
+    private int comparePairs(int[] rowIndices, int i, int j) {
+        int result = compare(i, j);
+        return result != 0 ? result : Integer.compare(rowIndices[i], rowIndices[j]);
+    }
+
+    private void swapPairs(int[] rowIndices, int i, int j) {
+        swap(i, j);
+        int row = rowIndices[i];
+        rowIndices[i] = rowIndices[j];
+        rowIndices[j] = row;
+    }
+
+    private void quickSort(int[] rowIndices, int low, int high) {
+        while (high - low > 16) {
+            // median of three as the pivot, moved to 'high'
+            int mid = (low + high) >>> 1;
+            if (comparePairs(rowIndices, mid, low) < 0) {
+                swapPairs(rowIndices, mid, low);
+            }
+            if (comparePairs(rowIndices, high, low) < 0) {
+                swapPairs(rowIndices, high, low);
+            }
+            if (comparePairs(rowIndices, mid, high) < 0) {
+                swapPairs(rowIndices, mid, high);
+            }
+            int store = low;
+            for (int i = low; i < high; i++) {
+                if (comparePairs(rowIndices, i, high) < 0) {
+                    swapPairs(rowIndices, i, store++);
+                }
+            }
+            swapPairs(rowIndices, store, high);
+
+            // recurse into the smaller side to bound the stack depth
+            if (store - low < high - store) {
+                quickSort(rowIndices, low, store - 1);
+                low = store + 1;
+            } else {
+                quickSort(rowIndices, store + 1, high);
+                high = store - 1;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && comparePairs(rowIndices, j - 1, j) > 0; j--) {
+                swapPairs(rowIndices, j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Releases the keys between 'from' (inclusive) and 'to' (exclusive).
+     */
+    void clear(int from, int to) {
+        // primitive keys hold no references
+    }
+}
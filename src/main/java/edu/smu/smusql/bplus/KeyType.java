@@ -0,0 +1,47 @@
+package edu.smu.smusql.bplus;
+
+/**
+ * The type of the keys held by a BPlusTree. A tree only compares keys of its
+ * own type, so every comparison is a primitive long or double compare, or a
+ * plain String compare for STRING trees. The types are ordered from narrowest
+ * to widest: a tree can hold any key whose type is not wider than its own.
+ */
+public enum KeyType {
+    LONG, // every value is an integer that a double represents exactly
+    DOUBLE, // every value is a number
+    STRING; // at least one value is not a number, keys are compared as strings
+
+    /**
+     * Returns the narrowest type able to hold the given value.
+     */
+    public static KeyType of(String value) {
+        return Key.of(value).type;
+    }
+
+    /**
+     * Returns the narrowest type able to hold values of both this and the other type.
+     */
+    public KeyType widen(KeyType other) {
+        return ordinal() >= other.ordinal() ? this : other;
+    }
+
+    boolean accepts(KeyType other) {
+        return ordinal() >= other.ordinal();
+    }
+
+    KeyArray newKeyArray(int capacity) {
+        return switch (this) {
+            case LONG -> new LongKeyArray(capacity);
+            case DOUBLE -> new DoubleKeyArray(capacity);
+            case STRING -> new StringKeyArray(capacity);
+        };
+    }
+
+    /**
+     * Returns an array for the keys of a leaf, where STRING keys are prefix
+     * compressed (see PrefixKeyArray).
+     */
+    KeyArray newLeafKeyArray(int capacity) {
+        return this == STRING ? new PrefixKeyArray(capacity) : newKeyArray(capacity);
+    }
+}
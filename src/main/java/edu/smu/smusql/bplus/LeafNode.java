@@ -1,232 +1,368 @@
 package edu.smu.smusql.bplus;
-import java.util.*;
-import edu.smu.smusql.interfaces.RowEntry;
+
+import java.util.Arrays;
+
 /**
- * This class represents the leaf nodes within the B+ tree that hold
- * dictionary pairs. The leaf node has no children. The leaf node has a
- * minimum and maximum number of dictionary pairs it can hold, as specified
- * by m, the max degree of the B+ tree. The leaf nodes form a doubly linked
- * list that, i.e. each leaf node has a left and right sibling
+ * This class represents the leaf nodes within the B+ tree that hold the keys
+ * and the row indices they point to. Every key is held once, sorted, together
+ * with the rows holding it: a key held by a single row keeps that row inline
+ * in rowIndices, while a key held by several rows keeps them in a posting
+ * list, sorted by row index. An index over a low-cardinality column then has
+ * one entry per distinct value rather than one per row, and all the rows of a
+ * value sit in one leaf. The leaf node has no children and holds between
+ * minNumKeys and m - 1 keys, where m is the max degree of the B+ tree; only a
+ * leaf that is also the root may hold fewer. The leaf nodes form a doubly
+ * linked list, i.e. each leaf node has a left and right sibling
  */
 class LeafNode extends Node {
-    int maxNumPairs;
-    int minNumPairs;
-    int numPairs;
+    private static final int INITIAL_POSTING_CAPACITY = 4;
+
+    int maxNumKeys;
+    int minNumKeys;
+    int numKeys;
     LeafNode leftSibling;
     LeafNode rightSibling;
-    DictionaryPair[] dictionary;
+    KeyArray keys;
+    int[] rowIndices; // the row of each key held by a single row, or the size of its posting list
+    int[][] postings; // the rows of each key held by several rows, or null
+    int numPostings; // the number of keys with a posting list, while it is 0 rowIndices holds every row
 
-    List<Integer> getRowEntriesEqualTo(String key) { 
-        List<Integer> indices = new ArrayList<>();
-        DictionaryPair[] copy = new DictionaryPair[numPairs];
-        for (int i = 0; i < numPairs; i++) {
-            copy[i] = dictionary[i];
-        }
-        int foundIndex = Arrays.binarySearch(copy, new DictionaryPair(key, -1));
-        if (foundIndex < 0) {
-            return indices;
-        }
-        indices.add(dictionary[foundIndex].indexInTable);
-        for (int i = foundIndex - 1; i >= 0 && dictionary[i].key.equals(key); i--) {
-            indices.add(dictionary[i].indexInTable);
-        }
-        for (int i = foundIndex + 1; i < numPairs && dictionary[i].key.equals(key); i++) {
-            indices.add(dictionary[i].indexInTable);
-        }
-        return indices;
+    /**
+     * Returns the number of rows holding the key at index 'i'.
+     */
+    int numRows(int i) {
+        return postings[i] == null ? 1 : rowIndices[i];
     }
 
-    List<Integer> getRowEntriesMoreThan(String key) {
-        List<Integer> indices = new ArrayList<>();
-        DictionaryPair[] copy = new DictionaryPair[numPairs];
-        for (int i = 0; i < numPairs; i++) {
-            copy[i] = dictionary[i];
-        }
-        int foundIndex = Arrays.binarySearch(copy, new DictionaryPair(key, -1));
-        int traversalIndex; 
+    /**
+     * Returns the j-th row, in row index order, of the key at index 'i'.
+     */
+    int getRow(int i, int j) {
+        int[] posting = postings[i];
+        return posting == null ? rowIndices[i] : posting[j];
+    }
 
-        if (foundIndex >= 0) {
-            traversalIndex = foundIndex;
-            while (traversalIndex < numPairs && dictionary[traversalIndex].key.equals(key)) {
-                traversalIndex++;
+    /**
+     * Copies the rows 'from' (inclusive) to 'to' (exclusive) of the key at
+     * index 'i' into 'dest' at 'destPos'.
+     */
+    void copyRows(int i, int from, int to, int[] dest, int destPos) {
+        int[] posting = postings[i];
+        if (posting == null) {
+            if (from < to) {
+                dest[destPos] = rowIndices[i];
             }
         } else {
-            traversalIndex = -(foundIndex + 1); // Convert to insertion point
+            System.arraycopy(posting, from, dest, destPos, to - from);
         }
-        for (int i = traversalIndex; i < numPairs; i++) {
-            indices.add(dictionary[i].indexInTable);
-        }
-        return indices;
     }
 
-    List<Integer> getRowEntriesMoreThanOrEqual(String key) {
-        List<Integer> indices = new ArrayList<>();
-        DictionaryPair[] copy = new DictionaryPair[numPairs];
-        for (int i = 0; i < numPairs; i++) {
-            copy[i] = dictionary[i];
-        }
-        int foundIndex = Arrays.binarySearch(copy, new DictionaryPair(key, -1));
-        int traversalIndex;
-        if (foundIndex >= 0) {
-            traversalIndex = foundIndex;
-            addEntriesBefore(traversalIndex, indices, key);
+    /**
+     * Appends the rows 'from' (inclusive) to 'to' (exclusive) of the key at
+     * index 'i' to 'indices'.
+     */
+    void addRows(int i, int from, int to, IntList indices) {
+        int[] posting = postings[i];
+        if (posting == null) {
+            if (from < to) {
+                indices.add(rowIndices[i]);
+            }
         } else {
-            traversalIndex = -(foundIndex + 1);
-        }
-        for (int i = traversalIndex; i < numPairs; i++) {
-            indices.add(dictionary[i].indexInTable);
+            indices.addAll(posting, from, to);
         }
-        return indices;
     }
 
-    private void addEntriesBefore(int index, List<Integer> indices, String key) {
-        int i = index - 1;
-        while (i >= 0 && dictionary[i].key.equals(key)) {
-            indices.add(dictionary[i].indexInTable);
-            i--;
+    /**
+     * Binary searches the rows of the key at index 'i' for the first one that
+     * is not less than 'rowIndex'.
+     *
+     * @return the position of that row among the key's rows, or numRows(i) if there is none
+     */
+    int findRow(int i, int rowIndex) {
+        int[] posting = postings[i];
+        if (posting == null) {
+            return rowIndices[i] < rowIndex ? 1 : 0;
         }
+        int low = 0;
+        int high = rowIndices[i];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (posting[mid] < rowIndex) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
 
-    List<Integer> getRowEntriesLessThan(String key) {
-        List<Integer> indices = new ArrayList<>();
-        DictionaryPair[] copy = new DictionaryPair[numPairs];
-        for (int i = 0; i < numPairs; i++) {
-            copy[i] = dictionary[i];
-        }
-        int foundIndex = Arrays.binarySearch(copy, new DictionaryPair(key, -1));
-        int traversalIndex;
-        if (foundIndex >= 0) {
-            traversalIndex = foundIndex - 1;
-            while (traversalIndex > 0 && dictionary[traversalIndex].key.equals(key)) {
-                traversalIndex--;
-            }
-            if (traversalIndex >= 0) {
-                indices.add(dictionary[traversalIndex].indexInTable);
-            }
-        } else {
-            traversalIndex = -(foundIndex + 1);
+    /**
+     * Returns true if 'rowIndex' is one of the rows of the key at index 'i'.
+     */
+    boolean hasRow(int i, int rowIndex) {
+        int j = findRow(i, rowIndex);
+        return j < numRows(i) && getRow(i, j) == rowIndex;
+    }
+
+    /**
+     * Binary searches the keys for the first one that is not less than 'probe'.
+     *
+     * @param probe: the key to compare against
+     * @return the index of the first key >= probe, or numKeys if there is none
+     */
+    int firstIndexNotLessThan(Key probe) {
+        return keys.firstIndexNotLessThan(probe, numKeys);
+    }
+
+    /**
+     * Binary searches the keys for the first one that is greater than 'probe'.
+     *
+     * @param probe: the key to compare against
+     * @return the index of the first key > probe, or numKeys if there is none
+     */
+    int firstIndexGreaterThan(Key probe) {
+        return keys.firstIndexGreaterThan(probe, numKeys);
+    }
+
+    /**
+     * Returns the index of the key equal to 'probe', or -1 if the leaf does
+     * not hold it.
+     */
+    int findKey(Key probe) {
+        int i = firstIndexNotLessThan(probe);
+        return i < numKeys && keys.compare(i, probe) == 0 ? i : -1;
+    }
+
+    /**
+     * Inserts a new key held by a single row at the given position, shifting
+     * the following keys to the right. The leaf may become overfull, in which
+     * case the tree has to split it.
+     *
+     * @param index:      the position that keeps the keys sorted
+     * @param key:        the key to insert
+     * @param rowIndex:   the index of the row in the table
+     */
+    void insert(int index, Key key, int rowIndex) {
+        shiftRight(index);
+        keys.set(index, key);
+        rowIndices[index] = rowIndex;
+        postings[index] = null;
+        numKeys++;
+    }
+
+    /**
+     * Adds a row to the key at index 'i', turning its inline row into a
+     * posting list if it had a single one.
+     *
+     * @return false if the key already has that row
+     */
+    boolean addRow(int i, int rowIndex) {
+        int j = findRow(i, rowIndex);
+        int size = numRows(i);
+        if (j < size && getRow(i, j) == rowIndex) {
+            return false;
         }
-        for (int i = 0; i < traversalIndex; i++) {
-            indices.add(dictionary[i].indexInTable);
+
+        int[] posting = postings[i];
+        if (posting == null) {
+            posting = new int[INITIAL_POSTING_CAPACITY];
+            posting[0] = rowIndices[i];
+            postings[i] = posting;
+            numPostings++;
+        } else if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size * 2);
+            postings[i] = posting;
         }
-        return indices;
+        System.arraycopy(posting, j, posting, j + 1, size - j);
+        posting[j] = rowIndex;
+        rowIndices[i] = size + 1;
+        return true;
     }
 
-    List<Integer> getRowEntriesLessThanOrEqual(String key) {
-        List<Integer> indices = new ArrayList<>();
-        DictionaryPair[] copy = new DictionaryPair[numPairs];
-        for (int i = 0; i < numPairs; i++) {
-            copy[i] = dictionary[i];
+    /**
+     * Removes a row from the key at index 'i', which must have more than one
+     * row. The last remaining row is moved back inline.
+     *
+     * @return false if the key does not have that row
+     */
+    boolean removeRow(int i, int rowIndex) {
+        int j = findRow(i, rowIndex);
+        int size = rowIndices[i];
+        int[] posting = postings[i];
+        if (j == size || posting[j] != rowIndex) {
+            return false;
         }
-        int foundIndex = Arrays.binarySearch(copy, new DictionaryPair(key, -1));
-        int traversalIndex;
-        if (foundIndex >= 0) {
-            traversalIndex = foundIndex;
-            addEntriesHereAndAfter(traversalIndex, indices, key);
+
+        if (size == 2) {
+            rowIndices[i] = posting[1 - j];
+            postings[i] = null;
+            numPostings--;
         } else {
-            traversalIndex = -(foundIndex + 1);
+            System.arraycopy(posting, j + 1, posting, j, size - j - 1);
+            rowIndices[i] = size - 1;
         }
-        for (int i = 0; i < traversalIndex; i++) {
-            indices.add(dictionary[i].indexInTable);
-        }
-        return indices;
+        return true;
     }
 
-    private void addEntriesHereAndAfter(int index, List<Integer> indices, String key) {
-        int i = index;
-        while (i < numPairs && dictionary[i].key.equals(key)) {
-            indices.add(dictionary[i].indexInTable);
-            i++;
+    /**
+     * Copies the key at 'srcIndex' of another leaf, with its rows, to 'index' of
+     * this leaf, shifting the following keys to the right. The posting list is
+     * handed over rather than copied, so the other leaf has to drop the key.
+     */
+    void insertFrom(int index, LeafNode src, int srcIndex) {
+        shiftRight(index);
+        keys.setFrom(index, src.keys, srcIndex);
+        rowIndices[index] = src.rowIndices[srcIndex];
+        postings[index] = src.postings[srcIndex];
+        if (postings[index] != null) {
+            numPostings++;
         }
+        numKeys++;
     }
 
-    List<Integer> getAllEntries() {
-        List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < numPairs; i++) {
-            indices.add(dictionary[i].indexInTable);
+    /**
+     * Removes the key at the given position with all its rows, shifting the
+     * following keys to the left. The leaf may become deficient, in which case
+     * the tree has to rebalance it.
+     *
+     * @param index: the position of the key to remove
+     */
+    void delete(int index) {
+        if (postings[index] != null) {
+            numPostings--;
         }
-        return indices;
+        int numMoved = numKeys - index - 1;
+        keys.copy(index + 1, keys, index, numMoved);
+        System.arraycopy(rowIndices, index + 1, rowIndices, index, numMoved);
+        System.arraycopy(postings, index + 1, postings, index, numMoved);
+        numKeys--;
+        clear(numKeys, numKeys + 1);
     }
+
     /**
-     * Given an index, this method sets the dictionary pair at that index
-     * within the dictionary to null.
-     * 
-     * @param index: the location within the dictionary to be set to null
+     * Moves the keys from 'from' on, with their rows, to the start of an empty
+     * leaf.
      */
-    void delete(int index) {
+    void moveTo(int from, LeafNode dest) {
+        int numMoved = numKeys - from;
+        keys.copy(from, dest.keys, 0, numMoved);
+        System.arraycopy(rowIndices, from, dest.rowIndices, 0, numMoved);
+        System.arraycopy(postings, from, dest.postings, 0, numMoved);
+        dest.numKeys = numMoved;
+        if (numPostings > 0) {
+            dest.numPostings = dest.countPostings();
+            numPostings -= dest.numPostings;
+        }
+        clear(from, numKeys);
+        numKeys = from;
+    }
 
-        // Delete dictionary pair from leaf
-        this.dictionary[index] = null;
+    /**
+     * Moves every key of the right sibling, with its rows, to the end of this leaf.
+     */
+    void appendAll(LeafNode right) {
+        right.keys.copy(0, keys, numKeys, right.numKeys);
+        System.arraycopy(right.rowIndices, 0, rowIndices, numKeys, right.numKeys);
+        System.arraycopy(right.postings, 0, postings, numKeys, right.numKeys);
+        numKeys += right.numKeys;
+        numPostings += right.numPostings;
+    }
 
-        // Decrement numPairs
-        numPairs--;
+    /**
+     * Sets the key at index 'i' to a key held by the rows 'from' (inclusive)
+     * to 'to' (exclusive) of 'rows', which are sorted.
+     */
+    void setRows(int i, int[] rows, int from, int to) {
+        if (to - from == 1) {
+            rowIndices[i] = rows[from];
+        } else {
+            postings[i] = Arrays.copyOfRange(rows, from, to);
+            rowIndices[i] = to - from;
+            numPostings++;
+        }
     }
 
     /**
-     * This method attempts to insert a dictionary pair within the dictionary
-     * of the LeafNode object. If it succeeds, numPairs increments, the
-     * dictionary is sorted, and the boolean true is returned. If the method
-     * fails, the boolean false is returned.
-     * 
-     * @param dp: the dictionary pair to be inserted
-     * @return a boolean indicating whether or not the insert was successful
+     * This simple method determines if the LeafNode is overfull, i.e. holds one
+     * key more than the maximum and has to be split.
+     *
+     * @return a boolean indicating whether or not the LeafNode is overfull
      */
-    boolean insert(DictionaryPair dp) {
-        if (this.isFull()) {
+    boolean isOverfull() {
+        return numKeys > maxNumKeys;
+    }
 
-            /* Flow of execution goes here when numPairs == maxNumPairs */
+    boolean isDeficient() {
+        return numKeys < minNumKeys;
+    }
 
-            return false;
-        } else {
+    /**
+     * Determines whether the LeafNode can give a key to a deficient sibling
+     * without becoming deficient itself.
+     */
+    boolean isLendable() {
+        return numKeys > minNumKeys;
+    }
 
-            // Insert dictionary pair, increment numPairs, sort dictionary
-            this.dictionary[numPairs] = dp;
-            numPairs++;
-            Arrays.sort(this.dictionary, 0, numPairs);
+    private void shiftRight(int index) {
+        int numMoved = numKeys - index;
+        keys.copy(index, keys, index + 1, numMoved);
+        System.arraycopy(rowIndices, index, rowIndices, index + 1, numMoved);
+        System.arraycopy(postings, index, postings, index + 1, numMoved);
+    }
 
-            return true;
+    private int countPostings() {
+        int count = 0;
+        for (int i = 0; i < numKeys; i++) {
+            if (postings[i] != null) {
+                count++;
+            }
         }
+        return count;
     }
 
-    /**
-     * This simple method determines if the LeafNode is full, i.e. the
-     * numPairs within the LeafNode is equal to the maximum number of pairs.
-     * 
-     * @return a boolean indicating whether or not the LeafNode is full
-     */
-    boolean isFull() {
-        return numPairs == maxNumPairs;
+    private void clear(int from, int to) {
+        keys.clear(from, to);
+        Arrays.fill(postings, from, to, null);
     }
 
     /**
-     * Constructor for root node
-     * 
-     * @param m:  order of B+ tree that is used to calculate maxNumPairs and
-     *            minNumPairs
-     * @param dp: first dictionary pair insert into new node
+     * Constructor
+     *
+     * @param m:       order of B+ tree that is used to calculate maxNumKeys and
+     *                 minNumKeys
+     * @param keyType: the type of the keys held by the tree
      */
-    LeafNode(int m, DictionaryPair dp) {
-        this.maxNumPairs = m - 1;
-        this.minNumPairs = (int) (Math.ceil(m / 2) - 1);
-        this.dictionary = new DictionaryPair[m];
-        this.numPairs = 0;
-        this.insert(dp);
+    LeafNode(int m, KeyType keyType) {
+        this.maxNumKeys = m - 1;
+        this.minNumKeys = (m - 1) / 2;
+        // one spare slot lets an insert overflow the leaf before it is split
+        this.keys = keyType.newLeafKeyArray(m);
+        this.rowIndices = new int[m];
+        this.postings = new int[m][];
+        this.numKeys = 0;
     }
 
     /**
-     * Constructor
-     * 
-     * @param dps:    list of DictionaryPair objects to be immediately inserted
-     *                into new LeafNode object
-     * @param m:      order of B+ tree that is used to calculate maxNumPairs and
-     *                minNumPairs
-     * @param parent: parent of newly created child LeafNode
-     */
-    LeafNode(int m, DictionaryPair[] dps, InternalNode parent) {
-        this.maxNumPairs = m - 1;
-        this.minNumPairs = (int) (Math.ceil(m / 2) - 1);
-        this.dictionary = dps;
-        this.numPairs = Search.linearNullSearch(dps);
-        this.parent = parent;
-    }
-}
\ No newline at end of file
+     * Copy constructor, used when 'src' is shared with a snapshot and the
+     * writer has to change it. The copy has the same keys, rows and links as
+     * 'src', and posting lists of its own.
+     *
+     * @param src:     the leaf to copy
+     * @param keyType: the type of the keys held by the tree
+     */
+    LeafNode(LeafNode src, KeyType keyType) {
+        this(src.maxNumKeys + 1, keyType);
+        src.keys.copy(0, this.keys, 0, src.numKeys);
+        System.arraycopy(src.rowIndices, 0, this.rowIndices, 0, src.numKeys);
+        for (int i = 0; i < src.numKeys; i++) {
+            int[] posting = src.postings[i];
+            this.postings[i] = posting == null ? null : Arrays.copyOf(posting, src.rowIndices[i]);
+        }
+        this.numKeys = src.numKeys;
+        this.numPostings = src.numPostings;
+        this.parent = src.parent;
+        this.leftSibling = src.leftSibling;
+        this.rightSibling = src.rightSibling;
+    }
+}
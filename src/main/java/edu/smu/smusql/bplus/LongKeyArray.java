@@ -0,0 +1,50 @@
+package edu.smu.smusql.bplus;
+
+class LongKeyArray extends KeyArray {
+    final long[] keys;
+
+    LongKeyArray(int capacity) {
+        this.keys = new long[capacity];
+    }
+
+    @Override
+    int compare(int i, Key probe) {
+        if (probe.type == KeyType.LONG) {
+            return Long.compare(keys[i], probe.longValue);
+        }
+        // the keys are exact as doubles, so a fractional probe compares correctly
+        return Double.compare(keys[i], probe.doubleValue);
+    }
+
+    @Override
+    int compare(int i, int j) {
+        return Long.compare(keys[i], keys[j]);
+    }
+
+    @Override
+    void set(int i, Key key) {
+        keys[i] = key.longValue;
+    }
+
+    @Override
+    Key get(int i) {
+        return Key.ofLong(keys[i]);
+    }
+
+    @Override
+    void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+
+    @Override
+    void setFrom(int i, KeyArray src, int srcIndex) {
+        keys[i] = ((LongKeyArray) src).keys[srcIndex];
+    }
+
+    @Override
+    void copy(int srcPos, KeyArray dest, int destPos, int length) {
+        System.arraycopy(keys, srcPos, ((LongKeyArray) dest).keys, destPos, length);
+    }
+}
@@ -1,10 +1,61 @@
 package edu.smu.smusql.bplus;
 
+import java.lang.invoke.VarHandle;
+
 /**
  * This class represents a general node within the B+ tree and serves as a
  * superclass of InternalNode and LeafNode.
+ *
+ * Every node carries a version that guards its contents for optimistic
+ * readers, like a seqlock: the version is odd while the writer changes the
+ * node, and a reader validates the version it saw before reading the node
+ * once it is done. The version lives in the node itself rather than in a lock
+ * object so that checking it costs no extra cache miss. Readers only follow
+ * child pointers and right siblings, so 'parent' and the left sibling of a leaf
+ * belong to the writer alone.
+ *
+ * A node shared with a snapshot is never changed again apart from those links,
+ * which snapshots do not follow; the writer changes a copy of it instead.
  */
 class Node {
     InternalNode parent;
-}
+    int generation; // the snapshot generation of the tree the node was made in, see BPlusTree.snapshot
+    boolean obsolete; // set once the node is merged away or replaced, readers that reach it start over
+    private volatile long version = 2;
+
+    /**
+     * Returns a stamp to validate a read of the node against, or 0 if the
+     * writer is changing the node.
+     */
+    long tryOptimisticRead() {
+        long stamp = version;
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
+
+    /**
+     * Returns true if the node has not changed since the stamp was taken, so
+     * the reads made in between are consistent.
+     */
+    boolean validate(long stamp) {
+        VarHandle.acquireFence();
+        return version == stamp;
+    }
 
+    /*
+     * The following methods are only called by the tree's single writer, which
+     * holds the tree's writer lock, so the version needs no atomic update.
+     */
+
+    void writeLock() {
+        version = version + 1;
+        VarHandle.storeStoreFence();
+    }
+
+    void unlockWrite() {
+        version = version + 1;
+    }
+
+    boolean isWriteLocked() {
+        return (version & 1) != 0;
+    }
+}
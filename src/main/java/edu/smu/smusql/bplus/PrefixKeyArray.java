@@ -0,0 +1,444 @@
+package edu.smu.smusql.bplus;
+
+import java.util.Arrays;
+
+/**
+ * The keys of a leaf of a STRING tree, prefix compressed. Text columns tend to
+ * hold values that share a long prefix (User123, User456, ...), and the keys of
+ * a leaf, being neighbours in sort order, share even more of it. The array
+ * keeps the prefix common to all its keys once, and only the suffix of every
+ * key after it, packed into a byte array: one byte per char while every char
+ * of the suffixes fits in one, two bytes per char otherwise. Each suffix is
+ * preceded by its length in chars, as a varint, so a key takes a single int
+ * of bookkeeping, its offset.
+ *
+ * Comparisons run on the compressed form and give the same answer as
+ * String.compareTo on the full keys. A leaf search compares the probe against
+ * the prefix once, which already places it before or after every key that
+ * does not share it, and then only compares suffixes.
+ *
+ * Suffixes are appended to the byte array and never changed in place, so a
+ * slot moved by copy may share its bytes with another slot. The array is
+ * rebuilt from its live keys when a key is set and there is no room for it, a key that does not
+ * share the prefix or needs two bytes per char is set, and when several keys
+ * are cleared at once, i.e. when a split moves half of the leaf out. A rebuild
+ * drops the bytes of overwritten keys and makes the prefix as long as the live
+ * keys allow again.
+ */
+class PrefixKeyArray extends KeyArray {
+    private static final int INITIAL_BYTES_PER_KEY = 4;
+    private static final int FREE = -1;
+
+    private String prefix; // shared by every live key, null until the first key is set
+    private boolean wide; // whether the suffixes take two bytes per char
+    private byte[] data;
+    private int used; // the number of bytes of 'data' taken by suffixes, live or not
+    private final int[] offsets; // where the length and suffix of each key start in 'data', or FREE
+
+    PrefixKeyArray(int capacity) {
+        this.data = new byte[capacity * INITIAL_BYTES_PER_KEY];
+        this.offsets = new int[capacity];
+        Arrays.fill(offsets, FREE);
+    }
+
+    @Override
+    int compare(int i, Key probe) {
+        String s = probe.stringValue;
+        int result = comparePrefix(s);
+        return result != 0 ? result : compareSuffix(i, s);
+    }
+
+    @Override
+    int compare(int i, int j) {
+        int posI = offsets[i];
+        int posJ = offsets[j];
+        int lengthI = readLength(posI);
+        int lengthJ = readLength(posJ);
+        posI += headerSize(lengthI);
+        posJ += headerSize(lengthJ);
+        int n = Math.min(lengthI, lengthJ);
+        for (int k = 0; k < n; k++) {
+            int result = charAt(posI, k) - charAt(posJ, k);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return lengthI - lengthJ;
+    }
+
+    @Override
+    int firstIndexNotLessThan(Key probe, int size) {
+        String s = probe.stringValue;
+        int result = size == 0 ? 0 : comparePrefix(s);
+        if (result != 0) {
+            return result > 0 ? 0 : size;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareSuffix(mid, s) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    int firstIndexGreaterThan(Key probe, int size) {
+        String s = probe.stringValue;
+        int result = size == 0 ? 0 : comparePrefix(s);
+        if (result != 0) {
+            return result > 0 ? 0 : size;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareSuffix(mid, s) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    void set(int i, Key key) {
+        setString(i, key.stringValue);
+    }
+
+    @Override
+    Key get(int i) {
+        return Key.ofString(getString(i));
+    }
+
+    @Override
+    void swap(int i, int j) {
+        int offset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = offset;
+    }
+
+    @Override
+    void setFrom(int i, KeyArray src, int srcIndex) {
+        if (src instanceof StringKeyArray strings) {
+            setString(i, strings.keys[srcIndex]);
+        } else {
+            setString(i, ((PrefixKeyArray) src).getString(srcIndex));
+        }
+    }
+
+    @Override
+    void copy(int srcPos, KeyArray dest, int destPos, int length) {
+        PrefixKeyArray d = (PrefixKeyArray) dest;
+        if (d == this) {
+            // the moved slots keep pointing at the same bytes
+            System.arraycopy(offsets, srcPos, offsets, destPos, length);
+            return;
+        }
+        boolean fresh = d.prefix == null;
+        if (fresh || (d.prefix.equals(prefix) && d.wide == wide)) {
+            // the suffixes mean the same in both arrays, so their bytes are copied as they are
+            d.prefix = prefix;
+            d.wide = wide;
+            for (int k = 0; k < length; k++) {
+                d.appendSuffix(destPos + k, data, offsets[srcPos + k]);
+            }
+            if (fresh) {
+                // the keys copied may share more than the whole array did
+                d.rebuild(-1, null);
+            }
+            return;
+        }
+        for (int k = 0; k < length; k++) {
+            d.setString(destPos + k, getString(srcPos + k));
+        }
+    }
+
+    @Override
+    void clear(int from, int to) {
+        Arrays.fill(offsets, from, to, FREE);
+        if (to - from > 1) {
+            rebuild(-1, null);
+        }
+    }
+
+    /**
+     * Returns the key at index 'i' decompressed.
+     */
+    String getString(int i) {
+        int pos = offsets[i];
+        int length = readLength(pos);
+        if (length == 0) {
+            return prefix;
+        }
+        pos += headerSize(length);
+        char[] suffix = new char[length];
+        for (int k = 0; k < length; k++) {
+            suffix[k] = charAt(pos, k);
+        }
+        return prefix.concat(new String(suffix));
+    }
+
+    /**
+     * Compares every key of the array against 's' as far as the prefix goes.
+     *
+     * @return a negative or positive number if all the keys are less or greater
+     *         than 's', or zero if 's' starts with the prefix and only the
+     *         suffixes can tell
+     */
+    private int comparePrefix(String s) {
+        int prefixLength = prefix.length();
+        int n = Math.min(prefixLength, s.length());
+        for (int k = 0; k < n; k++) {
+            int result = prefix.charAt(k) - s.charAt(k);
+            if (result != 0) {
+                return result;
+            }
+        }
+        // a probe shorter than the prefix is itself a prefix of every key
+        return s.length() < prefixLength ? 1 : 0;
+    }
+
+    /**
+     * Compares the suffix of the key at index 'i' against the rest of 's'
+     * after the prefix, which 's' has to start with.
+     */
+    private int compareSuffix(int i, String s) {
+        int pos = offsets[i];
+        int length = readLength(pos);
+        pos += headerSize(length);
+        int start = prefix.length();
+        int probeLength = s.length() - start;
+        int n = Math.min(length, probeLength);
+        for (int k = 0; k < n; k++) {
+            int result = charAt(pos, k) - s.charAt(start + k);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return length - probeLength;
+    }
+
+    /**
+     * Returns the k-th char of the suffix whose chars start at 'pos'.
+     */
+    private char charAt(int pos, int k) {
+        if (wide) {
+            pos += 2 * k;
+            return (char) (((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff));
+        }
+        return (char) (data[pos + k] & 0xff);
+    }
+
+    private int readLength(int pos) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos++];
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return length;
+            }
+        }
+    }
+
+    private static int headerSize(int length) {
+        int size = 1;
+        while (length >= 0x80) {
+            length >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeLength(byte[] dest, int pos, int length) {
+        while (length >= 0x80) {
+            dest[pos++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        dest[pos++] = (byte) length;
+        return pos;
+    }
+
+    private static int writeChar(byte[] dest, int pos, char c, boolean wide) {
+        if (wide) {
+            dest[pos++] = (byte) (c >>> 8);
+        }
+        dest[pos++] = (byte) c;
+        return pos;
+    }
+
+    private void setString(int i, String s) {
+        if (prefix == null || !s.startsWith(prefix) || (!wide && !isNarrow(s, prefix.length()))
+                || used + encodedSize(s.length() - prefix.length()) > data.length) {
+            // the rebuild takes 's' into account, as the prefix and width may change
+            rebuild(i, s);
+            grow(encodedSize(s.length() - prefix.length()));
+        }
+        int start = prefix.length();
+        int length = s.length() - start;
+        int pos = writeLength(data, used, length);
+        for (int k = 0; k < length; k++) {
+            pos = writeChar(data, pos, s.charAt(start + k), wide);
+        }
+        offsets[i] = used;
+        used = pos;
+    }
+
+    /**
+     * Sets the key at index 'i' to the suffix at 'srcPos' of another array with
+     * the same prefix and width.
+     */
+    private void appendSuffix(int i, byte[] srcData, int srcPos) {
+        int length = 0;
+        int header = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = srcData[srcPos + header++];
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        int numBytes = header + (wide ? 2 * length : length);
+        grow(numBytes);
+        System.arraycopy(srcData, srcPos, data, used, numBytes);
+        offsets[i] = used;
+        used += numBytes;
+    }
+
+    /**
+     * Returns the number of bytes a suffix of 'length' chars takes, with its length.
+     */
+    private int encodedSize(int length) {
+        return headerSize(length) + (wide ? 2 * length : length);
+    }
+
+    /**
+     * Makes room for 'numBytes' more bytes after the used ones.
+     */
+    private void grow(int numBytes) {
+        if (used + numBytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, used + numBytes));
+        }
+    }
+
+    /**
+     * Packs the live keys, other than the one at index 'i', into a new byte
+     * array under the longest prefix they share with each other and with 's',
+     * the key about to be set at index 'i', if there is one. The suffixes are
+     * made narrow if every char of them fits in a byte, and wide otherwise.
+     * The new array has room for half as many bytes again before the next
+     * rebuild.
+     */
+    private void rebuild(int i, String s) {
+        // every live key starts with the old prefix, so only their suffixes are compared
+        int first = -1;
+        int firstPos = 0;
+        int shared = 0; // the length of the part of the first suffix that every live suffix starts with
+        for (int j = 0; j < offsets.length; j++) {
+            if (j == i || offsets[j] == FREE) {
+                continue;
+            }
+            int length = readLength(offsets[j]);
+            int pos = offsets[j] + headerSize(length);
+            if (first < 0) {
+                first = j;
+                firstPos = pos;
+                shared = length;
+            } else {
+                int n = Math.min(shared, length);
+                int k = 0;
+                while (k < n && charAt(pos, k) == charAt(firstPos, k)) {
+                    k++;
+                }
+                shared = k;
+            }
+        }
+        String newPrefix;
+        if (first < 0) {
+            newPrefix = s != null ? s : prefix;
+        } else {
+            char[] chars = new char[shared];
+            for (int k = 0; k < shared; k++) {
+                chars[k] = charAt(firstPos, k);
+            }
+            newPrefix = prefix.concat(new String(chars));
+            if (s != null) {
+                newPrefix = newPrefix.substring(0, commonPrefixLength(newPrefix, s));
+            }
+        }
+        if (newPrefix == null) {
+            return; // nothing was ever set
+        }
+
+        // the new suffix of a key is the old prefix from 'start' on, followed by
+        // the old suffix from 'skip' on; one of the two parts is always empty
+        int start = newPrefix.length();
+        int skip = Math.max(0, start - (prefix == null ? 0 : prefix.length()));
+        String moved = prefix == null || start >= prefix.length() ? "" : prefix.substring(start);
+        boolean newWide = (s != null && !isNarrow(s, start)) || !isNarrow(moved, 0);
+        int numChars = 0;
+        int numHeaderBytes = 0;
+        for (int j = 0; j < offsets.length; j++) {
+            if (j == i || offsets[j] == FREE) {
+                continue;
+            }
+            int length = readLength(offsets[j]);
+            int pos = offsets[j] + headerSize(length);
+            for (int k = skip; k < length && !newWide; k++) {
+                newWide = charAt(pos, k) > 0xff;
+            }
+            int newLength = moved.length() + length - skip;
+            numChars += newLength;
+            numHeaderBytes += headerSize(newLength);
+        }
+
+        int numBytes = numHeaderBytes + (newWide ? 2 * numChars : numChars);
+        byte[] newData = new byte[Math.max(offsets.length * INITIAL_BYTES_PER_KEY, numBytes + numBytes / 2)];
+        int newPos = 0;
+        for (int j = 0; j < offsets.length; j++) {
+            if (j == i || offsets[j] == FREE) {
+                continue;
+            }
+            int length = readLength(offsets[j]);
+            int pos = offsets[j] + headerSize(length);
+            offsets[j] = newPos;
+            newPos = writeLength(newData, newPos, moved.length() + length - skip);
+            for (int k = 0; k < moved.length(); k++) {
+                newPos = writeChar(newData, newPos, moved.charAt(k), newWide);
+            }
+            for (int k = skip; k < length; k++) {
+                newPos = writeChar(newData, newPos, charAt(pos, k), newWide);
+            }
+        }
+        if (i >= 0) {
+            offsets[i] = FREE;
+        }
+        this.prefix = newPrefix;
+        this.wide = newWide;
+        this.data = newData;
+        this.used = newPos;
+    }
+
+    private static boolean isNarrow(String s, int from) {
+        for (int k = from; k < s.length(); k++) {
+            if (s.charAt(k) > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int k = 0;
+        while (k < n && a.charAt(k) == b.charAt(k)) {
+            k++;
+        }
+        return k;
+    }
+}
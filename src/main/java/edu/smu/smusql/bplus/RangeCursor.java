@@ -0,0 +1,317 @@
+package edu.smu.smusql.bplus;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A pull-based cursor over the row indices of a key range of a B+ tree. The
+ * cursor walks the leaves through their right siblings and only reads the next
+ * leaf once the row indices read from the current one are used up, so a caller
+ * that stops early never touches the rest of the range. The row indices come
+ * out in key order.
+ *
+ * The cursor never blocks the writer of the tree. It reads every node under an
+ * optimistic stamp and validates the stamp before trusting what it read,
+ * coupling each step: the stamp of a child or right sibling is taken before the
+ * stamp of the node leading to it is validated. When a validation fails, the
+ * cursor descends from the root again to the pair after the last one it
+ * returned. Every pair is returned at most once and in order; pairs that stay
+ * in the tree for the whole scan are always returned, while pairs inserted or
+ * deleted during the scan may or may not be.
+ */
+public class RangeCursor implements PrimitiveIterator.OfInt {
+    // the buffer starts small for lookups that only want the first rows and
+    // doubles with every fill it runs out of, up to the max
+    private static final int INITIAL_BUFFER_SIZE = 8;
+    private static final int MAX_BUFFER_SIZE = 1024;
+
+    private final BPlusTree tree;
+    private final Key lo;
+    private final boolean loInclusive;
+    private final Key hi;
+    private final boolean hiInclusive;
+
+    // the keys of the range in the current leaf are at [position, end), as of 'stamp',
+    // and the rows of the key at 'position' not read yet start at 'rowPosition'
+    private LeafNode leaf; // null if the cursor has to descend from the root
+    private long stamp;
+    private int position;
+    private int rowPosition;
+    private int end;
+    private boolean descended; // whether 'leaf' was reached from the root rather than from its left sibling
+    private boolean lastLeaf; // whether the range ends within 'leaf'
+    private LeafNode right;
+    private long rightStamp; // taken before 'leaf' was validated, so the two leaves are read consistently
+    private boolean exhausted;
+
+    // the last pair read, the scan resumes after it; slot 0 holds its key and
+    // slot 1 the key of a read that is yet to be validated
+    private final KeyArray lastKeys;
+    private int lastRow;
+    private boolean hasLast;
+    private Key resumeKey; // the key of slot 0, made when the cursor descends to resume
+
+    // the row indices read from the current leaf and not returned yet are at [bufferPosition, bufferSize)
+    private int[] buffer;
+    private int bufferPosition;
+    private int bufferSize;
+
+    /**
+     * Constructor
+     *
+     * @param tree:        the tree to scan
+     * @param lo:          the lower bound, or null if the range is unbounded below
+     * @param loInclusive: whether keys equal to 'lo' are in the range
+     * @param hi:          the upper bound, or null if the range is unbounded above
+     * @param hiInclusive: whether keys equal to 'hi' are in the range
+     */
+    RangeCursor(BPlusTree tree, Key lo, boolean loInclusive, Key hi, boolean hiInclusive) {
+        this.tree = tree;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.lastKeys = tree.getKeyType().newKeyArray(2);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return bufferPosition < bufferSize || fillBuffer();
+    }
+
+    @Override
+    public int nextInt() {
+        if (bufferPosition == bufferSize && !fillBuffer()) {
+            throw new NoSuchElementException();
+        }
+        return buffer[bufferPosition++];
+    }
+
+    /**
+     * Appends every remaining row index of the range to 'indices', copying
+     * whole leaves and posting lists at a time.
+     *
+     * @param indices: the list to append to
+     */
+    public void drainTo(IntList indices) {
+        if (bufferPosition < bufferSize) {
+            indices.addAll(buffer, bufferPosition, bufferSize);
+            bufferPosition = bufferSize;
+        }
+        while (position < end || nextSegment()) {
+            int mark = indices.size();
+            boolean read;
+            try {
+                if (leaf.numPostings == 0) {
+                    indices.addAll(leaf.rowIndices, position, end);
+                } else {
+                    leaf.addRows(position, rowPosition, leaf.numRows(position), indices);
+                    for (int i = position + 1; i < end; i++) {
+                        leaf.addRows(i, 0, leaf.numRows(i), indices);
+                    }
+                }
+                lastKeys.setFrom(1, leaf.keys, end - 1);
+                read = indices.size() > mark;
+            } catch (RuntimeException e) {
+                // a torn read of a leaf under change
+                read = false;
+            }
+            if (read && leaf.validate(stamp)) {
+                commitLast(indices.get(indices.size() - 1));
+                position = end;
+                rowPosition = 0;
+            } else {
+                indices.truncate(mark);
+                restart();
+            }
+        }
+    }
+
+    /**
+     * Reads the next rows of the range into the buffer, as many as fit, moving
+     * on to the next leaf that holds any if the current one is used up. This is
+     * kept out of hasNext and nextInt so that those stay small enough to be
+     * inlined into the caller's loop.
+     *
+     * @return false if the range holds no more rows
+     */
+    private boolean fillBuffer() {
+        while (position < end || nextSegment()) {
+            if (buffer == null) {
+                buffer = new int[INITIAL_BUFFER_SIZE];
+            } else if (bufferSize == buffer.length && buffer.length < MAX_BUFFER_SIZE) {
+                buffer = new int[buffer.length * 2];
+            }
+            int count = 0;
+            int p = position;
+            int rp = rowPosition;
+            boolean read;
+            try {
+                if (leaf.numPostings == 0) {
+                    // every key has a single row, inline
+                    count = Math.min(end - p, buffer.length);
+                    System.arraycopy(leaf.rowIndices, p, buffer, 0, count);
+                    p += count;
+                }
+                while (p < end && count < buffer.length) {
+                    int numRows = leaf.numRows(p);
+                    int take = Math.min(numRows - rp, buffer.length - count);
+                    if (take <= 0) {
+                        break; // only on a torn read, which fails the validation
+                    }
+                    leaf.copyRows(p, rp, rp + take, buffer, count);
+                    count += take;
+                    rp += take;
+                    if (rp == numRows) {
+                        p++;
+                        rp = 0;
+                    }
+                }
+                lastKeys.setFrom(1, leaf.keys, rp == 0 ? p - 1 : p);
+                read = count > 0;
+            } catch (RuntimeException e) {
+                // a torn read of a leaf under change
+                read = false;
+            }
+            if (read && leaf.validate(stamp)) {
+                commitLast(buffer[count - 1]);
+                position = p;
+                rowPosition = rp;
+                bufferPosition = 0;
+                bufferSize = count;
+                return true;
+            }
+            restart();
+        }
+        return false;
+    }
+
+    /**
+     * Moves on to the next leaf holding keys of the range, descending from the
+     * root if the cursor has lost its place.
+     *
+     * @return false if the range holds no more pairs
+     */
+    private boolean nextSegment() {
+        while (!exhausted) {
+            if (leaf == null) {
+                if (!descend()) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+            } else if (lastLeaf || right == null) {
+                exhausted = true;
+                break;
+            } else {
+                leaf = right;
+                stamp = rightStamp;
+                descended = false;
+            }
+            if (!readSegment()) {
+                restart();
+            } else if (position < end) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the keys of the range in 'leaf' and takes the stamp of its right
+     * sibling.
+     *
+     * @return false if the leaf changed under the read
+     */
+    private boolean readSegment() {
+        boolean valid;
+        try {
+            rowPosition = 0;
+            if (!hasLast) {
+                position = lo == null ? 0
+                        : loInclusive ? leaf.firstIndexNotLessThan(lo) : leaf.firstIndexGreaterThan(lo);
+            } else if (descended) {
+                position = leaf.firstIndexNotLessThan(resumeKey);
+                if (position < leaf.numKeys && leaf.keys.compare(position, resumeKey) == 0) {
+                    // resume after the last row read of its key
+                    rowPosition = leaf.findRow(position, lastRow);
+                    if (rowPosition < leaf.numRows(position) && leaf.getRow(position, rowPosition) == lastRow) {
+                        rowPosition++;
+                    }
+                    if (rowPosition == leaf.numRows(position)) {
+                        position++;
+                        rowPosition = 0;
+                    }
+                }
+            } else {
+                // a leaf reached from its validated left sibling only holds keys after the last one read
+                position = 0;
+            }
+            end = hi == null ? leaf.numKeys
+                    : hiInclusive ? leaf.firstIndexGreaterThan(hi) : leaf.firstIndexNotLessThan(hi);
+            lastLeaf = end < leaf.numKeys;
+            right = leaf.rightSibling;
+            rightStamp = !lastLeaf && right != null ? right.tryOptimisticRead() : 0;
+            valid = !leaf.obsolete && (lastLeaf || right == null || rightStamp != 0);
+        } catch (RuntimeException e) {
+            // a torn read of a node under change
+            valid = false;
+        }
+        return valid && leaf.validate(stamp);
+    }
+
+    /**
+     * Descends from the root to the leaf the scan continues at: the leaf holding
+     * the key of the last row returned, or the leaf that may hold the lower bound.
+     *
+     * @return false if a node changed under the descent, which has to be repeated
+     */
+    private boolean descend() {
+        Node node = tree.root;
+        if (node == null) {
+            node = tree.firstLeaf;
+        }
+        long nodeStamp = node.tryOptimisticRead();
+        if (nodeStamp == 0) {
+            return false;
+        }
+        if (hasLast && resumeKey == null) {
+            resumeKey = lastKeys.get(0);
+        }
+        try {
+            while (node instanceof InternalNode in) {
+                int childIndex = hasLast ? in.findChild(resumeKey) : lo == null ? 0 : in.findChild(lo);
+                Node child = in.childPointers[childIndex];
+                long childStamp = child.tryOptimisticRead();
+                if (in.obsolete || !in.validate(nodeStamp) || childStamp == 0) {
+                    return false;
+                }
+                node = child;
+                nodeStamp = childStamp;
+            }
+        } catch (RuntimeException e) {
+            // a torn read of a node under change
+            return false;
+        }
+        leaf = (LeafNode) node;
+        stamp = nodeStamp;
+        descended = true;
+        return true;
+    }
+
+    /**
+     * Records the validated pair in slot 1 of lastKeys as the last pair read.
+     */
+    private void commitLast(int row) {
+        lastKeys.setFrom(0, lastKeys, 1);
+        lastRow = row;
+        hasLast = true;
+        resumeKey = null;
+    }
+
+    private void restart() {
+        leaf = null;
+        position = 0;
+        rowPosition = 0;
+        end = 0;
+    }
+}
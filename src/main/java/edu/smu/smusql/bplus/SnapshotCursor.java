@@ -0,0 +1,138 @@
+package edu.smu.smusql.bplus;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A pull-based cursor over the row indices of a key range of a
+ * BPlusTreeSnapshot, in key order. The leaves of a snapshot are not linked to
+ * each other (their sibling links belong to the live tree), so the cursor
+ * keeps the path from the root to its leaf and moves to the next leaf through
+ * the lowest ancestor that has a next child.
+ */
+public class SnapshotCursor implements PrimitiveIterator.OfInt {
+    private final Key hi;
+    private final boolean hiInclusive;
+
+    // path[i] is the internal node at depth i above the leaf, childIndices[i] the child taken from it
+    private final InternalNode[] path;
+    private final int[] childIndices;
+
+    // the keys of the range in the current leaf are at [position, end), and the
+    // rows of the key at 'position' not returned yet start at 'rowPosition'
+    private LeafNode leaf;
+    private int position;
+    private int rowPosition;
+    private int end;
+    private boolean lastLeaf; // whether the range ends within 'leaf'
+
+    /**
+     * Constructor
+     *
+     * @param root:        the root of the snapshot
+     * @param height:      the number of levels of the snapshot
+     * @param lo:          the lower bound, or null if the range is unbounded below
+     * @param loInclusive: whether keys equal to 'lo' are in the range
+     * @param hi:          the upper bound, or null if the range is unbounded above
+     * @param hiInclusive: whether keys equal to 'hi' are in the range
+     */
+    SnapshotCursor(Node root, int height, Key lo, boolean loInclusive, Key hi, boolean hiInclusive) {
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.path = new InternalNode[height - 1];
+        this.childIndices = new int[height - 1];
+
+        Node node = root;
+        for (int depth = 0; node instanceof InternalNode in; depth++) {
+            int childIndex = lo == null ? 0 : in.findChild(lo);
+            path[depth] = in;
+            childIndices[depth] = childIndex;
+            node = in.childPointers[childIndex];
+        }
+        leaf = (LeafNode) node;
+        position = lo == null ? 0
+                : loInclusive ? leaf.firstIndexNotLessThan(lo) : leaf.firstIndexGreaterThan(lo);
+        findEnd();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position == end) {
+            if (lastLeaf || !nextLeaf()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int row = leaf.getRow(position, rowPosition++);
+        if (rowPosition == leaf.numRows(position)) {
+            position++;
+            rowPosition = 0;
+        }
+        return row;
+    }
+
+    /**
+     * Appends every remaining row index of the range to 'indices', copying
+     * whole posting lists at a time.
+     *
+     * @param indices: the list to append to
+     */
+    public void drainTo(IntList indices) {
+        while (hasNext()) {
+            if (leaf.numPostings == 0) {
+                indices.addAll(leaf.rowIndices, position, end);
+                position = end;
+            }
+            for (; position < end; position++) {
+                leaf.addRows(position, rowPosition, leaf.numRows(position), indices);
+                rowPosition = 0;
+            }
+        }
+    }
+
+    /**
+     * Moves to the leaf after the current one, going up to the lowest ancestor
+     * with a next child and down its leftmost path.
+     *
+     * @return false if the current leaf is the last one
+     */
+    private boolean nextLeaf() {
+        int depth = path.length - 1;
+        while (depth >= 0 && childIndices[depth] == path[depth].degree - 1) {
+            depth--;
+        }
+        if (depth < 0) {
+            return false;
+        }
+
+        childIndices[depth]++;
+        Node node = path[depth].childPointers[childIndices[depth]];
+        for (depth++; depth < path.length; depth++) {
+            InternalNode in = (InternalNode) node;
+            path[depth] = in;
+            childIndices[depth] = 0;
+            node = in.childPointers[0];
+        }
+        leaf = (LeafNode) node;
+        position = 0;
+        findEnd();
+        return true;
+    }
+
+    private void findEnd() {
+        end = hi == null ? leaf.numKeys
+                : hiInclusive ? leaf.firstIndexGreaterThan(hi) : leaf.firstIndexNotLessThan(hi);
+        lastLeaf = end < leaf.numKeys;
+        if (end < position) {
+            // the upper bound is below the lower bound
+            end = position;
+        }
+    }
+}
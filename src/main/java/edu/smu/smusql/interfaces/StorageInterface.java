@@ -12,4 +12,7 @@ public interface StorageInterface {
     List<RowEntry> select(Select select);
     int update(Update update);
     void create(Create create);
+    int vacuum(Vacuum vacuum);
+    void createIndex(CreateIndex createIndex);
+    void dropIndex(CreateIndex createIndex); // receives the definition the index was created with
 }
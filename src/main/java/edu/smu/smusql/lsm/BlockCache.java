@@ -0,0 +1,164 @@
+package edu.smu.smusql.lsm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded SSTable data blocks, bounded by the approximate heap
+ * size of the blocks. A cache may be shared by any number of trees, and all
+ * the trees of an LSMConfig share the cache of the config.
+ *
+ * The cache evicts blocks with the 2Q policy, which keeps a block that is read
+ * once, as by a large scan, from pushing out the blocks that are read over and
+ * over. A block read for the first time goes into a FIFO queue, 'in', which
+ * takes up to a quarter of the capacity; a block that is read again while in
+ * it stays where it is. When the block leaves 'in', only its key is kept in a
+ * second FIFO queue, 'out'. A block read again while its key is in 'out' has
+ * been read twice a while apart, and goes into the LRU list 'main', which
+ * holds the rest of the capacity. A scan thus only ever cycles through 'in',
+ * while the hot blocks stay in 'main'.
+ */
+public final class BlockCache {
+    private static final int ENTRY_OVERHEAD = 64;  // Heap bytes of a cached block besides its own
+
+    private final long capacity;
+    private final long inCapacity;
+    private final int outCapacity;  // The number of keys 'out' keeps
+
+    private final LinkedHashMap<Long, DataBlock> in = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, Boolean> out = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, DataBlock> main = new LinkedHashMap<>(16, 0.75f, true);
+    private long inSize;
+    private long mainSize;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor
+     *
+     * @param capacity The approximate heap size of the cached blocks in bytes, or 0 to cache nothing.
+     */
+    public BlockCache(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The block cache capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.inCapacity = capacity / 4;
+        // As many keys as blocks of the size SSTableWriter writes fit in half the capacity
+        this.outCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(16, capacity / 2 / SSTableWriter.BLOCK_SIZE));
+    }
+
+    /**
+     * Returns a cached block, counting a hit, or null, counting a miss.
+     *
+     * @param key The key of the block, see SSTable.
+     */
+    synchronized DataBlock get(long key) {
+        DataBlock block = main.get(key);  // moves it to the end of the LRU list
+        if (block == null) {
+            block = in.get(key);
+        }
+        if (block == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return block;
+    }
+
+    /**
+     * Caches a block that get() missed, evicting others as needed.
+     *
+     * @param key   The key of the block, see SSTable.
+     * @param block The decoded block.
+     */
+    synchronized void put(long key, DataBlock block) {
+        long size = size(block);
+        if (size > capacity || main.containsKey(key) || in.containsKey(key)) {
+            return;  // Too large to cache, or cached by another thread meanwhile
+        }
+        if (out.remove(key) != null) {
+            main.put(key, block);
+            mainSize += size;
+        } else {
+            in.put(key, block);
+            inSize += size;
+        }
+        while (inSize + mainSize > capacity) {
+            if (inSize > inCapacity || main.isEmpty()) {
+                Map.Entry<Long, DataBlock> oldest = in.entrySet().iterator().next();
+                in.remove(oldest.getKey());
+                inSize -= size(oldest.getValue());
+                out.put(oldest.getKey(), Boolean.TRUE);
+                if (out.size() > outCapacity) {
+                    out.remove(out.keySet().iterator().next());
+                }
+            } else {
+                Map.Entry<Long, DataBlock> leastRecent = main.entrySet().iterator().next();
+                main.remove(leastRecent.getKey());
+                mainSize -= size(leastRecent.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops the blocks of an SSTable whose file is closed.
+     *
+     * @param firstKey The key of the first block of the table.
+     * @param numBlocks The number of blocks of the table.
+     */
+    synchronized void invalidate(long firstKey, int numBlocks) {
+        if (inSize + mainSize == 0 && out.isEmpty()) {
+            return;
+        }
+        for (long key = firstKey; key < firstKey + numBlocks; key++) {
+            DataBlock block = in.remove(key);
+            if (block != null) {
+                inSize -= size(block);
+            }
+            block = main.remove(key);
+            if (block != null) {
+                mainSize -= size(block);
+            }
+            out.remove(key);
+        }
+    }
+
+    private static long size(DataBlock block) {
+        return ENTRY_OVERHEAD + block.memorySize();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the approximate heap size of the cached blocks in bytes.
+     */
+    public synchronized long getSize() {
+        return inSize + mainSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the share of the block reads that the cache served, since it was created.
+     *
+     * @return The hit ratio, or 0 if no block was read yet.
+     */
+    public synchronized double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BlockCache(capacity=" + capacity + ", size=" + (inSize + mainSize) + ", hitRatio="
+                + String.format("%.3f", getHitRatio()) + ")";
+    }
+}
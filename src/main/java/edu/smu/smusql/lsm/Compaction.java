@@ -0,0 +1,54 @@
+package edu.smu.smusql.lsm;
+
+import java.util.List;
+
+/**
+ * A compaction picked by a CompactionStrategy: a set of SSTables to merge
+ * into new SSTables of a level.
+ */
+final class Compaction {
+    final List<SSTable> inputs; // from oldest to newest, the entry of a later table wins over an earlier one
+    final int outputLevel;
+    final long targetFileSize; // the merged entries are split into tables of about this many bytes
+    final boolean dropTombstones; // whether no older table is left for the tombstones of the inputs to hide
+    final boolean move; // whether the single input is moved to the output level as it is, without a rewrite
+
+    Compaction(List<SSTable> inputs, int outputLevel, long targetFileSize, boolean dropTombstones, boolean move) {
+        this.inputs = inputs;
+        this.outputLevel = outputLevel;
+        this.targetFileSize = targetFileSize;
+        this.dropTombstones = dropTombstones;
+        this.move = move;
+    }
+
+    /**
+     * Returns the smallest key of a set of tables.
+     */
+    static String firstKey(List<SSTable> tables) {
+        String first = null;
+        for (SSTable table : tables) {
+            if (first == null || table.getFirstKey().compareTo(first) < 0) {
+                first = table.getFirstKey();
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Returns the largest key of a set of tables.
+     */
+    static String lastKey(List<SSTable> tables) {
+        String last = null;
+        for (SSTable table : tables) {
+            if (last == null || table.getLastKey().compareTo(last) > 0) {
+                last = table.getLastKey();
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public String toString() {
+        return (move ? "move " : "merge ") + inputs + " into level " + outputLevel;
+    }
+}
@@ -0,0 +1,55 @@
+package edu.smu.smusql.lsm;
+
+import java.util.List;
+
+/**
+ * Decides which SSTables of an LSMTree are merged together, and when. The
+ * SSTables of a tree are kept in levels:
+ *
+ *   - level 0 holds the tables from oldest to newest. Flushed MemTables are
+ *     appended to it, and its tables may hold overlapping keys.
+ *   - every level below holds tables sorted by key whose key ranges do not
+ *     overlap, so that a key is in at most one table of the level.
+ *
+ * A newer table always wins over an older one: every table of a level is
+ * newer than the tables of the levels below it, and within level 0 a table is
+ * newer than the ones before it. A compaction merges a set of tables into new
+ * ones and must keep that order, which is what the strategies differ in.
+ *
+ * The strategies are LeveledCompaction and SizeTieredCompaction. A strategy
+ * holds settings only, so one instance may be shared by any number of trees.
+ */
+public abstract class CompactionStrategy {
+    /**
+     * Picks the next compaction to run on the levels of a tree.
+     *
+     * @param levels The levels of the tree, which the strategy must not change.
+     * @return The compaction, or null if the tree needs none.
+     */
+    abstract Compaction pick(List<List<SSTable>> levels);
+
+    /**
+     * Returns the number of SSTables waiting to be compacted, which grows
+     * when compactions fall behind the flushes. The tree slows down and
+     * stops writes when it reaches the triggers of its config.
+     *
+     * @param levels The levels of the tree.
+     */
+    abstract int pendingTables(List<List<SSTable>> levels);
+
+    /**
+     * Returns true if no table in the levels below 'level' may hold a key
+     * between 'first' and 'last', in which case a compaction into 'level'
+     * can drop the tombstones of those keys.
+     */
+    static boolean isBottommost(List<List<SSTable>> levels, int level, String first, String last) {
+        for (int i = level + 1; i < levels.size(); i++) {
+            for (SSTable table : levels.get(i)) {
+                if (table.overlaps(first, last)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package edu.smu.smusql.lsm;
+
+/**
+ * How the data blocks of an SSTable are compressed. The codec is chosen by the
+ * config of the tree when a table is written, and recorded in the first byte
+ * of every data block, so tables written with different codecs can be read
+ * side by side.
+ */
+public enum CompressionCodec {
+    /**
+     * The blocks are stored as they are.
+     */
+    NONE(0),
+
+    /**
+     * The blocks are compressed in the LZ4 block format (see Lz4Codec), which
+     * decompresses at memory speed. A block that would not shrink by at least
+     * an eighth is stored as it is.
+     */
+    LZ4(1);
+
+    final int id;  // The first byte of a block written with the codec
+
+    CompressionCodec(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the codec recorded in a block.
+     *
+     * @param id The first byte of the block.
+     * @return The codec, or null if no codec has this id.
+     */
+    static CompressionCodec fromId(int id) {
+        for (CompressionCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.smu.smusql.lsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A data block of an SSTable, decompressed and decoded into its keys and
+ * values. The layout of the block is described in SSTableWriter. A block is
+ * decoded whole, to be kept by the BlockCache, so its restart points only
+ * mark where the keys start over.
+ */
+final class DataBlock {
+    private static final int ARRAY_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;  // The String object and the header of its byte array
+    final String[] keys;
+    final long[] sequences;
+    final String[] values; // null for a tombstone
+    private final long memorySize;
+
+    private DataBlock(String[] keys, long[] sequences, String[] values, long memorySize) {
+        this.keys = keys;
+        this.sequences = sequences;
+        this.values = values;
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * Decodes a data block.
+     *
+     * @param buffer: the bytes of the block, from its position to its limit, in a heap buffer
+     * @throws IOException if the block is compressed with an unknown codec or corrupted
+     */
+    static DataBlock decode(ByteBuffer buffer) throws IOException {
+        CompressionCodec codec = CompressionCodec.fromId(buffer.get());
+        if (codec == null) {
+            throw new IOException("Unknown compression codec " + buffer.get(buffer.position() - 1));
+        } else if (codec == CompressionCodec.LZ4) {
+            byte[] contents = new byte[SSTable.readVarint(buffer)];
+            Lz4Codec.decompress(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), contents);
+            buffer = ByteBuffer.wrap(contents);
+        }
+
+        int count = SSTable.readVarint(buffer);
+        String[] keys = new String[count];
+        long[] sequences = new long[count];
+        String[] values = new String[count];
+        long memorySize = 3 * ARRAY_OVERHEAD + 16L * count;
+        byte[] key = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int shared = SSTable.readVarint(buffer);
+            int unshared = SSTable.readVarint(buffer);
+            int keyLength = shared + unshared;
+            if (keyLength > key.length) {
+                key = Arrays.copyOf(key, Math.max(keyLength, key.length * 2));
+            }
+            buffer.get(key, shared, unshared);  // after the bytes shared with the previous key
+            keys[i] = new String(key, 0, keyLength, StandardCharsets.UTF_8);
+            sequences[i] = SSTable.readVarlong(buffer);
+            int valueLength = SSTable.readVarint(buffer);
+            values[i] = valueLength == 0 ? null : SSTable.readString(buffer, valueLength - 1);
+            memorySize += STRING_OVERHEAD + keyLength + (valueLength == 0 ? 0 : STRING_OVERHEAD + valueLength);
+        }
+        return new DataBlock(keys, sequences, values, memorySize);
+    }
+
+    /**
+     * Decodes a single entry, encoded as a restart point of a data block, at the position of a buffer.
+     */
+    static Entry decodeEntry(ByteBuffer buffer) {
+        SSTable.readVarint(buffer);  // shares nothing
+        String key = SSTable.readString(buffer, SSTable.readVarint(buffer));
+        long sequence = SSTable.readVarlong(buffer);
+        int valueLength = SSTable.readVarint(buffer);
+        return new Entry(key, valueLength == 0 ? null : SSTable.readString(buffer, valueLength - 1), sequence);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the approximate heap size of the decoded block in bytes, counting
+     * the strings by their UTF-8 length.
+     */
+    long memorySize() {
+        return memorySize;
+    }
+
+    Entry entry(int i) {
+        return new Entry(keys[i], values[i], sequences[i]);
+    }
+
+    /**
+     * Binary searches the keys for the first one that is not less than 'key'
+     * or, if 'inclusive' is false, greater than it.
+     *
+     * @return the index of that key, or size() if there is none
+     */
+    int firstIndexFrom(String key, boolean inclusive) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = keys[mid].compareTo(key);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
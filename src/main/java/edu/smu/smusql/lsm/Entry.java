@@ -0,0 +1,41 @@
+package edu.smu.smusql.lsm;
+
+import java.util.Comparator;
+
+/**
+ * A version of a key of an LSM Tree with its value, as held by a MemTable or
+ * an SSTable. An entry whose value is null is a tombstone: the key was
+ * removed, and the tombstone hides the older versions of the key until a
+ * compaction drops them together. Every write of the tree gets the next
+ * sequence number, which stays with its entry through flushes and
+ * compactions, so the newest version of a key is the one with the highest
+ * sequence number wherever the versions are.
+ */
+final class Entry {
+    /**
+     * Orders entries by key, and the versions of a key from newest to oldest.
+     */
+    static final Comparator<Entry> ORDER = (a, b) -> {
+        int cmp = a.key.compareTo(b.key);
+        return cmp != 0 ? cmp : Long.compare(b.sequence, a.sequence);
+    };
+
+    final String key;
+    final String value;
+    final long sequence;
+
+    Entry(String key, String value, long sequence) {
+        this.key = key;
+        this.value = value;
+        this.sequence = sequence;
+    }
+
+    boolean isTombstone() {
+        return value == null;
+    }
+
+    @Override
+    public String toString() {
+        return key + "@" + sequence + "=" + (value == null ? "<tombstone>" : value);
+    }
+}
@@ -0,0 +1,102 @@
+package edu.smu.smusql.lsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The bloom filter of an SSTable, which tells that the table cannot hold a
+ * key without reading any of its data blocks. The block is the number of
+ * probes per key in a single byte, followed by the bits of the filter.
+ *
+ * A key is hashed once, and its probes are spread over the bits by double
+ * hashing: probe i tests bit (h + i * delta) mod the number of bits. With 10
+ * bits per key and 7 probes, about 1% of the lookups of keys that are not in
+ * the table read a data block anyway.
+ */
+final class FilterBlock {
+    private final byte[] bits;
+    private final int numBits;
+    private final int numProbes;
+
+    private FilterBlock(byte[] bits, int numProbes) {
+        this.bits = bits;
+        this.numBits = bits.length * 8;
+        this.numProbes = numProbes;
+    }
+
+    /**
+     * Builds the filter block of a table.
+     *
+     * @param hashes:     the hash of each key of the table, see hash()
+     * @param count:      the number of hashes to use
+     * @param bitsPerKey: the size of the filter per key, at least 1
+     * @return the encoded block
+     */
+    static byte[] build(int[] hashes, int count, int bitsPerKey) {
+        // ln(2) * bits per key probes minimize the false positives
+        int numProbes = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * 0.69)));
+        int numBytes = (int) Math.max(8, ((long) count * bitsPerKey + 7) / 8);
+        byte[] block = new byte[1 + numBytes];
+        block[0] = (byte) numProbes;
+        long numBits = numBytes * 8L;
+        for (int i = 0; i < count; i++) {
+            int h = hashes[i];
+            int delta = Integer.rotateRight(h, 17);
+            for (int probe = 0; probe < numProbes; probe++) {
+                int bit = (int) ((h & 0xffffffffL) % numBits);
+                block[1 + bit / 8] |= (byte) (1 << (bit % 8));
+                h += delta;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Decodes a filter block.
+     *
+     * @param buffer: the bytes of the block, from its position to its limit
+     */
+    static FilterBlock decode(ByteBuffer buffer) {
+        int numProbes = buffer.get();
+        byte[] bits = new byte[buffer.remaining()];
+        buffer.get(bits);
+        return new FilterBlock(bits, numProbes);
+    }
+
+    /**
+     * Returns false if the table cannot hold the key, true if it may.
+     */
+    boolean mightContain(String key) {
+        int h = hash(key);
+        int delta = Integer.rotateRight(h, 17);
+        for (int probe = 0; probe < numProbes; probe++) {
+            int bit = (int) ((h & 0xffffffffL) % numBits);
+            if ((bits[bit / 8] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+            h += delta;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the size of the filter in bytes, which stays on the heap while the table is open.
+     */
+    int size() {
+        return bits.length;
+    }
+
+    /**
+     * Hashes a key for the filter: the hash code of the string, with its bits
+     * mixed so that keys differing in their last characters spread over the
+     * whole filter.
+     */
+    static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
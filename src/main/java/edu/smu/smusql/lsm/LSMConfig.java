@@ -0,0 +1,274 @@
+package edu.smu.smusql.lsm;
+
+/**
+ * The settings of an LSMTree. A config is immutable: defaults() returns the
+ * default settings, and each with method returns a copy with one setting
+ * changed, e.g.
+ *
+ *   LSMConfig.defaults().withMemTableSize(1 << 20).withCompactionStrategy(new SizeTieredCompaction())
+ *
+ * A config may be shared by any number of trees.
+ */
+public final class LSMConfig {
+    public static final long DEFAULT_MEMTABLE_SIZE = 4L << 20;
+    public static final int DEFAULT_MAX_IMMUTABLE_MEMTABLES = 2;
+    public static final int DEFAULT_SLOWDOWN_TRIGGER = 12;
+    public static final int DEFAULT_STOP_TRIGGER = 20;
+    public static final int DEFAULT_BLOOM_FILTER_BITS_PER_KEY = 10;
+    public static final long DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS = 10;
+    public static final long DEFAULT_BLOCK_CACHE_CAPACITY = 8L << 20;
+
+    private long memTableSize = DEFAULT_MEMTABLE_SIZE;
+    private CompactionStrategy compactionStrategy = new LeveledCompaction();
+    private int maxImmutableMemTables = DEFAULT_MAX_IMMUTABLE_MEMTABLES;
+    private int slowdownTrigger = DEFAULT_SLOWDOWN_TRIGGER;
+    private int stopTrigger = DEFAULT_STOP_TRIGGER;
+    private int bloomFilterBitsPerKey = DEFAULT_BLOOM_FILTER_BITS_PER_KEY;
+    private CompressionCodec compression = CompressionCodec.LZ4;
+    private WalSyncPolicy walSyncPolicy = WalSyncPolicy.GROUP_COMMIT;
+    private long groupCommitIntervalMillis = DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS;
+    private BlockCache blockCache = new BlockCache(DEFAULT_BLOCK_CACHE_CAPACITY);
+
+    private LSMConfig() {
+    }
+
+    /**
+     * Returns the default settings: a 4 MB MemTable, leveled compaction with
+     * its default settings, and writes that stall behind 2 full MemTables
+     * waiting to be flushed, or slow down at 12 and stall at 20 SSTables
+     * waiting to be compacted, a bloom filter of 10 bits per key and LZ4
+     * compressed data blocks in every SSTable, a write-ahead log synced by a
+     * group commit every 10 ms, and a new block cache of 8 MB.
+     */
+    public static LSMConfig defaults() {
+        return new LSMConfig();
+    }
+
+    /**
+     * Returns a copy of this config with another MemTable size. The MemTable
+     * is flushed to an SSTable once its keys and values take up about this
+     * many bytes of heap.
+     *
+     * @param memTableSize The size in bytes, at least 1.
+     */
+    public LSMConfig withMemTableSize(long memTableSize) {
+        if (memTableSize < 1) {
+            throw new IllegalArgumentException("The MemTable size must be positive: " + memTableSize);
+        }
+        LSMConfig copy = copy();
+        copy.memTableSize = memTableSize;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another compaction strategy.
+     *
+     * @param compactionStrategy The strategy that picks the SSTables to merge.
+     */
+    public LSMConfig withCompactionStrategy(CompactionStrategy compactionStrategy) {
+        if (compactionStrategy == null) {
+            throw new IllegalArgumentException("The compaction strategy must not be null");
+        }
+        LSMConfig copy = copy();
+        copy.compactionStrategy = compactionStrategy;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another limit on the full MemTables
+     * waiting to be flushed. A write that fills the MemTable while this many
+     * wait for the background thread blocks until one of them is flushed.
+     *
+     * @param maxImmutableMemTables The limit, at least 1.
+     */
+    public LSMConfig withMaxImmutableMemTables(int maxImmutableMemTables) {
+        if (maxImmutableMemTables < 1) {
+            throw new IllegalArgumentException("The limit on immutable MemTables must be positive: "
+                    + maxImmutableMemTables);
+        }
+        LSMConfig copy = copy();
+        copy.maxImmutableMemTables = maxImmutableMemTables;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another slowdown trigger. While this
+     * many SSTables wait to be compacted (as counted by
+     * CompactionStrategy.pendingTables), every write is delayed a little to
+     * let the background compactions catch up.
+     *
+     * @param slowdownTrigger The number of SSTables, at least 1.
+     */
+    public LSMConfig withSlowdownTrigger(int slowdownTrigger) {
+        if (slowdownTrigger < 1) {
+            throw new IllegalArgumentException("The slowdown trigger must be positive: " + slowdownTrigger);
+        }
+        LSMConfig copy = copy();
+        copy.slowdownTrigger = slowdownTrigger;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another stop trigger. While this many
+     * SSTables wait to be compacted, writes block until the background
+     * compactions bring the number down.
+     *
+     * @param stopTrigger The number of SSTables, at least 1.
+     */
+    public LSMConfig withStopTrigger(int stopTrigger) {
+        if (stopTrigger < 1) {
+            throw new IllegalArgumentException("The stop trigger must be positive: " + stopTrigger);
+        }
+        LSMConfig copy = copy();
+        copy.stopTrigger = stopTrigger;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another bloom filter size. Every
+     * SSTable written from then on carries a bloom filter of this many bits
+     * per key, which lets a lookup skip the tables that do not hold its key:
+     * 10 bits per key leave about 1% of those tables to be read anyway, and
+     * every 5 bits more divide that by about 10.
+     *
+     * @param bloomFilterBitsPerKey The number of bits, or 0 to write SSTables without a filter.
+     */
+    public LSMConfig withBloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+        if (bloomFilterBitsPerKey < 0) {
+            throw new IllegalArgumentException("The bloom filter bits per key must not be negative: "
+                    + bloomFilterBitsPerKey);
+        }
+        LSMConfig copy = copy();
+        copy.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another compression of the data
+     * blocks. Every SSTable written from then on uses the codec, and every
+     * block records its codec, so the tables written before stay readable.
+     *
+     * @param compression The codec.
+     */
+    public LSMConfig withCompression(CompressionCodec compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("The compression codec must not be null");
+        }
+        LSMConfig copy = copy();
+        copy.compression = compression;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another sync policy for the
+     * write-ahead log, which decides how many of the latest writes a crash
+     * may lose (see WalSyncPolicy).
+     *
+     * @param walSyncPolicy The policy.
+     */
+    public LSMConfig withWalSyncPolicy(WalSyncPolicy walSyncPolicy) {
+        if (walSyncPolicy == null) {
+            throw new IllegalArgumentException("The WAL sync policy must not be null");
+        }
+        LSMConfig copy = copy();
+        copy.walSyncPolicy = walSyncPolicy;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another group commit interval. With
+     * the GROUP_COMMIT sync policy, the write-ahead log is synced to disk
+     * this often, so a crash loses at most the writes of one interval.
+     *
+     * @param groupCommitIntervalMillis The interval in milliseconds, at least 1.
+     */
+    public LSMConfig withGroupCommitIntervalMillis(long groupCommitIntervalMillis) {
+        if (groupCommitIntervalMillis < 1) {
+            throw new IllegalArgumentException("The group commit interval must be positive: "
+                    + groupCommitIntervalMillis);
+        }
+        LSMConfig copy = copy();
+        copy.groupCommitIntervalMillis = groupCommitIntervalMillis;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this config with another block cache. The trees that
+     * use the config read the data blocks of their SSTables through the cache,
+     * and share it with any other tree that uses the same cache.
+     *
+     * @param blockCache The cache, e.g. new BlockCache(64L << 20), or new BlockCache(0) to cache nothing.
+     */
+    public LSMConfig withBlockCache(BlockCache blockCache) {
+        if (blockCache == null) {
+            throw new IllegalArgumentException("The block cache must not be null");
+        }
+        LSMConfig copy = copy();
+        copy.blockCache = blockCache;
+        return copy;
+    }
+
+    public long getMemTableSize() {
+        return memTableSize;
+    }
+
+    public CompactionStrategy getCompactionStrategy() {
+        return compactionStrategy;
+    }
+
+    public int getMaxImmutableMemTables() {
+        return maxImmutableMemTables;
+    }
+
+    public int getSlowdownTrigger() {
+        return slowdownTrigger;
+    }
+
+    public int getStopTrigger() {
+        return stopTrigger;
+    }
+
+    public int getBloomFilterBitsPerKey() {
+        return bloomFilterBitsPerKey;
+    }
+
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    public WalSyncPolicy getWalSyncPolicy() {
+        return walSyncPolicy;
+    }
+
+    public long getGroupCommitIntervalMillis() {
+        return groupCommitIntervalMillis;
+    }
+
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    private LSMConfig copy() {
+        LSMConfig copy = new LSMConfig();
+        copy.memTableSize = memTableSize;
+        copy.compactionStrategy = compactionStrategy;
+        copy.maxImmutableMemTables = maxImmutableMemTables;
+        copy.slowdownTrigger = slowdownTrigger;
+        copy.stopTrigger = stopTrigger;
+        copy.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+        copy.compression = compression;
+        copy.walSyncPolicy = walSyncPolicy;
+        copy.groupCommitIntervalMillis = groupCommitIntervalMillis;
+        copy.blockCache = blockCache;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "LSMConfig(memTableSize=" + memTableSize + ", compactionStrategy=" + compactionStrategy
+                + ", maxImmutableMemTables=" + maxImmutableMemTables + ", slowdownTrigger=" + slowdownTrigger
+                + ", stopTrigger=" + stopTrigger + ", bloomFilterBitsPerKey=" + bloomFilterBitsPerKey
+                + ", compression=" + compression + ", walSyncPolicy=" + walSyncPolicy + ", groupCommitIntervalMillis=" + groupCommitIntervalMillis
+                + ", blockCache=" + blockCache + ")";
+    }
+}
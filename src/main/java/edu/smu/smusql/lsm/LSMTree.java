@@ -1,134 +1,560 @@
 package edu.smu.smusql.lsm;
 
-import edu.smu.smusql.interfaces.RowEntry;
-import edu.smu.smusql.parser.WhereCondition;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Represents a Log-Structured Merge Tree (LSM Tree) for managing and querying
- * large amounts of data with efficient range queries.
+ * large amounts of data with efficient range queries. The tree maps String
+ * keys to String values. Writes go to an in-memory MemTable, after being
+ * appended to the MemTable's write-ahead log (see WriteAheadLog), which
+ * rebuilds the MemTable when the tree is opened after a crash. Once it is full,
+ * the MemTable is swapped for a fresh one and becomes immutable, and a
+ * background thread flushes it to an immutable SSTable file in the tree's
+ * directory, so the heap only ever holds the MemTables, the sparse indexes
+ * of the SSTables and the data blocks kept by the BlockCache of the config.
+ * The SSTables are kept in levels, and after every flush a second background
+ * thread merges them with the compaction strategy of the tree's config (see
+ * CompactionStrategy). Reads look at the MemTable first, then at the
+ * immutable MemTables and then at the SSTables, from newest to oldest. Every
+ * write gets the next sequence number of the tree, which stays with its
+ * entry, and scans merge the MemTables and SSTables by key, keeping the
+ * newest version of each key (see RangeScan).
+ *
+ * Writes never wait for a flush or a compaction to finish, unless the
+ * background threads fall behind: a write that fills the MemTable while too
+ * many immutable MemTables wait to be flushed blocks until one is, and writes
+ * slow down, then block, while too many SSTables wait to be compacted (see
+ * LSMConfig). Flushes do not wait for compactions, so a long compaction does
+ * not hold up the writes.
+ *
+ * The tree is safe for use by several threads. Any number of them may read
+ * and write at once: the MemTable is a concurrent skip list (see MemTable),
+ * so writes and reads only share the lock of the tree, and only swapping a
+ * full MemTable and publishing the work of the background threads take it
+ * exclusively.
  */
-public class LSMTree {
-    private static final int MEMTABLE_LIMIT = 5;  // Threshold for flushing MemTable to SSTable
-    private TreeMap<String, List<RowEntry>> memTable;  // In-memory storage
-    private List<TreeMap<String, List<RowEntry>>> ssTables;  // Immutable SSTables
+public class LSMTree implements AutoCloseable {
+    private static final String SSTABLE_SUFFIX = ".sst";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int ENTRY_OVERHEAD = 64;  // Heap bytes of a MemTable entry besides its strings
+    private static final long SLOWDOWN_DELAY_NANOS = 100_000;  // The delay of a write while compactions catch up
+
+    private final Path directory;  // Holds the SSTable files and the manifest of the tree
+    private final LSMConfig config;
+    private final ExecutorService flushExecutor;  // Runs the flushes, one at a time
+    private final ExecutorService compactionExecutor;  // Runs the compactions, one at a time
+    private final Object manifestLock = new Object();  // Orders the writes of the manifest
+    private final ScheduledFuture<?> groupCommit;  // Syncs the log periodically, or null
+
+    // Reads and writes share the read lock; swapping the MemTable and publishing background work take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition backgroundWorkDone = lock.writeLock().newCondition();
+
+    private volatile MemTable memTable;  // In-memory storage, replaced under the write lock
+    private final Deque<MemTable> immutableMemTables;  // Full MemTables waiting to be flushed, oldest first
+    // Immutable SSTables by level, see CompactionStrategy. The lists are never changed, the background
+    // threads publish a changed copy instead, so they can be read without the lock.
+    private volatile List<List<SSTable>> levels;
+    private final AtomicLong nextTableId = new AtomicLong();
+    private final AtomicLong lastSequence = new AtomicLong();  // The sequence number of the latest write
+    private final AtomicLong visibleSequence = new AtomicLong();  // The latest write that every earlier write is in the MemTable with
+    private boolean flushScheduled;
+    private boolean compactionScheduled;
+    private RuntimeException backgroundError;  // The failure of a flush, compaction or sync, which fails the later writes
+    private long bytesFlushed;  // Bytes written by flushes since the tree was opened
+    private long bytesCompacted;  // Bytes written by compactions since the tree was opened
 
     /**
-     * Initializes a new LSMTree instance with an empty MemTable and list of SSTables.
+     * Opens the LSM Tree stored in a directory with the default config.
+     *
+     * @param directory The directory holding the SSTable files of the tree.
      */
-    public LSMTree() {
-        this.memTable = new TreeMap<>();
-        this.ssTables = new ArrayList<>();
+    public LSMTree(Path directory) {
+        this(directory, LSMConfig.defaults());
     }
 
     /**
-     * Adds a new entry to the MemTable. If the MemTable exceeds its size limit,
-     * it is flushed to a new SSTable.
+     * Opens the LSM Tree stored in a directory, creating the directory if it
+     * does not exist. The SSTables already in the directory are read back,
+     * and the write-ahead logs left by a tree that was not closed are
+     * replayed and flushed to a new SSTable.
      *
-     * @param key   The key associated with the entry.
-     * @param value The RowEntry to be added.
+     * @param directory The directory holding the SSTable files of the tree.
+     * @param config    The settings of the tree.
      */
-    public void add(String key, RowEntry value) {
-        memTable.putIfAbsent(key, new ArrayList<>());
-        memTable.get(key).add(value);
-        if (memTable.size() >= MEMTABLE_LIMIT) {
-            flushMemTableToSSTable();
+    public LSMTree(Path directory, LSMConfig config) {
+        this.directory = directory;
+        this.config = config;
+        this.immutableMemTables = new ArrayDeque<>();
+        try {
+            Files.createDirectories(directory);
+            this.levels = openSSTables();
+            for (List<SSTable> level : levels) {
+                for (SSTable ssTable : level) {
+                    lastSequence.set(Math.max(lastSequence.get(), ssTable.getMaxSequence()));
+                }
+            }
+            recoverLogs();
+            visibleSequence.set(lastSequence.get());
+            this.memTable = new MemTable(newLog());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the LSM Tree in " + directory, e);
+        }
+        this.flushExecutor = newBackgroundExecutor("lsm-flush-" + directory.getFileName());
+        this.compactionExecutor = newBackgroundExecutor("lsm-compaction-" + directory.getFileName());
+        if (config.getWalSyncPolicy() == WalSyncPolicy.GROUP_COMMIT) {
+            long interval = config.getGroupCommitIntervalMillis();
+            this.groupCommit = GROUP_COMMIT_EXECUTOR.scheduleWithFixedDelay(this::syncLog, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.groupCommit = null;
         }
     }
 
+    // Runs the group commits of all trees, which take little time each
+    private static final ScheduledExecutorService GROUP_COMMIT_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "lsm-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static ExecutorService newBackgroundExecutor(String threadName) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds or replaces the value of a key in the MemTable. If the MemTable
+     * exceeds its size limit, it is swapped for a fresh one and flushed to a
+     * new SSTable in the background.
+     *
+     * @param key   The key of the entry.
+     * @param value The value of the entry.
+     */
+    public void put(String key, String value) {
+        write(key, Objects.requireNonNull(value), ENTRY_OVERHEAD + 2L * (key.length() + value.length()));
+    }
+
     /**
-     * Retrieves all RowEntry objects associated with a given key.
-     * The method searches the MemTable first, followed by SSTables from newest to oldest.
-     * Not used since we only use the LSM for range queries
+     * Retrieves the value of a key. The method searches the MemTables first,
+     * followed by SSTables from newest to oldest.
      *
      * @param key The key to search for.
-     * @return A list of RowEntry objects associated with the key, or null if not found.
+     * @return The value of the key, or null if not found.
      */
-    public List<RowEntry> get(String key) {
-        // First check MemTable
-        if (memTable.containsKey(key)) {
-            return memTable.get(key);
-        }
+    public String get(String key) {
+        lock.readLock().lock();
+        try {
+            // First check the MemTables, most recent first
+            Entry entry = memTable.get(key);
+            if (entry != null) {
+                return entry.value;
+            }
+            Iterator<MemTable> immutables = immutableMemTables.descendingIterator();
+            while (immutables.hasNext()) {
+                entry = immutables.next().get(key);
+                if (entry != null) {
+                    return entry.value;
+                }
+            }
 
-        // Check SSTables in reverse order (most recent first)
-        for (int i = ssTables.size() - 1; i >= 0; i--) {
-            TreeMap<String, List<RowEntry>> ssTable = ssTables.get(i);
-            if (ssTable.containsKey(key)) {
-                return ssTable.get(key);
+            // Check the SSTables of level 0 in reverse order (most recent first), skipping
+            // the ones whose key range or bloom filter rules the key out
+            List<List<SSTable>> levels = this.levels;
+            List<SSTable> level0 = levels.get(0);
+            for (int i = level0.size() - 1; i >= 0; i--) {
+                entry = level0.get(i).get(key);
+                if (entry != null) {
+                    return entry.value;
+                }
             }
-        }
 
-        return null;
+            // Then the single SSTable of each lower level that may hold the key
+            for (int level = 1; level < levels.size(); level++) {
+                SSTable ssTable = findSSTable(levels.get(level), key);
+                if (ssTable != null) {
+                    entry = ssTable.get(key);
+                    if (entry != null) {
+                        return entry.value;
+                    }
+                }
+            }
+
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * Marks all entries associated with a given key for deletion by placing
-     * a tombstone (null) in the MemTable.
-     * Not used since we only use the LSM for range queries
+     * Removes a key by placing a tombstone (null) in the MemTable, which hides
+     * the values of the key in the older MemTables and SSTables.
      *
      * @param key The key to remove.
      */
     public void remove(String key) {
-        memTable.put(key, null);  // `null` signifies deletion
-        if (memTable.size() >= MEMTABLE_LIMIT) {
-            flushMemTableToSSTable();
+        write(key, null, ENTRY_OVERHEAD + 2L * key.length());  // `null` signifies deletion
+    }
+
+    /**
+     * Writes an entry to the MemTable, once the background threads have
+     * caught up enough. The write that fills the MemTable swaps it for a
+     * fresh one.
+     */
+    private void write(String key, String value, long bytes) {
+        int pendingTables = config.getCompactionStrategy().pendingTables(levels);
+        if (pendingTables >= config.getStopTrigger()) {
+            awaitCompactions();
+        } else if (pendingTables >= config.getSlowdownTrigger()) {
+            // Give the compactions some time to catch up
+            LockSupport.parkNanos(SLOWDOWN_DELAY_NANOS);
+        }
+
+        MemTable full = null;
+        lock.readLock().lock();
+        try {
+            checkBackgroundError();
+            long sequence = lastSequence.incrementAndGet();
+            long size;
+            try {
+                size = memTable.write(new Entry(key, value, sequence), bytes);
+            } finally {
+                publish(sequence);
+            }
+            if (size >= config.getMemTableSize() && size - bytes < config.getMemTableSize()) {
+                full = memTable;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to the log of the MemTable in " + directory, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (full != null) {
+            lock.writeLock().lock();
+            try {
+                while (immutableMemTables.size() >= config.getMaxImmutableMemTables()) {
+                    backgroundWorkDone.awaitUninterruptibly();
+                    checkBackgroundError();
+                }
+                if (memTable == full) {  // unless flush() swapped it meanwhile
+                    swapMemTable();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Blocks while the compactions are running and too many SSTables wait
+     * for them.
+     */
+    private void awaitCompactions() {
+        lock.writeLock().lock();
+        try {
+            while (compactionScheduled
+                    && config.getCompactionStrategy().pendingTables(levels) >= config.getStopTrigger()) {
+                backgroundWorkDone.awaitUninterruptibly();
+            }
+            checkBackgroundError();
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     /**
-     * Flushes the current MemTable to a new SSTable and resets the MemTable.
+     * Swaps the MemTable for a fresh one with a new log and schedules the
+     * flush of the full one. The caller holds the write lock, so no write is
+     * still going into the full MemTable.
      */
-    private void flushMemTableToSSTable() {
-        // Create a copy of the current MemTable and add it as a new SSTable
-        TreeMap<String, List<RowEntry>> ssTable = new TreeMap<>(memTable);
-        ssTables.add(ssTable);
+    private void swapMemTable() {
+        try {
+            immutableMemTables.addLast(memTable);
+            memTable = new MemTable(newLog());
+        } catch (IOException e) {
+            immutableMemTables.removeLast();
+            throw new UncheckedIOException("Cannot create a log in " + directory, e);
+        }
+        scheduleFlush();
+    }
 
-        // Clear the MemTable for new entries
-        memTable.clear();
-        compactSSTables();  // Optional: Trigger compaction after flushing
+    /**
+     * Runs on the group commit thread: writes and syncs the records buffered
+     * by the log of the MemTable.
+     */
+    private void syncLog() {
+        WriteAheadLog log = memTable.getLog();
+        try {
+            log.sync();
+        } catch (IOException e) {
+            lock.writeLock().lock();
+            try {
+                if (backgroundError == null) {
+                    backgroundError = new UncheckedIOException("Cannot sync the log " + log.getPath(), e);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
     }
 
     /**
-     * Compacts all SSTables to reduce the number of levels and apply tombstone
-     * deletions, creating a new compacted SSTable.
+     * Makes sure the flush thread flushes the immutable MemTables. The caller
+     * holds the write lock.
      */
-    private void compactSSTables() {
-        TreeMap<String, List<RowEntry>> newSSTable = new TreeMap<>();
+    private void scheduleFlush() {
+        if (!flushScheduled && backgroundError == null) {
+            flushScheduled = true;
+            flushExecutor.execute(() -> runBackgroundWork(this::doFlushes));
+        }
+    }
 
-        // Traverse SSTables from oldest to newest
-        for (TreeMap<String, List<RowEntry>> ssTable : ssTables) {
-            for (Map.Entry<String, List<RowEntry>> entry : ssTable.entrySet()) {
-                String key = entry.getKey();
-                List<RowEntry> value = entry.getValue();
+    /**
+     * Makes sure the compaction thread runs the compactions that are due. The
+     * caller holds the write lock.
+     */
+    private void scheduleCompaction() {
+        if (!compactionScheduled && backgroundError == null) {
+            compactionScheduled = true;
+            compactionExecutor.execute(() -> runBackgroundWork(this::doCompactions));
+        }
+    }
 
-                // If not a tombstone, put it into newSSTable
-                if (value != null) {
-                    newSSTable.putIfAbsent(key, new ArrayList<>());
-                    newSSTable.get(key).addAll(value);
-                } else {
-                    newSSTable.remove(key);  // Remove deleted keys
+    /**
+     * Runs flushes or compactions on a background thread. A failure is kept
+     * to fail the later writes, since the data of a MemTable that cannot be
+     * flushed would be lost with the next ones.
+     */
+    private void runBackgroundWork(Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                if (backgroundError == null) {
+                    backgroundError = e;
                 }
+                flushScheduled = false;
+                compactionScheduled = false;
+                backgroundWorkDone.signalAll();
+            } finally {
+                lock.writeLock().unlock();
             }
         }
+    }
 
-        // Clear existing SSTables and add the compacted version
-        ssTables.clear();
-        ssTables.add(newSSTable);
+    /**
+     * Runs on the flush thread: flushes the immutable MemTables, oldest
+     * first, until none is left.
+     */
+    private void doFlushes() {
+        while (true) {
+            MemTable immutable;
+            lock.writeLock().lock();
+            try {
+                immutable = immutableMemTables.peekFirst();
+                if (immutable == null) {
+                    flushScheduled = false;
+                    backgroundWorkDone.signalAll();
+                    return;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            flushMemTable(immutable);
+        }
     }
 
     /**
-     * Retrieves entries from the LSM Tree that match a specified condition.
+     * Runs on the compaction thread: runs the compactions picked by the
+     * compaction strategy until it picks no more.
+     */
+    private void doCompactions() {
+        while (true) {
+            Compaction compaction;
+            lock.writeLock().lock();
+            try {
+                // Picked under the lock, so that a flush publishing a table after this either
+                // shows up in the pick or finds the thread unscheduled and schedules it again
+                compaction = config.getCompactionStrategy().pick(levels);
+                if (compaction == null) {
+                    compactionScheduled = false;
+                    backgroundWorkDone.signalAll();
+                    return;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            runCompaction(compaction);
+        }
+    }
+
+    /**
+     * Flushes the oldest immutable MemTable to a new SSTable in level 0,
+     * publishes the SSTable in its place and deletes the log of the MemTable
+     * once the manifest names the SSTable.
+     */
+    private void flushMemTable(MemTable immutable) {
+        WriteAheadLog immutableLog = immutable.getLog();
+        try {
+            // Sync what a group commit has not yet, the log is the only copy until the flush is done
+            immutableLog.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot sync the log " + immutableLog.getPath(), e);
+        }
+        // The tombstones are kept, they may hide values in the older SSTables
+        List<SSTable> flushed = writeSSTables(immutable.iterator(null, false, null, false, Long.MAX_VALUE),
+                Long.MAX_VALUE, false);
+
+        lock.writeLock().lock();
+        try {
+            List<List<SSTable>> newLevels = copyLevels(levels, 1);
+            newLevels.get(0).addAll(flushed);
+            levels = newLevels;
+            immutableMemTables.removeFirst();
+            for (SSTable ssTable : flushed) {
+                bytesFlushed += ssTable.getFileSize();
+            }
+            scheduleCompaction();
+            backgroundWorkDone.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writeManifest();
+        try {
+            immutableLog.delete();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete the log " + immutableLog.getPath(), e);
+        }
+    }
+
+    /**
+     * Merges the input SSTables of a compaction into new SSTables of the
+     * output level, or moves its single input there, publishes the result
+     * and deletes the files of the inputs. The inputs are read while the
+     * levels still hold them, which is safe as only this thread removes
+     * tables from the levels; the flush thread only adds new ones to level 0.
+     * Their files are deleted once no read can be using them, after the new
+     * levels were published under the write lock and the manifest no longer
+     * names them.
+     */
+    private void runCompaction(Compaction compaction) {
+        List<SSTable> outputs;
+        if (compaction.move) {
+            outputs = compaction.inputs;
+        } else {
+            List<Iterator<Entry>> sources = new ArrayList<>();
+            for (SSTable ssTable : compaction.inputs) {
+                sources.add(ssTable.iterator(null, true));
+            }
+            outputs = writeSSTables(new MergeIterator(sources), compaction.targetFileSize,
+                    compaction.dropTombstones);
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<List<SSTable>> newLevels = copyLevels(levels, compaction.outputLevel + 1);
+            int position = removeSSTables(newLevels, compaction.inputs);
+            addSSTables(newLevels, compaction.outputLevel, position, outputs);
+            levels = newLevels;
+            if (!compaction.move) {
+                for (SSTable ssTable : outputs) {
+                    bytesCompacted += ssTable.getFileSize();
+                }
+            }
+            backgroundWorkDone.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writeManifest();
+
+        if (!compaction.move) {
+            for (SSTable ssTable : compaction.inputs) {
+                ssTable.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the levels that can be changed, with at least 'minLevels' levels.
+     */
+    private static List<List<SSTable>> copyLevels(List<List<SSTable>> levels, int minLevels) {
+        List<List<SSTable>> copy = new ArrayList<>();
+        for (List<SSTable> level : levels) {
+            copy.add(new ArrayList<>(level));
+        }
+        while (copy.size() < minLevels) {
+            copy.add(new ArrayList<>());
+        }
+        return copy;
+    }
+
+    /**
+     * Removes SSTables from the levels.
+     *
+     * @return The position the first of them had in level 0, or -1 if none of them was in level 0.
+     */
+    private static int removeSSTables(List<List<SSTable>> levels, List<SSTable> ssTables) {
+        Set<SSTable> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(ssTables);
+        int position = -1;
+        List<SSTable> level0 = levels.get(0);
+        for (int i = 0; i < level0.size() && position < 0; i++) {
+            if (removed.contains(level0.get(i))) {
+                position = i;
+            }
+        }
+        for (List<SSTable> level : levels) {
+            level.removeIf(removed::contains);
+        }
+        return position;
+    }
+
+    /**
+     * Adds SSTables to a level: to level 0 at the given position, which keeps
+     * it ordered by age, and to a lower level in key order.
+     */
+    private static void addSSTables(List<List<SSTable>> levels, int level, int position, List<SSTable> ssTables) {
+        if (level == 0) {
+            levels.get(0).addAll(position < 0 ? levels.get(0).size() : position, ssTables);
+        } else {
+            levels.get(level).addAll(ssTables);
+            levels.get(level).sort(Comparator.comparing(SSTable::getFirstKey));
+        }
+    }
+
+    /**
+     * Retrieves the entries from the LSM Tree whose keys match a specified condition.
      *
      * @param operator The comparison operator (e.g., ">", "<", ">=", "<=").
-     * @param value    The value to compare against.
-     * @return A list of RowEntry objects that match the condition.
+     * @param key      The key to compare against.
+     * @return The matching keys mapped to their values, in key order.
      */
-    public List<RowEntry> getEntriesFromCondition(String operator, String value) {
+    public NavigableMap<String, String> getEntriesFromCondition(String operator, String key) {
         return switch (operator.toUpperCase()) {
-            case ">" -> getEntriesWithKeyGreaterThan(value, false);
-            case "<" -> getEntriesWithKeyLessThan(value, false);
-            case ">=" -> getEntriesWithKeyGreaterThan(value, true);
-            case "<=" -> getEntriesWithKeyLessThan(value, true);
+            case ">" -> getEntriesWithKeyGreaterThan(key, false);
+            case "<" -> getEntriesWithKeyLessThan(key, false);
+            case ">=" -> getEntriesWithKeyGreaterThan(key, true);
+            case "<=" -> getEntriesWithKeyLessThan(key, true);
             default -> null;
         };
     }
@@ -137,70 +563,491 @@ public class LSMTree {
      * Retrieves all entries with keys less than (or optionally equal to) the given key.
      *
      * @param key       The key to compare against.
-     * @param inclusive If true, includes entries with the given key.
-     * @return A list of RowEntry objects with keys less than the specified key.
+     * @param inclusive If true, includes the entry with the given key.
+     * @return The matching keys mapped to their values, in key order.
      */
-    public List<RowEntry> getEntriesWithKeyLessThan(String key, boolean inclusive) {
-        List<RowEntry> result = new ArrayList<>();
+    public NavigableMap<String, String> getEntriesWithKeyLessThan(String key, boolean inclusive) {
+        return getEntriesInRange(null, false, key, inclusive);
+    }
+
+    /**
+     * Retrieves all entries with keys greater than (or optionally equal to) the given key.
+     *
+     * @param key       The key to compare against.
+     * @param inclusive If true, includes the entry with the given key.
+     * @return The matching keys mapped to their values, in key order.
+     */
+    public NavigableMap<String, String> getEntriesWithKeyGreaterThan(String key, boolean inclusive) {
+        return getEntriesInRange(key, inclusive, null, false);
+    }
 
-        // Get all entries in memTable with keys less than (or equal to) the given key
-        NavigableMap<String, List<RowEntry>> subMap = memTable.headMap(key, inclusive);
-        for (List<RowEntry> entryList : subMap.values()) {
-            entryList.removeIf(RowEntry::isDeleted);
-            result.addAll(entryList);
+    /**
+     * Retrieves all entries with keys between two bounds.
+     *
+     * @param from          The lower bound, or null if the range is unbounded below.
+     * @param fromInclusive If true, includes the entry with key 'from'.
+     * @param to            The upper bound, or null if the range is unbounded above.
+     * @param toInclusive   If true, includes the entry with key 'to'.
+     * @return The matching keys mapped to their values, in key order.
+     */
+    public NavigableMap<String, String> getEntriesInRange(String from, boolean fromInclusive,
+                                                          String to, boolean toInclusive) {
+        TreeMap<String, String> result = new TreeMap<>();
+        try (RangeScan scan = scan(from, fromInclusive, to, toInclusive)) {
+            scan.forEachRemaining(entry -> result.put(entry.getKey(), entry.getValue()));
         }
+        return result;
+    }
+
+    /**
+     * Scans the entries with keys between two bounds in key order, as they
+     * are when the scan starts. The entries are read as the scan goes, so it
+     * costs no more memory for a large range than for a small one. Starting a
+     * scan waits for the writes in progress, so that it sees all of them.
+     *
+     * @param from          The lower bound, or null if the range is unbounded below.
+     * @param fromInclusive If true, includes the entry with key 'from'.
+     * @param to            The upper bound, or null if the range is unbounded above.
+     * @param toInclusive   If true, includes the entry with key 'to'.
+     * @return The scan, which should be closed if it is not read to the end.
+     */
+    public RangeScan scan(String from, boolean fromInclusive, String to, boolean toInclusive) {
+        List<Iterator<Entry>> runs = new ArrayList<>();
+        List<SSTable> retained = new ArrayList<>();
 
-        // Repeat the process for all SSTables (most recent first)
-        for (int i = ssTables.size() - 1; i >= 0; i--) {
-            TreeMap<String, List<RowEntry>> ssTable = ssTables.get(i);
-            subMap = ssTable.headMap(key, inclusive);
-            for (List<RowEntry> entryList : subMap.values()) {
-                entryList.removeIf(RowEntry::isDeleted);
-                result.addAll(entryList);
+        // The read lock keeps the MemTables from being swapped, the writes go on meanwhile
+        lock.readLock().lock();
+        try {
+            long snapshot = visibleSequence.get();
+            runs.add(memTable.iterator(from, fromInclusive, to, toInclusive, snapshot));
+            for (MemTable immutable : immutableMemTables) {
+                runs.add(immutable.iterator(from, fromInclusive, to, toInclusive, snapshot));
             }
+
+            boolean singleKey = from != null && from.equals(to) && fromInclusive && toInclusive;
+            for (SSTable ssTable : levels.get(0)) {
+                if (ssTable.overlaps(from, to) && (!singleKey || ssTable.mightContain(from))) {
+                    ssTable.retain();
+                    retained.add(ssTable);
+                    runs.add(ssTable.iterator(from, fromInclusive));
+                }
+            }
+            // Below level 0 the tables are sorted by key, so only a run of them can overlap the range
+            for (int level = 1; level < levels.size(); level++) {
+                List<SSTable> ssTables = levels.get(level);
+                int start = from == null ? 0 : findSSTableIndex(ssTables, from);
+                int end = start;
+                while (end < ssTables.size() && (to == null || ssTables.get(end).getFirstKey().compareTo(to) <= 0)) {
+                    ssTables.get(end).retain();
+                    retained.add(ssTables.get(end));
+                    end++;
+                }
+                if (end > start) {
+                    runs.add(levelIterator(ssTables.subList(start, end), from, fromInclusive));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
         }
+        return new RangeScan(new MergeIterator(runs), retained, to, toInclusive);
+    }
 
-        return result;
+    /**
+     * Returns the entries of a run of SSTables of a level below level 0 in
+     * key order, reading the tables one after the other.
+     */
+    private static Iterator<Entry> levelIterator(List<SSTable> ssTables, String from, boolean fromInclusive) {
+        return new Iterator<>() {
+            private int next = 1;
+            private Iterator<Entry> current = ssTables.get(0).iterator(from, fromInclusive);
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && next < ssTables.size()) {
+                    current = ssTables.get(next++).iterator(null, true);
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
     }
 
     /**
-     * Retrieves all entries with keys greater than (or optionally equal to) the given key.
+     * Flushes the MemTable to an SSTable and waits until the background
+     * thread has run every flush and compaction that is due.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            checkBackgroundError();
+            if (!memTable.isEmpty()) {
+                swapMemTable();
+            }
+            while ((flushScheduled || compactionScheduled) && backgroundError == null) {
+                backgroundWorkDone.awaitUninterruptibly();
+            }
+            checkBackgroundError();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the write amplification since the tree was opened: the bytes
+     * written to SSTables by flushes and compactions together, divided by the
+     * bytes written by flushes alone.
      *
-     * @param key       The key to compare against.
-     * @param inclusive If true, includes entries with the given key.
-     * @return A list of RowEntry objects with keys greater than the specified key.
+     * @return The write amplification, or 0 if nothing was flushed yet.
      */
-    public List<RowEntry> getEntriesWithKeyGreaterThan(String key, boolean inclusive) {
-        List<RowEntry> result = new ArrayList<>();
+    public double getWriteAmplification() {
+        lock.readLock().lock();
+        try {
+            return bytesFlushed == 0 ? 0 : (double) (bytesFlushed + bytesCompacted) / bytesFlushed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        // Get all entries in memTable with keys greater than (or equal to) the given key
-        NavigableMap<String, List<RowEntry>> subMap = memTable.tailMap(key, inclusive);
-        for (List<RowEntry> entryList : subMap.values()) {
-            entryList.removeIf(RowEntry::isDeleted);
-            result.addAll(entryList);
+    /**
+     * Flushes the MemTable to disk, waits for the background work to finish
+     * and closes the SSTable files. The tree can be opened again from its
+     * directory. If the flush fails, the logs are kept to be replayed then.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+            // Every write is in an SSTable now
+            memTable.getLog().delete();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete the log " + memTable.getLog().getPath(), e);
+        } finally {
+            if (groupCommit != null) {
+                groupCommit.cancel(false);
+            }
+            flushExecutor.shutdown();
+            compactionExecutor.shutdown();
+            lock.writeLock().lock();
+            try {
+                closeLogs();
+                for (List<SSTable> level : levels) {
+                    for (SSTable ssTable : level) {
+                        ssTable.close();
+                    }
+                }
+                levels = List.of(List.of());
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
+    }
 
-        // Repeat the process for all SSTables (most recent first)
-        for (int i = ssTables.size() - 1; i >= 0; i--) {
-            TreeMap<String, List<RowEntry>> ssTable = ssTables.get(i);
-            subMap = ssTable.tailMap(key, inclusive);
-            for (List<RowEntry> entryList : subMap.values()) {
-                entryList.removeIf(RowEntry::isDeleted);
-                result.addAll(entryList);
+    /**
+     * Stops the background work, closes the tree and deletes its SSTable
+     * files, logs and directory.
+     */
+    public void destroy() {
+        if (groupCommit != null) {
+            groupCommit.cancel(false);
+        }
+        flushExecutor.shutdownNow();
+        compactionExecutor.shutdownNow();
+        try {
+            flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            closeLogs();
+            immutableMemTables.clear();
+            for (List<SSTable> level : levels) {
+                for (SSTable ssTable : level) {
+                    ssTable.delete();
+                }
+            }
+            levels = List.of(List.of());
+            Files.deleteIfExists(directory.resolve(Manifest.FILE_NAME));
+            // The logs, and the files left over from the flush or compaction that was stopped
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(SSTABLE_SUFFIX) || name.endsWith(LOG_SUFFIX) || name.endsWith(".tmp")) {
+                        Files.delete(path);
+                    }
+                }
             }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        return result;
+    /**
+     * Returns the SSTables of the tree by level, as last published. The lists
+     * are never changed.
+     */
+    List<List<SSTable>> getLevels() {
+        return levels;
     }
 
     /**
-     * Prints the current state of the LSM Tree, including the MemTable and all SSTables.
+     * Prints the current state of the LSM Tree, including the MemTables and all SSTables.
      */
     public void printTree() {
-        System.out.println("MemTable: " + memTable);
-        System.out.println("SSTables:");
-        for (TreeMap<String, List<RowEntry>> ssTable : ssTables) {
-            System.out.println("  " + ssTable);
+        lock.readLock().lock();
+        try {
+            System.out.println("MemTable: " + memTable);
+            for (MemTable immutable : immutableMemTables) {
+                System.out.println("Immutable MemTable: " + immutable);
+            }
+            System.out.println("SSTables:");
+            for (int level = 0; level < levels.size(); level++) {
+                System.out.println("  Level " + level + ":");
+                for (SSTable ssTable : levels.get(level)) {
+                    System.out.println("    " + ssTable);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes a write visible to the scans once every earlier write is, so that
+     * a scan never sees a write but misses an earlier one still being added.
+     * The caller holds the read lock.
+     */
+    private void publish(long sequence) {
+        while (!visibleSequence.compareAndSet(sequence - 1, sequence)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Throws the failure of the background work, if any. The caller holds the
+     * write lock.
+     */
+    private void checkBackgroundError() {
+        if (backgroundError instanceof UncheckedIOException e) {
+            throw new UncheckedIOException("A flush or compaction of " + directory + " failed", e.getCause());
+        } else if (backgroundError != null) {
+            throw new IllegalStateException("A flush or compaction of " + directory + " failed", backgroundError);
+        }
+    }
+
+    /**
+     * Binary searches a level below level 0, whose SSTables are sorted by key
+     * and do not overlap, for the SSTable that may hold a key.
+     *
+     * @return The SSTable, or null if no SSTable of the level may hold the key.
+     */
+    private static SSTable findSSTable(List<SSTable> level, String key) {
+        int i = findSSTableIndex(level, key);
+        return i < level.size() && level.get(i).getFirstKey().compareTo(key) <= 0 ? level.get(i) : null;
+    }
+
+    /**
+     * Binary searches a level below level 0 for the first SSTable whose last
+     * key is not less than a key.
+     *
+     * @return The index of that SSTable, or the size of the level if there is none.
+     */
+    private static int findSSTableIndex(List<SSTable> level, String key) {
+        int low = 0;
+        int high = level.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (level.get(mid).getLastKey().compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes a sorted run of entries to new SSTable files, starting a new
+     * file whenever the current one reaches a target size.
+     *
+     * @param entries        The entries in key order.
+     * @param targetFileSize The size in bytes at which a file is closed.
+     * @param dropTombstones If true, the tombstones are left out of the files.
+     * @return The new SSTables, open for reading; none if every entry was dropped.
+     */
+    private List<SSTable> writeSSTables(Iterator<Entry> entries, long targetFileSize, boolean dropTombstones) {
+        List<SSTable> written = new ArrayList<>();
+        SSTableWriter writer = null;
+        long id = 0;
+        try {
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.isTombstone() && dropTombstones) {
+                    continue;
+                }
+                if (writer == null) {
+                    id = nextTableId.getAndIncrement();
+                    writer = new SSTableWriter(directory.resolve(fileName(id)), config.getBloomFilterBitsPerKey(),
+                            config.getCompression());
+                }
+                writer.add(entry);
+                if (writer.size() >= targetFileSize) {
+                    SSTableWriter full = writer;
+                    writer = null;
+                    written.add(full.finish(id, config.getBlockCache()));
+                }
+            }
+            if (writer != null) {
+                SSTableWriter last = writer;
+                writer = null;
+                written.add(last.finish(id, config.getBlockCache()));
+            }
+            return written;
+        } catch (IOException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            for (SSTable ssTable : written) {
+                ssTable.delete();
+            }
+            throw new UncheckedIOException("Cannot write an SSTable to " + directory, e);
+        }
+    }
+
+    /**
+     * Writes the latest published levels to the manifest. Both background
+     * threads write it, and as each writes the levels as they are by then,
+     * a manifest never goes back to older levels.
+     */
+    private void writeManifest() {
+        try {
+            synchronized (manifestLock) {
+                Manifest.write(directory, nextTableId.get(), levels);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the manifest of " + directory, e);
+        }
+    }
+
+    /**
+     * Opens the SSTable files named by the manifest of the directory, and
+     * deletes the files of flushes and compactions that never finished. A
+     * directory without a manifest has all its SSTables in level 0, in the
+     * order they were written.
+     *
+     * @return The levels of the tree.
+     */
+    private List<List<SSTable>> openSSTables() throws IOException {
+        SortedMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(path);
+                } else if (name.endsWith(SSTABLE_SUFFIX)) {
+                    files.put(Long.parseLong(name.substring(0, name.length() - SSTABLE_SUFFIX.length())), path);
+                }
+            }
+        }
+
+        List<List<SSTable>> levels = new ArrayList<>();
+        levels.add(new ArrayList<>());
+        Manifest manifest = Manifest.read(directory);
+        if (manifest == null) {
+            for (Map.Entry<Long, Path> file : files.entrySet()) {
+                levels.get(0).add(SSTable.open(file.getValue(), file.getKey(), config.getBlockCache()));
+                nextTableId.set(file.getKey() + 1);
+            }
+            return levels;
+        }
+
+        nextTableId.set(manifest.nextTableId);
+        for (int level = 0; level < manifest.levels.size(); level++) {
+            if (level > 0) {
+                levels.add(new ArrayList<>());
+            }
+            for (long id : manifest.levels.get(level)) {
+                Path path = files.remove(id);
+                if (path == null) {
+                    throw new IOException("The SSTable " + fileName(id) + " named by the manifest is missing");
+                }
+                levels.get(level).add(SSTable.open(path, id, config.getBlockCache()));
+            }
+        }
+        // Left over from a flush or compaction that never finished
+        for (Path path : files.values()) {
+            Files.delete(path);
+        }
+        return levels;
+    }
+
+    private static String fileName(long id) {
+        return String.format("%06d%s", id, SSTABLE_SUFFIX);
+    }
+
+    private WriteAheadLog newLog() throws IOException {
+        Path path = directory.resolve(String.format("%06d%s", nextTableId.getAndIncrement(), LOG_SUFFIX));
+        return new WriteAheadLog(path, config.getWalSyncPolicy());
+    }
+
+    /**
+     * Closes the logs without deleting them, so that their writes are
+     * replayed when the tree is opened again. The caller holds the write lock.
+     */
+    private void closeLogs() {
+        List<MemTable> memTables = new ArrayList<>(immutableMemTables);
+        memTables.add(memTable);
+        for (MemTable memTable : memTables) {
+            try {
+                memTable.getLog().close();
+            } catch (IOException e) {
+                // the writes that were not synced are lost, as with a crash
+            }
+        }
+    }
+
+    /**
+     * Replays the logs left in the directory by a tree that was not closed,
+     * oldest first, flushes their writes to a new SSTable in level 0 and
+     * deletes them. Called while the tree is opened, after openSSTables.
+     */
+    private void recoverLogs() throws IOException {
+        SortedMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + LOG_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                logs.put(Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())), path);
+            }
+        }
+        if (logs.isEmpty()) {
+            return;
+        }
+        nextTableId.set(Math.max(nextTableId.get(), logs.lastKey() + 1));
+
+        TreeMap<String, Entry> recovered = new TreeMap<>();
+        for (Path path : logs.values()) {
+            WriteAheadLog.replay(path, recovered);
+        }
+        if (!recovered.isEmpty()) {
+            for (Entry entry : recovered.values()) {
+                lastSequence.set(Math.max(lastSequence.get(), entry.sequence));
+            }
+            levels.get(0).addAll(writeSSTables(recovered.values().iterator(), Long.MAX_VALUE, false));
+            writeManifest();
+        }
+        for (Path path : logs.values()) {
+            Files.delete(path);
         }
     }
-}
\ No newline at end of file
+}
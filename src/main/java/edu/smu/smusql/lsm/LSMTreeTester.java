@@ -1,40 +1,58 @@
 package edu.smu.smusql.lsm;
 
-import edu.smu.smusql.interfaces.RowEntry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class LSMTreeTester {
-    private static final int LIMIT = 10; 
+    private static final int LIMIT = 10;
 
     public static void testLSM() {
         Random random = new Random();
 
-        LSMTree tree = new LSMTree();
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("smusql-lsm-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // A tiny MemTable and levels, so that the few entries below go through flushes and compactions
+        LSMConfig config = LSMConfig.defaults()
+                .withMemTableSize(512)
+                .withCompactionStrategy(new LeveledCompaction(2, 2, 256, 256));
+        LSMTree tree = new LSMTree(directory, config);
 
         for (int i = 0; i < LIMIT; i++) {
             String name = "User" + i;
             int age = 20 + (i % 41); // Ages between 20 and 60
             String city = getRandomCity(random);
 
-            RowEntry rowEntry = new RowEntry();
-            rowEntry.addOrUpdateValue("age", String.valueOf(age));
-            rowEntry.addOrUpdateValue("city", city);
-
-            tree.add(name, rowEntry);
+            tree.put(name, age + "," + city);
             tree.printTree();
         }
         for (int i = 0; i < LIMIT; i++) {
             String name = "User" + i;
-            int age = 20 + (i % 41); // Ages between 20 and 60
-            String city = getRandomCity(random);
-
-            RowEntry rowEntry = new RowEntry();
-            rowEntry.addOrUpdateValue("age", String.valueOf(age));
-            rowEntry.addOrUpdateValue("city", city);
-
-            tree.add(name, rowEntry);
+            if (i % 3 == 0) {
+                tree.remove(name);
+            } else {
+                int age = 20 + (i % 41); // Ages between 20 and 60
+                String city = getRandomCity(random);
+
+                tree.put(name, age + "," + city);
+            }
             tree.printTree();
         }
+
+        System.out.println("User5 -> " + tree.get("User5"));
+        System.out.println("Keys >= User5: " + tree.getEntriesWithKeyGreaterThan("User5", true));
+
+        // Reopening the directory reads the SSTables back
+        tree.close();
+        tree = new LSMTree(directory, config);
+        System.out.println("After reopening, keys < User5: " + tree.getEntriesWithKeyLessThan("User5", false));
+        tree.destroy();
     }
 
     // Helper method to return a random city
@@ -0,0 +1,153 @@
+package edu.smu.smusql.lsm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leveled compaction: every level below level 0 is a single sorted run that
+ * may hold 'fanOut' times as many bytes as the level above it, starting at
+ * 'levelBaseSize' for level 1. Once level 0 holds 'level0Trigger' tables, they
+ * are all merged with the overlapping tables of level 1. Once a lower level
+ * outgrows its size, one of its tables is merged with the overlapping tables
+ * of the next level: the one that overlaps the fewest bytes there for its own
+ * size, which keeps the rewrite small. The merged entries are split into
+ * tables of about 'targetFileSize' bytes.
+ *
+ * An entry is rewritten about 'fanOut' times per level it moves down, and the
+ * number of levels only grows with the logarithm of the data size, so the
+ * write amplification stays bounded. Reads touch at most one table per level
+ * below level 0.
+ */
+public class LeveledCompaction extends CompactionStrategy {
+    public static final int DEFAULT_LEVEL0_TRIGGER = 4;
+    public static final int DEFAULT_FAN_OUT = 10;
+    public static final long DEFAULT_LEVEL_BASE_SIZE = 16L << 20;
+    public static final long DEFAULT_TARGET_FILE_SIZE = 4L << 20;
+    static final int MAX_LEVELS = 7;
+
+    private final int level0Trigger;
+    private final int fanOut;
+    private final long levelBaseSize;
+    private final long targetFileSize;
+
+    /**
+     * Creates leveled compaction with the default settings.
+     */
+    public LeveledCompaction() {
+        this(DEFAULT_LEVEL0_TRIGGER, DEFAULT_FAN_OUT, DEFAULT_LEVEL_BASE_SIZE, DEFAULT_TARGET_FILE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param level0Trigger  The number of tables in level 0 that triggers their compaction into level 1, at least 1.
+     * @param fanOut         The ratio between the sizes of two consecutive levels, at least 2.
+     * @param levelBaseSize  The size of level 1 in bytes, at least 1.
+     * @param targetFileSize The size of the tables written by a compaction in bytes, at least 1.
+     */
+    public LeveledCompaction(int level0Trigger, int fanOut, long levelBaseSize, long targetFileSize) {
+        if (level0Trigger < 1 || fanOut < 2 || levelBaseSize < 1 || targetFileSize < 1) {
+            throw new IllegalArgumentException("Invalid leveled compaction settings: level0Trigger=" + level0Trigger
+                    + ", fanOut=" + fanOut + ", levelBaseSize=" + levelBaseSize + ", targetFileSize=" + targetFileSize);
+        }
+        this.level0Trigger = level0Trigger;
+        this.fanOut = fanOut;
+        this.levelBaseSize = levelBaseSize;
+        this.targetFileSize = targetFileSize;
+    }
+
+    @Override
+    Compaction pick(List<List<SSTable>> levels) {
+        // the level furthest over its limit goes first
+        int level = -1;
+        double bestScore = 1;
+        for (int i = 0; i < Math.min(levels.size(), MAX_LEVELS - 1); i++) {
+            double score = i == 0
+                    ? (double) levels.get(0).size() / level0Trigger
+                    : (double) totalSize(levels.get(i)) / maxLevelSize(i);
+            if (score >= bestScore) {
+                level = i;
+                bestScore = score;
+            }
+        }
+        if (level < 0) {
+            return null;
+        }
+
+        List<SSTable> upper = level == 0 ? levels.get(0) : List.of(pickTable(levels, level));
+        List<SSTable> next = level + 1 < levels.size() ? levels.get(level + 1) : List.of();
+        String first = Compaction.firstKey(upper);
+        String last = Compaction.lastKey(upper);
+        List<SSTable> lower = overlapping(next, first, last);
+
+        if (upper.size() == 1 && lower.isEmpty()) {
+            return new Compaction(upper, level + 1, targetFileSize, false, true);
+        }
+        // the tables of the next level are older, so they go first
+        List<SSTable> inputs = new ArrayList<>(lower);
+        inputs.addAll(upper);
+        first = Compaction.firstKey(inputs);
+        last = Compaction.lastKey(inputs);
+        return new Compaction(inputs, level + 1, targetFileSize, isBottommost(levels, level + 1, first, last), false);
+    }
+
+    /**
+     * Returns the number of tables in level 0, which every read has to look
+     * at and which only a compaction into level 1 removes.
+     */
+    @Override
+    int pendingTables(List<List<SSTable>> levels) {
+        return levels.get(0).size();
+    }
+
+    /**
+     * Picks the table of a level below level 0 whose compaction into the next
+     * level rewrites the fewest bytes there for the bytes it moves down.
+     */
+    private SSTable pickTable(List<List<SSTable>> levels, int level) {
+        List<SSTable> next = level + 1 < levels.size() ? levels.get(level + 1) : List.of();
+        SSTable best = null;
+        double bestRatio = Double.MAX_VALUE;
+        for (SSTable table : levels.get(level)) {
+            double ratio = (double) totalSize(overlapping(next, table.getFirstKey(), table.getLastKey()))
+                    / table.getFileSize();
+            if (ratio < bestRatio) {
+                best = table;
+                bestRatio = ratio;
+            }
+        }
+        return best;
+    }
+
+    private long maxLevelSize(int level) {
+        long size = levelBaseSize;
+        for (int i = 1; i < level; i++) {
+            size *= fanOut;
+        }
+        return size;
+    }
+
+    private static List<SSTable> overlapping(List<SSTable> tables, String first, String last) {
+        List<SSTable> overlapping = new ArrayList<>();
+        for (SSTable table : tables) {
+            if (table.overlaps(first, last)) {
+                overlapping.add(table);
+            }
+        }
+        return overlapping;
+    }
+
+    private static long totalSize(List<SSTable> tables) {
+        long size = 0;
+        for (SSTable table : tables) {
+            size += table.getFileSize();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "LeveledCompaction(level0Trigger=" + level0Trigger + ", fanOut=" + fanOut
+                + ", levelBaseSize=" + levelBaseSize + ", targetFileSize=" + targetFileSize + ")";
+    }
+}
@@ -0,0 +1,165 @@
+package edu.smu.smusql.lsm;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses data in the LZ4 block format. The compressed data is a series of
+ * sequences, each a token byte, the literals and a match: the high 4 bits of
+ * the token are the number of literals, the low 4 bits the length of the
+ * match minus 4, either continued in the following bytes (each adding up to
+ * 255) when it is 15. The literals are copied as they are, and the match is a
+ * 2 byte little-endian offset back into the output, from where the match is
+ * copied. The last sequence has literals only, and the last 5 bytes of the
+ * data are always literals.
+ *
+ * The compressor looks for matches of 4 bytes or more with a hash table of the
+ * last position of each 4 byte sequence, which is fast and finds the repeats
+ * within the block, such as the common parts of the values of a table.
+ */
+final class Lz4Codec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;  // The bytes at the end that are never part of a match
+    private static final int MATCH_FIND_LIMIT = 12;  // A match starts at least this many bytes before the end
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+
+    private Lz4Codec() {
+    }
+
+    /**
+     * Compresses the first 'length' bytes of an array.
+     *
+     * @return the compressed bytes
+     */
+    static byte[] compress(byte[] src, int length) {
+        byte[] dst = new byte[length + length / 255 + 16];
+        int[] lastPositions = new int[1 << HASH_BITS];
+        Arrays.fill(lastPositions, -1);
+        int d = 0;
+        int anchor = 0;  // The first byte not written yet
+        int i = 0;
+        while (i < length - MATCH_FIND_LIMIT) {
+            int sequence = readInt(src, i);
+            int h = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int match = lastPositions[h];
+            lastPositions[h] = i;
+            if (match < 0 || i - match > MAX_OFFSET || readInt(src, match) != sequence) {
+                i++;
+                continue;
+            }
+            // Extend the match backwards over the literals, then forwards up to the last literals
+            while (i > anchor && match > 0 && src[i - 1] == src[match - 1]) {
+                i--;
+                match--;
+            }
+            int matchLength = MIN_MATCH;
+            while (i + matchLength < length - LAST_LITERALS && src[match + matchLength] == src[i + matchLength]) {
+                matchLength++;
+            }
+
+            int literals = i - anchor;
+            int token = d++;
+            dst[token] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchLength - MIN_MATCH, 15));
+            d = writeLength(dst, d, literals);
+            System.arraycopy(src, anchor, dst, d, literals);
+            d += literals;
+            int offset = i - match;
+            dst[d++] = (byte) offset;
+            dst[d++] = (byte) (offset >>> 8);
+            d = writeLength(dst, d, matchLength - MIN_MATCH);
+            i += matchLength;
+            anchor = i;
+        }
+
+        int literals = length - anchor;
+        dst[d++] = (byte) (Math.min(literals, 15) << 4);
+        d = writeLength(dst, d, literals);
+        System.arraycopy(src, anchor, dst, d, literals);
+        d += literals;
+        return Arrays.copyOf(dst, d);
+    }
+
+    /**
+     * Decompresses data compressed by compress().
+     *
+     * @param src:    the array holding the compressed bytes
+     * @param offset: the position of the compressed bytes in 'src'
+     * @param length: the number of compressed bytes
+     * @param dst:    the array the bytes are decompressed to, exactly as long as they are
+     * @throws IOException if the compressed bytes are corrupted
+     */
+    static void decompress(byte[] src, int offset, int length, byte[] dst) throws IOException {
+        try {
+            int s = offset;
+            int end = offset + length;
+            int d = 0;
+            while (true) {
+                int token = src[s++] & 0xff;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[s++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, s, dst, d, literals);
+                s += literals;
+                d += literals;
+                if (s >= end) {
+                    break;
+                }
+
+                int matchOffset = (src[s++] & 0xff) | (src[s++] & 0xff) << 8;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[s++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int match = d - matchOffset;
+                if (matchOffset == 0 || match < 0) {
+                    throw new IOException("Corrupted LZ4 block: offset " + matchOffset + " at " + d);
+                }
+                if (matchOffset >= matchLength) {
+                    System.arraycopy(dst, match, dst, d, matchLength);
+                    d += matchLength;
+                } else {
+                    // Byte by byte, as the match overlaps the bytes it produces
+                    for (int k = 0; k < matchLength; k++) {
+                        dst[d++] = dst[match++];
+                    }
+                }
+            }
+            if (s != end || d != dst.length) {
+                throw new IOException("Corrupted LZ4 block: " + d + " bytes instead of " + dst.length);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted LZ4 block", e);
+        }
+    }
+
+    /**
+     * Writes the part of a length that does not fit in its 4 bits of the token.
+     */
+    private static int writeLength(byte[] dst, int d, int length) {
+        if (length < 15) {
+            return d;
+        }
+        length -= 15;
+        while (length >= 255) {
+            dst[d++] = (byte) 255;
+            length -= 255;
+        }
+        dst[d++] = (byte) length;
+        return d;
+    }
+
+    private static int readInt(byte[] bytes, int i) {
+        return (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff) << 16 | bytes[i + 3] << 24;
+    }
+}
@@ -0,0 +1,102 @@
+package edu.smu.smusql.lsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MANIFEST file of an LSMTree directory, which records the SSTables that
+ * make up the tree, level by level and in the order of each level, along with
+ * the next free table number. It is a small text file,
+ *
+ *   smusql-lsm-manifest 1
+ *   next-table 12
+ *   level 0: 9 11
+ *   level 1: 4 7 10
+ *
+ * rewritten under a temporary name and renamed over the old one after every
+ * flush and compaction. A table file that the manifest does not name is left
+ * over from a flush or compaction that never finished and is deleted when the
+ * tree is opened.
+ */
+final class Manifest {
+    static final String FILE_NAME = "MANIFEST";
+    private static final String HEADER = "smusql-lsm-manifest 1";
+
+    final long nextTableId;
+    final List<List<Long>> levels; // the table numbers of each level
+
+    private Manifest(long nextTableId, List<List<Long>> levels) {
+        this.nextTableId = nextTableId;
+        this.levels = levels;
+    }
+
+    /**
+     * Reads the manifest of a directory.
+     *
+     * @return the manifest, or null if the directory has none
+     * @throws IOException if the manifest cannot be read or is malformed
+     */
+    static Manifest read(Path directory) throws IOException {
+        Path path = directory.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !lines.get(0).equals(HEADER) || !lines.get(1).startsWith("next-table ")) {
+            throw new IOException("Malformed manifest: " + path);
+        }
+        try {
+            long nextTableId = Long.parseLong(lines.get(1).substring("next-table ".length()));
+            List<List<Long>> levels = new ArrayList<>();
+            for (String line : lines.subList(2, lines.size())) {
+                String prefix = "level " + levels.size() + ":";
+                if (!line.startsWith(prefix)) {
+                    throw new IOException("Malformed manifest: " + path);
+                }
+                List<Long> ids = new ArrayList<>();
+                for (String id : line.substring(prefix.length()).trim().split(" ")) {
+                    if (!id.isEmpty()) {
+                        ids.add(Long.parseLong(id));
+                    }
+                }
+                levels.add(ids);
+            }
+            return new Manifest(nextTableId, levels);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed manifest: " + path, e);
+        }
+    }
+
+    /**
+     * Replaces the manifest of a directory with one naming the given tables.
+     */
+    static void write(Path directory, long nextTableId, List<List<SSTable>> levels) throws IOException {
+        StringBuilder text = new StringBuilder(HEADER).append('\n');
+        text.append("next-table ").append(nextTableId).append('\n');
+        for (int i = 0; i < levels.size(); i++) {
+            text.append("level ").append(i).append(':');
+            for (SSTable table : levels.get(i)) {
+                text.append(' ').append(table.getId());
+            }
+            text.append('\n');
+        }
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(text.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,128 @@
+package edu.smu.smusql.lsm;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory part of an LSMTree: the entries written since the last flush,
+ * in a concurrent skip list, along with the write-ahead log that holds the
+ * same writes on disk.
+ *
+ * Any number of threads may write at once without locking the skip list, and
+ * reads and scans run alongside them. A write never replaces an entry: every
+ * version of a key stays in the skip list, ordered from newest to oldest by
+ * sequence number (see Entry.ORDER), so that a scan that started before a
+ * write can still find the version it is reading as of. The flush writes only
+ * the newest version of each key.
+ */
+final class MemTable {
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(Entry.ORDER);
+    private final AtomicLong size = new AtomicLong();  // approximate heap size of the entries
+    private final WriteAheadLog log;
+
+    /**
+     * Constructor
+     *
+     * @param log: the new, empty log of the MemTable
+     */
+    MemTable(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    WriteAheadLog getLog() {
+        return log;
+    }
+
+    /**
+     * Appends a write to the log and adds it to the MemTable.
+     *
+     * @param entry: the entry written, with a sequence number no other write has
+     * @param bytes: the approximate heap size of the entry
+     * @return the approximate heap size of the MemTable after the write
+     */
+    long write(Entry entry, long bytes) throws IOException {
+        log.append(entry);
+        entries.add(entry);
+        return size.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the newest entry of a key, which may be a tombstone, or null if
+     * the MemTable does not hold the key.
+     */
+    Entry get(String key) {
+        Entry newest = entries.ceiling(new Entry(key, null, Long.MAX_VALUE));
+        return newest != null && newest.key.equals(key) ? newest : null;
+    }
+
+    /**
+     * Returns the entries with keys between two bounds in key order, each key
+     * once with its newest version up to a sequence number; a null bound
+     * leaves the range open on that side. The iterator never fails because of
+     * the writes made while it runs, and does not see them if they have a
+     * higher sequence number.
+     *
+     * @param snapshot: the highest sequence number returned
+     */
+    Iterator<Entry> iterator(String from, boolean fromInclusive, String to, boolean toInclusive, long snapshot) {
+        // Every version of a key lies between (key, MAX_VALUE) and (key, MIN_VALUE)
+        Entry low = from == null ? null : new Entry(from, null, fromInclusive ? Long.MAX_VALUE : Long.MIN_VALUE);
+        Entry high = to == null ? null : new Entry(to, null, toInclusive ? Long.MIN_VALUE : Long.MAX_VALUE);
+        NavigableSet<Entry> range = entries;
+        if (low != null && high != null) {
+            range = Entry.ORDER.compare(low, high) <= 0
+                    ? entries.subSet(low, fromInclusive, high, toInclusive)
+                    : Collections.emptyNavigableSet();
+        } else if (low != null) {
+            range = entries.tailSet(low, fromInclusive);
+        } else if (high != null) {
+            range = entries.headSet(high, toInclusive);
+        }
+        Iterator<Entry> versions = range.iterator();
+        return new Iterator<>() {
+            private Entry next;
+            private String lastKey;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && versions.hasNext()) {
+                    Entry entry = versions.next();
+                    // Skip the versions written after the snapshot, and the older versions of a key returned
+                    if (entry.sequence <= snapshot && !entry.key.equals(lastKey)) {
+                        next = entry;
+                        lastKey = entry.key;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    @Override
+    public String toString() {
+        return entries.toString();
+    }
+}
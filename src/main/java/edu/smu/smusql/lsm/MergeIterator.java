@@ -0,0 +1,71 @@
+package edu.smu.smusql.lsm;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted runs of entries into a single one in key order, returning
+ * only the newest version of each key, the one with the highest sequence
+ * number, whichever run it is in. Tombstones are returned like any other
+ * version; whoever reads the merge decides what to do with them.
+ *
+ * The next entry of every run is kept in a heap ordered by Entry.ORDER, so
+ * that merging k runs costs O(log k) per entry, and the runs are read no
+ * further than the merge has got.
+ */
+final class MergeIterator implements Iterator<Entry> {
+    private final PriorityQueue<Run> heap;
+
+    /**
+     * Constructor
+     *
+     * @param runs: the runs, each in key order with at most one entry per key, in any order
+     */
+    MergeIterator(List<Iterator<Entry>> runs) {
+        this.heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> Entry.ORDER.compare(a.head, b.head));
+        for (Iterator<Entry> run : runs) {
+            advance(new Run(run));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heap.isEmpty();
+    }
+
+    @Override
+    public Entry next() {
+        Run newest = heap.poll();
+        if (newest == null) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = newest.head;
+        advance(newest);
+        // The older versions of the key come right after it, skip them
+        while (!heap.isEmpty() && heap.peek().head.key.equals(entry.key)) {
+            advance(heap.poll());
+        }
+        return entry;
+    }
+
+    /**
+     * Moves a run to its next entry and puts it back into the heap, unless it is used up.
+     */
+    private void advance(Run run) {
+        if (run.entries.hasNext()) {
+            run.head = run.entries.next();
+            heap.add(run);
+        }
+    }
+
+    private static final class Run {
+        final Iterator<Entry> entries;
+        Entry head;
+
+        Run(Iterator<Entry> entries) {
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package edu.smu.smusql.lsm;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A scan of the keys of an LSMTree between two bounds, returned by
+ * LSMTree.scan. The scan streams the entries in key order, merging the
+ * MemTables and the SSTables as it goes (see MergeIterator), with the values
+ * the keys had when the scan started: writes made during the scan are not
+ * seen, and removed keys are left out.
+ *
+ * The scan keeps the SSTables it reads open, even once a compaction has
+ * replaced them, until it is used up or closed. A scan that is not read to
+ * the end should therefore be closed.
+ */
+public final class RangeScan implements Iterator<Map.Entry<String, String>>, AutoCloseable {
+    private final Iterator<Entry> entries;
+    private final List<SSTable> ssTables;  // retained for the scan
+    private final String to;
+    private final boolean toInclusive;
+    private Entry next;
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param entries:     the newest version of each key in the range, from its lower bound on
+     * @param ssTables:    the SSTables read by 'entries', retained, to be released once the scan is closed
+     * @param to:          the upper bound of the range, or null if it is unbounded above
+     * @param toInclusive: whether an entry with key 'to' is returned
+     */
+    RangeScan(Iterator<Entry> entries, List<SSTable> ssTables, String to, boolean toInclusive) {
+        this.entries = entries;
+        this.ssTables = ssTables;
+        this.to = to;
+        this.toInclusive = toInclusive;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !closed) {
+            if (!entries.hasNext()) {
+                close();
+                break;
+            }
+            Entry entry = entries.next();
+            if (to != null && (toInclusive ? entry.key.compareTo(to) > 0 : entry.key.compareTo(to) >= 0)) {
+                close();
+                break;
+            }
+            if (!entry.isTombstone()) {
+                next = entry;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = next;
+        next = null;
+        return Map.entry(entry.key, entry.value);
+    }
+
+    /**
+     * Releases the SSTables of the scan. The scan returns nothing more.
+     */
+    @Override
+    public void close() {
+        next = null;
+        if (!closed) {
+            closed = true;
+            for (SSTable ssTable : ssTables) {
+                ssTable.release();
+            }
+        }
+    }
+}
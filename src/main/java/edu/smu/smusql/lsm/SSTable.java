@@ -0,0 +1,360 @@
+package edu.smu.smusql.lsm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable sorted file of entries written by SSTableWriter, which
+ * describes the layout. Opening the file reads its footer, its index block and
+ * its filter block, and keeps the last key, offset and length of every data
+ * block in memory, along with the first key and the bloom filter of the table;
+ * the data blocks stay on disk and are read through the file channel when a
+ * lookup or a scan needs them, unless the BlockCache of the tree holds them
+ * already. A lookup of a key outside the first and last
+ * key of the table, or one the filter rules out, reads no block at all.
+ *
+ * The table counts its references: the one its tree holds while the table is
+ * part of it, and one per open RangeScan that reads it. The file is closed,
+ * and deleted if a compaction replaced the table, once the last of them is
+ * released, so a scan can finish reading a table that a compaction removed
+ * from the tree in the meantime.
+ */
+final class SSTable implements AutoCloseable {
+    private final Path path;
+    private final long id;
+    private final FileChannel channel;
+    private final long entryCount;
+    private final long maxSequence;
+    private final long fileSize;
+    private final String firstKey;
+    private final FilterBlock filter;  // null if the table was written without one
+    private final BlockCache cache;
+    private final long cacheKey;  // The key of block 0 in the cache, the other blocks follow it
+
+    // the index: the last key, offset and length of each data block
+    private final String[] lastKeys;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+
+    private final AtomicInteger references = new AtomicInteger(1);  // the tree's, until close() or delete()
+    private volatile boolean obsolete;  // whether the file is deleted once the last reference is released
+
+    // Hands out the keys of the blocks in the caches, a range per table
+    private static final AtomicLong NEXT_CACHE_KEY = new AtomicLong();
+
+    private SSTable(Path path, long id, FileChannel channel, long entryCount, long maxSequence, long fileSize,
+                    String firstKey, FilterBlock filter, String[] lastKeys, long[] blockOffsets, int[] blockLengths,
+                    BlockCache cache) {
+        this.path = path;
+        this.id = id;
+        this.channel = channel;
+        this.entryCount = entryCount;
+        this.maxSequence = maxSequence;
+        this.fileSize = fileSize;
+        this.lastKeys = lastKeys;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.firstKey = firstKey;
+        this.filter = filter;
+        this.cache = cache;
+        this.cacheKey = NEXT_CACHE_KEY.getAndAdd(lastKeys.length);
+    }
+
+    /**
+     * Opens an SSTable file, reading its footer, index and filter.
+     *
+     * @param path:  the file
+     * @param id:    the number of the table, which orders it among the tables of its tree
+     * @param cache: the cache the data blocks are read through
+     * @throws IOException if the file cannot be read or is not an SSTable
+     */
+    static SSTable open(Path path, long id, BlockCache cache) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            if (fileSize < SSTableWriter.FOOTER_SIZE) {
+                throw new IOException("Not an SSTable: " + path);
+            }
+            ByteBuffer footer = read(channel, fileSize - SSTableWriter.FOOTER_SIZE, SSTableWriter.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexLength = footer.getInt();
+            long filterOffset = footer.getLong();
+            int filterLength = footer.getInt();
+            long entryCount = footer.getLong();
+            long maxSequence = footer.getLong();
+            int version = footer.getInt();
+            if (footer.getLong() != SSTableWriter.MAGIC || version != SSTableWriter.FORMAT_VERSION) {
+                throw new IOException("Not an SSTable of format version " + SSTableWriter.FORMAT_VERSION + ": " + path);
+            }
+
+            ByteBuffer index = read(channel, indexOffset, indexLength);
+            int numBlocks = readVarint(index);
+            if (numBlocks == 0) {
+                throw new IOException("Empty SSTable: " + path);
+            }
+            String firstKey = readString(index, readVarint(index));
+            String[] lastKeys = new String[numBlocks];
+            long[] blockOffsets = new long[numBlocks];
+            int[] blockLengths = new int[numBlocks];
+            for (int i = 0; i < numBlocks; i++) {
+                lastKeys[i] = readString(index, readVarint(index));
+                blockOffsets[i] = readVarlong(index);
+                blockLengths[i] = readVarint(index);
+            }
+            FilterBlock filter = filterLength == 0 ? null : FilterBlock.decode(read(channel, filterOffset, filterLength));
+            return new SSTable(path, id, channel, entryCount, maxSequence, fileSize, firstKey, filter,
+                    lastKeys, blockOffsets, blockLengths, cache);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the highest sequence number of the entries of the table.
+     */
+    long getMaxSequence() {
+        return maxSequence;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    int getNumBlocks() {
+        return lastKeys.length;
+    }
+
+    /**
+     * Returns the smallest key of the table.
+     */
+    String getFirstKey() {
+        return firstKey;
+    }
+
+    /**
+     * Returns the largest key of the table.
+     */
+    String getLastKey() {
+        return lastKeys[lastKeys.length - 1];
+    }
+
+    /**
+     * Returns true if the key range of the table overlaps the range from
+     * 'first' to 'last', both inclusive; a null bound leaves the range open
+     * on that side.
+     */
+    boolean overlaps(String first, String last) {
+        return (first == null || getLastKey().compareTo(first) >= 0)
+                && (last == null || firstKey.compareTo(last) <= 0);
+    }
+
+    /**
+     * Returns false if the table cannot hold the key: the key is outside its
+     * key range, or its bloom filter rules the key out. Reads nothing from
+     * the file.
+     */
+    boolean mightContain(String key) {
+        return overlaps(key, key) && (filter == null || filter.mightContain(key));
+    }
+
+    /**
+     * Looks a key up, reading at most one data block, and none if
+     * mightContain rules the key out.
+     *
+     * @return the entry of the key, which may be a tombstone, or null if the table does not hold the key
+     */
+    Entry get(String key) {
+        if (!mightContain(key)) {
+            return null;
+        }
+        int b = findBlock(key);
+        if (b == lastKeys.length) {
+            return null;
+        }
+        DataBlock block = readBlock(b);
+        int i = block.firstIndexFrom(key, true);
+        return i < block.size() && block.keys[i].equals(key) ? block.entry(i) : null;
+    }
+
+    /**
+     * Returns an iterator over the entries of the table in key order, starting
+     * at the first key that is not less than 'from' or, if 'inclusive' is
+     * false, greater than it. The data blocks are read one at a time as the
+     * iterator reaches them.
+     *
+     * @param from:      the lower bound, or null to start at the first key
+     * @param inclusive: whether an entry with key 'from' is returned
+     */
+    Iterator<Entry> iterator(String from, boolean inclusive) {
+        return new Iterator<>() {
+            private int blockIndex = from == null ? 0 : findBlock(from);
+            private DataBlock block;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                while (block == null || position == block.size()) {
+                    if (blockIndex == lastKeys.length) {
+                        return false;
+                    }
+                    boolean first = block == null;
+                    block = readBlock(blockIndex++);
+                    position = first && from != null ? block.firstIndexFrom(from, inclusive) : 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return block.entry(position++);
+            }
+        };
+    }
+
+    /**
+     * Takes a reference to the table for a scan, which keeps the file open
+     * until release(). The caller makes sure the tree still holds its own
+     * reference, by holding the lock of the tree.
+     */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference to the table. The last one closes the file, and
+     * deletes it if the table was deleted.
+     */
+    void release() {
+        if (references.decrementAndGet() > 0) {
+            return;
+        }
+        cache.invalidate(cacheKey, lastKeys.length);
+        try {
+            channel.close();
+            if (obsolete) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Releases the reference of the tree, once the tree is closed.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * Releases the reference of the tree and deletes the file, once the table
+     * is no longer part of its tree and no scan reads it any more.
+     */
+    void delete() {
+        obsolete = true;
+        release();
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + " (" + entryCount + " entries in " + lastKeys.length + " blocks, "
+                + fileSize + " bytes)";
+    }
+
+    /**
+     * Binary searches the index for the first data block whose last key is not
+     * less than 'key', the only block that may hold it.
+     *
+     * @return the index of that block, or the number of blocks if every key of the table is less than 'key'
+     */
+    private int findBlock(String key) {
+        int low = 0;
+        int high = lastKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private DataBlock readBlock(int b) {
+        DataBlock block = cache.get(cacheKey + b);
+        if (block != null) {
+            return block;
+        }
+        try {
+            block = DataBlock.decode(read(channel, blockOffsets[b], blockLengths[b]));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read block " + b + " of " + path, e);
+        }
+        cache.put(cacheKey + b, block);
+        return block;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        return (int) readVarlong(buffer);
+    }
+
+    static long readVarlong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Decodes 'length' bytes of UTF-8 at the position of a heap buffer,
+     * moving the position past them.
+     */
+    static String readString(ByteBuffer buffer, int length) {
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+}
@@ -0,0 +1,278 @@
+package edu.smu.smusql.lsm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a sorted run of entries to a new, immutable SSTable file. The file is
+ * laid out as
+ *
+ *   data block 0 | ... | data block n-1 | index block | filter block | footer
+ *
+ * A data block starts with the id of its CompressionCodec in a single byte.
+ * With NONE, the contents of the block follow; with LZ4, the varint length of
+ * the contents and the contents compressed (see Lz4Codec). The contents are
+ * the varint number of entries, the entries in key order and the restart
+ * points. An entry is encoded as the varint number of bytes its key shares
+ * with the previous key, the varint number of the other bytes of the key and
+ * those bytes in UTF-8, the varlong sequence number, the varint length of the
+ * value plus one (0 for a tombstone) and the value in UTF-8. Every
+ * RESTART_INTERVAL-th entry is a restart point, which shares nothing with the
+ * previous key. The contents end with the 4 byte offset of each restart point
+ * from the first entry and the 4 byte number of restart points, so a reader
+ * can binary search the whole keys at the restart points. A block is closed
+ * once its entries take up BLOCK_SIZE bytes or more before compression. The
+ * index block starts with the varint number of data blocks and the
+ * first key of the table, and holds the last key, offset and length of each
+ * data block, so a reader keeps a single key per block in memory and reads one
+ * block per lookup. The first key and the last key of the last block fence the
+ * key range of the table. The filter block is the bloom filter of the keys,
+ * see FilterBlock, or empty if the table has none. The footer is FOOTER_SIZE
+ * bytes at the very end of the file: the offset and length of the index block
+ * and of the filter block, the number of entries, the highest sequence number,
+ * the format version and the magic number.
+ *
+ * The file is written under a temporary name and renamed once it is complete
+ * and synced, so a crash never leaves a partial SSTable behind.
+ */
+final class SSTableWriter {
+    static final int BLOCK_SIZE = 4096;
+    static final int FOOTER_SIZE = 52;
+    static final int FORMAT_VERSION = 4;
+    static final int RESTART_INTERVAL = 16;
+    static final long MAGIC = 0x534d5553514c5353L; // "SMUSQLSS"
+
+    private final Path path;
+    private final Path tempPath;
+    private final FileChannel channel;
+    private final int bitsPerKey;
+    private final CompressionCodec codec;
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private int[] restarts = new int[BLOCK_SIZE / 64];  // The offsets of the restart points of the open block
+    private byte[] lastKeyBytes;
+    private int blockEntries;
+    private int numBlocks;
+    private long offset;
+    private long entryCount;
+    private long maxSequence;
+    private String firstKey;
+    private String lastKey;
+    private int[] keyHashes = new int[1024];  // for the filter, built once all keys are known
+
+    /**
+     * Constructor
+     *
+     * @param path:       the file to write, which must not exist yet
+     * @param bitsPerKey: the size of the bloom filter per key, or 0 to write none
+     * @param codec:      the compression of the data blocks
+     */
+    SSTableWriter(Path path, int bitsPerKey, CompressionCodec codec) throws IOException {
+        this.path = path;
+        this.bitsPerKey = bitsPerKey;
+        this.codec = codec;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.channel = FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends an entry to the file. Entries have to be added in increasing key
+     * order, each key at most once.
+     */
+    void add(Entry entry) throws IOException {
+        String key = entry.key;
+        if (lastKey != null && key.compareTo(lastKey) <= 0) {
+            throw new IllegalArgumentException("Keys must be added in increasing order: " + key + " after " + lastKey);
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int shared = 0;
+        if (blockEntries % RESTART_INTERVAL == 0) {
+            int restart = blockEntries / RESTART_INTERVAL;
+            if (restart == restarts.length) {
+                restarts = Arrays.copyOf(restarts, restarts.length * 2);
+            }
+            restarts[restart] = block.size();
+        } else {
+            int max = Math.min(keyBytes.length, lastKeyBytes.length);
+            while (shared < max && keyBytes[shared] == lastKeyBytes[shared]) {
+                shared++;
+            }
+        }
+        writeVarint(block, shared);
+        writeVarint(block, keyBytes.length - shared);
+        block.write(keyBytes, shared, keyBytes.length - shared);
+        writeVarlong(block, entry.sequence);
+        writeValue(block, entry.value);
+        lastKeyBytes = keyBytes;
+        maxSequence = Math.max(maxSequence, entry.sequence);
+        if (bitsPerKey > 0) {
+            if (entryCount == keyHashes.length) {
+                keyHashes = Arrays.copyOf(keyHashes, keyHashes.length * 2);
+            }
+            keyHashes[(int) entryCount] = FilterBlock.hash(key);
+        }
+        if (firstKey == null) {
+            firstKey = key;
+        }
+        blockEntries++;
+        entryCount++;
+        lastKey = key;
+        if (block.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes written so far, counting the open data block.
+     */
+    long size() {
+        return offset + block.size();
+    }
+
+    /**
+     * Writes the index block, the filter block and the footer, syncs the file to disk and moves
+     * it to its final name.
+     *
+     * @param id:    the number of the table, which orders it among the tables of its tree
+     * @param cache: the cache the data blocks of the table are read through
+     * @return the SSTable, open for reading
+     */
+    SSTable finish(long id, BlockCache cache) throws IOException {
+        flushBlock();
+        long indexOffset = offset;
+        ByteArrayOutputStream indexBlock = new ByteArrayOutputStream(index.size() + 5);
+        writeVarint(indexBlock, numBlocks);
+        byte[] firstKeyBytes = (firstKey == null ? "" : firstKey).getBytes(StandardCharsets.UTF_8);
+        writeVarint(indexBlock, firstKeyBytes.length);
+        indexBlock.writeBytes(firstKeyBytes);
+        index.writeTo(indexBlock);
+        write(indexBlock.toByteArray());
+
+        long filterOffset = offset;
+        byte[] filterBlock = bitsPerKey > 0
+                ? FilterBlock.build(keyHashes, (int) entryCount, bitsPerKey)
+                : new byte[0];
+        write(filterBlock);
+
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        footer.putLong(indexOffset);
+        footer.putInt(indexBlock.size());
+        footer.putLong(filterOffset);
+        footer.putInt(filterBlock.length);
+        footer.putLong(entryCount);
+        footer.putLong(maxSequence);
+        footer.putInt(FORMAT_VERSION);
+        footer.putLong(MAGIC);
+        footer.flip();
+        while (footer.hasRemaining()) {
+            channel.write(footer);
+        }
+        channel.force(true);
+        channel.close();
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        return SSTable.open(path, id, cache);
+    }
+
+    /**
+     * Gives up on the file, deleting what was written of it.
+     */
+    void abort() {
+        try {
+            channel.close();
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            // nothing more can be done about a temporary file, it is removed when the tree is opened again
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockEntries == 0) {
+            return;
+        }
+        int numRestarts = (blockEntries + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+        ByteArrayOutputStream contents = new ByteArrayOutputStream(5 + block.size() + 4 * (numRestarts + 1));
+        writeVarint(contents, blockEntries);
+        block.writeTo(contents);
+        ByteBuffer restartPoints = ByteBuffer.allocate(4 * (numRestarts + 1)).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < numRestarts; i++) {
+            restartPoints.putInt(restarts[i]);
+        }
+        restartPoints.putInt(numRestarts);
+        contents.writeBytes(restartPoints.array());
+
+        byte[] uncompressed = contents.toByteArray();
+        ByteArrayOutputStream stored = new ByteArrayOutputStream(uncompressed.length + 1);
+        byte[] compressed = codec == CompressionCodec.LZ4 ? Lz4Codec.compress(uncompressed, uncompressed.length) : null;
+        if (compressed != null && compressed.length < uncompressed.length - uncompressed.length / 8) {
+            stored.write(CompressionCodec.LZ4.id);
+            writeVarint(stored, uncompressed.length);
+            stored.writeBytes(compressed);
+        } else {
+            // Not worth decompressing
+            stored.write(CompressionCodec.NONE.id);
+            stored.writeBytes(uncompressed);
+        }
+        int length = stored.size();
+        write(stored.toByteArray());
+
+        byte[] keyBytes = lastKey.getBytes(StandardCharsets.UTF_8);
+        writeVarint(index, keyBytes.length);
+        index.writeBytes(keyBytes);
+        writeVarlong(index, offset - length);
+        writeVarint(index, length);
+        numBlocks++;
+        block.reset();
+        blockEntries = 0;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer);
+        }
+    }
+
+    /**
+     * Encodes an entry as a restart point of a data block, with its whole key.
+     */
+    static void writeEntry(ByteArrayOutputStream out, Entry entry) {
+        byte[] keyBytes = entry.key.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, 0);
+        writeVarint(out, keyBytes.length);
+        out.writeBytes(keyBytes);
+        writeVarlong(out, entry.sequence);
+        writeValue(out, entry.value);
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+        } else {
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, valueBytes.length + 1);
+            out.writeBytes(valueBytes);
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        writeVarlong(out, value & 0xffffffffL);
+    }
+
+    static void writeVarlong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,109 @@
+package edu.smu.smusql.lsm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Size-tiered compaction: all tables stay in level 0, and tables of similar
+ * size form a tier. Once a tier holds 'minThreshold' tables, up to
+ * 'maxThreshold' of them are merged into a single table, which is about as
+ * large as all of them together and so joins a higher tier. A table is in the
+ * same tier as its neighbours when its size is between half and one and a
+ * half times their average size.
+ *
+ * A lookup of a key stops at the newest table that holds it, so only tables
+ * that are next to each other in age can be merged, or the merged table could
+ * not be placed between the older and the newer tables. Tiers are therefore runs of neighbouring
+ * tables; as flushed tables are small and merged tables large, the tables
+ * grow with their age and the tiers form naturally.
+ *
+ * An entry is rewritten once per tier it climbs, and the number of tiers
+ * grows with the logarithm of the data size in base 'minThreshold', so the
+ * write amplification stays bounded and is lower than with leveled
+ * compaction. Reads may have to look at one table per tier and then some.
+ */
+public class SizeTieredCompaction extends CompactionStrategy {
+    public static final int DEFAULT_MIN_THRESHOLD = 4;
+    public static final int DEFAULT_MAX_THRESHOLD = 32;
+    private static final double TIER_LOW = 0.5;
+    private static final double TIER_HIGH = 1.5;
+
+    private final int minThreshold;
+    private final int maxThreshold;
+
+    /**
+     * Creates size-tiered compaction with the default settings.
+     */
+    public SizeTieredCompaction() {
+        this(DEFAULT_MIN_THRESHOLD, DEFAULT_MAX_THRESHOLD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param minThreshold The number of tables in a tier that triggers their compaction, at least 2.
+     * @param maxThreshold The largest number of tables merged at once, at least minThreshold.
+     */
+    public SizeTieredCompaction(int minThreshold, int maxThreshold) {
+        if (minThreshold < 2 || maxThreshold < minThreshold) {
+            throw new IllegalArgumentException("Invalid size-tiered compaction settings: minThreshold="
+                    + minThreshold + ", maxThreshold=" + maxThreshold);
+        }
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+    }
+
+    @Override
+    Compaction pick(List<List<SSTable>> levels) {
+        List<SSTable> tables = levels.get(0);
+        // grow tiers from the newest tables, which are the smallest
+        int end = tables.size();
+        while (end >= minThreshold) {
+            int start = tierStart(tables, end, maxThreshold);
+            if (end - start >= minThreshold) {
+                List<SSTable> inputs = new ArrayList<>(tables.subList(start, end));
+                // nothing is older than the oldest table, so its tier can drop the tombstones
+                boolean dropTombstones = start == 0 && levels.size() == 1;
+                return new Compaction(inputs, 0, Long.MAX_VALUE, dropTombstones, false);
+            }
+            end = start;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of tables in the newest tier, where the flushed
+     * tables pile up when compactions fall behind.
+     */
+    @Override
+    int pendingTables(List<List<SSTable>> levels) {
+        List<SSTable> tables = levels.get(0);
+        return tables.size() - tierStart(tables, tables.size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the start of the tier that ends at 'end' (exclusive), holding
+     * at most 'maxTables' tables.
+     */
+    private static int tierStart(List<SSTable> tables, int end, int maxTables) {
+        if (end == 0) {
+            return 0;
+        }
+        int start = end - 1;
+        double average = tables.get(start).getFileSize();
+        while (start > 0 && end - start < maxTables) {
+            long size = tables.get(start - 1).getFileSize();
+            if (size < average * TIER_LOW || size > average * TIER_HIGH) {
+                break;
+            }
+            start--;
+            average += (size - average) / (end - start);
+        }
+        return start;
+    }
+
+    @Override
+    public String toString() {
+        return "SizeTieredCompaction(minThreshold=" + minThreshold + ", maxThreshold=" + maxThreshold + ")";
+    }
+}
@@ -0,0 +1,29 @@
+package edu.smu.smusql.lsm;
+
+/**
+ * When the write-ahead log of an LSMTree is synced to disk, which decides
+ * which writes survive a crash of the machine. Every policy survives a crash
+ * of the process alone, except for GROUP_COMMIT, which may lose the writes of
+ * the last interval either way.
+ */
+public enum WalSyncPolicy {
+    /**
+     * Every write is synced before it returns. No acknowledged write is lost,
+     * but every write waits for the disk.
+     */
+    EVERY_WRITE,
+
+    /**
+     * Writes are buffered, and the buffer is written and synced once per
+     * group commit interval of the config. Writes do not wait for the disk,
+     * and a crash loses at most the writes of the last interval.
+     */
+    GROUP_COMMIT,
+
+    /**
+     * Every write is handed to the operating system before it returns, but
+     * never synced. A crash of the process loses nothing, a crash of the
+     * machine whatever the operating system had not written yet.
+     */
+    NONE
+}
@@ -0,0 +1,158 @@
+package edu.smu.smusql.lsm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The write-ahead log of a MemTable: every write to the MemTable is appended
+ * to the log first, so that the MemTable can be rebuilt after a crash. Once
+ * the MemTable is flushed to an SSTable, its log is deleted.
+ *
+ * The log is a sequence of records, each the 4 byte length of its entry, the
+ * 4 byte CRC32 of the entry and the entry itself with its sequence number,
+ * encoded as a restart point of a data block (see SSTableWriter). A crash in
+ * the middle of an append leaves a record that is cut short or fails its
+ * checksum, which ends the replay.
+ *
+ * When the log reaches the disk depends on its WalSyncPolicy. The methods are
+ * synchronized, as the group commits run on a thread of their own.
+ */
+final class WriteAheadLog implements AutoCloseable {
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final WalSyncPolicy syncPolicy;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();  // the records of a group commit
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+    private boolean dirty;  // whether records were written since the last sync
+    private boolean closed;
+
+    /**
+     * Creates a new, empty log.
+     *
+     * @param path:       the file of the log, which must not exist yet
+     * @param syncPolicy: when the appended records are synced to disk
+     */
+    WriteAheadLog(Path path, WalSyncPolicy syncPolicy) throws IOException {
+        this.path = path;
+        this.syncPolicy = syncPolicy;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Appends a write to the log. With EVERY_WRITE, the record is on disk
+     * when the method returns; with GROUP_COMMIT, it is once the next
+     * sync() returns.
+     *
+     * @param write: the entry written, a tombstone for a removal
+     */
+    synchronized void append(Entry write) throws IOException {
+        entry.reset();
+        SSTableWriter.writeEntry(entry, write);
+        crc.reset();
+        crc.update(entry.toByteArray());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(entry.size());
+        header.putInt((int) crc.getValue());
+        buffer.writeBytes(header.array());
+        entry.writeTo(buffer);
+        if (syncPolicy != WalSyncPolicy.GROUP_COMMIT) {
+            writeBuffer();
+            if (syncPolicy == WalSyncPolicy.EVERY_WRITE) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered records and syncs the log to disk, unless the
+     * policy is NONE. Does nothing once the log is closed.
+     */
+    synchronized void sync() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBuffer();
+        if (dirty && syncPolicy != WalSyncPolicy.NONE) {
+            channel.force(false);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Syncs the log and closes it; the records stay in the file until delete().
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            sync();
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the log and deletes its file, once its MemTable is flushed.
+     */
+    synchronized void delete() throws IOException {
+        closed = true;
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private void writeBuffer() throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        buffer.reset();
+        dirty = true;
+    }
+
+    /**
+     * Reads the writes of a log back, up to its first incomplete or
+     * corrupted record. The records of concurrent writes may be out of
+     * sequence in the log, so of several writes of a key the one with the
+     * highest sequence number is kept, whatever its position.
+     *
+     * @param path:     the file of the log
+     * @param memTable: the latest entry of each key, which the writes are applied to
+     */
+    static void replay(Path path, Map<String, Entry> memTable) throws IOException {
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.BIG_ENDIAN);
+        CRC32 crc = new CRC32();
+        while (log.remaining() >= HEADER_SIZE) {
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length < 0 || length > log.remaining()) {
+                return;
+            }
+            crc.reset();
+            crc.update(log.array(), log.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+            Entry entry = DataBlock.decodeEntry(log.slice(log.position(), length));
+            log.position(log.position() + length);
+            memTable.merge(entry.key, entry, (older, newer) -> newer.sequence > older.sequence ? newer : older);
+        }
+    }
+}
@@ -9,10 +9,16 @@ import java.util.List;
 public class Create {
     private String tablename;
     private List<String> columns;
+    private String primaryKey; // null if the table declares none
 
     public Create(String tablename, List<String> columns) {
+        this(tablename, columns, null);
+    }
+
+    public Create(String tablename, List<String> columns, String primaryKey) {
         this.tablename = tablename;
         this.columns = columns;
+        this.primaryKey = primaryKey;
     }
 
     public String getTablename() {
@@ -22,4 +28,8 @@ public class Create {
     public List<String> getColumns() {
         return columns;
     }
+
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
 }
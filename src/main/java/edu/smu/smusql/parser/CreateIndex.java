@@ -0,0 +1,43 @@
+package edu.smu.smusql.parser;
+
+import java.util.List;
+
+/*
+ * Object used for greater clarity of
+ * required parameters for SQL statement
+ */
+public class CreateIndex {
+    private String indexname;
+    private String tablename;
+    private List<String> columns;
+    private IndexType type;
+    private int order; // 0 if the storage's default order applies
+
+    public CreateIndex(String indexname, String tablename, List<String> columns, IndexType type, int order) {
+        this.indexname = indexname;
+        this.tablename = tablename;
+        this.columns = columns;
+        this.type = type;
+        this.order = order;
+    }
+
+    public String getIndexname() {
+        return indexname;
+    }
+
+    public String getTablename() {
+        return tablename;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public IndexType getType() {
+        return type;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+}
@@ -0,0 +1,23 @@
+package edu.smu.smusql.parser;
+
+/*
+ * Object used for greater clarity of
+ * required parameters for SQL statement
+ */
+public class DropIndex {
+    private String indexname;
+    private String tablename; // only set when the statement names the table with ON
+
+    public DropIndex(String indexname, String tablename) {
+        this.indexname = indexname;
+        this.tablename = tablename;
+    }
+
+    public String getIndexname() {
+        return indexname;
+    }
+
+    public String getTablename() {
+        return tablename;
+    }
+}
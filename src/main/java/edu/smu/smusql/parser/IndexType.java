@@ -0,0 +1,9 @@
+package edu.smu.smusql.parser;
+
+/*
+ * Structure requested by CREATE INDEX ... USING <type>
+ */
+public enum IndexType {
+    BTREE,
+    HASH
+}
@@ -3,7 +3,10 @@ package edu.smu.smusql.parser;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Parser {
 
@@ -20,6 +23,8 @@ public class Parser {
             case "UPDATE" -> parseUpdate(tokens);
             case "INSERT" -> parseInsert(tokens);
             case "DELETE" -> parseDelete(tokens);
+            case "DROP" -> parseDrop(tokens);
+            case "VACUUM" -> parseVacuum(tokens);
             default -> throw new InvalidCommandException("ERROR: Unknown command");
         };
     }
@@ -46,13 +51,116 @@ public class Parser {
         return columns;
     }
 
-    private static Create parseCreate(String[] tokens) {
+    private static Object parseCreate(String[] tokens) {
         // CREATE TABLE student (id, name, age, gpa, deans_list)
-        if (!tokens[1].equalsIgnoreCase("TABLE")) {
+        if (tokens.length > 1 && tokens[1].equalsIgnoreCase("INDEX")) {
+            return parseCreateIndex(tokens);
+        }
+        if (tokens.length < 3 || !tokens[1].equalsIgnoreCase("TABLE")) {
             throw new InvalidCommandException("ERROR: Invalid CREATE TABLE syntax");
         }
         String tablename = tokens[2];
-        return new Create(tablename, getColumns(3, tokens));
+
+        // CREATE TABLE student (id PRIMARY KEY, name, ...) makes id the primary key
+        List<String> words = getColumns(3, tokens);
+        List<String> columns = new ArrayList<>();
+        String primaryKey = null;
+        for (int i = 0; i < words.size(); i++) {
+            if (!words.get(i).equalsIgnoreCase("PRIMARY")) {
+                columns.add(words.get(i));
+                continue;
+            }
+            // PRIMARY KEY has to follow its column within the same definition, and only once
+            if (primaryKey != null || i == 0 || tokens[3 + i - 1].endsWith(",")
+                    || i + 1 == words.size() || !words.get(i + 1).equalsIgnoreCase("KEY")) {
+                throw new InvalidCommandException("ERROR: Invalid CREATE TABLE syntax");
+            }
+            primaryKey = words.get(i - 1);
+            i++;
+            if (!tokens[3 + i].endsWith(",") && i + 1 < words.size()) {
+                throw new InvalidCommandException("ERROR: Invalid CREATE TABLE syntax");
+            }
+        }
+        return new Create(tablename, columns, primaryKey);
+    }
+
+    private static CreateIndex parseCreateIndex(String[] tokens) {
+        // CREATE INDEX student_gpa ON student(gpa) USING BTREE WITH (ORDER = 64), where USING and WITH are optional
+        if (tokens.length < 5 || !tokens[3].equalsIgnoreCase("ON")) {
+            throw new InvalidCommandException("ERROR: Invalid CREATE INDEX syntax");
+        }
+        String indexname = tokens[2];
+
+        int withIdx = 4;
+        while (withIdx < tokens.length && !tokens[withIdx].equalsIgnoreCase("WITH")) {
+            withIdx++;
+        }
+        int order = 0;
+        if (withIdx < tokens.length) {
+            order = parseIndexOrder(String.join(" ", Arrays.copyOfRange(tokens, withIdx + 1, tokens.length)));
+        }
+
+        int usingIdx = 4;
+        while (usingIdx < withIdx && !tokens[usingIdx].equalsIgnoreCase("USING")) {
+            usingIdx++;
+        }
+        IndexType type = IndexType.BTREE;
+        if (usingIdx < withIdx) {
+            if (usingIdx != withIdx - 2) {
+                throw new InvalidCommandException("ERROR: Invalid CREATE INDEX syntax");
+            }
+            try {
+                type = IndexType.valueOf(tokens[usingIdx + 1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new InvalidCommandException("ERROR: Unsupported index type");
+            }
+        }
+
+        // the table and column list may be split across tokens, e.g. "student (gpa)"
+        String target = String.join(" ", Arrays.copyOfRange(tokens, 4, usingIdx));
+        int open = target.indexOf('(');
+        int close = target.lastIndexOf(')');
+        if (open <= 0 || close != target.length() - 1) {
+            throw new InvalidCommandException("ERROR: Invalid CREATE INDEX syntax");
+        }
+        String tablename = target.substring(0, open).trim();
+        List<String> columns = new ArrayList<>();
+        for (String column : target.substring(open + 1, close).split(",")) {
+            columns.add(column.trim());
+        }
+        // several columns make a composite index, e.g. orders(user_id, product_id)
+        if (columns.contains("") || new HashSet<>(columns).size() != columns.size()) {
+            throw new InvalidCommandException("ERROR: Invalid CREATE INDEX syntax");
+        }
+        return new CreateIndex(indexname, tablename, columns, type, order);
+    }
+
+    private static int parseIndexOrder(String clause) {
+        // (ORDER = 64) sets the max children of a B+ tree node, which has to be at least 3 to split
+        Matcher matcher = Pattern.compile("\\(\\s*ORDER\\s*=\\s*(\\d{1,9})\\s*\\)", Pattern.CASE_INSENSITIVE)
+                .matcher(clause);
+        if (!matcher.matches()) {
+            throw new InvalidCommandException("ERROR: Invalid CREATE INDEX syntax");
+        }
+        int order = Integer.parseInt(matcher.group(1));
+        if (order < 3) {
+            throw new InvalidCommandException("ERROR: Index order must be at least 3");
+        }
+        return order;
+    }
+
+    private static DropIndex parseDrop(String[] tokens) {
+        // DROP INDEX student_gpa, optionally followed by ON student
+        if (tokens.length < 3 || !tokens[1].equalsIgnoreCase("INDEX")) {
+            throw new InvalidCommandException("ERROR: Invalid DROP syntax");
+        }
+        if (tokens.length == 3) {
+            return new DropIndex(tokens[2], null);
+        }
+        if (tokens.length == 5 && tokens[3].equalsIgnoreCase("ON")) {
+            return new DropIndex(tokens[2], tokens[4]);
+        }
+        throw new InvalidCommandException("ERROR: Invalid DROP INDEX syntax");
     }
 
     public static Select parseSelect(String[] tokens) {
@@ -94,5 +202,13 @@ public class Parser {
         return new Delete(tablename, getConditions(4, tokens));
     }
 
+    private static Vacuum parseVacuum(String[] tokens) {
+        // VACUUM student, or VACUUM on its own for every table
+        if (tokens.length > 2) {
+            throw new InvalidCommandException("ERROR: Invalid VACUUM syntax");
+        }
+        return new Vacuum(tokens.length == 2 ? tokens[1] : null);
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package edu.smu.smusql.parser;
+
+/*
+ * Object used for greater clarity of
+ * required parameters for SQL statement
+ */
+public class Vacuum {
+    private String tablename; // null when every table should be vacuumed
+
+    public Vacuum(String tablename) {
+        this.tablename = tablename;
+    }
+
+    public String getTablename() {
+        return tablename;
+    }
+}
@@ -1,15 +1,13 @@
 package edu.smu.smusql.table;
 
-import edu.smu.smusql.interfaces.StorageInterface;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
+import edu.smu.smusql.bitmap.RoaringBitmap;
 import edu.smu.smusql.bplus.*;
 import edu.smu.smusql.interfaces.RowEntry;
 import edu.smu.smusql.interfaces.StorageInterface;
 import edu.smu.smusql.parser.*;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 
 
 public class BPlusTreeStorage implements StorageInterface {
@@ -28,7 +26,12 @@ public class BPlusTreeStorage implements StorageInterface {
     @Override
     public void insert(Insert insert) {
         BPlusTreeTable table = tables.get(insert.getTablename());
-        table.addRow(createRowMap(table.getColumns(), insert.getValues()));
+        RowEntry row = createRowMap(table.getColumns(), insert.getValues());
+        if (table.getPrimaryKey() != null
+                && table.findPrimaryKey(row.getValue(table.getPrimaryKey())) != BPlusTree.NOT_FOUND) {
+            throw new InvalidCommandException("ERROR: Duplicate primary key");
+        }
+        table.addRow(row);
     }
     @Override
     public List<String> getColumns(String tableName) {
@@ -44,25 +47,28 @@ public class BPlusTreeStorage implements StorageInterface {
     public int delete(Delete delete) {
 
         BPlusTreeTable table = tables.get(delete.getTablename());
-        if (delete.getConditions().size() == 1) {
-            List<Integer> indices = processOneWhereConditions(delete.getConditions().get(0), table);
-            int numDeleted = 0;
-            for (Integer index : indices) {
-                table.getRow(index).setDeleted();
-                numDeleted++;
-            }
-            return numDeleted;
-        }
-        if (delete.getConditions().size() == 2) {
-            List<Integer> indices = processTwoWhereConditions(delete.getConditions(), table);
-            int numDeleted = 0;
-            for (Integer index : indices) {
-                table.getRow(index).setDeleted();
-                numDeleted++;
+        if (delete.getConditions().isEmpty()) {
+            return 0;
+        }
+        int primaryKeyIndex = processPrimaryKey(delete.getConditions(), table);
+        if (primaryKeyIndex != BPlusTree.CANNOT_COMPARE) {
+            if (primaryKeyIndex == BPlusTree.NOT_FOUND) {
+                return 0;
             }
-            return numDeleted;
+            table.deleteRow(primaryKeyIndex);
+            autovacuum(table);
+            return 1;
+        }
+        int deletedCount = forEachIndexedMatch(delete.getConditions(), table, table::deleteRow);
+        if (deletedCount >= 0) {
+            autovacuum(table);
+            return deletedCount;
         }
-        return 0;
+        RoaringBitmap indices = processWhereConditions(delete.getConditions(), table);
+
+        indices.forEach(table::deleteRow);
+        autovacuum(table);
+        return indices.cardinality();
     }
 
     
@@ -72,51 +78,83 @@ public class BPlusTreeStorage implements StorageInterface {
         if (select.getConditions().size() == 0) {
             return table.getAllEntries();
         }
-        if (select.getConditions().size() == 1) {
-            List<Integer> indices = processOneWhereConditionsSorted(select.getConditions().get(0), table);
-            return getRowsFromSortedIndices(indices, table);
+        int primaryKeyIndex = processPrimaryKey(select.getConditions(), table);
+        if (primaryKeyIndex != BPlusTree.CANNOT_COMPARE) {
+            return primaryKeyIndex == BPlusTree.NOT_FOUND ? new ArrayList<>()
+                    : new ArrayList<>(List.of(table.getRow(primaryKeyIndex)));
         }
-        List<Integer> indices = processTwoWhereConditionsSorted(select.getConditions(), table);
-        return getRowsFromSortedIndices(indices, table);
+        RoaringBitmap indices = processWhereConditions(select.getConditions(), table);
+        return getRowsFromIndices(indices, table);
     }
 
 
-
-
     @Override
     public int update(Update update) {
         BPlusTreeTable table = tables.get(update.getTablename());
-    List<Integer> indices;
-    
-    if (update.getConditions().size() == 1) {
-        indices = processOneWhereConditions(update.getConditions().get(0), table);
-    } else if (update.getConditions().size() == 2) {
-        indices = processTwoWhereConditions(update.getConditions(), table);
-    } else {
-        return 0;
-    }
-    
-    // Batch process updates
-    int numUpdated = 0;
-    for (Integer index : indices) {
-        if (!table.getRow(index).isDeleted()) {
-            // Remove old value from B+ tree
-            RowEntry row = table.getRow(index);
-            row.setDeleted();
-            
-            // Update value and B+ tree
-            row.addOrUpdateValue(update.getColumnname(), update.getValue());
-            table.addRow(row);
-            numUpdated++;
+        if (update.getConditions().isEmpty()) {
+            return 0;
         }
-    }
-    return numUpdated;
+        boolean setsPrimaryKey = update.getColumnname().equals(table.getPrimaryKey());
+        int primaryKeyIndex = processPrimaryKey(update.getConditions(), table);
+        if (primaryKeyIndex != BPlusTree.CANNOT_COMPARE) {
+            if (primaryKeyIndex == BPlusTree.NOT_FOUND) {
+                return 0;
+            }
+            if (setsPrimaryKey) {
+                checkPrimaryKeyUpdate(table, primaryKeyIndex, update.getValue());
+            }
+            table.updateRow(primaryKeyIndex, update.getColumnname(), update.getValue());
+            return 1;
+        }
+        if (!setsPrimaryKey) {
+            int updatedCount = forEachIndexedMatch(update.getConditions(), table,
+                    index -> table.updateRow(index, update.getColumnname(), update.getValue()));
+            if (updatedCount >= 0) {
+                return updatedCount;
+            }
+        }
+        RoaringBitmap indices = processWhereConditions(update.getConditions(), table);
+        if (setsPrimaryKey && !indices.isEmpty()) {
+            if (indices.cardinality() > 1) {
+                // the rows would all end up with the same primary key
+                throw new InvalidCommandException("ERROR: Duplicate primary key");
+            }
+            indices.forEach(index -> checkPrimaryKeyUpdate(table, index, update.getValue()));
+        }
+
+        // Batch process updates, each row keeps its slot and only the indexes on the column change
+        indices.forEach(index -> table.updateRow(index, update.getColumnname(), update.getValue()));
+        return indices.cardinality();
     }
 
 
     @Override
     public void create(Create create) {
-        tables.put(create.getTablename(), new BPlusTreeTable(create.getColumns()));
+        tables.put(create.getTablename(), new BPlusTreeTable(create.getColumns(), create.getPrimaryKey()));
+    }
+
+    @Override
+    public void createIndex(CreateIndex createIndex) {
+        // the B+ tree also answers equality lookups, so HASH indexes are built as B+ trees too
+        int order = createIndex.getOrder() == 0 ? BPlusTree.DEFAULT_ORDER : createIndex.getOrder();
+        tables.get(createIndex.getTablename()).createIndex(createIndex.getColumns(), order);
+    }
+
+    @Override
+    public void dropIndex(CreateIndex createIndex) {
+        tables.get(createIndex.getTablename()).dropIndex(createIndex.getColumns());
+    }
+
+    @Override
+    public int vacuum(Vacuum vacuum) {
+        if (vacuum.getTablename() != null) {
+            return tables.get(vacuum.getTablename()).vacuum();
+        }
+        int reclaimed = 0;
+        for (BPlusTreeTable table : tables.values()) {
+            reclaimed += table.vacuum();
+        }
+        return reclaimed;
     }
 
 
@@ -124,6 +162,65 @@ public class BPlusTreeStorage implements StorageInterface {
      * HELPER METHODS
      */
 
+    private void autovacuum(BPlusTreeTable table) {
+        if (table.needsVacuum()) {
+            table.vacuum();
+        }
+    }
+
+    /**
+     * Throws if giving the row in the given slot a new primary key value would
+     * make it share the key with another row.
+     */
+    private void checkPrimaryKeyUpdate(BPlusTreeTable table, int index, String value) {
+        int existing = table.findPrimaryKey(value);
+        if (existing != BPlusTree.NOT_FOUND && existing != index) {
+            throw new InvalidCommandException("ERROR: Duplicate primary key");
+        }
+    }
+
+    /**
+     * Answers conditions joined by AND with a single probe of the primary key
+     * (see BPlusTreeTable.findPrimaryKey) when one of them is an equality on the
+     * primary key. The probe returns the only row that can match, which is then
+     * checked against the conditions, so no list or bitmap of row indices is built.
+     *
+     * @return the slot of the matching row, BPlusTree.NOT_FOUND if no row
+     *         matches, or BPlusTree.CANNOT_COMPARE if the primary index does not
+     *         apply and the conditions have to be processed as usual
+     */
+    private int processPrimaryKey(List<WhereCondition> whereConditions, BPlusTreeTable table) {
+        String primaryKey = table.getPrimaryKey();
+        if (primaryKey == null) {
+            return BPlusTree.CANNOT_COMPARE;
+        }
+        WhereCondition probe = null;
+        for (WhereCondition whereCondition : whereConditions) {
+            if ("OR".equals(whereCondition.getLogicalOperator())) {
+                return BPlusTree.CANNOT_COMPARE;
+            }
+            if (probe == null && whereCondition.isExactMatch() && whereCondition.getColumn().equals(primaryKey)) {
+                probe = whereCondition;
+            }
+        }
+        if (probe == null) {
+            return BPlusTree.CANNOT_COMPARE;
+        }
+
+        int index = table.findPrimaryKey(probe.getValue());
+        if (index == BPlusTree.NOT_FOUND) {
+            return index;
+        }
+        RowEntry row = table.getRow(index);
+        for (WhereCondition whereCondition : whereConditions) {
+            // the probe itself too, as NaN shares its key with itself but never equals it
+            if (!whereCondition.evaluate(row)) {
+                return BPlusTree.NOT_FOUND;
+            }
+        }
+        return index;
+    }
+
      private RowEntry createRowMap(List<String> columns, List<String> values) {
         RowEntry row = new RowEntry();
         for (int i = 0; i < columns.size(); i++) {
@@ -133,131 +230,280 @@ public class BPlusTreeStorage implements StorageInterface {
     }
 
 
-    private List<Integer> processOneWhereConditions(WhereCondition whereCondition, BPlusTreeTable table) {
+    /**
+     * Writes the rows matching a single condition on an indexed column as the
+     * scan of the column's tree reaches them, instead of collecting every match
+     * into a bitmap first. The scan reads a snapshot of the tree, so it keeps
+     * seeing the tree as it was before the statement: a row whose key the
+     * statement changes, e.g. by UPDATE t SET age = 50 WHERE age > 30, is not
+     * found again further on, and the rows the statement deletes do not make
+     * the scan start over.
+     *
+     * @param action: the write, called once with the slot of every matching row
+     * @return the number of matching rows, or -1 if the conditions are not a
+     *         single condition that a column tree can answer
+     */
+    private int forEachIndexedMatch(List<WhereCondition> whereConditions, BPlusTreeTable table, IntConsumer action) {
+        if (whereConditions.size() != 1) {
+            return -1;
+        }
+        WhereCondition whereCondition = whereConditions.get(0);
+        BPlusTree tree = table.getTreeForColumn(whereCondition.getColumn());
+        if (tree == null) {
+            return -1;
+        }
+        String value = whereCondition.getValue();
+        try (BPlusTreeSnapshot snapshot = tree.snapshot()) {
+            SnapshotCursor cursor = switch (whereCondition.getOperator()) {
+                case "=" -> snapshot.scan(value, true, value, true);
+                case ">" -> snapshot.scan(value, false, null, false);
+                case ">=" -> snapshot.scan(value, true, null, false);
+                case "<" -> snapshot.scan(null, false, value, false);
+                case "<=" -> snapshot.scan(null, false, value, true);
+                default -> null;
+            };
+            if (cursor == null) {
+                return -1;
+            }
+            int count = 0;
+            while (cursor.hasNext()) {
+                action.accept(cursor.nextInt());
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private IntList processOneWhereConditions(WhereCondition whereCondition, BPlusTreeTable table) {
         String column = whereCondition.getColumn();
         String operator = whereCondition.getOperator();
         String value = whereCondition.getValue();
 
+        BPlusTree tree = table.getTreeForColumn(column);
+        IntList indices = tree == null ? null : searchTree(tree, operator, value);
+        return indices == null ? scanWhereCondition(whereCondition, table) : indices;
+    }
+
+    /**
+     * Searches a tree for the keys satisfying the operator.
+     *
+     * @return the matching row indices, or null if the tree cannot answer the operator
+     */
+    private IntList searchTree(BPlusTree tree, String operator, String value) {
         switch (operator) {
             case "=":
-                return table.getTreeForColumn(column).searchEqualTo(value);
+                return tree.searchEqualTo(value);
             case ">":
-                return table.getTreeForColumn(column).searchGreaterThan(value);
+                return tree.searchGreaterThan(value);
             case "<":
-                return table.getTreeForColumn(column).searchLessThan(value);
+                return tree.searchLessThan(value);
             case ">=":
-                return table.getTreeForColumn(column).searchGreaterThanOrEqualTo(value);
+                return tree.searchGreaterThanOrEqualTo(value);
             case "<=":
-                return table.getTreeForColumn(column).searchLessThanOrEqualTo(value);
+                return tree.searchLessThanOrEqualTo(value);
             default:
-                return new ArrayList<Integer>();
+                return null;
         }
     }
 
-    private List<Integer> processTwoWhereConditions(List<WhereCondition> whereConditions, BPlusTreeTable table) {
-        List<Integer> condition1 = processOneWhereConditions(whereConditions.get(0), table);
-        List<Integer> condition2 = processOneWhereConditions(whereConditions.get(1), table);
-        if (whereConditions.get(0).getLogicalOperator().equals("AND")) {
-            return intersectLists(condition1, condition2);
+    /**
+     * Answers conditions joined by AND with a single probe of a composite index
+     * when one has every prefix column fixed by an equality. The last column of
+     * the index is searched with an equality or range condition on it if there is
+     * one, and the other conditions, the prefix equalities included, are checked
+     * against the rows it returns.
+     *
+     * @return the matching row indices, or null if no composite index applies
+     */
+    private RoaringBitmap processCompositeIndex(List<WhereCondition> whereConditions, BPlusTreeTable table) {
+        Map<String, String> equalityValues = new HashMap<>();
+        for (WhereCondition whereCondition : whereConditions) {
+            if ("OR".equals(whereCondition.getLogicalOperator())) {
+                return null;
+            }
+            if (whereCondition.isExactMatch()) {
+                equalityValues.putIfAbsent(whereCondition.getColumn(), whereCondition.getValue());
+            }
         }
-        return unionLists(condition1, condition2);
-    }
 
-    private List<Integer> intersectLists(List<Integer> list1, List<Integer> list2) {
-        return list1.stream().filter(list2::contains).collect(Collectors.toList());
-    }
+        // pick the index covering the most conditions
+        CompositeIndex bestIndex = null;
+        WhereCondition bestLastCondition = null;
+        int bestCovered = 0;
+        for (CompositeIndex compositeIndex : table.getCompositeIndexes()) {
+            if (!equalityValues.keySet().containsAll(compositeIndex.getPrefixColumns())) {
+                continue;
+            }
+            WhereCondition lastCondition = null;
+            for (WhereCondition whereCondition : whereConditions) {
+                if (whereCondition.getColumn().equals(compositeIndex.getLastColumn())
+                        && !whereCondition.getOperator().equals("!=")
+                        && (lastCondition == null || whereCondition.isExactMatch())) {
+                    lastCondition = whereCondition;
+                }
+            }
+            int covered = compositeIndex.getPrefixColumns().size() + (lastCondition == null ? 0 : 1);
+            if (covered > bestCovered) {
+                bestIndex = compositeIndex;
+                bestLastCondition = lastCondition;
+                bestCovered = covered;
+            }
+        }
+        if (bestIndex == null) {
+            return null;
+        }
 
-    private List<Integer> unionLists(List<Integer> list1, List<Integer> list2) {
-        return Stream.concat(list1.stream(), list2.stream())
-                .distinct()
-                .collect(Collectors.toList());
-    }
+        List<String> prefixValues = new ArrayList<>();
+        for (String column : bestIndex.getPrefixColumns()) {
+            prefixValues.add(equalityValues.get(column));
+        }
+        BPlusTree tree = bestIndex.getTree(prefixValues);
+        if (tree == null) {
+            return new RoaringBitmap();
+        }
+        IntList indices = bestLastCondition == null ? null
+                : searchTree(tree, bestLastCondition.getOperator(), bestLastCondition.getValue());
+        if (indices == null) {
+            // the last column cannot be searched, so check its condition on the whole group
+            indices = tree.searchAll();
+            bestLastCondition = null;
+        }
 
-    private List<Integer> processOneWhereConditionsSorted(WhereCondition whereCondition, BPlusTreeTable table) {
-        List<Integer> indices = processOneWhereConditions(whereCondition, table);
-        return indices.stream().sorted().collect(Collectors.toList());
+        // a group holds every value of its canonical form, including NaN, which is never equal
+        List<WhereCondition> residualConditions = new ArrayList<>();
+        for (WhereCondition whereCondition : whereConditions) {
+            if (whereCondition != bestLastCondition) {
+                residualConditions.add(whereCondition);
+            }
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        toBitmap(indices).forEach(index -> {
+            RowEntry row = table.getRow(index);
+            if (row != null && residualConditions.stream().allMatch(condition -> condition.evaluate(row))) {
+                result.add(index);
+            }
+        });
+        return result;
     }
 
-    private List<Integer> processTwoWhereConditionsSorted(List<WhereCondition> whereConditions, BPlusTreeTable table) {
-        List<Integer> condition1 = processOneWhereConditionsSorted(whereConditions.get(0), table);
-        List<Integer> condition2 = processOneWhereConditionsSorted(whereConditions.get(1), table);
-        
-        if (whereConditions.get(0).getLogicalOperator().equals("AND")) {
-            return mergeSortedListsIntersection(condition1, condition2);
+    /**
+     * Evaluates the condition against every live row, for columns without an index
+     * and operators the B+ tree cannot answer.
+     */
+    private IntList scanWhereCondition(WhereCondition whereCondition, BPlusTreeTable table) {
+        IntList indices = new IntList();
+        for (int i = 0; i < table.getNumSlots(); i++) {
+            RowEntry row = table.getRow(i);
+            if (row != null && whereCondition.evaluate(row)) {
+                indices.add(i);
+            }
         }
-        return mergeSortedListsUnion(condition1, condition2);
+        return indices;
     }
-    
-    private List<Integer> mergeSortedListsIntersection(List<Integer> list1, List<Integer> list2) {
-        List<Integer> result = new ArrayList<>();
-        int i = 0, j = 0;
-        
-        while (i < list1.size() && j < list2.size()) {
-            int val1 = list1.get(i);
-            int val2 = list2.get(j);
-            
-            if (val1 == val2) {
-                result.add(val1);
-                i++;
-                j++;
-            } else if (val1 < val2) {
-                i++;
+
+    /**
+     * Answers the conditions through a composite index when one applies. Otherwise
+     * looks up every condition in its column tree and combines the resulting row
+     * index bitmaps from left to right, using each condition's logical operator
+     * to decide between an intersection and a union with the next one.
+     */
+    private RoaringBitmap processWhereConditions(List<WhereCondition> whereConditions, BPlusTreeTable table) {
+        RoaringBitmap compositeResult = processCompositeIndex(whereConditions, table);
+        if (compositeResult != null) {
+            return compositeResult;
+        }
+        if (whereConditions.stream().noneMatch(condition -> "OR".equals(condition.getLogicalOperator()))) {
+            return processAndConditions(whereConditions, table);
+        }
+        RoaringBitmap result = toBitmap(processOneWhereConditions(whereConditions.get(0), table));
+        for (int i = 1; i < whereConditions.size(); i++) {
+            RoaringBitmap next = toBitmap(processOneWhereConditions(whereConditions.get(i), table));
+            if ("OR".equals(whereConditions.get(i - 1).getLogicalOperator())) {
+                result = RoaringBitmap.or(result, next);
             } else {
-                j++;
+                result = RoaringBitmap.and(result, next);
             }
         }
         return result;
     }
-    
-    private List<Integer> mergeSortedListsUnion(List<Integer> list1, List<Integer> list2) {
-        List<Integer> result = new ArrayList<>();
-        int i = 0, j = 0;
-        
-        while (i < list1.size() && j < list2.size()) {
-            int val1 = list1.get(i);
-            int val2 = list2.get(j);
-            
-            if (val1 == val2) {
-                result.add(val1);
-                i++;
-                j++;
-            } else if (val1 < val2) {
-                result.add(val1);
-                i++;
-            } else {
-                result.add(val2);
-                j++;
+
+    /**
+     * Intersects the results of conditions that are all joined by AND. A lower
+     * and an upper bound on the same indexed column are answered by a single
+     * range scan, which stops at the upper bound instead of reading the tree to
+     * its end and intersecting two half-open ranges.
+     */
+    private RoaringBitmap processAndConditions(List<WhereCondition> whereConditions, BPlusTreeTable table) {
+        boolean[] answered = new boolean[whereConditions.size()];
+        RoaringBitmap result = null;
+        for (int i = 0; i < whereConditions.size(); i++) {
+            if (answered[i]) {
+                continue;
             }
+            WhereCondition whereCondition = whereConditions.get(i);
+            IntList indices = null;
+            BPlusTree tree = table.getTreeForColumn(whereCondition.getColumn());
+            if (tree != null && isBound(whereCondition)) {
+                for (int j = i + 1; j < whereConditions.size(); j++) {
+                    WhereCondition other = whereConditions.get(j);
+                    if (!answered[j] && other.getColumn().equals(whereCondition.getColumn())
+                            && isBound(other) && isLowerBound(other) != isLowerBound(whereCondition)) {
+                        indices = searchRange(tree, whereCondition, other);
+                        answered[j] = indices != null;
+                        break;
+                    }
+                }
+            }
+            if (indices == null) {
+                indices = processOneWhereConditions(whereCondition, table);
+            }
+            RoaringBitmap next = toBitmap(indices);
+            result = result == null ? next : RoaringBitmap.and(result, next);
         }
-        
-        // Add remaining elements
-        while (i < list1.size()) {
-            result.add(list1.get(i++));
-        }
-        while (j < list2.size()) {
-            result.add(list2.get(j++));
-        }
-        
         return result;
     }
 
-    private List<RowEntry> getRowsFromSortedIndices(List<Integer> indices, BPlusTreeTable table) {
-        List<RowEntry> rows = new ArrayList<>();
-        List<RowEntry> inTable = table.getAllEntries();
-        
-        if (indices.isEmpty()) {
-            return rows;
-        }
-        
-        int indicesPointer = 0;
-        for (int i = 0; i < inTable.size() && indicesPointer < indices.size(); i++) {
-            if (i == indices.get(indicesPointer)) {
-                if (!inTable.get(i).isDeleted()) {
-                    rows.add(inTable.get(i));
-                }
-                indicesPointer++;
-            }
+    private boolean isBound(WhereCondition whereCondition) {
+        String operator = whereCondition.getOperator();
+        return operator.equals(">") || operator.equals(">=") || operator.equals("<") || operator.equals("<=");
+    }
+
+    private boolean isLowerBound(WhereCondition whereCondition) {
+        return whereCondition.getOperator().startsWith(">");
+    }
+
+    /**
+     * Scans a tree for the keys between a lower and an upper bound condition,
+     * given in either order.
+     *
+     * @return the matching row indices, or null if the tree cannot compare a bound
+     */
+    private IntList searchRange(BPlusTree tree, WhereCondition first, WhereCondition second) {
+        WhereCondition lower = isLowerBound(first) ? first : second;
+        WhereCondition upper = isLowerBound(first) ? second : first;
+        RangeCursor cursor = tree.scan(lower.getValue(), lower.getOperator().equals(">="),
+                upper.getValue(), upper.getOperator().equals("<="));
+        if (cursor == null) {
+            return null;
         }
+        IntList indices = new IntList();
+        cursor.drainTo(indices);
+        return indices;
+    }
+
+    private RoaringBitmap toBitmap(IntList indices) {
+        // sorting first lets every add take the bitmap's append fast path
+        indices.sort();
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < indices.size(); i++) {
+            bitmap.add(indices.get(i));
+        }
+        return bitmap;
+    }
+
+    private List<RowEntry> getRowsFromIndices(RoaringBitmap indices, BPlusTreeTable table) {
+        List<RowEntry> rows = new ArrayList<>(indices.cardinality());
+        indices.forEach(index -> rows.add(table.getRow(index)));
         return rows;
     }
 }
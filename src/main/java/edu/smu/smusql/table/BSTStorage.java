@@ -32,6 +32,40 @@ public class BSTStorage implements StorageInterface {
         bstMap.put(tableName, bst);
     }
 
+    /**
+     * Creates a hash index on a column of the specified table. The BST itself is
+     * always keyed on the primary key, so every index type is served by the
+     * table's hash index.
+     *
+     * @param createIndex The CreateIndex object containing table name and column.
+     */
+    @Override
+    public void createIndex(CreateIndex createIndex) {
+        tables.get(createIndex.getTablename()).createIndex(createIndex.getColumns());
+    }
+
+    /**
+     * Drops an index previously created with createIndex.
+     *
+     * @param createIndex The CreateIndex object the index was created with.
+     */
+    @Override
+    public void dropIndex(CreateIndex createIndex) {
+        tables.get(createIndex.getTablename()).dropIndex(createIndex.getColumns());
+    }
+
+    /**
+     * Vacuums the specified table. Deleted rows are removed from both the BST and
+     * the table when they are deleted, so there are no dead row slots to reclaim.
+     *
+     * @param vacuum The Vacuum object containing the table name.
+     * @return The number of row slots reclaimed, always 0.
+     */
+    @Override
+    public int vacuum(Vacuum vacuum) {
+        return 0;
+    }
+
     /**
      * Inserts a new row into the specified table's BST.
      *
@@ -69,7 +103,7 @@ public class BSTStorage implements StorageInterface {
         String primaryKey = table.getColumns().get(0); // Assuming first column is primary key
 
         // Find rows matching conditions
-        List<RowEntry> rowsToDelete = filterRows(table.getRows(), conditions);
+        List<RowEntry> rowsToDelete = filterRows(candidateRows(table, conditions), conditions);
 
         int deletedCount = 0;
         for (RowEntry row : rowsToDelete) {
@@ -105,7 +139,7 @@ public class BSTStorage implements StorageInterface {
         }
 
         // Find rows matching conditions
-        return filterRows(table.getRows(), conditions);
+        return filterRows(candidateRows(table, conditions), conditions);
     }
 
     /**
@@ -126,7 +160,7 @@ public class BSTStorage implements StorageInterface {
         String primaryKey = table.getColumns().get(0); // Assuming first column is primary key
 
         // Find rows matching conditions
-        List<RowEntry> rowsToUpdate = filterRows(table.getRows(), conditions);
+        List<RowEntry> rowsToUpdate = filterRows(candidateRows(table, conditions), conditions);
         int updatedCount = 0;
 
         for (RowEntry row : rowsToUpdate) {
@@ -138,7 +172,7 @@ public class BSTStorage implements StorageInterface {
             }
 
             // Update the row
-            row.addOrUpdateValue(columnName, newValue);
+            table.updateValue(row, columnName, newValue);
 
             // If primary key is updated, re-insert the updated row
             if (columnName.equals(primaryKey)) {
@@ -228,6 +262,39 @@ public class BSTStorage implements StorageInterface {
         return result;
     }
 
+    /**
+     * Narrows down the rows that have to be checked against the conditions. When
+     * the conditions are joined by AND and some of them are equalities on indexed
+     * columns, only the rows found through the index covering the most of those
+     * columns can match.
+     *
+     * @param table      The table to search.
+     * @param conditions The list of conditions to apply.
+     * @return The rows that may match the conditions.
+     */
+    private List<RowEntry> candidateRows(Table table, List<WhereCondition> conditions) {
+        for (WhereCondition condition : conditions) {
+            if ("OR".equals(condition.getLogicalOperator())) {
+                return table.getRows();
+            }
+        }
+        Map<String, String> equalityValues = new HashMap<>();
+        for (WhereCondition condition : conditions) {
+            if (condition.isExactMatch()) {
+                equalityValues.putIfAbsent(condition.getColumn(), condition.getValue());
+            }
+        }
+        List<String> indexColumns = table.findBestIndex(equalityValues.keySet());
+        if (indexColumns == null) {
+            return table.getRows();
+        }
+        List<String> indexValues = new ArrayList<>();
+        for (String column : indexColumns) {
+            indexValues.add(equalityValues.get(column));
+        }
+        return table.findRowsByColumnValues(indexColumns, indexValues);
+    }
+
     /**
      * Removes specified rows from the main list of rows.
      *
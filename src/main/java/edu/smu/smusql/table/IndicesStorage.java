@@ -8,6 +8,7 @@ import edu.smu.smusql.parser.*;
 
 // v1: uses hash map of tableName to Table
 // v2: processes 2 equality where conditions to improve performance
+// v3: probes the index covering the most equality conditions, including composite indexes
 
 public class IndicesStorage implements StorageInterface {
     private final Map<String, Table> tables = new HashMap<>();
@@ -60,10 +61,12 @@ public class IndicesStorage implements StorageInterface {
     @Override
     public int update(Update update) {
 
-        List<RowEntry> rows = processWhereConditions(tables.get(update.getTablename()), update.getConditions());
+        Table table = tables.get(update.getTablename());
+        // copy the matches, the lookup may hand back an index bucket that the update modifies
+        List<RowEntry> rows = new ArrayList<>(processWhereConditions(table, update.getConditions()));
         int updatedCount = 0;
         for (RowEntry row : rows) {
-            row.addOrUpdateValue(update.getColumnname(), update.getValue());
+            table.updateValue(row, update.getColumnname(), update.getValue());
             updatedCount++;
         }
         return updatedCount;
@@ -75,6 +78,23 @@ public class IndicesStorage implements StorageInterface {
         tables.put(create.getTablename(), newTable);
     }
 
+    @Override
+    public void createIndex(CreateIndex createIndex) {
+        // every index here is a hash index, BTREE requests are served by one as well
+        tables.get(createIndex.getTablename()).createIndex(createIndex.getColumns());
+    }
+
+    @Override
+    public void dropIndex(CreateIndex createIndex) {
+        tables.get(createIndex.getTablename()).dropIndex(createIndex.getColumns());
+    }
+
+    @Override
+    public int vacuum(Vacuum vacuum) {
+        // deleted rows are dropped from the table straight away, so there are no dead slots
+        return 0;
+    }
+
     /*
      * HELPER METHODS
      */
@@ -110,24 +130,40 @@ public class IndicesStorage implements StorageInterface {
                     .toList();
         }
 
-        // Use first equality condition for initial index lookup
-        WhereCondition firstCondition = equalityConditions.get(0);
-        List<RowEntry> matchingRows = table.findRowsByColumnValue(
-                firstCondition.getColumn(),
-                firstCondition.getValue());
-
-        // If there is a second equality condition, apply it
-        if (equalityConditions.size() == 2) {
-            WhereCondition secondCondition = equalityConditions.get(1);
-            matchingRows = matchingRows.stream()
-                    .filter(row -> table.findRowsByColumnValue(secondCondition.getColumn(), secondCondition.getValue())
-                            .contains(row))
-                    .toList();
+        // Conditions joined by OR cannot be answered from a single lookup
+        for (WhereCondition condition : conditions) {
+            if ("OR".equals(condition.getLogicalOperator())) {
+                return table.getRows().stream()
+                        .filter(row -> row.evaluateAllConditions(conditions))
+                        .toList();
+            }
         }
 
-        // Apply any remaining non-equality conditions
+        // Probe the index covering the most equality columns, a composite index answers them all at once
+        Map<String, String> equalityValues = new LinkedHashMap<>();
+        for (WhereCondition condition : equalityConditions) {
+            equalityValues.putIfAbsent(condition.getColumn(), condition.getValue());
+        }
+        List<String> indexColumns = table.findBestIndex(equalityValues.keySet());
+        if (indexColumns == null) {
+            indexColumns = List.of(equalityConditions.get(0).getColumn());
+        }
+        List<String> indexValues = new ArrayList<>();
+        for (String column : indexColumns) {
+            indexValues.add(equalityValues.get(column));
+        }
+        List<RowEntry> matchingRows = table.findRowsByColumnValues(indexColumns, indexValues);
+
+        // Check the conditions the lookup did not cover against the matching rows only
+        for (WhereCondition condition : equalityConditions) {
+            if (!indexColumns.contains(condition.getColumn())
+                    || !condition.getValue().equals(equalityValues.get(condition.getColumn()))) {
+                remainingConditions.add(condition);
+            }
+        }
+        // every condition here is joined by AND, so the rows must satisfy all of them
         return matchingRows.stream()
-                .filter(row -> row.evaluateAllConditions(remainingConditions))
+                .filter(row -> remainingConditions.stream().allMatch(condition -> condition.evaluate(row)))
                 .toList();
     }
 }
\ No newline at end of file
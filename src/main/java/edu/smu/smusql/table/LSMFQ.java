@@ -5,19 +5,67 @@ import edu.smu.smusql.interfaces.StorageInterface;
 import edu.smu.smusql.parser.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Keeps the rows of each table in a memtable and an SSTable sorted by id.
+ * Once the memtable is full it is swapped for a fresh one, and a background
+ * thread merges the full one into the SSTable, so that an insert never waits
+ * for a merge. Inserts slow down while SLOWDOWN_FLUSHED_MEMTABLES full
+ * memtables of a table wait to be merged, and wait while
+ * STOP_FLUSHED_MEMTABLES do.
+ *
+ * A memtable is a concurrent skip list of the rows keyed by id, so that any
+ * number of threads may insert into it at once; the statements only share a
+ * lock, which swapping a full memtable takes exclusively.
+ *
+ * Deleted rows are marked, skipped by the queries and dropped by the next merge.
+ * A merge that fails leaves its memtable waiting, so the failure is thrown by
+ * the later inserts of the table rather than letting them wait forever.
+ * An update of the id would leave a row out of order in its memtable or
+ * SSTable, so the row is taken out and inserted again under its new id instead.
+ */
 public class LSMFQ implements StorageInterface {
 
     private static final int MAX_MEMTABLE_SIZE = 1000;
+    private static final int SLOWDOWN_FLUSHED_MEMTABLES = 2;
+    private static final int STOP_FLUSHED_MEMTABLES = 4;
+    private static final long SLOWDOWN_DELAY_NANOS = 100_000;  // The delay of an insert while the merges catch up
+    private static final Comparator<RowEntry> BY_ID = Comparator.comparing(row -> row.getValue("id"));
+    private static final char KEY_SEPARATOR = '\u0000';  // Sorts before every character of an id
 
-    private final ConcurrentMap<String, List<RowEntry>> memTable = new ConcurrentHashMap<>();
+    // The memtable rows keyed by id and insertion number, which keeps rows with the same id apart
+    private final ConcurrentMap<String, ConcurrentSkipListMap<String, RowEntry>> memTable = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> memTableSizes = new ConcurrentHashMap<>();
+    private final AtomicLong insertions = new AtomicLong();
+    // Statements share the read lock, swapping a memtable takes the write lock
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // Full memtables waiting to be merged, oldest first. The lists below are never changed once
+    // they are in the maps, a merge puts changed copies in under the lock of this object instead.
+    private final ConcurrentMap<String, List<Collection<RowEntry>>> flushedMemTables = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, List<RowEntry>> ssTable = new ConcurrentHashMap<>();
     private final Map<String, List<String>> tableColumns = new ConcurrentHashMap<>();
+    // The failure of a merge by table, which fails the later writes since the merge never finishes
+    private final ConcurrentMap<String, RuntimeException> compactionErrors = new ConcurrentHashMap<>();
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsmfq-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public boolean tableExists(String tableName) {
@@ -30,15 +78,34 @@ public class LSMFQ implements StorageInterface {
         if (tableExists(tableName)) {
             throw new IllegalStateException("Table " + tableName + " already exists");
         }
-        memTable.put(tableName, new ArrayList<>());
+        synchronized (this) {
+            flushedMemTables.put(tableName, List.of());
+            ssTable.put(tableName, List.of());
+        }
+        memTableSizes.put(tableName, new AtomicInteger());
+        memTable.put(tableName, new ConcurrentSkipListMap<>());
         // Store the columns for this table
         tableColumns.put(tableName, create.getColumns());
     }
 
+    @Override
+    public void createIndex(CreateIndex createIndex) {
+        // every query scans the memtable and SSTable rows, so there is nothing to maintain
+    }
+
+    @Override
+    public void dropIndex(CreateIndex createIndex) {
+    }
+
+    @Override
+    public int vacuum(Vacuum vacuum) {
+        // deleted rows are dropped by the background merges, nothing is left behind for long
+        return 0;
+    }
+
     @Override
     public void insert(Insert insert) {
         String tableName = insert.getTablename();
-        List<RowEntry> memTableRows = memTable.get(tableName);
 
         RowEntry newRow = new RowEntry();
         List<String> values = insert.getValues();
@@ -47,28 +114,57 @@ public class LSMFQ implements StorageInterface {
         for (int i = 0; i < columns.size(); i++) {
             newRow.addOrUpdateValue(columns.get(i), values.get(i));
         }
-        memTableRows.add(newRow);
 
-        // If memtable is full, move data into ssTable
-        if (memTableRows.size() >= MAX_MEMTABLE_SIZE) {
-            compact(tableName);
+        checkCompactionError(tableName);
+        // Give the merges some time to catch up
+        if (flushedMemTables.get(tableName).size() >= SLOWDOWN_FLUSHED_MEMTABLES) {
+            LockSupport.parkNanos(SLOWDOWN_DELAY_NANOS);
+        }
+        ConcurrentSkipListMap<String, RowEntry> full;
+        swapLock.readLock().lock();
+        try {
+            full = putInMemTable(tableName, newRow);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        // If memtable is full, swap it for a fresh one and merge it into the ssTable in the background
+        if (full != null) {
+            flush(tableName, full);
         }
     }
 
     @Override
     public int delete(Delete delete) {
         String tableName = delete.getTablename();
-        List<RowEntry> memTableRows = memTable.get(tableName);
         List<WhereCondition> conditions = delete.getConditions();
 
         int[] deletedCount = {0};  // Single-element array as a mutable counter
-        memTableRows.removeIf(row -> {
-            boolean toDelete = row.evaluateAllConditions(conditions);
-            if (toDelete) {
-                deletedCount[0]++;  // Increment the counter
+        swapLock.readLock().lock();
+        try {
+            memTable.get(tableName).values().removeIf(row -> {
+                boolean toDelete = row.evaluateAllConditions(conditions);
+                if (toDelete) {
+                    deletedCount[0]++;  // Increment the counter
+                }
+                return toDelete;
+            });
+            memTableSizes.get(tableName).addAndGet(-deletedCount[0]);
+
+            // The flushed rows cannot be removed from their lists, they are marked instead
+            synchronized (this) {
+                for (Collection<RowEntry> rows : flushedRows(tableName)) {
+                    for (RowEntry row : rows) {
+                        if (!row.isDeleted() && row.evaluateAllConditions(conditions)) {
+                            row.setDeleted();
+                            deletedCount[0]++;
+                        }
+                    }
+                }
             }
-            return toDelete;
-        });
+        } finally {
+            swapLock.readLock().unlock();
+        }
         return deletedCount[0];
     }
 
@@ -79,20 +175,25 @@ public class LSMFQ implements StorageInterface {
 
         List<RowEntry> result = new ArrayList<>();
 
-        // Scan memTable and ssTable
-        if (memTable.containsKey(tableName)) {
-            for (RowEntry row : memTable.get(tableName)) {
-                if (row.evaluateAllConditions(conditions)) {
-                    result.add(row);
+        // Scan memTable, then the flushed memtables and the ssTable
+        swapLock.readLock().lock();
+        try {
+            if (memTable.containsKey(tableName)) {
+                for (RowEntry row : memTable.get(tableName).values()) {
+                    if (row.evaluateAllConditions(conditions)) {
+                        result.add(row);
+                    }
                 }
             }
-        }
-        if (ssTable.containsKey(tableName)) {
-            for (RowEntry row : ssTable.get(tableName)) {
-                if (row.evaluateAllConditions(conditions)) {
-                    result.add(row);
+            for (Collection<RowEntry> rows : flushedRows(tableName)) {
+                for (RowEntry row : rows) {
+                    if (!row.isDeleted() && row.evaluateAllConditions(conditions)) {
+                        result.add(row);
+                    }
                 }
             }
+        } finally {
+            swapLock.readLock().unlock();
         }
 
         return result;
@@ -101,15 +202,60 @@ public class LSMFQ implements StorageInterface {
     @Override
     public int update(Update update) {
         String tableName = update.getTablename();
-        List<RowEntry> memTableRows = memTable.get(tableName);
         List<WhereCondition> conditions = update.getConditions();
 
+        // The rows are sorted by id, so a row whose id changes moves to the memtable
+        boolean movesRows = update.getColumnname().equals("id");
+
         int updatedCount = 0;
-        for (RowEntry row : memTableRows) {
-            if (row.evaluateAllConditions(conditions)) {
+        List<RowEntry> moved = new ArrayList<>();
+        ConcurrentSkipListMap<String, RowEntry> full = null;
+        swapLock.readLock().lock();
+        try {
+            Iterator<RowEntry> memTableRows = memTable.get(tableName).values().iterator();
+            while (memTableRows.hasNext()) {
+                RowEntry row = memTableRows.next();
+                if (row.evaluateAllConditions(conditions)) {
+                    if (movesRows) {
+                        memTableRows.remove();
+                        memTableSizes.get(tableName).decrementAndGet();
+                        moved.add(row);
+                    } else {
+                        row.addOrUpdateValue(update.getColumnname(), update.getValue());
+                    }
+                    updatedCount++;
+                }
+            }
+            synchronized (this) {
+                for (Collection<RowEntry> rows : flushedRows(tableName)) {
+                    for (RowEntry row : rows) {
+                        if (!row.isDeleted() && row.evaluateAllConditions(conditions)) {
+                            if (movesRows) {
+                                // The flushed lists cannot change, so the row is marked and copied
+                                row.setDeleted();
+                                moved.add(copyRow(tableName, row));
+                            } else {
+                                row.addOrUpdateValue(update.getColumnname(), update.getValue());
+                            }
+                            updatedCount++;
+                        }
+                    }
+                }
+            }
+
+            for (RowEntry row : moved) {
                 row.addOrUpdateValue(update.getColumnname(), update.getValue());
-                updatedCount++;
+                ConcurrentSkipListMap<String, RowEntry> filled = putInMemTable(tableName, row);
+                if (filled != null) {
+                    full = filled;
+                }
             }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        if (full != null) {
+            flush(tableName, full);
         }
         return updatedCount;
     }
@@ -125,19 +271,128 @@ public class LSMFQ implements StorageInterface {
         return getColumns(tableName).size();
     }
 
-    private void compact(String tableName) {
-        List<RowEntry> memTableRows = memTable.get(tableName);
-        List<RowEntry> ssTableRows = ssTable.computeIfAbsent(tableName, k -> new ArrayList<>());
-
-        // Simple compaction: merge memTable into ssTable and clear memTable
-        ssTableRows.addAll(memTableRows);
-        memTableRows.clear();
-
-        // Sort ssTable
-        ssTableRows.sort((r1, r2) -> {
-            String id1 = r1.getValue("id");
-            String id2 = r2.getValue("id");
-            return id1.compareTo(id2);
+    /**
+     * Puts a row into the memtable of a table under its id. The caller holds
+     * the read lock.
+     *
+     * @return the memtable if the row filled it, or null
+     */
+    private ConcurrentSkipListMap<String, RowEntry> putInMemTable(String tableName, RowEntry row) {
+        ConcurrentSkipListMap<String, RowEntry> memTableRows = memTable.get(tableName);
+        memTableRows.put(row.getValue("id") + KEY_SEPARATOR + insertions.incrementAndGet(), row);
+        return memTableSizes.get(tableName).incrementAndGet() >= MAX_MEMTABLE_SIZE ? memTableRows : null;
+    }
+
+    private RowEntry copyRow(String tableName, RowEntry row) {
+        RowEntry copy = new RowEntry();
+        for (String column : getColumns(tableName)) {
+            copy.addOrUpdateValue(column, row.getValue(column));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the row lists of a table that are not in its memtable: the
+     * flushed memtables and the ssTable, as one consistent snapshot.
+     */
+    private synchronized List<Collection<RowEntry>> flushedRows(String tableName) {
+        List<Collection<RowEntry>> rows = new ArrayList<>(flushedMemTables.getOrDefault(tableName, List.of()));
+        rows.add(ssTable.getOrDefault(tableName, List.of()));
+        return rows;
+    }
+
+    /**
+     * Swaps the full memtable of a table for a fresh one and schedules its
+     * merge into the ssTable, once fewer than STOP_FLUSHED_MEMTABLES wait.
+     */
+    private void flush(String tableName, ConcurrentSkipListMap<String, RowEntry> full) {
+        synchronized (this) {
+            while (flushedMemTables.get(tableName).size() >= STOP_FLUSHED_MEMTABLES) {
+                checkCompactionError(tableName);
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;  // The memtable grows past its size and is flushed after the next merge
+                }
+            }
+        }
+        swapLock.writeLock().lock();
+        try {
+            if (memTable.get(tableName) != full) {
+                return;  // Another insert swapped it already
+            }
+            synchronized (this) {
+                // No insert is running, so the full memtable does not change any more
+                List<Collection<RowEntry>> flushed = new ArrayList<>(flushedMemTables.get(tableName));
+                flushed.add(full.values());
+                flushedMemTables.put(tableName, flushed);
+            }
+            memTable.put(tableName, new ConcurrentSkipListMap<>());
+            memTableSizes.put(tableName, new AtomicInteger());
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        compactionExecutor.execute(() -> {
+            try {
+                compact(tableName);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    compactionErrors.putIfAbsent(tableName, e);
+                    notifyAll();
+                }
+            }
         });
     }
+
+    /**
+     * Throws the failure of a merge of the table, if any.
+     */
+    private void checkCompactionError(String tableName) {
+        RuntimeException error = compactionErrors.get(tableName);
+        if (error != null) {
+            throw new IllegalStateException("A merge of table " + tableName + " failed", error);
+        }
+    }
+
+    /**
+     * Runs on the background thread: merges the oldest flushed memtable of a
+     * table, whose rows are sorted by id already, into the ssTable in a single
+     * pass, leaving out the deleted rows.
+     */
+    private void compact(String tableName) {
+        Iterator<RowEntry> flushedRows;
+        List<RowEntry> ssTableRows;
+        synchronized (this) {
+            flushedRows = flushedMemTables.get(tableName).get(0).iterator();
+            ssTableRows = ssTable.get(tableName);
+        }
+
+        List<RowEntry> merged = new ArrayList<>(ssTableRows.size() + MAX_MEMTABLE_SIZE);
+        int i = 0;
+        RowEntry flushedRow = flushedRows.hasNext() ? flushedRows.next() : null;
+        while (i < ssTableRows.size() || flushedRow != null) {
+            // The older ssTable rows go first among rows with the same id
+            RowEntry row;
+            if (flushedRow == null
+                    || (i < ssTableRows.size() && BY_ID.compare(ssTableRows.get(i), flushedRow) <= 0)) {
+                row = ssTableRows.get(i++);
+            } else {
+                row = flushedRow;
+                flushedRow = flushedRows.hasNext() ? flushedRows.next() : null;
+            }
+            if (!row.isDeleted()) {
+                merged.add(row);
+            }
+        }
+
+        synchronized (this) {
+            // Only this thread replaces the ssTable, so it still holds the rows merged above
+            ssTable.put(tableName, merged);
+            List<Collection<RowEntry>> flushed = new ArrayList<>(flushedMemTables.get(tableName));
+            flushed.remove(0);
+            flushedMemTables.put(tableName, flushed);
+            notifyAll();
+        }
+    }
 }
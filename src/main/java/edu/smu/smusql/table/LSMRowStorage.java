@@ -0,0 +1,572 @@
+package edu.smu.smusql.table;
+
+import java.nio.file.Path;
+import java.util.*;
+import edu.smu.smusql.interfaces.RowEntry;
+import edu.smu.smusql.interfaces.StorageInterface;
+import edu.smu.smusql.parser.*;
+import edu.smu.smusql.lsm.*;
+
+
+/**
+ * An implementation of the StorageInterface that keeps the rows themselves in LSM Trees,
+ * rather than in Table objects on the heap as LSMStorage does. The heap only holds the
+ * columns and primary key of each table, so a table can grow well beyond the heap.
+ *
+ * The rows of a table live in one LSM Tree, which maps the primary key of each row (see
+ * sortKey), or an id for a table without a primary key, to the values of the row (see
+ * encodeRow). A single-column index is a second LSM Tree, which maps the value of its column
+ * joined with the key of the row (see indexKey) to the key of the row. An equality on the
+ * primary key is thus a single lookup in the rows tree, and the other conditions on the
+ * primary key or an indexed column read a range of keys instead of every row. Conditions
+ * that no tree answers, and composite indexes, fall back to a scan of the rows tree.
+ *
+ * WhereCondition compares two values as numbers when both parse as numbers, and as strings
+ * otherwise, so the keys keep numbers and strings apart: sortKey encodes a number so that the
+ * keys sort in numeric order, ahead of all strings, which sort as they are. A range condition
+ * reads its range of both parts, and the rows read are checked against all the conditions.
+ */
+public class LSMRowStorage implements StorageInterface {
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final char NUMBER_PREFIX = '\u0001';  // Starts the keys of numbers
+    private static final char STRING_PREFIX = '\u0002';  // Starts the keys of strings, and ends the numbers
+    private static final char STRINGS_END = '\u0003';
+
+    private final Path directory;  // Holds the LSM Trees, in a directory per table.
+    private final LSMConfig config;  // The settings of the LSM Trees.
+    private final Map<String, RowTable> tables = new HashMap<>();  // Stores table names mapped to their LSM Trees.
+
+    /**
+     * The columns and LSM Trees of a table.
+     */
+    private static final class RowTable {
+        private final List<String> columns;
+        private final String primaryKey;  // null if the table has none
+        private final LSMTree rows;
+        private final Map<String, LSMTree> indexes = new HashMap<>();  // Stores the index trees by column.
+        private long nextRowId = 0;  // The id of the next row, if the table has no primary key
+
+        private RowTable(List<String> columns, String primaryKey, LSMTree rows) {
+            this.columns = columns;
+            this.primaryKey = primaryKey;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * A range of keys of an LSM Tree.
+     */
+    private static final class KeyRange {
+        private final String from;
+        private final boolean fromInclusive;
+        private final String to;
+        private final boolean toInclusive;
+
+        private KeyRange(String from, boolean fromInclusive, String to, boolean toInclusive) {
+            this.from = from;
+            this.fromInclusive = fromInclusive;
+            this.to = to;
+            this.toInclusive = toInclusive;
+        }
+    }
+
+    /**
+     * Creates a storage whose LSM Trees live in a fresh temporary directory,
+     * which is deleted when the JVM exits.
+     */
+    public LSMRowStorage() {
+        this(LSMStorage.createTempDirectory());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> LSMStorage.deleteRecursively(directory)));
+    }
+
+    /**
+     * Creates a storage whose LSM Trees live in the given directory, with the default settings.
+     *
+     * @param directory The directory to hold the SSTable files.
+     */
+    public LSMRowStorage(Path directory) {
+        this(directory, LSMConfig.defaults());
+    }
+
+    /**
+     * Creates a storage whose LSM Trees live in the given directory.
+     *
+     * @param directory The directory to hold the SSTable files.
+     * @param config    The settings of the LSM Trees.
+     */
+    public LSMRowStorage(Path directory, LSMConfig config) {
+        this.directory = directory;
+        this.config = config;
+    }
+
+    /**
+     * Inserts a new row into the rows tree of the specified table and the index trees.
+     *
+     * @param insert The Insert object containing table name and row data.
+     * @throws InvalidCommandException if a row with the same primary key exists.
+     */
+    @Override
+    public void insert(Insert insert) {
+        RowTable table = tables.get(insert.getTablename());
+        RowEntry row = createRowMap(table.columns, insert.getValues());
+        String rowKey;
+        if (table.primaryKey != null) {
+            rowKey = sortKey(row.getValue(table.primaryKey).trim());
+            if (table.rows.get(rowKey) != null) {
+                throw new InvalidCommandException("ERROR: Duplicate primary key");
+            }
+        } else {
+            // Zero-padded, so that the rows sort in the order they were inserted
+            rowKey = String.format("%019d", table.nextRowId++);
+        }
+        putRow(table, rowKey, row);
+    }
+
+    /**
+     * Checks if a table with the specified name exists.
+     *
+     * @param tableName The name of the table.
+     * @return True if the table exists, false otherwise.
+     */
+    @Override
+    public boolean tableExists(String tableName) {
+        return tables.containsKey(tableName);
+    }
+
+    /**
+     * Returns the number of columns in the specified table.
+     *
+     * @param tableName The name of the table.
+     * @return The number of columns in the table.
+     */
+    @Override
+    public int getColumnCount(String tableName) {
+        return tables.get(tableName).columns.size();
+    }
+
+    /**
+     * Retrieves the list of column names for the specified table.
+     *
+     * @param tableName The name of the table.
+     * @return A list of column names.
+     */
+    @Override
+    public List<String> getColumns(String tableName) {
+        return tables.get(tableName).columns;
+    }
+
+    /**
+     * Deletes rows from the specified table based on the given conditions.
+     *
+     * @param delete The Delete object containing table name and conditions.
+     * @return The number of rows deleted.
+     */
+    @Override
+    public int delete(Delete delete) {
+        RowTable table = tables.get(delete.getTablename());
+        Map<String, RowEntry> rows = processWhereConditions(table, delete.getConditions());
+        for (Map.Entry<String, RowEntry> row : rows.entrySet()) {
+            removeRow(table, row.getKey(), row.getValue());
+        }
+        return rows.size();
+    }
+
+    /**
+     * Selects rows from a table based on the provided conditions.
+     *
+     * @param select The Select object containing table name and conditions.
+     * @return A list of RowEntry objects that match the conditions.
+     */
+    @Override
+    public List<RowEntry> select(Select select) {
+        RowTable table = tables.get(select.getTablename());
+        return new ArrayList<>(processWhereConditions(table, select.getConditions()).values());
+    }
+
+    /**
+     * Updates rows in a table based on specified conditions and updates the specified column.
+     * Setting the primary key moves the row to its new key in the rows tree.
+     *
+     * @param update The Update object containing table name, column name, value, and conditions.
+     * @return The number of rows updated.
+     * @throws InvalidCommandException if the update would give two rows the same primary key.
+     */
+    @Override
+    public int update(Update update) {
+        RowTable table = tables.get(update.getTablename());
+        String column = update.getColumnname();
+        Map<String, RowEntry> rows = processWhereConditions(table, update.getConditions());
+
+        if (column.equals(table.primaryKey)) {
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            if (rows.size() > 1) {
+                // the rows would all end up with the same primary key
+                throw new InvalidCommandException("ERROR: Duplicate primary key");
+            }
+            Map.Entry<String, RowEntry> row = rows.entrySet().iterator().next();
+            String newKey = sortKey(update.getValue().trim());
+            if (!newKey.equals(row.getKey()) && table.rows.get(newKey) != null) {
+                throw new InvalidCommandException("ERROR: Duplicate primary key");
+            }
+            removeRow(table, row.getKey(), row.getValue());
+            row.getValue().addOrUpdateValue(column, update.getValue());
+            putRow(table, newKey, row.getValue());
+            return 1;
+        }
+
+        LSMTree index = table.indexes.get(column);
+        for (Map.Entry<String, RowEntry> row : rows.entrySet()) {
+            if (index != null) {
+                // Move the row's entry in the column's index to the new value
+                index.remove(indexKey(row.getValue().getValue(column), row.getKey()));
+                index.put(indexKey(update.getValue(), row.getKey()), row.getKey());
+            }
+            row.getValue().addOrUpdateValue(column, update.getValue());
+            table.rows.put(row.getKey(), encodeRow(table.columns, row.getValue()));
+        }
+        return rows.size();
+    }
+
+    /**
+     * Creates a new table with the specified name and columns, and its rows tree.
+     *
+     * @param create The Create object containing table name, columns and primary key.
+     */
+    @Override
+    public void create(Create create) {
+        LSMTree rows = new LSMTree(directory.resolve(create.getTablename()).resolve("rows"), config);
+        tables.put(create.getTablename(), new RowTable(create.getColumns(), create.getPrimaryKey(), rows));
+    }
+
+    /**
+     * Creates an index on a column of the specified table. A single-column index, of either
+     * type, builds an LSM Tree over the column from the rows tree, except on the primary key,
+     * which the rows tree is sorted by already. Composite indexes build nothing, and the
+     * conditions on their columns scan the rows tree.
+     *
+     * @param createIndex The CreateIndex object containing table name, column and index type.
+     */
+    @Override
+    public void createIndex(CreateIndex createIndex) {
+        RowTable table = tables.get(createIndex.getTablename());
+        if (createIndex.getColumns().size() != 1 || createIndex.getColumns().get(0).equals(table.primaryKey)) {
+            return;
+        }
+        String column = createIndex.getColumns().get(0);
+        LSMTree index = new LSMTree(
+                directory.resolve(createIndex.getTablename()).resolve("indexes").resolve(column), config);
+        try (RangeScan scan = table.rows.scan(null, true, null, true)) {
+            while (scan.hasNext()) {
+                Map.Entry<String, String> row = scan.next();
+                index.put(indexKey(decodeRow(table.columns, row.getValue()).getValue(column), row.getKey()),
+                        row.getKey());
+            }
+        }
+        table.indexes.put(column, index);
+    }
+
+    /**
+     * Drops an index previously created with createIndex, along with its LSM Tree.
+     *
+     * @param createIndex The CreateIndex object the index was created with.
+     */
+    @Override
+    public void dropIndex(CreateIndex createIndex) {
+        if (createIndex.getColumns().size() == 1) {
+            LSMTree index = tables.get(createIndex.getTablename()).indexes.remove(createIndex.getColumns().get(0));
+            if (index != null) {
+                index.destroy();
+            }
+        }
+    }
+
+    /**
+     * Vacuums the specified table. The compactions of the LSM Trees drop the deleted rows
+     * already, so there are no dead row slots to reclaim.
+     *
+     * @param vacuum The Vacuum object containing the table name.
+     * @return The number of row slots reclaimed, always 0.
+     */
+    @Override
+    public int vacuum(Vacuum vacuum) {
+        return 0;
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    /**
+     * Creates a RowEntry object from a list of column names and corresponding values.
+     *
+     * @param columns The list of column names.
+     * @param values  The list of values for the columns.
+     * @return A RowEntry object representing a row in the table.
+     */
+    private RowEntry createRowMap(List<String> columns, List<String> values) {
+        RowEntry row = new RowEntry();
+        for (int i = 0; i < columns.size(); i++) {
+            row.addOrUpdateValue(columns.get(i), values.get(i));
+        }
+        return row;
+    }
+
+    /**
+     * Writes a row to the rows tree and the index trees of its table.
+     *
+     * @param table  The table.
+     * @param rowKey The key of the row in the rows tree.
+     * @param row    The row.
+     */
+    private void putRow(RowTable table, String rowKey, RowEntry row) {
+        table.rows.put(rowKey, encodeRow(table.columns, row));
+        for (Map.Entry<String, LSMTree> index : table.indexes.entrySet()) {
+            index.getValue().put(indexKey(row.getValue(index.getKey()), rowKey), rowKey);
+        }
+    }
+
+    /**
+     * Removes a row from the rows tree and the index trees of its table.
+     *
+     * @param table  The table.
+     * @param rowKey The key of the row in the rows tree.
+     * @param row    The row, as it is stored.
+     */
+    private void removeRow(RowTable table, String rowKey, RowEntry row) {
+        table.rows.remove(rowKey);
+        for (Map.Entry<String, LSMTree> index : table.indexes.entrySet()) {
+            index.getValue().remove(indexKey(row.getValue(index.getKey()), rowKey));
+        }
+    }
+
+    /**
+     * Returns the value of a row in the rows tree: the values of its columns in order,
+     * each preceded by its length and a colon, so that a value may hold any character.
+     *
+     * @param columns The columns of the table.
+     * @param row     The row.
+     * @return The encoded row.
+     */
+    private static String encodeRow(List<String> columns, RowEntry row) {
+        StringBuilder encoded = new StringBuilder();
+        for (String column : columns) {
+            String value = row.getValue(column);
+            encoded.append(value.length()).append(':').append(value);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Reads a row written by encodeRow.
+     *
+     * @param columns The columns of the table.
+     * @param encoded The encoded row.
+     * @return A RowEntry object representing the row.
+     */
+    private static RowEntry decodeRow(List<String> columns, String encoded) {
+        RowEntry row = new RowEntry();
+        int position = 0;
+        for (String column : columns) {
+            int colon = encoded.indexOf(':', position);
+            int end = colon + 1 + Integer.parseInt(encoded, position, colon, 10);
+            row.addOrUpdateValue(column, encoded.substring(colon + 1, end));
+            position = end;
+        }
+        return row;
+    }
+
+    /**
+     * Returns the key a value sorts by. A number is NUMBER_PREFIX and 16 hex digits of its
+     * bits, with the sign bit flipped for a positive number and all bits flipped for a negative
+     * one, so that the keys sort as the numbers do; 0 and -0 get the same key. Any other value
+     * is STRING_PREFIX and the value itself.
+     *
+     * @param value The value, as WhereCondition compares it.
+     * @return The key of the value.
+     */
+    private static String sortKey(String value) {
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return STRING_PREFIX + value;
+        }
+        long bits = Double.doubleToLongBits(number == 0 ? 0.0 : number);
+        bits = bits >= 0 ? bits ^ Long.MIN_VALUE : ~bits;
+        String hex = Long.toHexString(bits);
+        return NUMBER_PREFIX + "0".repeat(16 - hex.length()) + hex;
+    }
+
+    /**
+     * Returns the key of a row's entry in the index tree of a column: the sort key of the
+     * value of the column and the key of the row, joined with KEY_SEPARATOR. The separator
+     * sorts before every other character, so the keys sort by value first.
+     *
+     * @param value  The value of the column.
+     * @param rowKey The key of the row in the rows tree.
+     * @return The key of the entry.
+     */
+    private static String indexKey(String value, String rowKey) {
+        return sortKey(value.trim()) + KEY_SEPARATOR + rowKey;
+    }
+
+    /**
+     * Processes the conditions of a statement. Conditions joined by AND read the rows
+     * matching one of them that a tree answers, preferring an equality on the primary key;
+     * conditions joined by OR read the rows matching each of them if trees answer them all.
+     * Otherwise, the whole rows tree is scanned. The rows read are then checked against
+     * all the conditions.
+     *
+     * @param table      The table to search.
+     * @param conditions The conditions to apply.
+     * @return The matching rows by key, in the order of the keys.
+     */
+    private Map<String, RowEntry> processWhereConditions(RowTable table, List<WhereCondition> conditions) {
+        boolean isOr = conditions.size() == 2 && "OR".equals(conditions.get(0).getLogicalOperator());
+        List<WhereCondition> lookups = new ArrayList<>();
+        for (WhereCondition condition : conditions) {
+            if (!isIndexed(table, condition)) {
+                if (isOr) {
+                    lookups.clear();
+                    break;
+                }
+            } else if (isOr) {
+                lookups.add(condition);
+            } else if (lookups.isEmpty() || lookupPriority(table, condition) < lookupPriority(table, lookups.get(0))) {
+                lookups.clear();
+                lookups.add(condition);
+            }
+        }
+
+        Map<String, RowEntry> rows = new TreeMap<>();
+        if (lookups.isEmpty()) {
+            readRows(table, new KeyRange(null, true, null, true), rows);
+        }
+        for (WhereCondition condition : lookups) {
+            LSMTree index = table.indexes.get(condition.getColumn());
+            for (KeyRange range : keyRanges(condition, index != null)) {
+                if (index == null) {
+                    readRows(table, range, rows);
+                } else {
+                    readIndex(table, index, range, rows);
+                }
+            }
+        }
+        rows.values().removeIf(row -> !row.evaluateAllConditions(conditions));
+        return rows;
+    }
+
+    /**
+     * Returns whether a tree answers a condition: the rows tree for a condition on the
+     * primary key, or the index tree of the column.
+     */
+    private static boolean isIndexed(RowTable table, WhereCondition condition) {
+        return !condition.getOperator().equals("!=")
+                && (condition.getColumn().equals(table.primaryKey) || table.indexes.containsKey(condition.getColumn()));
+    }
+
+    /**
+     * Ranks the conditions a tree answers: an equality on the primary key reads a single
+     * row, and any equality fewer rows than a range, as a rule.
+     */
+    private static int lookupPriority(RowTable table, WhereCondition condition) {
+        if (!condition.isExactMatch()) {
+            return 2;
+        }
+        return condition.getColumn().equals(table.primaryKey) ? 0 : 1;
+    }
+
+    /**
+     * Returns the ranges of keys that hold the values matching a condition. For a number,
+     * the numbers are compared as numbers and the strings as strings, so a range condition
+     * reads a range of each; for a string, the numbers are compared as strings too, so a
+     * range condition reads all of them. An equality only reads the keys of its value.
+     *
+     * @param condition The condition, other than "!=".
+     * @param indexKeys If true, the ranges are of index keys (see indexKey), otherwise of
+     *                  the keys of the rows tree.
+     * @return The ranges.
+     */
+    private static List<KeyRange> keyRanges(WhereCondition condition, boolean indexKeys) {
+        String operator = condition.getOperator();
+        String key = sortKey(condition.getValue());
+        String numbers = String.valueOf(NUMBER_PREFIX);
+        String strings = String.valueOf(STRING_PREFIX);
+        String end = String.valueOf(STRINGS_END);
+
+        List<KeyRange> ranges = new ArrayList<>(2);
+        if (key.charAt(0) == NUMBER_PREFIX) {
+            ranges.add(keyRange(operator, key, numbers, strings, indexKeys));
+            if (!operator.equals("=")) {
+                ranges.add(keyRange(operator, STRING_PREFIX + condition.getValue(), strings, end, indexKeys));
+            }
+        } else {
+            if (!operator.equals("=")) {
+                ranges.add(new KeyRange(numbers, true, strings, false));
+            }
+            ranges.add(keyRange(operator, key, strings, end, indexKeys));
+        }
+        return ranges;
+    }
+
+    /**
+     * Returns the range of keys matching an operator and a sort key, within the part of the
+     * keys starting with 'start' and ending before 'end'. The index keys of a value v are
+     * v + KEY_SEPARATOR + the key of the row, all of which sort below v + '\u0001'.
+     */
+    private static KeyRange keyRange(String operator, String key, String start, String end, boolean indexKeys) {
+        String low = indexKeys ? key + KEY_SEPARATOR : key;
+        String high = indexKeys ? key + '\u0001' : key;
+        return switch (operator) {
+            case ">" -> new KeyRange(high, indexKeys, end, false);
+            case ">=" -> new KeyRange(low, true, end, false);
+            case "<" -> new KeyRange(start, true, low, false);
+            case "<=" -> new KeyRange(start, true, high, !indexKeys);
+            default -> new KeyRange(low, true, high, !indexKeys);  // "="
+        };
+    }
+
+    /**
+     * Reads the rows in a range of keys of the rows tree.
+     *
+     * @param table The table.
+     * @param range The range of keys.
+     * @param rows  The rows read so far by key, which the rows are added to.
+     */
+    private void readRows(RowTable table, KeyRange range, Map<String, RowEntry> rows) {
+        if (range.from != null && range.from.equals(range.to) && range.fromInclusive && range.toInclusive) {
+            String encoded = table.rows.get(range.from);
+            if (encoded != null) {
+                rows.put(range.from, decodeRow(table.columns, encoded));
+            }
+            return;
+        }
+        try (RangeScan scan = table.rows.scan(range.from, range.fromInclusive, range.to, range.toInclusive)) {
+            while (scan.hasNext()) {
+                Map.Entry<String, String> row = scan.next();
+                rows.put(row.getKey(), decodeRow(table.columns, row.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Reads the rows whose entries are in a range of keys of an index tree.
+     *
+     * @param table The table.
+     * @param index The index tree.
+     * @param range The range of index keys.
+     * @param rows  The rows read so far by key, which the rows are added to.
+     */
+    private void readIndex(RowTable table, LSMTree index, KeyRange range, Map<String, RowEntry> rows) {
+        try (RangeScan scan = index.scan(range.from, range.fromInclusive, range.to, range.toInclusive)) {
+            while (scan.hasNext()) {
+                String rowKey = scan.next().getValue();
+                if (!rows.containsKey(rowKey)) {
+                    rows.put(rowKey, decodeRow(table.columns, table.rows.get(rowKey)));
+                }
+            }
+        }
+    }
+}
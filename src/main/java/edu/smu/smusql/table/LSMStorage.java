@@ -1,5 +1,9 @@
 package edu.smu.smusql.table;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Stream;
 import edu.smu.smusql.interfaces.RowEntry;
@@ -12,10 +16,52 @@ import edu.smu.smusql.lsm.*;
  * An implementation of the StorageInterface using an LSM Tree for storing and querying table data.
  * This class supports basic operations such as insert, delete, update, and select, 
  * along with creating tables.
+ *
+ * The LSM Trees keep their SSTables on disk, so they cannot refer to the RowEntry objects of
+ * a table. Every row gets an id instead, and the LSM Tree of a column maps the value of the
+ * column joined with the id of the row (see indexKey) to the id, so that rows sharing a value
+ * get keys of their own that still sort by the value. LSMRowStorage keeps the rows themselves
+ * in LSM Trees instead.
  */
 public class LSMStorage implements StorageInterface {
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final Path directory;  // Holds the LSM Trees, in a directory per table and column.
+    private final LSMConfig config;  // The settings of the LSM Trees.
     private final Map<String, Table> tables = new HashMap<>();  // Stores table names mapped to Table objects.
     private final Map<String, Map<String, LSMTree>> lsmTrees = new HashMap<>();  // Stores LSM Trees by table and column.
+    private final Map<String, Map<String, RowEntry>> rowsById = new HashMap<>();  // Stores the rows of each table by id.
+    private final Map<String, Map<RowEntry, String>> rowIds = new HashMap<>();  // Stores the id of each row, by identity.
+    private long nextRowId = 0;
+
+    /**
+     * Creates a storage whose LSM Trees live in a fresh temporary directory,
+     * which is deleted when the JVM exits.
+     */
+    public LSMStorage() {
+        this(createTempDirectory());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(directory)));
+    }
+
+    /**
+     * Creates a storage whose LSM Trees live in the given directory, with the default settings.
+     *
+     * @param directory The directory to hold the SSTable files.
+     */
+    public LSMStorage(Path directory) {
+        this(directory, LSMConfig.defaults());
+    }
+
+    /**
+     * Creates a storage whose LSM Trees live in the given directory.
+     *
+     * @param directory The directory to hold the SSTable files.
+     * @param config    The settings of the LSM Trees.
+     */
+    public LSMStorage(Path directory, LSMConfig config) {
+        this.directory = directory;
+        this.config = config;
+    }
 
     /**
      * Inserts a new row into the specified table and updates the relevant LSM Trees.
@@ -29,11 +75,13 @@ public class LSMStorage implements StorageInterface {
         RowEntry rowEntry = createRowMap(columnNames, insert.getValues());
         table.addRow(rowEntry);
 
+        String id = Long.toString(nextRowId++);
+        rowsById.get(insert.getTablename()).put(id, rowEntry);
+        rowIds.get(insert.getTablename()).put(rowEntry, id);
+
         Map<String, LSMTree> columnsInTable = lsmTrees.get(insert.getTablename());
-        for (int i = 0; i < columnNames.size(); i++) {
-            String currentColumn = columnNames.get(i);
-            LSMTree lsmTreeForColumn = columnsInTable.get(currentColumn);
-            lsmTreeForColumn.add(insert.getValues().get(i), rowEntry);
+        for (Map.Entry<String, LSMTree> indexedColumn : columnsInTable.entrySet()) {
+            indexedColumn.getValue().put(indexKey(rowEntry.getValue(indexedColumn.getKey()), id), id);
         }
     }
 
@@ -88,6 +136,7 @@ public class LSMStorage implements StorageInterface {
             if (row.evaluateAllConditions(delete.getConditions())) {
                 row.setDeleted();  // Mark the row as deleted.
                 rowsIterator.remove();
+                removeFromIndexes(delete.getTablename(), row);
                 deletedCount++;
             }
         }
@@ -115,10 +164,20 @@ public class LSMStorage implements StorageInterface {
      */
     @Override
     public int update(Update update) {
-        List<RowEntry> rows = processWhereConditions(tables.get(update.getTablename()), update.getConditions());
+        Table table = tables.get(update.getTablename());
+        // copy the matches, the lookup may hand back an index bucket that the update modifies
+        List<RowEntry> rows = new ArrayList<>(processWhereConditions(table, update.getConditions()));
+        LSMTree lsmTree = lsmTrees.get(update.getTablename()).get(update.getColumnname());
+        Map<RowEntry, String> ids = rowIds.get(update.getTablename());
         int updatedCount = 0;
         for (RowEntry row : rows) {
-            row.addOrUpdateValue(update.getColumnname(), update.getValue());
+            if (lsmTree != null) {
+                // Move the row's entry in the column's LSM Tree to the new value
+                String id = ids.get(row);
+                lsmTree.remove(indexKey(row.getValue(update.getColumnname()), id));
+                lsmTree.put(indexKey(update.getValue(), id), id);
+            }
+            table.updateValue(row, update.getColumnname(), update.getValue());
             updatedCount++;
         }
         return updatedCount;
@@ -134,11 +193,63 @@ public class LSMStorage implements StorageInterface {
         Table newTable = new Table(create.getTablename(), create.getColumns());
         tables.put(create.getTablename(), newTable);
 
-        Map<String, LSMTree> columnsInTable = new HashMap<>();
-        for (String column : create.getColumns()) {
-            columnsInTable.put(column, new LSMTree());
+        // LSM Trees are only built for columns with a declared BTREE index
+        lsmTrees.put(create.getTablename(), new HashMap<>());
+        rowsById.put(create.getTablename(), new HashMap<>());
+        rowIds.put(create.getTablename(), new IdentityHashMap<>());
+    }
+
+    /**
+     * Creates an index on a column of the specified table. Every index keeps a hash
+     * index in the table for equality lookups; a BTREE index on a single column
+     * additionally builds an LSM Tree over it so that range conditions avoid a full scan.
+     *
+     * @param createIndex The CreateIndex object containing table name, column and index type.
+     */
+    @Override
+    public void createIndex(CreateIndex createIndex) {
+        Table table = tables.get(createIndex.getTablename());
+        table.createIndex(createIndex.getColumns());
+
+        // LSM Trees are kept per column, so composite indexes only get the hash index
+        if (createIndex.getType() == IndexType.BTREE && createIndex.getColumns().size() == 1) {
+            String column = createIndex.getColumns().get(0);
+            LSMTree lsmTree = new LSMTree(directory.resolve(createIndex.getTablename()).resolve(column), config);
+            Map<RowEntry, String> ids = rowIds.get(createIndex.getTablename());
+            for (RowEntry row : table.getRows()) {
+                String id = ids.get(row);
+                lsmTree.put(indexKey(row.getValue(column), id), id);
+            }
+            lsmTrees.get(createIndex.getTablename()).put(column, lsmTree);
         }
-        lsmTrees.put(create.getTablename(), columnsInTable);
+    }
+
+    /**
+     * Drops an index previously created with createIndex, along with its LSM Tree.
+     *
+     * @param createIndex The CreateIndex object the index was created with.
+     */
+    @Override
+    public void dropIndex(CreateIndex createIndex) {
+        tables.get(createIndex.getTablename()).dropIndex(createIndex.getColumns());
+        if (createIndex.getColumns().size() == 1) {
+            LSMTree lsmTree = lsmTrees.get(createIndex.getTablename()).remove(createIndex.getColumns().get(0));
+            if (lsmTree != null) {
+                lsmTree.destroy();
+            }
+        }
+    }
+
+    /**
+     * Vacuums the specified table. Deleted rows are already removed from the table
+     * when they are deleted, so there are no dead row slots to reclaim.
+     *
+     * @param vacuum The Vacuum object containing the table name.
+     * @return The number of row slots reclaimed, always 0.
+     */
+    @Override
+    public int vacuum(Vacuum vacuum) {
+        return 0;
     }
 
     /*
@@ -160,6 +271,33 @@ public class LSMStorage implements StorageInterface {
         return row;
     }
 
+    /**
+     * Removes a deleted row from the id maps and the LSM Trees of its table.
+     *
+     * @param tableName The name of the table.
+     * @param row       The deleted row.
+     */
+    private void removeFromIndexes(String tableName, RowEntry row) {
+        String id = rowIds.get(tableName).remove(row);
+        rowsById.get(tableName).remove(id);
+        for (Map.Entry<String, LSMTree> indexedColumn : lsmTrees.get(tableName).entrySet()) {
+            indexedColumn.getValue().remove(indexKey(row.getValue(indexedColumn.getKey()), id));
+        }
+    }
+
+    /**
+     * Returns the key of a row's entry in the LSM Tree of a column: the value of the
+     * column and the id of the row, joined with KEY_SEPARATOR. The separator sorts
+     * before every other character, so the keys sort by value first.
+     *
+     * @param value The value of the column.
+     * @param id    The id of the row.
+     * @return The key of the entry.
+     */
+    private static String indexKey(String value, String id) {
+        return value + KEY_SEPARATOR + id;
+    }
+
     /**
      * Processes the conditions provided for a select operation, using both equality
      * and non-equality conditions to filter rows.
@@ -187,14 +325,7 @@ public class LSMStorage implements StorageInterface {
 
         // Process the first non-equality condition using LSM Trees if applicable
         if (remainingConditions.size() >= 1) {
-            String tableName = table.getName();
-            String condition1Column = remainingConditions.get(0).getColumn();
-            LSMTree condition1LSMTree = lsmTrees.get(tableName).get(condition1Column);
-
-            String condition1Operator = remainingConditions.get(0).getOperator();
-            String condition1Value = remainingConditions.get(0).getValue();
-
-            matchingRows = condition1LSMTree.getEntriesFromCondition(condition1Operator, condition1Value);
+            matchingRows = getEntriesFromCondition(table, remainingConditions.get(0));
         }
 
         // Process equality conditions using table's row lookup
@@ -208,19 +339,14 @@ public class LSMStorage implements StorageInterface {
         // Handle a second non-equality condition with logical OR/AND
         if (remainingConditions.size() == 2) {
             boolean isOr = conditions.get(0).getLogicalOperator().equals("OR");
-            String tableName = table.getName();
-            String condition2Column = remainingConditions.get(1).getColumn();
-            LSMTree condition2LSMTree = lsmTrees.get(tableName).get(condition2Column);
-
-            String condition2Operator = remainingConditions.get(1).getOperator();
-            String condition2Value = remainingConditions.get(1).getValue();
+            List<RowEntry> condition2Rows = getEntriesFromCondition(table, remainingConditions.get(1));
 
             if (isOr) {
                 Set<RowEntry> matchingRowsSet = new LinkedHashSet<>(matchingRows);  // Use a Set to avoid duplicates
-                matchingRowsSet.addAll(condition2LSMTree.getEntriesFromCondition(condition2Operator, condition2Value));
+                matchingRowsSet.addAll(condition2Rows);
                 matchingRows = new ArrayList<>(matchingRowsSet);
             } else {
-                matchingRows.retainAll(condition2LSMTree.getEntriesFromCondition(condition2Operator, condition2Value));
+                matchingRows.retainAll(condition2Rows);
             }
         }
 
@@ -248,4 +374,56 @@ public class LSMStorage implements StorageInterface {
 
         return matchingRows;
     }
-}
\ No newline at end of file
+
+    /**
+     * Retrieves the rows matching a single non-equality condition, using the column's
+     * LSM Tree for range operators when it has a BTREE index and scanning the table otherwise.
+     *
+     * @param table     The table to search.
+     * @param condition The non-equality condition to apply.
+     * @return A modifiable list of RowEntry objects that match the condition.
+     */
+    private List<RowEntry> getEntriesFromCondition(Table table, WhereCondition condition) {
+        LSMTree lsmTree = lsmTrees.get(table.getName()).get(condition.getColumn());
+        if (lsmTree == null || condition.getOperator().equals("!=")) {
+            List<RowEntry> matchingRows = new ArrayList<>();
+            for (RowEntry row : table.getRows()) {
+                if (condition.evaluate(row)) {
+                    matchingRows.add(row);
+                }
+            }
+            return matchingRows;
+        }
+        // The keys of a value v are v + KEY_SEPARATOR + id, all of which sort below v + '\u0001'
+        String value = condition.getValue();
+        NavigableMap<String, String> entries = switch (condition.getOperator()) {
+            case ">" -> lsmTree.getEntriesWithKeyGreaterThan(value + '\u0001', true);
+            case ">=" -> lsmTree.getEntriesWithKeyGreaterThan(value + KEY_SEPARATOR, true);
+            case "<" -> lsmTree.getEntriesWithKeyLessThan(value + KEY_SEPARATOR, false);
+            case "<=" -> lsmTree.getEntriesWithKeyLessThan(value + '\u0001', false);
+            default -> lsmTree.getEntriesInRange(value + KEY_SEPARATOR, true, value + '\u0001', false);  // "="
+        };
+        Map<String, RowEntry> rows = rowsById.get(table.getName());
+        List<RowEntry> matchingRows = new ArrayList<>(entries.size());
+        for (String id : entries.values()) {
+            matchingRows.add(rows.get(id));
+        }
+        return matchingRows;
+    }
+
+    static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("smusql-lsm");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteRecursively(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            // the temporary directory is left for the OS to clean up
+        }
+    }
+}
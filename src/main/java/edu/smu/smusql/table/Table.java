@@ -4,21 +4,19 @@ import java.util.*;
 
 import edu.smu.smusql.interfaces.RowEntry;
 public class Table {
+    private static final char KEY_SEPARATOR = '\u0000';
+
     private String name;
     private List<String> columns;
     private List<RowEntry> rows;
-    private final Map<String, Map<String, List<RowEntry>>> indices;  // column -> value -> rows
+    // indexed columns -> key -> rows, declared indexes only; a composite key joins the values with KEY_SEPARATOR
+    private final Map<List<String>, Map<String, List<RowEntry>>> indices;
 
     public Table(String name, List<String> columns) {
         this.name = name;
         this.columns = columns;
         this.rows = new ArrayList<>();
         this.indices = new HashMap<>();
-        
-        // Initialize indices for all columns
-        for (String column : columns) {
-            indices.put(column, new HashMap<>());
-        }
     }
 
     public String getName() {
@@ -37,20 +35,93 @@ public class Table {
         rows.add(row);
 
         // Update indices
-        for (String column : columns) {
-            String value = row.getValue(column);
-            indices.get(column)
-                  .computeIfAbsent(value, k -> new ArrayList<>())
+        for (Map.Entry<List<String>, Map<String, List<RowEntry>>> index : indices.entrySet()) {
+            index.getValue()
+                  .computeIfAbsent(indexKey(row, index.getKey()), k -> new ArrayList<>())
                   .add(row);
         }
     }
 
+    /**
+     * Sets a value in one of the table's rows, moving the row between buckets of
+     * every index on the column so that later lookups see the new value.
+     */
+    public void updateValue(RowEntry row, String columnName, String value) {
+        List<List<String>> affected = new ArrayList<>();
+        for (Map.Entry<List<String>, Map<String, List<RowEntry>>> index : indices.entrySet()) {
+            if (index.getKey().contains(columnName)) {
+                List<RowEntry> bucket = index.getValue().get(indexKey(row, index.getKey()));
+                if (bucket != null) {
+                    bucket.remove(row);
+                }
+                affected.add(index.getKey());
+            }
+        }
+        row.addOrUpdateValue(columnName, value);
+        for (List<String> columns : affected) {
+            indices.get(columns).computeIfAbsent(indexKey(row, columns), k -> new ArrayList<>()).add(row);
+        }
+    }
+
+    /**
+     * Starts maintaining a hash index on the given columns, indexing the rows that
+     * are already in the table. An index on several columns only answers lookups
+     * that fix the value of every one of them.
+     */
+    public void createIndex(List<String> columns) {
+        Map<String, List<RowEntry>> index = new HashMap<>();
+        for (RowEntry row : rows) {
+            index.computeIfAbsent(indexKey(row, columns), k -> new ArrayList<>()).add(row);
+        }
+        indices.put(List.copyOf(columns), index);
+    }
+
+    public void dropIndex(List<String> columns) {
+        indices.remove(columns);
+    }
+
+    /**
+     * Picks the index that can answer an equality lookup on the given columns,
+     * preferring the one that covers the most of them.
+     *
+     * @param columns: the columns that have an equality condition
+     * @return the columns of the chosen index, or null if no index can be used
+     */
+    public List<String> findBestIndex(Collection<String> columns) {
+        List<String> best = null;
+        for (List<String> indexColumns : indices.keySet()) {
+            if (columns.containsAll(indexColumns) && (best == null || indexColumns.size() > best.size())) {
+                best = indexColumns;
+            }
+        }
+        return best;
+    }
+
     public List<RowEntry> findRowsByColumnValue(String columnName, String value) {
-        Map<String, List<RowEntry>> columnIndex = indices.get(columnName);
-        if (columnIndex == null) {
-            return Collections.emptyList();
+        return findRowsByColumnValues(List.of(columnName), List.of(value));
+    }
+
+    /**
+     * Finds the rows whose values in the given columns are equal to the given
+     * values, through the index on exactly those columns if there is one.
+     */
+    public List<RowEntry> findRowsByColumnValues(List<String> columns, List<String> values) {
+        Map<String, List<RowEntry>> index = indices.get(columns);
+        if (index == null) {
+            // no index declared on these columns, fall back to scanning the rows
+            List<RowEntry> matchingRows = new ArrayList<>();
+            for (RowEntry row : rows) {
+                boolean matches = true;
+                for (int i = 0; i < columns.size() && matches; i++) {
+                    matches = row.getValue(columns.get(i)).equals(values.get(i));
+                }
+                if (matches) {
+                    matchingRows.add(row);
+                }
+            }
+            return matchingRows;
         }
-        return columnIndex.getOrDefault(value, Collections.emptyList());
+        return index.getOrDefault(String.join(String.valueOf(KEY_SEPARATOR), values), Collections.emptyList());
     }
 
     public void setRows(List<RowEntry> newRows) {
@@ -60,20 +131,23 @@ public class Table {
     }
 
     private void rebuildIndices() {
-        // Clear all existing indices
-        for (String column : columns) {
-            indices.put(column, new HashMap<>());
+        // Rebuild every declared index from the new rows
+        for (List<String> columns : new ArrayList<>(indices.keySet())) {
+            createIndex(columns);
+        }
+    }
+
+    private static String indexKey(RowEntry row, List<String> columns) {
+        if (columns.size() == 1) {
+            return row.getValue(columns.get(0));
         }
-        
-        // Rebuild indices for all rows
-        for (int i = 0; i < rows.size(); i++) {
-            RowEntry row = rows.get(i);
-            for (String column : columns) {
-                String value = row.getValue(column);
-                indices.get(column)
-                      .computeIfAbsent(value, k -> new ArrayList<>())
-                      .add(row);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                key.append(KEY_SEPARATOR);
             }
+            key.append(row.getValue(columns.get(i)));
         }
+        return key.toString();
     }
 }
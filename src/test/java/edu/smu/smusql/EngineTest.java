@@ -224,6 +224,275 @@ public class    EngineTest {
         assertEquals("Rows deleted from users. 0 rows affected.", result);
     }
 
+    // INDEX tests
+    @Test
+    void testCreateIndex_ValidSyntax_Success() {
+        String result = engine.executeSQL("CREATE INDEX users_age ON users(age) USING BTREE");
+        assertEquals("Index users_age created on users(age)", result);
+    }
+
+    @Test
+    void testCreateIndex_NonexistentColumn_Error() {
+        String result = engine.executeSQL("CREATE INDEX users_gpa ON users(gpa)");
+        assertEquals("ERROR: Column not found", result);
+    }
+
+    @Test
+    void testCreateIndex_DuplicateName_Error() {
+        engine.executeSQL("CREATE INDEX users_idx ON users(age)");
+        String result = engine.executeSQL("CREATE INDEX users_idx ON users(city) USING HASH");
+        assertEquals("ERROR: Index already exists", result);
+    }
+
+    @Test
+    void testCreateIndex_WithOrder_Success() {
+        String created = engine.executeSQL("CREATE INDEX users_age ON users(age) USING BTREE WITH (ORDER = 3)");
+        assertEquals("Index users_age created on users(age)", created);
+        for (int i = 1; i <= 20; i++) {
+            engine.executeSQL("INSERT INTO users VALUES (" + i + ", User" + i + ", " + (20 + i % 5) + ", London)");
+        }
+        engine.executeSQL("DELETE FROM users WHERE age = 21");
+        String result = engine.executeSQL("SELECT * FROM users WHERE age >= 22");
+        assertTrue(result.contains("User2\t") && result.contains("User19\t") && !result.contains("User1\t"));
+    }
+
+    @Test
+    void testDelete_ManyRowsSharingAnIndexedKey_LeavesTheOthersFindable() {
+        engine.executeSQL("CREATE INDEX users_city ON users(city) USING BTREE WITH (ORDER = 3)");
+        String[] cities = {"London", "Paris", "Rome"};
+        for (int i = 1; i <= 300; i++) {
+            engine.executeSQL("INSERT INTO users VALUES (" + i + ", User" + i + ", " + (20 + i % 50) + ", " + cities[i % 3] + ")");
+        }
+        int deleted = 0;
+        for (int i = 3; i <= 300; i += 3) {
+            deleted += 20 + i % 50 < 45 ? 1 : 0;
+        }
+        assertEquals("Rows deleted from users. " + deleted + " rows affected.",
+                engine.executeSQL("DELETE FROM users WHERE city = London AND age < 45"));
+
+        String london = engine.executeSQL("SELECT * FROM users WHERE city = London");
+        assertEquals(100 - deleted, london.split("\n").length - 1);
+        for (int i = 3; i <= 300; i += 3) {
+            assertEquals(20 + i % 50 >= 45, london.contains("\tUser" + i + "\t"), "User" + i);
+        }
+        assertEquals(101, engine.executeSQL("SELECT * FROM users WHERE city = Paris").split("\n").length);
+
+        assertEquals("Rows deleted from users. " + (100 - deleted) + " rows affected.",
+                engine.executeSQL("DELETE FROM users WHERE city = London"));
+        engine.executeSQL("INSERT INTO users VALUES (301, User301, 30, London)");
+        String rest = engine.executeSQL("SELECT * FROM users WHERE city = London AND age >= 20");
+        assertEquals(2, rest.split("\n").length);
+        assertTrue(rest.contains("\tUser301\t"));
+    }
+
+    @Test
+    void testCreateIndex_InvalidOrder_Error() {
+        String result = engine.executeSQL("CREATE INDEX users_age ON users(age) WITH (ORDER = 2)");
+        assertEquals("ERROR: Index order must be at least 3", result);
+    }
+
+    @Test
+    void testSelect_WithIndexOnExistingRows_Success() {
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 25, London)");
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 30, Paris)");
+        engine.executeSQL("CREATE INDEX users_age ON users(age)");
+        engine.executeSQL("INSERT INTO users VALUES (3, Bob, 35, Paris)");
+        String result = engine.executeSQL("SELECT * FROM users WHERE age > 26");
+        assertTrue(result.contains("Mary") && result.contains("Bob") && !result.contains("John"));
+    }
+
+    @Test
+    void testSelect_IndexOrdersNumbersNumerically_Success() {
+        engine.executeSQL("CREATE INDEX users_age ON users(age)");
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 9, London)");
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 10.5, Paris)");
+        engine.executeSQL("INSERT INTO users VALUES (3, Bob, 100, Paris)");
+        String result = engine.executeSQL("SELECT * FROM users WHERE age > 9.5");
+        assertTrue(result.contains("Mary") && result.contains("Bob") && !result.contains("John"));
+    }
+
+    @Test
+    void testSelect_IndexRangeBetweenBounds_Success() {
+        engine.executeSQL("CREATE INDEX users_age ON users(age)");
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 20, London)");
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 25, Paris)");
+        engine.executeSQL("INSERT INTO users VALUES (3, Bob, 30, Paris)");
+        String result = engine.executeSQL("SELECT * FROM users WHERE age <= 30 AND age > 20");
+        assertTrue(result.contains("Mary") && result.contains("Bob") && !result.contains("John"));
+    }
+
+    @Test
+    void testUpdateAndDelete_IndexedRange_WriteEveryMatchOnce() {
+        engine.executeSQL("CREATE INDEX users_age ON users(age) WITH (ORDER = 3)");
+        for (int i = 1; i <= 60; i++) {
+            engine.executeSQL("INSERT INTO users VALUES (" + i + ", User" + i + ", " + (20 + i) + ", London)");
+        }
+        // every updated row moves further into the range being scanned
+        assertEquals("Table users updated. 40 rows affected.",
+                engine.executeSQL("UPDATE users SET age = 100 WHERE age > 40"));
+        assertEquals("Rows deleted from users. 40 rows affected.",
+                engine.executeSQL("DELETE FROM users WHERE age >= 100"));
+        // text widens the tree being scanned, which is rebuilt during the update
+        assertEquals("Table users updated. 10 rows affected.",
+                engine.executeSQL("UPDATE users SET age = text WHERE age <= 30"));
+        String result = engine.executeSQL("SELECT * FROM users WHERE age < 50");
+        assertEquals(11, result.split("\n").length);
+        assertTrue(result.contains("User11\t31") && !result.contains("User10\t"));
+    }
+
+    @Test
+    void testCreateIndex_OnPopulatedTable_AnswersLikeAnIndexBuiltByInserts() {
+        engine.executeSQL("CREATE TABLE loaded (id, name, age)");
+        engine.executeSQL("CREATE TABLE inserted (id, name, age)");
+        engine.executeSQL("CREATE INDEX inserted_age ON inserted(age) WITH (ORDER = 3)");
+        for (int i = 1; i <= 200; i++) {
+            String age = i % 7 == 0 ? (20 + i % 30) + ".5" : Integer.toString(20 + i % 30);
+            engine.executeSQL("INSERT INTO loaded VALUES (" + i + ", User" + i + ", " + age + ")");
+            engine.executeSQL("INSERT INTO inserted VALUES (" + i + ", User" + i + ", " + age + ")");
+        }
+        engine.executeSQL("CREATE INDEX loaded_age ON loaded(age) WITH (ORDER = 3)");
+
+        for (String where : new String[]{"age = 25", "age = 27.5", "age = 99", "age < 23", "age >= 47.5",
+                "age > 30 AND age <= 35", "age < 21 OR age > 48"}) {
+            String expected = engine.executeSQL("SELECT * FROM inserted WHERE " + where);
+            assertEquals(expected, engine.executeSQL("SELECT * FROM loaded WHERE " + where), where);
+        }
+        assertTrue(engine.executeSQL("SELECT * FROM loaded WHERE age = 25").contains("\tUser5\t"));
+    }
+
+    @Test
+    void testDropIndex_Success() {
+        engine.executeSQL("CREATE INDEX users_city ON users(city) USING HASH");
+        assertEquals("Index users_city dropped", engine.executeSQL("DROP INDEX users_city"));
+        assertEquals("ERROR: Index not found", engine.executeSQL("DROP INDEX users_city"));
+    }
+
+    @Test
+    void testSelect_CompositeIndexEquality_Success() {
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 25, London)");
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 25, Paris)");
+        engine.executeSQL("INSERT INTO users VALUES (3, Bob, 30, London)");
+        String created = engine.executeSQL("CREATE INDEX users_city_age ON users(city, age)");
+        assertEquals("Index users_city_age created on users(city, age)", created);
+        String result = engine.executeSQL("SELECT * FROM users WHERE age = 25 AND city = London");
+        assertTrue(result.contains("John") && !result.contains("Mary") && !result.contains("Bob"));
+    }
+
+    @Test
+    void testSelect_CompositeIndexPrefixAndRange_Success() {
+        engine.executeSQL("CREATE INDEX users_city_age ON users(city, age)");
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 25, London)");
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 35, Paris)");
+        engine.executeSQL("INSERT INTO users VALUES (3, Bob, 35, London)");
+        engine.executeSQL("INSERT INTO users VALUES (4, Alice, 40, London)");
+        engine.executeSQL("UPDATE users SET age = 20 WHERE name = Alice");
+        String result = engine.executeSQL("SELECT * FROM users WHERE city = London AND age > 30");
+        assertTrue(result.contains("Bob") && !result.contains("John")
+                && !result.contains("Mary") && !result.contains("Alice"));
+    }
+
+    @Test
+    void testSelect_CompositeIndexNumericPrefix_MatchesEqualNumbers() {
+        engine.executeSQL("CREATE TABLE t (id, a, b)");
+        engine.executeSQL("INSERT INTO t VALUES (1, 10.0, x)");
+        engine.executeSQL("INSERT INTO t VALUES (2, 10, x)");
+        engine.executeSQL("INSERT INTO t VALUES (3, 1e1, x)");
+        engine.executeSQL("INSERT INTO t VALUES (4, 11, x)");
+        engine.executeSQL("CREATE INDEX iab ON t(a, b)");
+        String result = engine.executeSQL("SELECT * FROM t WHERE a = 10 AND b = x");
+        assertTrue(result.contains("1\t10.0") && result.contains("2\t10") && result.contains("3\t1e1")
+                && !result.contains("4\t11"));
+    }
+
+    // VACUUM tests
+    @Test
+    void testVacuum_AfterDelete_ReclaimsDeadSlots() {
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 25, London)");
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 30, Paris)");
+        engine.executeSQL("DELETE FROM users WHERE name = John");
+        String result = engine.executeSQL("VACUUM users");
+        assertEquals("Table users vacuumed. 1 row slots reclaimed.", result);
+
+        String select = engine.executeSQL("SELECT * FROM users WHERE age >= 25");
+        assertTrue(select.contains("Mary") && !select.contains("John"));
+    }
+
+    @Test
+    void testVacuum_NonexistentTable_Error() {
+        String result = engine.executeSQL("VACUUM nonexistent");
+        assertEquals("ERROR: Table not found", result);
+    }
+
+    // PRIMARY KEY tests
+    @Test
+    void testCreateTable_PrimaryKey_Success() {
+        String result = engine.executeSQL("CREATE TABLE products (id PRIMARY KEY, name, price)");
+        assertEquals("Table products created", result);
+        result = engine.executeSQL("INSERT INTO products VALUES (1, Pen, 2.5)");
+        assertEquals("Row inserted into products", result);
+    }
+
+    @Test
+    void testCreateTable_TwoPrimaryKeys_Error() {
+        String result = engine.executeSQL("CREATE TABLE products (id PRIMARY KEY, name PRIMARY KEY, price)");
+        assertEquals("ERROR: Invalid CREATE TABLE syntax", result);
+    }
+
+    @Test
+    void testInsert_DuplicatePrimaryKey_Error() {
+        engine.executeSQL("CREATE TABLE products (id PRIMARY KEY, name, price)");
+        engine.executeSQL("INSERT INTO products VALUES (1, Pen, 2.5)");
+        String result = engine.executeSQL("INSERT INTO products VALUES (1, Ink, 4.0)");
+        assertEquals("ERROR: Duplicate primary key", result);
+    }
+
+    @Test
+    void testInsert_DuplicateNumericPrimaryKeyInTextColumn_Error() {
+        engine.executeSQL("CREATE TABLE t (id PRIMARY KEY, a)");
+        engine.executeSQL("INSERT INTO t VALUES (abc, x)");
+        engine.executeSQL("INSERT INTO t VALUES (2, y)");
+        assertEquals("ERROR: Duplicate primary key", engine.executeSQL("INSERT INTO t VALUES (2.0, z)"));
+        engine.executeSQL("INSERT INTO t VALUES (3, w)");
+        assertEquals("ERROR: Duplicate primary key", engine.executeSQL("UPDATE t SET id = 2.0 WHERE id = 3"));
+
+        String result = engine.executeSQL("SELECT * FROM t WHERE id = 2");
+        assertTrue(result.contains("2\ty") && !result.contains("z"));
+    }
+
+    @Test
+    void testPointOperations_NumericPrimaryKeyInTextColumn_MatchNumerically() {
+        engine.executeSQL("CREATE TABLE t (id PRIMARY KEY, a)");
+        engine.executeSQL("INSERT INTO t VALUES (abc, x)");
+        engine.executeSQL("INSERT INTO t VALUES (10, y)");
+        engine.executeSQL("INSERT INTO t VALUES (2, z)");
+
+        assertTrue(engine.executeSQL("SELECT * FROM t WHERE id = 10").contains("10\ty"));
+        assertTrue(engine.executeSQL("SELECT * FROM t WHERE id = abc").contains("abc\tx"));
+        assertEquals("Table t updated. 1 rows affected.", engine.executeSQL("UPDATE t SET id = 20 WHERE id = 10"));
+        assertEquals("Row inserted into t", engine.executeSQL("INSERT INTO t VALUES (10.0, w)"));
+        assertEquals("Rows deleted from t. 1 rows affected.", engine.executeSQL("DELETE FROM t WHERE id = 2"));
+        assertEquals("Row inserted into t", engine.executeSQL("INSERT INTO t VALUES (2.0, v)"));
+        assertFalse(engine.executeSQL("SELECT * FROM t WHERE id = 2 AND a = z").contains("2.0\t"));
+    }
+
+    @Test
+    void testUpdateAndDelete_ByPrimaryKey_OneRowAffected() {
+        engine.executeSQL("CREATE TABLE products (id PRIMARY KEY, name, price)");
+        engine.executeSQL("INSERT INTO products VALUES (1, Pen, 2.5)");
+        engine.executeSQL("INSERT INTO products VALUES (2, Ink, 4.0)");
+        assertEquals("Table products updated. 1 rows affected.",
+                engine.executeSQL("UPDATE products SET price = 3.0 WHERE id = 1"));
+        assertEquals("Table products updated. 0 rows affected.",
+                engine.executeSQL("UPDATE products SET price = 3.0 WHERE id = 1 AND name = Ink"));
+        assertEquals("ERROR: Duplicate primary key", engine.executeSQL("UPDATE products SET id = 2 WHERE id = 1"));
+        assertEquals("Rows deleted from products. 1 rows affected.",
+                engine.executeSQL("DELETE FROM products WHERE id = 2"));
+        assertEquals("Row inserted into products", engine.executeSQL("INSERT INTO products VALUES (2, Nib, 1.0)"));
+
+        String result = engine.executeSQL("SELECT * FROM products WHERE id = 1");
+        assertTrue(result.contains("Pen") && result.contains("3.0") && !result.contains("Nib"));
+    }
+
     @Test
     void testSelectCache_HitSuccess() {
         for (int i = 0; i < TEST_ITERATIONS; i++) {
@@ -264,4 +533,69 @@ public class    EngineTest {
 
         assertNotEquals(result1, result2);
     }
+
+    @Test
+    void testSelectCache_InvalidationOnInsertAndDelete() {
+        engine.executeSQL("INSERT INTO users VALUES (1, John, 25, London)");
+        engine.executeSQL("SELECT * FROM users WHERE age = 25");
+
+        engine.executeSQL("INSERT INTO users VALUES (2, Mary, 25, Paris)");
+        String afterInsert = engine.executeSQL("SELECT * FROM users WHERE age = 25");
+        assertTrue(afterInsert.contains("John") && afterInsert.contains("Mary"));
+
+        engine.executeSQL("DELETE FROM users WHERE name = John");
+        String afterDelete = engine.executeSQL("SELECT * FROM users WHERE age = 25");
+        assertTrue(!afterDelete.contains("John") && afterDelete.contains("Mary"));
+    }
+
+    @Test
+    void testSelect_AndOverIndexedColumns_MatchesAFullScan() {
+        populate("indexed", 1_000);
+        populate("plain", 1_000);
+        engine.executeSQL("CREATE INDEX indexed_age ON indexed(age)");
+        engine.executeSQL("CREATE INDEX indexed_city ON indexed(city)");
+
+        for (String where : new String[]{"age >= 10 AND city = Rome", "city = Paris AND age = 3",
+                "age > 5 AND age < 50", "age <= 40 AND city > Oslo", "age > 1000 AND city = Rome"}) {
+            String expected = engine.executeSQL("SELECT * FROM plain WHERE " + where);
+            assertEquals(expected, engine.executeSQL("SELECT * FROM indexed WHERE " + where), where);
+        }
+        String result = engine.executeSQL("SELECT * FROM indexed WHERE city = Paris AND age = 3");
+        assertTrue(result.contains("\n123\t3\tParis\t") && !result.contains("Rome"));
+    }
+
+    @Test
+    void testSelect_OrOverIndexedColumns_MatchesAFullScan() {
+        populate("indexed", 1_000);
+        populate("plain", 1_000);
+        engine.executeSQL("CREATE INDEX indexed_age ON indexed(age)");
+        engine.executeSQL("CREATE INDEX indexed_city ON indexed(city)");
+
+        // the conditions are combined from left to right
+        for (String where : new String[]{"age < 30 OR city = Rome", "city = Paris OR city = Rome",
+                "age >= 55 OR age < 5", "age = 3 OR city = Oslo", "age = 3 OR city = Oslo AND age > 50",
+                "age < 10 AND city = Rome OR age = 59", "age > 1000 OR city = Atlantis"}) {
+            String expected = engine.executeSQL("SELECT * FROM plain WHERE " + where);
+            assertEquals(expected, engine.executeSQL("SELECT * FROM indexed WHERE " + where), where);
+        }
+        // rows matching both sides are returned once
+        String result = engine.executeSQL("SELECT * FROM indexed WHERE age = 3 OR city = Paris");
+        assertEquals(1, result.split("\n123\t").length - 1);
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    /**
+     * Creates a table of rows whose ages and cities repeat with different
+     * periods, so that the rows of an age and of a city overlap.
+     */
+    private void populate(String table, int numRows) {
+        String[] cities = {"Berlin", "London", "Madrid", "Oslo", "Paris", "Rome", "Vienna"};
+        engine.executeSQL("CREATE TABLE " + table + " (id, age, city)");
+        for (int i = 0; i < numRows; i++) {
+            engine.executeSQL("INSERT INTO " + table + " VALUES (" + i + ", " + i % 60 + ", " + cities[i % 7] + ")");
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,119 @@
+package edu.smu.smusql.bitmap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class RoaringBitmapTest {
+
+    @Test
+    void testAndOr_OverlappingSparseAndDenseChunks_MatchASetModel() {
+        Random random = new Random(42);
+        // per chunk of 2^16 values, a density that gives an array or a bitmap container
+        double[] densities = {0, 0.001, 0.05, 0.3, 0.9};
+        for (int round = 0; round < 8; round++) {
+            TreeSet<Integer> setA = new TreeSet<>();
+            TreeSet<Integer> setB = new TreeSet<>();
+            for (int chunk = 0; chunk < 4; chunk++) {
+                fill(setA, chunk, densities[random.nextInt(densities.length)], random);
+                fill(setB, chunk, densities[random.nextInt(densities.length)], random);
+            }
+            RoaringBitmap a = bitmap(setA, random);
+            RoaringBitmap b = bitmap(setB, random);
+
+            TreeSet<Integer> and = new TreeSet<>(setA);
+            and.retainAll(setB);
+            TreeSet<Integer> or = new TreeSet<>(setA);
+            or.addAll(setB);
+            assertContents(and, RoaringBitmap.and(a, b));
+            assertContents(and, RoaringBitmap.and(b, a));
+            assertContents(or, RoaringBitmap.or(a, b));
+            assertContents(or, RoaringBitmap.or(b, a));
+            // neither input is changed
+            assertContents(setA, a);
+            assertContents(setB, b);
+        }
+    }
+
+    @Test
+    void testAnd_DenseChunksWithLittleOverlap_GiveASparseResult() {
+        TreeSet<Integer> evens = new TreeSet<>();
+        TreeSet<Integer> odds = new TreeSet<>();
+        for (int value = 0; value < 1 << 16; value++) {
+            (value % 2 == 0 ? evens : odds).add(value);
+        }
+        // the only values in common
+        odds.add(100);
+        odds.add(40_000);
+        RoaringBitmap and = RoaringBitmap.and(bitmap(evens, null), bitmap(odds, null));
+        assertContents(new TreeSet<>(List.of(100, 40_000)), and);
+
+        // and no empty chunk is kept
+        RoaringBitmap none = RoaringBitmap.and(bitmap(new TreeSet<>(List.of(1, 70_000)), null),
+                bitmap(new TreeSet<>(List.of(2, 70_001)), null));
+        assertTrue(none.isEmpty());
+    }
+
+    @Test
+    void testRemove_DownFromADenseChunk_KeepsTheRest() {
+        Random random = new Random(7);
+        TreeSet<Integer> model = new TreeSet<>();
+        fill(model, 1, 0.5, random);
+        model.add(5);
+        RoaringBitmap bitmap = bitmap(model, random);
+
+        List<Integer> values = new ArrayList<>(model);
+        Collections.shuffle(values, random);
+        for (int i = 0; i < values.size(); i++) {
+            bitmap.remove(values.get(i));
+            model.remove(values.get(i));
+            // removing an absent value, or one of an absent chunk, does nothing
+            bitmap.remove(values.get(i));
+            bitmap.remove(200_000);
+            if (i % 1000 == 0 || model.size() < 10) {
+                assertContents(model, bitmap);
+            }
+        }
+        assertTrue(bitmap.isEmpty());
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static void fill(Set<Integer> set, int chunk, double density, Random random) {
+        for (int low = 0; low < 1 << 16; low++) {
+            if (random.nextDouble() < density) {
+                set.add(chunk << 16 | low);
+            }
+        }
+    }
+
+    /**
+     * Builds a bitmap of the values, added in ascending order like the engine
+     * does, or in random order if 'random' is given.
+     */
+    private static RoaringBitmap bitmap(Set<Integer> values, Random random) {
+        List<Integer> order = new ArrayList<>(values);
+        if (random != null) {
+            Collections.shuffle(order, random);
+        }
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : order) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    private static void assertContents(TreeSet<Integer> expected, RoaringBitmap bitmap) {
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), bitmap.toArray());
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+        // toArray already covers every value, contains is checked on a sample
+        for (int value = 0; value < 5 << 16; value += 97) {
+            assertEquals(expected.contains(value), bitmap.contains(value), "value " + value);
+        }
+    }
+}
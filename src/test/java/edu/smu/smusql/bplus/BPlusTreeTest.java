@@ -0,0 +1,421 @@
+package edu.smu.smusql.bplus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.*;
+
+import edu.smu.smusql.interfaces.RowEntry;
+
+public class BPlusTreeTest {
+
+    @Test
+    void testDelete_SmallOrder_BorrowsMergesAndCollapsesTheRoot() {
+        // at order 3 a leaf holds 1 or 2 keys and an internal node 2 or 3 children,
+        // so almost every delete borrows from a sibling or merges with one
+        BPlusTree tree = new BPlusTree(KeyType.LONG, 3);
+        TreeMap<Long, TreeSet<Integer>> model = new TreeMap<>();
+        for (int i = 0; i < 200; i++) {
+            insert(tree, model, i, i);
+        }
+        assertTrue(tree.getHeight() >= 6, "height " + tree.getHeight());
+        assertValid(tree);
+
+        // from the left end, the right end and the middle, so that both siblings lend and merge
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            order.add(i);
+            order.add(199 - i);
+            order.add(60 + i * 2);
+        }
+        for (int i : order) {
+            assertTrue(tree.delete(Integer.toString(i), i), "delete " + i);
+            model.remove((long) i);
+            assertValid(tree);
+            assertScans(tree, model);
+        }
+        assertFalse(tree.delete("0", 0));
+        assertFalse(tree.delete("100", 1));
+
+        // delete the rest in random order down to an empty root leaf
+        List<Long> rest = new ArrayList<>(model.keySet());
+        Collections.shuffle(rest, new Random(42));
+        int previousHeight = tree.getHeight();
+        for (long key : rest) {
+            assertTrue(tree.delete(Long.toString(key), (int) key));
+            model.remove(key);
+            assertValid(tree);
+            assertTrue(tree.getHeight() <= previousHeight);
+            previousHeight = tree.getHeight();
+        }
+        assertScans(tree, model);
+        assertEquals(1, tree.getHeight());
+        assertTrue(tree.isEmpty());
+
+        // and the tree grows again
+        for (int i = 0; i < 20; i++) {
+            insert(tree, model, i * 7 % 20, i);
+        }
+        assertValid(tree);
+        assertScans(tree, model);
+    }
+
+    @Test
+    void testDelete_KeysWithSeveralRows_RemovesTheKeyWithItsLastRow() {
+        BPlusTree tree = new BPlusTree(KeyType.LONG, 3);
+        TreeMap<Long, TreeSet<Integer>> model = new TreeMap<>();
+        for (int row = 0; row < 300; row++) {
+            insert(tree, model, row % 30, row);
+        }
+        assertValid(tree);
+
+        Random random = new Random(7);
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < 300; row++) {
+            rows.add(row);
+        }
+        Collections.shuffle(rows, random);
+        for (int row : rows) {
+            long key = row % 30;
+            assertTrue(tree.delete(Long.toString(key), row));
+            assertFalse(tree.delete(Long.toString(key), row));
+            model.get(key).remove(row);
+            if (model.get(key).isEmpty()) {
+                model.remove(key);
+            }
+            assertValid(tree);
+        }
+        assertScans(tree, model);
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    @Timeout(120)
+    void testScan_ConcurrentWriter_ReturnsTheStableRowsOnceAndInOrder() throws Exception {
+        // the row of a pair is key * 4 + k, so that rows in (key, row) order are increasing;
+        // the rows with k = 0 of the even keys stay in the tree, the writer adds and removes the others
+        BPlusTree tree = new BPlusTree(KeyType.LONG, 3);
+        int numKeys = 1000;
+        for (int key = 0; key < numKeys; key += 2) {
+            assertTrue(tree.insert(Integer.toString(key), key * 4));
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                Random random = new Random(1);
+                Set<Integer> added = new HashSet<>();
+                try {
+                    for (int i = 0; i < 300_000; i++) {
+                        int key = random.nextInt(numKeys);
+                        int row = key * 4 + (key % 2 == 0 ? 1 + random.nextInt(3) : random.nextInt(4));
+                        if (added.add(row)) {
+                            assertTrue(tree.insert(Integer.toString(key), row));
+                        } else {
+                            assertTrue(tree.delete(Integer.toString(key), row));
+                            added.remove(row);
+                        }
+                    }
+                } finally {
+                    writing.set(false);
+                }
+            });
+
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                int seed = r;
+                readers.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    int scans = 0;
+                    while (writing.get() || scans == 0) {
+                        int lo = random.nextInt(numKeys);
+                        int hi = lo + random.nextInt(numKeys - lo + 1);
+                        RangeCursor cursor = tree.scan(Integer.toString(lo), true, Integer.toString(hi), false);
+                        int previous = -1;
+                        int nextStable = lo + lo % 2;
+                        while (cursor.hasNext()) {
+                            int row = cursor.nextInt();
+                            assertTrue(row > previous, row + " after " + previous);
+                            assertTrue(row >= lo * 4 && row < hi * 4, row + " outside [" + lo + ", " + hi + ")");
+                            // no stable row is skipped
+                            assertTrue(row <= nextStable * 4, "missed the row of " + nextStable);
+                            if (row == nextStable * 4) {
+                                nextStable += 2;
+                            }
+                            previous = row;
+                        }
+                        assertTrue(nextStable >= hi, "missed the row of " + nextStable);
+                        scans++;
+                    }
+                    return scans;
+                }));
+            }
+
+            writer.get();
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertValid(tree);
+    }
+
+    @Test
+    void testBulkLoad_SameKeysAsInserted_AnswersTheSame() {
+        Random random = new Random(3);
+        for (int order : new int[]{3, 4, 128}) {
+            for (int size : new int[]{0, 1, 2, 5, 100, 3000}) {
+                // unsorted, with duplicates, and half of the time not all integers
+                List<String> keys = new ArrayList<>();
+                IntList rowIndices = new IntList();
+                boolean decimals = random.nextBoolean();
+                for (int row = 0; row < size; row++) {
+                    int key = random.nextInt(size / 3 + 1);
+                    keys.add(decimals && key % 4 == 0 ? key + ".5" : Integer.toString(key));
+                    rowIndices.add(row);
+                }
+                BPlusTree loaded = BPlusTree.bulkLoad(keys, rowIndices, order);
+                BPlusTree inserted = new BPlusTree(loaded.getKeyType(), order);
+                for (int row = 0; row < size; row++) {
+                    assertTrue(inserted.insert(keys.get(row), row));
+                }
+                String where = "order " + order + ", size " + size;
+                assertEquals(decimals && size > 0 ? KeyType.DOUBLE : KeyType.LONG, loaded.getKeyType(), where);
+                assertValid(loaded);
+                assertTrue(loaded.getNumLeaves() <= inserted.getNumLeaves(), where);
+
+                assertEquals(list(inserted.searchAll()), list(loaded.searchAll()), where);
+                for (int key = -1; key <= size / 3 + 1; key += 1 + size / 50) {
+                    String k = Integer.toString(key);
+                    assertEquals(list(inserted.searchEqualTo(k)), list(loaded.searchEqualTo(k)), where);
+                    assertEquals(list(inserted.searchLessThanOrEqualTo(k)), list(loaded.searchLessThanOrEqualTo(k)), where);
+                    assertEquals(list(inserted.searchGreaterThan(k + ".5")), list(loaded.searchGreaterThan(k + ".5")), where);
+                }
+
+                // the loaded tree takes writes like any other
+                for (int row = 0; row < size; row += 2) {
+                    assertTrue(loaded.delete(keys.get(row), row));
+                    assertTrue(inserted.delete(keys.get(row), row));
+                }
+                for (int row = size; row < size + 50; row++) {
+                    assertTrue(loaded.insert(Integer.toString(row % 7), row));
+                    assertTrue(inserted.insert(Integer.toString(row % 7), row));
+                }
+                assertValid(loaded);
+                assertEquals(list(inserted.searchAll()), list(loaded.searchAll()), where);
+            }
+        }
+    }
+
+    @Test
+    void testCompositeIndex_WiderValue_WidensOnlyItsGroup() {
+        CompositeIndex index = new CompositeIndex(List.of("user_id", "name"), 4);
+        List<RowEntry> rows = new ArrayList<>();
+        String[][] values = {{"1", "Ann"}, {"2", "5"}, {"2", "7"}, {"2", "6.5"}, {"2", "Bob"}, {"2", "3"}};
+        for (String[] value : values) {
+            RowEntry row = new RowEntry();
+            row.addOrUpdateValue("user_id", value[0]);
+            row.addOrUpdateValue("name", value[1]);
+            rows.add(row);
+            index.insert(row, rows.size() - 1, rows);
+            if (rows.size() == 2) {
+                assertEquals(KeyType.STRING, index.getTree(List.of("1")).getKeyType());
+                assertEquals(KeyType.LONG, index.getTree(List.of("2")).getKeyType());
+            }
+        }
+
+        BPlusTree first = index.getTree(List.of("1"));
+        assertEquals(KeyType.STRING, index.getTree(List.of("2")).getKeyType());
+        assertEquals(List.of(1, 2, 3, 4, 5), list(index.getTree(List.of("2")).searchAll()).stream().sorted().toList());
+        assertEquals(List.of(4), list(index.getTree(List.of("2.0")).searchEqualTo("Bob")));
+
+        RowEntry row = new RowEntry();
+        row.addOrUpdateValue("user_id", "2");
+        row.addOrUpdateValue("name", "Cy");
+        rows.add(row);
+        index.insert(row, 6, rows);
+        assertSame(first, index.getTree(List.of("1")));
+        assertEquals(List.of(6), list(index.getTree(List.of("2")).searchEqualTo("Cy")));
+    }
+
+    @Test
+    void testSnapshot_WriterKeepsGoing_SnapshotsKeepTheirVersion() {
+        BPlusTree tree = new BPlusTree(KeyType.LONG, 3);
+        TreeMap<Long, TreeSet<Integer>> model = new TreeMap<>();
+        for (int row = 0; row < 300; row++) {
+            insert(tree, model, row % 100, row);
+        }
+
+        Random random = new Random(11);
+        BPlusTreeSnapshot first = tree.snapshot();
+        TreeMap<Long, TreeSet<Integer>> firstModel = copy(model);
+        BPlusTreeSnapshot second = null;
+        TreeMap<Long, TreeSet<Integer>> secondModel = null;
+        int nextRow = 300;
+        for (int i = 0; i < 2000; i++) {
+            long key = random.nextInt(150);
+            TreeSet<Integer> keyRows = model.get(key);
+            if (keyRows != null && random.nextBoolean()) {
+                int row = keyRows.first();
+                assertTrue(tree.delete(Long.toString(key), row));
+                keyRows.remove(row);
+                if (keyRows.isEmpty()) {
+                    model.remove(key);
+                }
+            } else {
+                insert(tree, model, key, nextRow++);
+            }
+            if (i == 1000) {
+                second = tree.snapshot();
+                secondModel = copy(model);
+            }
+            if (i % 250 == 0) {
+                assertValid(tree);
+                assertScans(tree, model);
+                assertSnapshotScans(first, firstModel);
+            }
+        }
+        assertSnapshotScans(first, firstModel);
+        assertSnapshotScans(second, secondModel);
+
+        // once closed, the writer stops copying and the tree stays valid
+        first.close();
+        second.close();
+        assertThrows(IllegalStateException.class, () -> first.scan(null, false, null, false));
+        for (int row = nextRow; row < nextRow + 200; row++) {
+            insert(tree, model, row % 150, row);
+        }
+        assertValid(tree);
+        assertScans(tree, model);
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static void insert(BPlusTree tree, TreeMap<Long, TreeSet<Integer>> model, long key, int row) {
+        assertTrue(tree.insert(Long.toString(key), row));
+        model.computeIfAbsent(key, k -> new TreeSet<>()).add(row);
+    }
+
+    /**
+     * Checks the rows the scans return against the model: in key order, and
+     * in row order within a key.
+     */
+    private static void assertScans(BPlusTree tree, TreeMap<Long, TreeSet<Integer>> model) {
+        assertEquals(rows(model), list(tree.searchAll()));
+        for (long key = -1; key <= 201; key += 17) {
+            String k = Long.toString(key);
+            assertEquals(rows(model.headMap(key, false)), list(tree.searchLessThan(k)), "< " + key);
+            assertEquals(rows(model.tailMap(key, true)), list(tree.searchGreaterThanOrEqualTo(k)), ">= " + key);
+            assertEquals(rows(model.subMap(key, true, key, true)), list(tree.searchEqualTo(k)), "= " + key);
+        }
+    }
+
+    private static void assertSnapshotScans(BPlusTreeSnapshot snapshot, TreeMap<Long, TreeSet<Integer>> model) {
+        assertEquals(rows(model), list(snapshot.searchAll()));
+        for (long key = -1; key <= 151; key += 13) {
+            String k = Long.toString(key);
+            IntList greater = new IntList();
+            snapshot.scan(k, false, null, false).drainTo(greater);
+            assertEquals(rows(model.tailMap(key, false)), list(greater), "> " + key);
+            IntList between = new IntList();
+            SnapshotCursor cursor = snapshot.scan(k, true, Long.toString(key + 20), true);
+            while (cursor.hasNext()) {
+                between.add(cursor.nextInt());
+            }
+            assertEquals(rows(model.subMap(key, true, key + 20, true)), list(between), "[" + key + ", " + (key + 20) + "]");
+        }
+    }
+
+    private static TreeMap<Long, TreeSet<Integer>> copy(TreeMap<Long, TreeSet<Integer>> model) {
+        TreeMap<Long, TreeSet<Integer>> copy = new TreeMap<>();
+        model.forEach((key, keyRows) -> copy.put(key, new TreeSet<>(keyRows)));
+        return copy;
+    }
+
+    /**
+     * Checks the shape of the tree: every leaf at the same depth, every node
+     * but the root at least half full, the keys sorted within and across the
+     * nodes, the parent pointers and the leaf links consistent.
+     */
+    static void assertValid(BPlusTree tree) {
+        List<LeafNode> leaves = new ArrayList<>();
+        if (tree.root == null) {
+            leaves.add(tree.firstLeaf);
+            assertNull(tree.firstLeaf.parent);
+        } else {
+            assertNull(tree.root.parent);
+            assertTrue(tree.root.degree >= 2, "root degree " + tree.root.degree);
+            collectLeaves(tree.root, null, null, tree.getHeight() - 1, leaves);
+        }
+
+        assertSame(tree.firstLeaf, leaves.get(0));
+        assertNull(leaves.get(0).leftSibling);
+        assertNull(leaves.get(leaves.size() - 1).rightSibling);
+        for (int i = 0; i < leaves.size(); i++) {
+            LeafNode leaf = leaves.get(i);
+            if (i > 0) {
+                assertSame(leaves.get(i - 1), leaf.leftSibling);
+                assertSame(leaf, leaves.get(i - 1).rightSibling);
+                LeafNode previous = leaves.get(i - 1);
+                assertTrue(previous.keys.compare(previous.numKeys - 1, leaf.keys.get(0)) < 0);
+            }
+            if (leaf.parent != null) {
+                assertTrue(leaf.numKeys >= leaf.minNumKeys && leaf.numKeys <= leaf.maxNumKeys,
+                        "leaf of " + leaf.numKeys + " keys");
+            }
+            for (int k = 1; k < leaf.numKeys; k++) {
+                assertTrue(leaf.keys.compare(k - 1, k) < 0);
+            }
+        }
+    }
+
+    /**
+     * Collects the leaves under a node, left to right, checking that its keys
+     * lie within the separators of its ancestors, [lo, hi).
+     */
+    private static void collectLeaves(Node node, Key lo, Key hi, int depth, List<LeafNode> leaves) {
+        if (node instanceof LeafNode leaf) {
+            assertEquals(0, depth, "a leaf above the lowest level");
+            for (int k = 0; k < leaf.numKeys; k++) {
+                assertTrue(lo == null || leaf.keys.compare(k, lo) >= 0);
+                assertTrue(hi == null || leaf.keys.compare(k, hi) < 0);
+            }
+            leaves.add(leaf);
+            return;
+        }
+        InternalNode in = (InternalNode) node;
+        assertFalse(in.obsolete);
+        if (in.parent != null) {
+            assertTrue(in.degree >= in.minDegree && in.degree <= in.maxDegree, "node of degree " + in.degree);
+        }
+        for (int c = 0; c < in.degree; c++) {
+            assertSame(in, in.childPointers[c].parent);
+            Key childLo = c == 0 ? lo : in.keys.get(c - 1);
+            Key childHi = c == in.degree - 1 ? hi : in.keys.get(c);
+            collectLeaves(in.childPointers[c], childLo, childHi, depth - 1, leaves);
+        }
+    }
+
+    private static List<Integer> rows(SortedMap<Long, TreeSet<Integer>> model) {
+        List<Integer> rows = new ArrayList<>();
+        for (TreeSet<Integer> keyRows : model.values()) {
+            rows.addAll(keyRows);
+        }
+        return rows;
+    }
+
+    private static List<Integer> list(IntList indices) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < indices.size(); i++) {
+            list.add(indices.get(i));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,188 @@
+package edu.smu.smusql.bplus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class PrefixKeyArrayTest {
+    private static final int CAPACITY = 16;
+    private static final String PREFIX = "customer-account-reference-";
+
+    @Test
+    void testCompare_KeysSharingALongPrefix_MatchesStringCompareTo() {
+        Random random = new Random(42);
+        PrefixKeyArray keys = new PrefixKeyArray(CAPACITY);
+        String[] model = new String[CAPACITY];
+        for (int step = 0; step < 5000; step++) {
+            int i = random.nextInt(CAPACITY);
+            int j = random.nextInt(CAPACITY);
+            switch (random.nextInt(4)) {
+                case 0, 1 -> {
+                    model[i] = randomKey(random);
+                    keys.set(i, Key.ofString(model[i]));
+                }
+                case 2 -> {
+                    if (model[i] != null && model[j] != null) {
+                        keys.swap(i, j);
+                        String s = model[i];
+                        model[i] = model[j];
+                        model[j] = s;
+                    }
+                }
+                default -> {
+                    if (model[j] != null) {
+                        keys.setFrom(i, keys, j);
+                        model[i] = model[j];
+                    }
+                }
+            }
+            if (step % 500 == 499) {
+                // as a split does with the upper half of a leaf
+                keys.clear(CAPACITY / 2, CAPACITY);
+                Arrays.fill(model, CAPACITY / 2, CAPACITY, null);
+            }
+            assertMatches(model, keys, randomKey(random));
+        }
+    }
+
+    @Test
+    void testSearch_KeysThatArePrefixesOfEachOther_FindsTheirPositions() {
+        List<String> sorted = new ArrayList<>(List.of(
+                "a", "aa", "aaa", "aaaa", "aab", "ab", "abc", "abcd", "abcde", "b", "ba", "bb",
+                PREFIX, PREFIX + "0", PREFIX + "00", PREFIX + "01"));
+        Collections.sort(sorted);
+        PrefixKeyArray keys = new PrefixKeyArray(CAPACITY);
+        for (int i = 0; i < sorted.size(); i++) {
+            keys.set(i, Key.ofString(sorted.get(i)));
+        }
+
+        List<String> probes = new ArrayList<>(sorted);
+        probes.addAll(List.of("", "0", "a0", "aaaaa", "aab0", "abcdf", "az", "c", PREFIX.substring(0, 5),
+                PREFIX + "000", PREFIX + "1", "é", "a中"));
+        for (String probe : probes) {
+            int notLess = 0;
+            while (notLess < sorted.size() && sorted.get(notLess).compareTo(probe) < 0) {
+                notLess++;
+            }
+            int greater = notLess;
+            while (greater < sorted.size() && sorted.get(greater).compareTo(probe) <= 0) {
+                greater++;
+            }
+            assertEquals(notLess, keys.firstIndexNotLessThan(Key.ofString(probe), sorted.size()), probe);
+            assertEquals(greater, keys.firstIndexGreaterThan(Key.ofString(probe), sorted.size()), probe);
+        }
+
+        // moved into another leaf, the keys compare the same
+        PrefixKeyArray upper = new PrefixKeyArray(CAPACITY);
+        keys.copy(8, upper, 0, 8);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(sorted.get(8 + i), upper.get(i).stringValue);
+            assertEquals(Integer.signum(sorted.get(8 + i).compareTo("abcd")),
+                    Integer.signum(upper.compare(i, Key.ofString("abcd"))));
+        }
+    }
+
+    @Test
+    void testTree_StringKeysWithLongSharedPrefixes_AnswersLikeAModel() {
+        BPlusTree tree = new BPlusTree(KeyType.STRING, 4);
+        TreeMap<String, TreeSet<Integer>> model = new TreeMap<>();
+        Random random = new Random(7);
+        for (int row = 0; row < 3000; row++) {
+            String key = randomKey(random);
+            assertTrue(tree.insert(key, row));
+            model.computeIfAbsent(key, k -> new TreeSet<>()).add(row);
+            if (row % 3 == 0) {
+                // remove a row of some key, so that leaves rebuild and merge
+                Map.Entry<String, TreeSet<Integer>> entry = model.ceilingEntry(randomKey(random));
+                if (entry != null) {
+                    int removed = entry.getValue().first();
+                    assertTrue(tree.delete(entry.getKey(), removed));
+                    entry.getValue().remove(removed);
+                    if (entry.getValue().isEmpty()) {
+                        model.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        BPlusTreeTest.assertValid(tree);
+
+        List<String> probes = new ArrayList<>(model.keySet());
+        for (int i = 0; i < 200; i++) {
+            probes.add(randomKey(random));
+        }
+        for (String probe : probes) {
+            assertEquals(rows(model.subMap(probe, true, probe, true)), list(tree.searchEqualTo(probe)), "= " + probe);
+            assertEquals(rows(model.headMap(probe, true)), list(tree.searchLessThanOrEqualTo(probe)), "<= " + probe);
+            assertEquals(rows(model.tailMap(probe, false)), list(tree.searchGreaterThan(probe)), "> " + probe);
+        }
+        String lo = PREFIX + "1";
+        String hi = PREFIX + "1zz";
+        List<Integer> scanned = new ArrayList<>();
+        tree.scan(lo, true, hi, false).forEachRemaining((int row) -> scanned.add(row));
+        assertEquals(rows(model.subMap(lo, true, hi, false)), scanned);
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    /**
+     * Returns a key that mostly shares PREFIX with the others, often is a
+     * prefix of another, and sometimes holds a char that needs two bytes.
+     */
+    private static String randomKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        int kind = random.nextInt(10);
+        // never a number, which a STRING tree does not compare against
+        if (kind < 7) {
+            key.append(PREFIX, 0, kind == 0 ? 1 + random.nextInt(PREFIX.length()) : PREFIX.length());
+        } else if (kind == 7) {
+            key.append("other-");
+        } else {
+            key.append('x');
+        }
+        int suffixLength = random.nextInt(4);
+        for (int k = 0; k < suffixLength; k++) {
+            key.append(random.nextInt(20) == 0 ? 'é' : (char) ('0' + random.nextInt(3)));
+        }
+        if (kind == 9) {
+            key.append('中');
+        }
+        return key.toString();
+    }
+
+    private static void assertMatches(String[] model, PrefixKeyArray keys, String probe) {
+        for (int i = 0; i < model.length; i++) {
+            if (model[i] == null) {
+                continue;
+            }
+            assertEquals(model[i], keys.get(i).stringValue);
+            assertEquals(Integer.signum(model[i].compareTo(probe)), Integer.signum(keys.compare(i, Key.ofString(probe))),
+                    model[i] + " against " + probe);
+            for (int j = 0; j < model.length; j++) {
+                if (model[j] != null) {
+                    assertEquals(Integer.signum(model[i].compareTo(model[j])), Integer.signum(keys.compare(i, j)),
+                            model[i] + " against " + model[j]);
+                }
+            }
+        }
+    }
+
+    private static List<Integer> rows(SortedMap<String, TreeSet<Integer>> model) {
+        List<Integer> rows = new ArrayList<>();
+        for (TreeSet<Integer> keyRows : model.values()) {
+            rows.addAll(keyRows);
+        }
+        return rows;
+    }
+
+    private static List<Integer> list(IntList indices) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < indices.size(); i++) {
+            list.add(indices.get(i));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,136 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.*;
+
+// The blocks are all of one size, and the caches hold 8 of them: 'in' takes up 2 once 'main' is in use.
+public class BlockCacheTest {
+    private static final DataBlock BLOCK = block("value");
+    private static final long BLOCK_SIZE = sizeOf(BLOCK);
+
+    private final BlockCache cache = new BlockCache(8 * BLOCK_SIZE);
+
+    @Test
+    void testPut_ManyBlocks_StaysWithinCapacity() {
+        for (long key = 0; key < 1000; key++) {
+            if (cache.get(key) == null) {
+                cache.put(key, BLOCK);
+            }
+            // read some blocks twice, so that 'main' fills up too
+            if (key % 3 == 0 && cache.get(key / 2) == null) {
+                cache.put(key / 2, BLOCK);
+            }
+            assertTrue(cache.getSize() <= cache.getCapacity(), "size " + cache.getSize() + " at " + key);
+        }
+        assertEquals(8 * BLOCK_SIZE, cache.getSize());
+
+        BlockCache small = new BlockCache(BLOCK_SIZE - 1);
+        small.put(1, BLOCK);
+        assertNull(small.get(1));
+        assertEquals(0, small.getSize());
+    }
+
+    @Test
+    void testScan_DoesNotEvictTheBlocksReadAgain() {
+        makeHot(1, 2, 3, 4);
+
+        // a scan reads many blocks once each
+        for (long key = 1000; key < 1200; key++) {
+            assertNull(cache.get(key));
+            cache.put(key, BLOCK);
+        }
+        for (long key = 1; key <= 4; key++) {
+            assertNotNull(cache.get(key), "block " + key);
+        }
+        // and only ever cycles through 'in'
+        assertNull(cache.get(1000));
+        assertNotNull(cache.get(1199));
+    }
+
+    @Test
+    void testMain_EvictsTheLeastRecentlyRead() {
+        makeHot(1, 2, 3, 4);
+        assertNotNull(cache.get(1));  // now the most recently read
+
+        // the keys pushed out of 'in' by makeHot are remembered, and go to 'main' when read again
+        for (long key = 10; key < 14; key++) {
+            assertNull(cache.get(key));
+            cache.put(key, BLOCK);
+        }
+        // 'main' is full with 2, 3, 4, 1, 10, 11, 12, 13 from the least recent, 'in' is empty
+        cache.put(50, BLOCK);
+        assertNull(cache.get(2));
+        cache.put(51, BLOCK);
+        assertNull(cache.get(3));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(50));
+        assertNotNull(cache.get(51));
+        // 'in' holds its share now, and gives up its oldest block first
+        cache.put(52, BLOCK);
+        assertNull(cache.get(50));
+        assertNotNull(cache.get(4));
+        assertEquals(8 * BLOCK_SIZE, cache.getSize());
+    }
+
+    @Test
+    void testHitsAndMisses_AreCounted() {
+        assertNull(cache.get(1));
+        cache.put(1, BLOCK);
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(1));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRatio(), 1e-9);
+
+        cache.invalidate(1, 1);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getSize());
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    /**
+     * Reads each block twice a while apart, which moves it to 'main': once
+     * into 'in', then again after 8 other blocks pushed it out. Leaves 'in'
+     * holding the last 4 of the blocks 10 to 17.
+     */
+    private void makeHot(long... keys) {
+        for (long key : keys) {
+            cache.put(key, BLOCK);
+        }
+        for (long key = 10; key < 18; key++) {
+            cache.put(key, BLOCK);
+        }
+        for (long key : keys) {
+            assertNull(cache.get(key));
+            cache.put(key, BLOCK);
+        }
+        assertEquals(8 * BLOCK_SIZE, cache.getSize());
+    }
+
+    private static DataBlock block(String value) {
+        // a block of a single uncompressed entry, with the layout of SSTableWriter
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(CompressionCodec.NONE.id);
+        SSTableWriter.writeVarint(bytes, 1);
+        SSTableWriter.writeEntry(bytes, new Entry("key", value, 1));
+        try {
+            return DataBlock.decode(ByteBuffer.wrap(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static long sizeOf(DataBlock block) {
+        BlockCache cache = new BlockCache(1 << 20);
+        cache.put(0, block);
+        return cache.getSize();
+    }
+}
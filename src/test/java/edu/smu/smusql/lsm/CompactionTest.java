@@ -0,0 +1,134 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+// A MemTable of a few KiB flushes every few dozen writes, so that the compactions run many times.
+public class CompactionTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLeveledCompaction_OverwritesAndDeletes_ResolveToTheNewestWrite() {
+        LSMConfig config = config(new LeveledCompaction(2, 2, 8 << 10, 4 << 10));
+        TreeMap<String, String> expected = new TreeMap<>();
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            write(tree, expected);
+            tree.flush();
+
+            List<List<SSTable>> levels = tree.getLevels();
+            assertTrue(levels.size() > 2, "levels: " + levels);
+            assertTrue(levels.get(0).size() < 2, "level 0: " + levels.get(0));
+            assertTrue(tree.getWriteAmplification() > 1);
+            assertNonOverlapping(levels);
+            assertContents(tree, expected);
+        }
+        // the manifest keeps the levels
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            assertTrue(tree.getLevels().size() > 2);
+            assertNonOverlapping(tree.getLevels());
+            assertContents(tree, expected);
+        }
+    }
+
+    @Test
+    void testSizeTieredCompaction_OverwritesAndDeletes_ResolveToTheNewestWrite() {
+        LSMConfig config = config(new SizeTieredCompaction(2, 4));
+        TreeMap<String, String> expected = new TreeMap<>();
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            write(tree, expected);
+            tree.flush();
+
+            List<List<SSTable>> levels = tree.getLevels();
+            assertEquals(1, levels.size());
+            assertTrue(tree.getWriteAmplification() > 1);
+            // every tier of 2 tables was merged, and hundreds of flushes left a few tables
+            assertNull(config.getCompactionStrategy().pick(levels), "levels: " + levels);
+            assertTrue(levels.get(0).size() < 30, "level 0: " + levels.get(0));
+            assertContents(tree, expected);
+        }
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            assertContents(tree, expected);
+        }
+    }
+
+    @Test
+    void testSizeTieredCompaction_OldestTier_DropsTombstones() {
+        try (LSMTree tree = new LSMTree(directory, config(new SizeTieredCompaction(2, 32)))) {
+            for (int i = 0; i < 200; i++) {
+                tree.put(key(i), "value " + i);
+            }
+            tree.flush();
+            for (int i = 0; i < 200; i++) {
+                tree.remove(key(i));
+            }
+            tree.flush();
+
+            assertEquals(Map.of(), tree.getEntriesInRange(null, false, null, false));
+            long entries = 0;
+            for (SSTable ssTable : tree.getLevels().get(0)) {
+                entries += ssTable.getEntryCount();
+            }
+            assertEquals(0, entries);
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static LSMConfig config(CompactionStrategy strategy) {
+        return LSMConfig.defaults().withMemTableSize(4096).withCompactionStrategy(strategy);
+    }
+
+    private static String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    /**
+     * Writes, overwrites and removes keys in random order, recording the
+     * latest value of each key.
+     */
+    private static void write(LSMTree tree, Map<String, String> expected) {
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            String key = key(random.nextInt(3000));
+            if (random.nextInt(5) == 0) {
+                tree.remove(key);
+                expected.remove(key);
+            } else {
+                String value = "value " + i;
+                tree.put(key, value);
+                expected.put(key, value);
+            }
+        }
+    }
+
+    private static void assertNonOverlapping(List<List<SSTable>> levels) {
+        for (int level = 1; level < levels.size(); level++) {
+            List<SSTable> ssTables = levels.get(level);
+            for (int i = 0; i < ssTables.size(); i++) {
+                SSTable ssTable = ssTables.get(i);
+                assertTrue(ssTable.getFirstKey().compareTo(ssTable.getLastKey()) <= 0);
+                if (i > 0) {
+                    assertTrue(ssTables.get(i - 1).getLastKey().compareTo(ssTable.getFirstKey()) < 0,
+                            "level " + level + ": " + ssTables);
+                }
+            }
+        }
+    }
+
+    private static void assertContents(LSMTree tree, NavigableMap<String, String> expected) {
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(expected.get(key(i)), tree.get(key(i)), key(i));
+        }
+        assertEquals(expected, tree.getEntriesInRange(null, false, null, false));
+        assertEquals(expected.subMap(key(1000), true, key(1500), false),
+                tree.getEntriesInRange(key(1000), true, key(1500), false));
+    }
+}
@@ -0,0 +1,121 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FilterBlockTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMightContain_PresentKeys_NeverFilteredOut() {
+        for (int bitsPerKey : new int[]{1, 4, 10, 20}) {
+            for (int count : new int[]{1, 7, 1000, 20_000}) {
+                List<String> keys = keys("k", count);
+                FilterBlock filter = build(keys, bitsPerKey);
+                for (String key : keys) {
+                    assertTrue(filter.mightContain(key), key + " with " + bitsPerKey + " bits per key");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMightContain_AbsentKeys_MostlyFilteredOut() {
+        FilterBlock filter = build(keys("k", 10_000), 10);
+        int falsePositives = 0;
+        for (String key : keys("absent", 10_000)) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        // about 1% with 10 bits per key
+        assertTrue(falsePositives < 300, falsePositives + " false positives");
+    }
+
+    @Test
+    void testSSTable_KeysOutsideTheFences_ReadNoBlock() throws IOException {
+        BlockCache cache = new BlockCache(1 << 20);
+        // no filter, so that only the first and last key rule keys out
+        SSTableWriter writer = new SSTableWriter(directory.resolve("000001.sst"), 0, CompressionCodec.NONE);
+        for (String key : keys("m", 1000)) {
+            writer.add(new Entry(key, "value", 1));
+        }
+        try (SSTable ssTable = writer.finish(1, cache)) {
+            for (String key : List.of("a", "l", "m", "m99999", "n", "z")) {
+                assertFalse(ssTable.mightContain(key), key);
+                assertNull(ssTable.get(key));
+            }
+            assertEquals(0, cache.getMisses());
+            assertTrue(ssTable.mightContain("m00000"));
+            assertTrue(ssTable.mightContain("m00500x"));  // inside the fences, without a filter
+            assertNotNull(ssTable.get("m00999"));
+
+            assertFalse(ssTable.overlaps("a", "l"));
+            assertFalse(ssTable.overlaps("n", null));
+            assertTrue(ssTable.overlaps(null, "m00000"));
+            assertTrue(ssTable.overlaps("m00999", "z"));
+        }
+    }
+
+    @Test
+    void testTree_DisjointTables_LookupReadsOneBlock() {
+        BlockCache cache = new BlockCache(1 << 20);
+        // no compaction, so that level 0 keeps a table per flush
+        LSMConfig config = LSMConfig.defaults().withBlockCache(cache)
+                .withCompactionStrategy(new SizeTieredCompaction(32, 32));
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            for (String prefix : List.of("a", "b", "c", "d")) {
+                for (String key : keys(prefix, 500)) {
+                    tree.put(key, "value of " + key);
+                }
+                tree.flush();
+            }
+            assertEquals(4, tree.getLevels().get(0).size());
+
+            long misses = cache.getMisses();
+            for (String prefix : List.of("a", "b", "c", "d")) {
+                assertEquals("value of " + prefix + "00250", tree.get(prefix + "00250"));
+            }
+            assertEquals(misses + 4, cache.getMisses());
+
+            // outside every table, or ruled out by the filter of the only table it falls in
+            for (String key : List.of("0", "e", "b00250x", "c9")) {
+                assertNull(tree.get(key));
+            }
+            assertEquals(misses + 4, cache.getMisses());
+
+            // a scan within one table reads the one or two blocks of that table holding the range
+            long reads = cache.getMisses() + cache.getHits();
+            assertEquals(10, tree.getEntriesInRange("c00100", true, "c00110", false).size());
+            assertTrue(cache.getMisses() + cache.getHits() - reads <= 2);
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static List<String> keys(String prefix, int count) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format("%s%05d", prefix, i));
+        }
+        return keys;
+    }
+
+    private static FilterBlock build(List<String> keys, int bitsPerKey) {
+        int[] hashes = new int[keys.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = FilterBlock.hash(keys.get(i));
+        }
+        return FilterBlock.decode(ByteBuffer.wrap(FilterBlock.build(hashes, hashes.length, bitsPerKey)));
+    }
+}
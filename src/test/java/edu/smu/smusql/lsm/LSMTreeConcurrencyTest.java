@@ -0,0 +1,147 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LSMTreeConcurrencyTest {
+    private static final int WRITERS = 4;
+    private static final int KEYS_PER_WRITER = 5000;
+    private static final int STOP_TRIGGER = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @Timeout(60)
+    void testConcurrentWriters_WithTriggers_LoseNothingAndBoundLevel0() throws Exception {
+        // a compaction every 2 flushes, and writers held back from the 2nd table in level 0
+        LSMConfig config = LSMConfig.defaults()
+                .withMemTableSize(4096)
+                .withMaxImmutableMemTables(1)
+                .withCompactionStrategy(new LeveledCompaction(2, 2, 16 << 10, 4 << 10))
+                .withSlowdownTrigger(2)
+                .withStopTrigger(STOP_TRIGGER);
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            AtomicInteger maxLevel0 = new AtomicInteger();
+            List<Callable<Void>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(() -> {
+                    for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                        tree.put(key(writer, i), "first " + i);
+                        if (i % 3 == 0) {
+                            tree.put(key(writer, i / 3), "second " + i / 3);
+                        }
+                        maxLevel0.accumulateAndGet(tree.getLevels().get(0).size(), Math::max);
+                    }
+                    return null;
+                });
+            }
+            runAll(writers);
+            tree.flush();
+
+            // a writer may fill its MemTable after the check of the stop trigger, and the
+            // MemTables being flushed add to level 0 too
+            assertTrue(maxLevel0.get() <= STOP_TRIGGER + WRITERS + 1, "level 0 grew to " + maxLevel0.get());
+            assertTrue(tree.getLevels().get(0).size() < 2);
+            assertAllWritten(tree);
+        }
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            assertAllWritten(tree);
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    void testClose_DuringCompaction_WaitsAndKeepsEverything() {
+        // a small level base size, so that the compactions cascade through several levels
+        LSMConfig config = LSMConfig.defaults()
+                .withMemTableSize(4096)
+                .withCompactionStrategy(new LeveledCompaction(2, 2, 4 << 10, 2 << 10));
+        LSMTree tree = new LSMTree(directory, config);
+        for (int writer = 0; writer < WRITERS; writer++) {
+            for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                tree.put(key(writer, i), "first " + i);
+                if (i % 3 == 0) {
+                    tree.put(key(writer, i / 3), "second " + i / 3);
+                }
+            }
+        }
+        // no flush(), the last flushes and compactions are still running
+        tree.close();
+
+        try (LSMTree reopened = new LSMTree(directory, config)) {
+            assertAllWritten(reopened);
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    void testConcurrentReadersAndWriters_SeeEveryAcknowledgedWrite() throws Exception {
+        LSMConfig config = LSMConfig.defaults()
+                .withMemTableSize(4096)
+                .withCompactionStrategy(new SizeTieredCompaction(2, 4));
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            AtomicInteger written = new AtomicInteger(-1);  // the highest index whose write returned
+            List<Callable<Void>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                    tree.put(key(0, i), "first " + i);
+                    written.set(i);
+                }
+                return null;
+            });
+            for (int r = 0; r < 2; r++) {
+                tasks.add(() -> {
+                    Random random = new Random();
+                    while (written.get() < KEYS_PER_WRITER - 1) {
+                        int last = written.get();
+                        if (last >= 0) {
+                            int i = random.nextInt(last + 1);
+                            assertEquals("first " + i, tree.get(key(0, i)), key(0, i));
+                        }
+                    }
+                    return null;
+                });
+            }
+            runAll(tasks);
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static String key(int writer, int i) {
+        return String.format("w%d-%05d", writer, i);
+    }
+
+    private static void runAll(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertAllWritten(LSMTree tree) {
+        for (int writer = 0; writer < WRITERS; writer++) {
+            for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                // key i / 3 was rewritten after key i, so the keys below a third have their second value
+                String expected = i < (KEYS_PER_WRITER + 2) / 3 ? "second " + i : "first " + i;
+                assertEquals(expected, tree.get(key(writer, i)), key(writer, i));
+            }
+        }
+        assertEquals(WRITERS * KEYS_PER_WRITER, tree.getEntriesInRange(null, false, null, false).size());
+    }
+}
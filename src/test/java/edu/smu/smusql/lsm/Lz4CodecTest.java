@@ -0,0 +1,138 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class Lz4CodecTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRoundTrip_Empty() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    void testRoundTrip_Incompressible() throws IOException {
+        byte[] src = new byte[10_000];
+        new Random(42).nextBytes(src);
+        byte[] compressed = assertRoundTrip(src);
+        // literals only, with a few bytes of lengths
+        assertTrue(compressed.length <= src.length + src.length / 255 + 16, "" + compressed.length);
+    }
+
+    @Test
+    void testRoundTrip_HighlyRepetitive() throws IOException {
+        byte[] zeros = new byte[10_000];
+        assertTrue(assertRoundTrip(zeros).length < 100);
+
+        byte[] text = "user=john;age=25;city=Singapore;".repeat(300).getBytes(StandardCharsets.UTF_8);
+        assertTrue(assertRoundTrip(text).length < text.length / 20);
+    }
+
+    @Test
+    void testRoundTrip_ShortInputs() throws IOException {
+        for (int length = 1; length <= 20; length++) {
+            assertRoundTrip(Arrays.copyOf("aaaaaaaaaaaaaaaaaaaaaaaaa".getBytes(StandardCharsets.UTF_8), length));
+        }
+    }
+
+    @Test
+    void testRoundTrip_LongerThanTheMatchWindow() throws IOException {
+        // a random 40 KiB run repeated, so that matches are found both within and beyond 64 KiB back
+        byte[] run = new byte[40 << 10];
+        new Random(7).nextBytes(run);
+        byte[] src = new byte[200 << 10];
+        for (int i = 0; i < src.length; i += run.length) {
+            System.arraycopy(run, 0, src, i, Math.min(run.length, src.length - i));
+        }
+        assertTrue(assertRoundTrip(src).length < src.length / 2);
+    }
+
+    @Test
+    void testDecompress_Corrupted_Throws() {
+        byte[] src = "abcdabcdabcdabcdabcdabcdabcdabcd".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = Lz4Codec.compress(src, src.length);
+        assertThrows(IOException.class,
+                () -> Lz4Codec.decompress(compressed, 0, compressed.length - 1, new byte[src.length]));
+        assertThrows(IOException.class,
+                () -> Lz4Codec.decompress(compressed, 0, compressed.length, new byte[src.length + 1]));
+        // a match that points before the start of the output
+        byte[] badOffset = {0x10, 'a', 0x7f, 0x00, 0x00};
+        assertThrows(IOException.class, () -> Lz4Codec.decompress(badOffset, 0, badOffset.length, new byte[10]));
+    }
+
+    @Test
+    void testSSTable_KeysWithLongSharedPrefixes_ReadBack() throws IOException {
+        String prefix = "customer/region-asia-pacific/country-singapore/".repeat(4);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            keys.add(prefix + String.format("%05d", i));
+        }
+        // keys that are prefixes of each other, and one that differs in its last character only
+        keys.add(prefix);
+        keys.add(prefix + "0");
+        keys.add(prefix + "00");
+        Collections.sort(keys);
+
+        SSTable plain = write("plain.sst", keys, CompressionCodec.NONE);
+        SSTable compressed = write("lz4.sst", keys, CompressionCodec.LZ4);
+        try {
+            assertTrue(compressed.getFileSize() < plain.getFileSize(),
+                    compressed.getFileSize() + " >= " + plain.getFileSize());
+            for (SSTable ssTable : List.of(plain, compressed)) {
+                assertTrue(ssTable.getNumBlocks() > 1);
+                for (String key : keys) {
+                    assertEquals(value(key), ssTable.get(key).value, key);
+                }
+                assertNull(ssTable.get(prefix + "000"));
+                assertNull(ssTable.get(prefix.substring(1)));
+
+                List<String> read = new ArrayList<>();
+                ssTable.iterator("", true).forEachRemaining(entry -> read.add(entry.key));
+                assertEquals(keys, read);
+                Iterator<Entry> from = ssTable.iterator(prefix + "0", false);
+                assertEquals(prefix + "00", from.next().key);
+                assertEquals(prefix + "00000", from.next().key);
+            }
+        } finally {
+            plain.close();
+            compressed.close();
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static byte[] assertRoundTrip(byte[] src) throws IOException {
+        byte[] compressed = Lz4Codec.compress(src, src.length);
+        // at an offset in a larger array, as DataBlock reads it
+        byte[] framed = new byte[compressed.length + 6];
+        System.arraycopy(compressed, 0, framed, 3, compressed.length);
+        byte[] dst = new byte[src.length];
+        Lz4Codec.decompress(framed, 3, compressed.length, dst);
+        assertArrayEquals(src, dst);
+        return compressed;
+    }
+
+    private SSTable write(String name, List<String> keys, CompressionCodec codec) throws IOException {
+        SSTableWriter writer = new SSTableWriter(directory.resolve(name), 10, codec);
+        long sequence = 0;
+        for (String key : keys) {
+            writer.add(new Entry(key, value(key), ++sequence));
+        }
+        return writer.finish(1, new BlockCache(1 << 20));
+    }
+
+    private static String value(String key) {
+        return "value of " + key.substring(key.length() - 3);
+    }
+}
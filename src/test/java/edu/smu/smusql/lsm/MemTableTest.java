@@ -0,0 +1,114 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MemTableTest {
+    @TempDir
+    Path directory;
+
+    private MemTable memTable;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        memTable = new MemTable(new WriteAheadLog(directory.resolve("000001.log"), WalSyncPolicy.NONE));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        memTable.getLog().close();
+    }
+
+    @Test
+    void testGet_VersionsWrittenOutOfSequence_ReturnsTheHighestSequence() throws IOException {
+        write("a", "5", 5);
+        write("a", "3", 3);
+        write("a", "4", 4);
+        assertEquals("5", memTable.get("a").value);
+
+        write("a", null, 6);
+        assertTrue(memTable.get("a").isTombstone());
+        assertNull(memTable.get("b"));
+    }
+
+    @Test
+    void testIterator_Snapshot_ReturnsTheNewestVersionUpToIt() throws IOException {
+        write("a", "1", 1);
+        write("b", "2", 2);
+        write("a", null, 3);
+        write("c", "4", 4);
+        write("b", "5", 5);
+
+        assertEquals(List.of("a=1", "b=2"), entries(null, false, null, false, 2));
+        assertEquals(List.of("a=null", "b=2"), entries(null, false, null, false, 3));
+        assertEquals(List.of("a=null", "b=5", "c=4"), entries(null, false, null, false, Long.MAX_VALUE));
+        assertEquals(List.of(), entries(null, false, null, false, 0));
+
+        // the bounds hold every version of their key, or none
+        assertEquals(List.of("b=5"), entries("a", false, "c", false, Long.MAX_VALUE));
+        assertEquals(List.of("a=null", "b=5", "c=4"), entries("a", true, "c", true, Long.MAX_VALUE));
+        assertEquals(List.of("b=2"), entries("b", true, "b", true, 4));
+        assertEquals(List.of(), entries("c", true, "a", true, Long.MAX_VALUE));
+    }
+
+    @Test
+    @Timeout(60)
+    void testConcurrentPutAndRemove_SameKey_NewestSequenceWins() throws Exception {
+        // sequence numbers are taken before the writes, as LSMTree does, so they land out of order
+        AtomicLong sequence = new AtomicLong();
+        Map<Long, Entry> written = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Void>> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int writer = w;
+                writers.add(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        Entry entry = new Entry("key", i % 3 == 0 ? null : writer + "-" + i, sequence.incrementAndGet());
+                        memTable.write(entry, 64);
+                        written.put(entry.sequence, entry);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(writers)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(20_000, written.size());
+        assertSame(written.get(20_000L), memTable.get("key"));
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            long snapshot = 1 + random.nextInt(20_000);
+            Iterator<Entry> versions = memTable.iterator(null, false, null, false, snapshot);
+            assertSame(written.get(snapshot), versions.next());
+            assertFalse(versions.hasNext());
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private void write(String key, String value, long sequence) throws IOException {
+        memTable.write(new Entry(key, value, sequence), 64);
+    }
+
+    private List<String> entries(String from, boolean fromInclusive, String to, boolean toInclusive, long snapshot) {
+        List<String> entries = new ArrayList<>();
+        memTable.iterator(from, fromInclusive, to, toInclusive, snapshot)
+                .forEachRemaining(entry -> entries.add(entry.key + "=" + entry.value));
+        return entries;
+    }
+}
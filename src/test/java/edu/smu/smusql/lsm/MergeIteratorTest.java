@@ -0,0 +1,116 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MergeIteratorTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMerge_NewestSequenceWins_WhicheverRunItIsIn() {
+        List<Iterator<Entry>> runs = List.of(
+                List.of(new Entry("a", "old", 1), new Entry("c", "new", 9), new Entry("e", "only", 2)).iterator(),
+                List.<Entry>of().iterator(),
+                List.of(new Entry("a", "new", 7), new Entry("b", null, 8), new Entry("c", "old", 3)).iterator(),
+                List.of(new Entry("a", "middle", 4), new Entry("b", "old", 5)).iterator());
+
+        List<String> merged = new ArrayList<>();
+        new MergeIterator(runs).forEachRemaining(entry -> merged.add(entry.key + "=" + entry.value));
+        // the tombstone of b is returned, it is up to the reader to hide it
+        assertEquals(List.of("a=new", "b=null", "c=new", "e=only"), merged);
+        assertFalse(new MergeIterator(List.of()).hasNext());
+    }
+
+    @Test
+    void testTree_NewestWriteWins_AcrossMemTableLevel0AndLowerLevels() {
+        // level 0 is compacted into level 1 once it holds 2 tables
+        try (LSMTree tree = new LSMTree(directory, config())) {
+            for (String key : List.of("a", "b", "c", "d", "e")) {
+                tree.put(key, key + " in level 1");
+            }
+            tree.flush();
+            tree.put("filler", "x");
+            tree.flush();
+            assertEquals(0, tree.getLevels().get(0).size());
+
+            tree.put("b", "b in level 0");
+            tree.put("c", "c in level 0");
+            tree.remove("d");
+            tree.put("e", "e in level 0");
+            tree.flush();
+            assertEquals(1, tree.getLevels().get(0).size());
+
+            tree.put("c", "c in the MemTable");
+            tree.put("d", "d in the MemTable");
+            tree.remove("e");
+            tree.remove("a");
+
+            Map<String, String> expected = new TreeMap<>(Map.of("b", "b in level 0", "c", "c in the MemTable",
+                    "d", "d in the MemTable", "filler", "x"));
+            for (String key : List.of("a", "b", "c", "d", "e", "filler")) {
+                assertEquals(expected.get(key), tree.get(key), key);
+            }
+            assertEquals(expected, tree.getEntriesInRange(null, false, null, false));
+            assertEquals(Map.of("c", "c in the MemTable", "d", "d in the MemTable"),
+                    tree.getEntriesInRange("c", true, "e", true));
+            assertEquals(Map.of("b", "b in level 0"), tree.getEntriesInRange("a", true, "c", false));
+        }
+    }
+
+    @Test
+    void testScan_AcrossFlushAndCompaction_SeesTheKeysAsTheyWereWhenItStarted() {
+        try (LSMTree tree = new LSMTree(directory, config())) {
+            Map<String, String> expected = new TreeMap<>();
+            for (int i = 0; i < 2000; i++) {
+                tree.put(key(i), "first " + i);
+                expected.put(key(i), "first " + i);
+            }
+            tree.flush();
+            for (int i = 0; i < 2000; i += 2) {
+                tree.put(key(i), "second " + i);
+                expected.put(key(i), "second " + i);
+            }
+
+            Map<String, String> scanned = new TreeMap<>();
+            try (RangeScan scan = tree.scan(null, false, null, false)) {
+                for (int i = 0; i < 500; i++) {
+                    Map.Entry<String, String> entry = scan.next();
+                    scanned.put(entry.getKey(), entry.getValue());
+                }
+                // rewrite and remove every key, then flush and compact the tables the scan reads
+                for (int i = 0; i < 2000; i++) {
+                    if (i % 3 == 0) {
+                        tree.remove(key(i));
+                    } else {
+                        tree.put(key(i), "third " + i);
+                    }
+                }
+                tree.flush();
+                assertEquals(0, tree.getLevels().get(0).size());
+
+                scan.forEachRemaining(entry -> scanned.put(entry.getKey(), entry.getValue()));
+            }
+            assertEquals(expected, scanned);
+            assertEquals("third 1", tree.get(key(1)));
+            assertNull(tree.get(key(3)));
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static LSMConfig config() {
+        return LSMConfig.defaults().withCompactionStrategy(new LeveledCompaction(2, 10, 1 << 20, 1 << 20));
+    }
+
+    private static String key(int i) {
+        return String.format("key%05d", i);
+    }
+}
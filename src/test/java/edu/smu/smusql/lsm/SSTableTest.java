@@ -0,0 +1,158 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SSTableTest {
+    @TempDir
+    Path directory;
+
+    private final BlockCache cache = new BlockCache(1 << 20);
+
+    @Test
+    void testWriteAndReopen_ReadsBackEveryEntry() throws IOException {
+        Path path = directory.resolve("000001.sst");
+        write(path, 1000).close();
+
+        try (SSTable ssTable = SSTable.open(path, 1, cache)) {
+            assertEquals(1000, ssTable.getEntryCount());
+            assertEquals(1000, ssTable.getMaxSequence());
+            assertEquals(key(0), ssTable.getFirstKey());
+            assertEquals(key(999), ssTable.getLastKey());
+            assertTrue(ssTable.getNumBlocks() > 1);
+            for (int i = 0; i < 1000; i++) {
+                Entry entry = ssTable.get(key(i));
+                assertEquals(i + 1, entry.sequence);
+                // every tenth entry is a tombstone
+                assertEquals(i % 10 == 0 ? null : "value " + i, entry.value, key(i));
+            }
+            assertNull(ssTable.get("a"));
+            assertNull(ssTable.get(key(500) + "x"));
+            assertNull(ssTable.get("z"));
+
+            Iterator<Entry> from = ssTable.iterator(key(500), true);
+            assertEquals(key(500), from.next().key);
+            from = ssTable.iterator(key(500), false);
+            assertEquals(key(501), from.next().key);
+            int count = 0;
+            for (Iterator<Entry> all = ssTable.iterator(null, true); all.hasNext(); all.next()) {
+                count++;
+            }
+            assertEquals(1000, count);
+        }
+    }
+
+    @Test
+    void testWriter_KeysOutOfOrder_Throws() throws IOException {
+        Path path = directory.resolve("000001.sst");
+        SSTableWriter writer = new SSTableWriter(path, 10, CompressionCodec.NONE);
+        writer.add(new Entry("b", "1", 1));
+        assertThrows(IllegalArgumentException.class, () -> writer.add(new Entry("a", "1", 2)));
+        assertThrows(IllegalArgumentException.class, () -> writer.add(new Entry("b", "2", 3)));
+        writer.abort();
+        assertFalse(Files.exists(path));
+        assertFalse(Files.exists(directory.resolve("000001.sst.tmp")));
+    }
+
+    @Test
+    void testOpen_BadMagicVersionOrLength_Throws() throws IOException {
+        Path path = directory.resolve("000001.sst");
+        write(path, 100).close();
+        byte[] bytes = Files.readAllBytes(path);
+
+        byte[] badMagic = bytes.clone();
+        badMagic[badMagic.length - 1] ^= 1;
+        assertOpenFails(badMagic);
+
+        byte[] badVersion = bytes.clone();
+        badVersion[badVersion.length - 9] = (byte) (SSTableWriter.FORMAT_VERSION + 1);
+        assertOpenFails(badVersion);
+
+        assertOpenFails(Arrays.copyOfRange(bytes, bytes.length - SSTableWriter.FOOTER_SIZE + 1, bytes.length));
+        assertOpenFails(new byte[0]);
+    }
+
+    @Test
+    void testManifest_WriteAndRead() throws IOException {
+        assertNull(Manifest.read(directory));
+
+        List<List<SSTable>> levels = new ArrayList<>();
+        levels.add(List.of(write(directory.resolve("000003.sst"), 10, 3)));
+        levels.add(List.of());
+        levels.add(List.of(write(directory.resolve("000001.sst"), 10, 1),
+                write(directory.resolve("000002.sst"), 10, 2)));
+        Manifest.write(directory, 7, levels);
+
+        Manifest manifest = Manifest.read(directory);
+        assertEquals(7, manifest.nextTableId);
+        assertEquals(List.of(List.of(3L), List.of(), List.of(1L, 2L)), manifest.levels);
+        for (List<SSTable> level : levels) {
+            level.forEach(SSTable::close);
+        }
+
+        Files.writeString(directory.resolve(Manifest.FILE_NAME), "smusql-lsm-manifest 1\nnext-table x\n");
+        assertThrows(IOException.class, () -> Manifest.read(directory));
+        Files.writeString(directory.resolve(Manifest.FILE_NAME), "smusql-lsm-manifest 1\nnext-table 4\nlevel 1: 2\n");
+        assertThrows(IOException.class, () -> Manifest.read(directory));
+    }
+
+    @Test
+    void testTree_Reopen_ReadsTheTablesNamedByTheManifest() throws IOException {
+        LSMConfig config = LSMConfig.defaults().withMemTableSize(4096);
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            for (int i = 0; i < 1000; i++) {
+                tree.put(key(i), "value " + i);
+            }
+        }
+        // a table left over from a flush that never finished, and a file of one that never started
+        write(directory.resolve("999999.sst"), 10, 999999).close();
+        Files.write(directory.resolve("999998.sst.tmp"), new byte[10]);
+
+        try (LSMTree tree = new LSMTree(directory, config)) {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value " + i, tree.get(key(i)));
+            }
+            assertFalse(Files.exists(directory.resolve("999999.sst")));
+            assertFalse(Files.exists(directory.resolve("999998.sst.tmp")));
+        }
+
+        // a table the manifest names is missing
+        Manifest manifest = Manifest.read(directory);
+        long id = manifest.levels.stream().filter(level -> !level.isEmpty()).findFirst().get().get(0);
+        Files.delete(directory.resolve(String.format("%06d.sst", id)));
+        assertThrows(UncheckedIOException.class, () -> new LSMTree(directory, config));
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private static String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    private SSTable write(Path path, int count) throws IOException {
+        return write(path, count, 1);
+    }
+
+    private SSTable write(Path path, int count, long id) throws IOException {
+        SSTableWriter writer = new SSTableWriter(path, 10, CompressionCodec.LZ4);
+        for (int i = 0; i < count; i++) {
+            writer.add(new Entry(key(i), i % 10 == 0 ? null : "value " + i, i + 1));
+        }
+        return writer.finish(id, cache);
+    }
+
+    private void assertOpenFails(byte[] bytes) throws IOException {
+        Path path = directory.resolve("000002.sst");
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> SSTable.open(path, 2, cache));
+    }
+}
@@ -0,0 +1,174 @@
+package edu.smu.smusql.lsm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// A crash is simulated by copying the files of a tree that is still open, and opening the copy.
+public class WriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(value = WalSyncPolicy.class, names = {"EVERY_WRITE", "NONE"})
+    void testRecovery_UnflushedWrites_AreReplayed(WalSyncPolicy policy) throws IOException {
+        LSMTree tree = new LSMTree(directory.resolve("tree"), config(policy));
+        for (int i = 0; i < 100; i++) {
+            tree.put(key(i), "v" + i);
+        }
+        tree.put(key(7), "overwritten");
+        tree.remove(key(8));
+
+        Path copy = crash();
+        List<Path> logs = files(copy, ".log");
+        try (LSMTree recovered = new LSMTree(copy, config(policy))) {
+            for (int i = 0; i < 100; i++) {
+                String expected = i == 7 ? "overwritten" : i == 8 ? null : "v" + i;
+                assertEquals(expected, recovered.get(key(i)), key(i));
+            }
+            // the logs are flushed to an SSTable and deleted when the tree is opened
+            assertEquals(1, files(copy, ".sst").size());
+            for (Path log : logs) {
+                assertFalse(Files.exists(log), log.toString());
+            }
+        }
+        tree.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = WalSyncPolicy.class, names = {"EVERY_WRITE", "NONE"})
+    void testRecovery_LogOverSSTables_KeepsTheNewestWrites(WalSyncPolicy policy) throws IOException {
+        LSMTree tree = new LSMTree(directory.resolve("tree"), config(policy));
+        tree.put("a", "1");
+        tree.put("b", "1");
+        tree.put("c", "1");
+        tree.flush();
+        tree.put("a", "2");
+        tree.remove("b");
+
+        Path copy = crash();
+        try (LSMTree recovered = new LSMTree(copy, config(policy))) {
+            assertEquals("2", recovered.get("a"));
+            assertNull(recovered.get("b"));
+            assertEquals("1", recovered.get("c"));
+            // a write after the recovery is newer than the replayed ones
+            recovered.put("a", "3");
+        }
+        try (LSMTree reopened = new LSMTree(copy, config(policy))) {
+            assertEquals("3", reopened.get("a"));
+            assertNull(reopened.get("b"));
+        }
+        tree.close();
+    }
+
+    @Test
+    void testRecovery_TruncatedTailRecord_KeepsTheRecordsBeforeIt() throws IOException {
+        LSMTree tree = new LSMTree(directory.resolve("tree"), config(WalSyncPolicy.EVERY_WRITE));
+        tree.put("a", "1");
+        tree.put("b", "2");
+        tree.put("c", "the last write, cut short by the crash");
+
+        Path copy = crash();
+        Path log = files(copy, ".log").get(0);
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, Arrays.copyOf(bytes, bytes.length - 5));
+        try (LSMTree recovered = new LSMTree(copy, config(WalSyncPolicy.EVERY_WRITE))) {
+            assertEquals("1", recovered.get("a"));
+            assertEquals("2", recovered.get("b"));
+            assertNull(recovered.get("c"));
+        }
+        tree.close();
+    }
+
+    @Test
+    void testRecovery_CorruptTailRecord_KeepsTheRecordsBeforeIt() throws IOException {
+        LSMTree tree = new LSMTree(directory.resolve("tree"), config(WalSyncPolicy.NONE));
+        tree.put("a", "1");
+        tree.put("b", "2");
+        tree.put("c", "the last write, garbled by the crash");
+
+        Path copy = crash();
+        Path log = files(copy, ".log").get(0);
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 3] ^= 0x20;
+        Files.write(log, bytes);
+        try (LSMTree recovered = new LSMTree(copy, config(WalSyncPolicy.NONE))) {
+            assertEquals("1", recovered.get("a"));
+            assertEquals("2", recovered.get("b"));
+            assertNull(recovered.get("c"));
+        }
+        tree.close();
+    }
+
+    @Test
+    void testReplay_ConcurrentWritesOutOfOrder_KeepsTheHighestSequence() throws IOException {
+        Path path = directory.resolve("000001.log");
+        try (WriteAheadLog log = new WriteAheadLog(path, WalSyncPolicy.EVERY_WRITE)) {
+            log.append(new Entry("a", "new", 5));
+            log.append(new Entry("a", "old", 3));
+            log.append(new Entry("b", null, 4));
+        }
+
+        Map<String, Entry> replayed = new TreeMap<>();
+        WriteAheadLog.replay(path, replayed);
+        assertEquals("new", replayed.get("a").value);
+        assertEquals(5, replayed.get("a").sequence);
+        assertNull(replayed.get("b").value);
+    }
+
+    @Test
+    void testGroupCommit_RecordsReachTheFileOnSync() throws IOException {
+        Path path = directory.resolve("000001.log");
+        try (WriteAheadLog log = new WriteAheadLog(path, WalSyncPolicy.GROUP_COMMIT)) {
+            log.append(new Entry("a", "1", 1));
+            assertEquals(0, Files.size(path));
+            log.sync();
+            Map<String, Entry> replayed = new TreeMap<>();
+            WriteAheadLog.replay(path, replayed);
+            assertEquals("1", replayed.get("a").value);
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    // a MemTable large enough that no write is flushed before the crash
+    private static LSMConfig config(WalSyncPolicy policy) {
+        return LSMConfig.defaults().withMemTableSize(1 << 24).withWalSyncPolicy(policy);
+    }
+
+    private static String key(int i) {
+        return String.format("key%04d", i);
+    }
+
+    /**
+     * Copies the files of the open tree to a new directory, as a crash of
+     * the process would leave them.
+     */
+    private Path crash() throws IOException {
+        Path copy = Files.createTempDirectory(directory, "crash");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve("tree"))) {
+            for (Path path : stream) {
+                Files.copy(path, copy.resolve(path.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private static List<Path> files(Path directory, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,102 @@
+package edu.smu.smusql.table;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+import edu.smu.smusql.interfaces.RowEntry;
+import edu.smu.smusql.parser.*;
+
+public class LSMFQTest {
+    private LSMFQ storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new LSMFQ();
+        storage.create(new Create("t", List.of("id", "name")));
+    }
+
+    @Test
+    @Timeout(30)
+    void testUpdate_Id_KeepsTheMergedRowsSortedById() throws InterruptedException {
+        // two full memtables, merged into the SSTable in the background
+        for (int i = 0; i < 2000; i++) {
+            insert(String.format("%04d", i));
+        }
+        assertEquals(1, storage.update(new Update("t", "id", "2500", List.of(where("id", "=", "0500")))));
+        assertEquals(1, storage.update(new Update("t", "id", "2501", List.of(where("id", "=", "1500")))));
+        // the moved rows and 998 new ones fill the next memtable, whose merge holds every row
+        for (int i = 3000; i < 3998; i++) {
+            insert(String.format("%04d", i));
+        }
+
+        List<String> ids = ids();
+        while (!isSorted(ids)) {
+            Thread.sleep(10);
+            ids = ids();
+        }
+        assertEquals(2998, ids.size());
+        assertEquals(1, select(where("id", "=", "2500")).size());
+        assertEquals(0, select(where("id", "=", "0500")).size());
+    }
+
+    @Test
+    @Timeout(30)
+    void testInsert_AfterAFailedMerge_Throws() {
+        // rows with a null id cannot be merged into a non-empty SSTable
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 10 * 1000; i++) {
+                storage.insert(new Insert("t", Arrays.asList(null, "name" + i)));
+            }
+        });
+    }
+
+    @Test
+    void testDelete_MemTableRows_FreeTheirRoom() {
+        for (int i = 0; i < 999; i++) {
+            insert(String.format("%04d", i));
+        }
+        assertEquals(999, storage.delete(new Delete("t", List.of())));
+        // the memtable is empty again, so it holds the next 999 rows without a merge
+        for (int i = 0; i < 999; i++) {
+            insert(String.format("%04d", i));
+        }
+        assertEquals(999, ids().size());
+        assertTrue(isSorted(ids()));
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private void insert(String id) {
+        storage.insert(new Insert("t", List.of(id, "name" + id)));
+    }
+
+    private List<RowEntry> select(WhereCondition condition) {
+        return storage.select(new Select("t", List.of(condition)));
+    }
+
+    private List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        for (RowEntry row : storage.select(new Select("t", List.of()))) {
+            ids.add(row.getValue("id"));
+        }
+        return ids;
+    }
+
+    private static boolean isSorted(List<String> ids) {
+        for (int i = 1; i < ids.size(); i++) {
+            if (ids.get(i - 1).compareTo(ids.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static WhereCondition where(String column, String operator, String value) {
+        return new WhereCondition(column, operator, value);
+    }
+}
@@ -0,0 +1,217 @@
+package edu.smu.smusql.table;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.smu.smusql.interfaces.RowEntry;
+import edu.smu.smusql.lsm.LSMConfig;
+import edu.smu.smusql.parser.*;
+
+// Engine is wired to BPlusTreeStorage, so these tests drive LSMRowStorage directly.
+public class LSMRowStorageTest {
+    @TempDir
+    Path directory;
+
+    private LSMRowStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        // a small MemTable, so that the larger tests read SSTables too
+        storage = new LSMRowStorage(directory, LSMConfig.defaults().withMemTableSize(4096));
+    }
+
+    @Test
+    void testSelect_PrimaryKeyEquality_MatchesEqualNumbers() {
+        createTable("t", "id", "id", "name");
+        insert("t", "10", "a");
+        insert("t", "abc", "b");
+
+        assertEquals(Set.of("10"), ids(select("t", where("id", "=", "10"))));
+        assertEquals(Set.of("10"), ids(select("t", where("id", "=", "10.0"))));
+        assertEquals(Set.of("10"), ids(select("t", where("id", "=", "1e1"))));
+        assertEquals(Set.of("abc"), ids(select("t", where("id", "=", "abc"))));
+        assertEquals(Set.of(), ids(select("t", where("id", "=", "11"))));
+    }
+
+    @Test
+    void testSelect_PrimaryKeyRange_SpansNumbersAndStrings() {
+        createTable("t", "id", "id", "name");
+        for (String id : List.of("1", "2.5", "10", "-3", "-0.5", "abc", "b")) {
+            insert("t", id, "x");
+        }
+
+        // numbers compare as numbers against a number, strings as strings
+        assertEquals(Set.of("2.5", "10", "abc", "b"), ids(select("t", where("id", ">", "2"))));
+        assertEquals(Set.of("1", "-3", "-0.5"), ids(select("t", where("id", "<", "2"))));
+        assertEquals(Set.of("1", "2.5", "10", "abc", "b"), ids(select("t", where("id", ">=", "1"))));
+        // every value compares as a string against a string
+        assertEquals(Set.of("1", "2.5", "10", "-3", "-0.5", "abc"), ids(select("t", where("id", "<", "b"))));
+        assertEquals(Set.of("b"), ids(select("t", where("id", ">=", "b"))));
+        assertEquals(Set.of("1", "2.5", "10", "-3", "-0.5", "b"), ids(select("t", where("id", "!=", "abc"))));
+    }
+
+    @Test
+    void testInsert_DuplicatePrimaryKey_Throws() {
+        createTable("t", "id", "id", "name");
+        insert("t", "2", "a");
+
+        assertThrows(InvalidCommandException.class, () -> insert("t", "2", "b"));
+        assertThrows(InvalidCommandException.class, () -> insert("t", "2.0", "b"));
+        assertThrows(InvalidCommandException.class, () -> insert("t", " 2", "b"));
+        assertEquals(1, select("t").size());
+    }
+
+    @Test
+    void testTableWithoutPrimaryKey_KeepsDuplicatesInInsertionOrder() {
+        createTable("t", null, "name", "age");
+        insert("t", "John", "25");
+        insert("t", "Mary", "30");
+        insert("t", "John", "25");
+        insert("t", "Bob", "25");
+
+        List<String> names = new ArrayList<>();
+        for (RowEntry row : select("t")) {
+            names.add(row.getValue("name"));
+        }
+        assertEquals(List.of("John", "Mary", "John", "Bob"), names);
+
+        assertEquals(2, storage.delete(new Delete("t", where("name", "=", "John"))));
+        assertEquals(2, select("t", where("age", "<", "40")).size());
+    }
+
+    @Test
+    void testCreateIndex_OnExistingRows_AnswersLikeAScan() {
+        createTable("t", "id", "id", "v");
+        String[] values = {"5", "-2", "5.0", "abc", "0", "-0", "1e1", "zz", "7.25", "a"};
+        for (int i = 0; i < 300; i++) {
+            insert("t", Integer.toString(i), values[i % values.length]);
+        }
+        storage.createIndex(new CreateIndex("iv", "t", List.of("v"), IndexType.BTREE, 0));
+        for (int i = 300; i < 400; i++) {
+            insert("t", Integer.toString(i), values[i % values.length]);
+        }
+
+        List<RowEntry> all = select("t");
+        assertEquals(400, all.size());
+        for (String operator : List.of("=", ">", "<", ">=", "<=", "!=")) {
+            for (String value : List.of("5", "0", "-1", "10", "a", "abc", "b", "zzz")) {
+                List<WhereCondition> conditions = where("v", operator, value);
+                assertEquals(ids(scan(all, conditions)), ids(select("t", conditions)), "v " + operator + " " + value);
+            }
+        }
+    }
+
+    @Test
+    void testSelect_AndOrOverIndexes_AnswersLikeAScan() {
+        createTable("t", "id", "id", "a", "b");
+        for (int i = 0; i < 500; i++) {
+            String b = i % 3 == 0 ? "x" + (i % 5) : Integer.toString(i % 11);
+            insert("t", Integer.toString(i), Integer.toString(i % 17), b);
+        }
+        storage.createIndex(new CreateIndex("ia", "t", List.of("a"), IndexType.HASH, 0));
+        storage.createIndex(new CreateIndex("ib", "t", List.of("b"), IndexType.BTREE, 0));
+
+        List<RowEntry> all = select("t");
+        String[][] pairs = {{"a", "=", "3", "b", "<", "5"}, {"a", ">", "10", "id", "<=", "100"},
+                {"id", "=", "42", "b", "!=", "x2"}, {"b", ">=", "x3", "a", "<", "4"}};
+        for (String[] pair : pairs) {
+            for (String logical : List.of("AND", "OR")) {
+                List<WhereCondition> conditions = where(pair[0], pair[1], pair[2]);
+                conditions.get(0).setLogicalOperator(logical);
+                conditions.addAll(where(pair[3], pair[4], pair[5]));
+                assertEquals(ids(scan(all, conditions)), ids(select("t", conditions)),
+                        String.join(" ", pair) + " " + logical);
+            }
+        }
+    }
+
+    @Test
+    void testUpdate_PrimaryKey_MovesTheRow() {
+        createTable("t", "id", "id", "name");
+        storage.createIndex(new CreateIndex("in", "t", List.of("name"), IndexType.BTREE, 0));
+        insert("t", "1", "John");
+        insert("t", "2", "Mary");
+        insert("t", "3", "Mary");
+
+        assertEquals(1, storage.update(new Update("t", "id", "10", where("name", "=", "John"))));
+        assertEquals(Set.of(), ids(select("t", where("id", "=", "1"))));
+        assertEquals(Set.of("10"), ids(select("t", where("name", "=", "John"))));
+        assertEquals(Set.of("10"), ids(select("t", where("id", ">", "5"))));
+
+        // the new key of a row may not be another row's, nor be given to several rows
+        assertThrows(InvalidCommandException.class,
+                () -> storage.update(new Update("t", "id", "2.0", where("id", "=", "10"))));
+        assertThrows(InvalidCommandException.class,
+                () -> storage.update(new Update("t", "id", "20", where("name", "=", "Mary"))));
+        assertEquals(Set.of("2", "3", "10"), ids(select("t")));
+    }
+
+    @Test
+    void testUpdateAndDelete_IndexedColumn_MoveTheIndexEntries() {
+        createTable("t", "id", "id", "name");
+        storage.createIndex(new CreateIndex("in", "t", List.of("name"), IndexType.BTREE, 0));
+        insert("t", "1", "John");
+        insert("t", "2", "Mary");
+
+        assertEquals(1, storage.update(new Update("t", "name", "Bob", where("id", "=", "1"))));
+        assertEquals(Set.of(), ids(select("t", where("name", "=", "John"))));
+        assertEquals(Set.of("1"), ids(select("t", where("name", "=", "Bob"))));
+
+        assertEquals(1, storage.delete(new Delete("t", where("name", "=", "Mary"))));
+        assertEquals(Set.of(), ids(select("t", where("name", ">", "C"))));
+        assertEquals(Set.of("1"), ids(select("t")));
+    }
+
+    @Test
+    void testDropIndex_FallsBackToAScan() {
+        createTable("t", "id", "id", "name");
+        insert("t", "1", "John");
+        CreateIndex index = new CreateIndex("in", "t", List.of("name"), IndexType.BTREE, 0);
+        storage.createIndex(index);
+        storage.dropIndex(index);
+        insert("t", "2", "John");
+
+        assertEquals(Set.of("1", "2"), ids(select("t", where("name", "=", "John"))));
+    }
+
+    /*
+     * HELPER METHODS
+     */
+
+    private void createTable(String table, String primaryKey, String... columns) {
+        storage.create(new Create(table, List.of(columns), primaryKey));
+    }
+
+    private void insert(String table, String... values) {
+        storage.insert(new Insert(table, List.of(values)));
+    }
+
+    private List<RowEntry> select(String table) {
+        return storage.select(new Select(table, new ArrayList<>()));
+    }
+
+    private List<RowEntry> select(String table, List<WhereCondition> conditions) {
+        return storage.select(new Select(table, conditions));
+    }
+
+    private static List<WhereCondition> where(String column, String operator, String value) {
+        return new ArrayList<>(List.of(new WhereCondition(column, operator, value)));
+    }
+
+    private static List<RowEntry> scan(List<RowEntry> rows, List<WhereCondition> conditions) {
+        return rows.stream().filter(row -> row.evaluateAllConditions(conditions)).toList();
+    }
+
+    private static Set<String> ids(List<RowEntry> rows) {
+        Set<String> ids = new HashSet<>();
+        for (RowEntry row : rows) {
+            ids.add(row.getValue("id"));
+        }
+        return ids;
+    }
+}